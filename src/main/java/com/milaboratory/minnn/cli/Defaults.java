@@ -53,6 +53,8 @@ public final class Defaults {
     public final static long DEFAULT_SINGLE_OVERLAP_PENALTY = DEFAULT_GAP_SCORE;
     public final static long DEFAULT_NOT_RESULT_SCORE = 0;
     public final static int DEFAULT_THREADS = 4;
+    public final static int DEFAULT_DECOMPRESSION_THREADS = 0;
+    public final static int DEFAULT_OUTPUT_SHARDS = 1;
     public final static MinnnDataFormat DEFAULT_INPUT_FORMAT = FASTQ;
     public final static int DEFAULT_SORT_MIN_CHUNK_SIZE = 16384;
     public final static int DEFAULT_SORT_MAX_CHUNK_SIZE = 65536;
@@ -86,6 +88,7 @@ public final class Defaults {
 
     public final static String APP_NAME = "minnn";
     public final static int BITAP_MAX_LENGTH = 63;
+    public final static int MULTI_PATTERN_BITAP_MIN_LITERALS = 2;
     public final static int SEQUENCES_OF_CHARACTERS_CACHE_SIZE = 100;
     public final static int SEQUENCES_OF_N_CACHE_SIZE = 1000;
     public final static byte BUILTIN_READ_GROUPS_NUM = PARSER_BUILTIN_READ_GROUPS_NUM;
@@ -32,11 +32,14 @@ import com.milaboratory.cli.*;
 import com.milaboratory.core.alignment.PatternAndTargetAlignmentScoring;
 import com.milaboratory.minnn.io.MinnnDataFormat;
 import com.milaboratory.minnn.io.ReadProcessor;
+import com.milaboratory.minnn.io.ShardedMifWriter;
 import com.milaboratory.minnn.parser.Parser;
 import com.milaboratory.minnn.parser.ParserConfiguration;
 import com.milaboratory.minnn.parser.ParserException;
 import com.milaboratory.minnn.pattern.GroupEdge;
 import com.milaboratory.minnn.pattern.Pattern;
+import com.milaboratory.minnn.pattern.PatternPlanner;
+import com.milaboratory.minnn.util.AdaptivePortLimits;
 import picocli.CommandLine.*;
 
 import java.util.*;
@@ -78,16 +81,41 @@ public final class ExtractAction extends ACommandWithSmartOverwrite implements M
             System.err.println("Error while parsing the pattern!");
             throw exitWithError(e.getMessage());
         }
+        pattern = PatternPlanner.optimize(pattern);
+        Map<String, Integer> pinnedPortLimits = (pinnedPortLimitsFileName == null) ? new HashMap<>()
+                : AdaptivePortLimits.readPinnedLimits(pinnedPortLimitsFileName);
         HashSet<String> patternGroups = pattern.getGroupEdges().stream().map(GroupEdge::getGroupName)
                 .collect(Collectors.toCollection(HashSet::new));
         DescriptionGroups descriptionGroups = new DescriptionGroups(descriptionGroupsMap);
         patternGroups.retainAll(descriptionGroups.getGroupNames());
         if (patternGroups.size() > 0)
             throw exitWithError("Error: groups " + patternGroups + " are both in pattern and in description groups!");
+        List<String> shardGroupsList = (shardGroups == null) ? new ArrayList<>() : shardGroups;
+        List<String> sortGroupsList = (sortGroups == null) ? new ArrayList<>() : sortGroups;
+        Set<String> outputGroups = pattern.getGroupEdges().stream().map(GroupEdge::getGroupName)
+                .collect(Collectors.toSet());
+        outputGroups.addAll(descriptionGroups.getGroupNames());
+        if (outputShards > 1)
+            for (String shardGroup : shardGroupsList)
+                if (!outputGroups.contains(shardGroup))
+                    throw exitWithError("Error: group " + shardGroup + " from --shard-by is not found in pattern "
+                            + "and description groups!");
+        for (String sortGroup : sortGroupsList)
+            if (!outputGroups.contains(sortGroup))
+                throw exitWithError("Error: group " + sortGroup + " from --sort-groups is not found in pattern "
+                        + "and description groups!");
         ReadProcessor readProcessor = new ReadProcessor(getFullPipelineConfiguration(), getInputFiles(),
-                outputFileName, notMatchedOutputFileName, pattern, query, oriented, fairSorting, inputReadsLimit,
-                threads, reportFileName, jsonReportFileName, inputFormat, descriptionGroups);
-        readProcessor.processReadsParallel();
+                outputFileName, notMatchedOutputFileName, outputShards, shardGroupsList, sortGroupsList,
+                sortChunkSize, pattern, query, oriented, fairSorting, inputReadsLimit, threads, decompressionThreads,
+                reportFileName, jsonReportFileName, inputFormat, descriptionGroups);
+        // adaptive port limits are global state, so they must not stay enabled after this extract
+        if (adaptivePortLimits || (pinnedPortLimitsFileName != null))
+            AdaptivePortLimits.enable(pinnedPortLimits);
+        try {
+            readProcessor.processReadsParallel();
+        } finally {
+            AdaptivePortLimits.disable();
+        }
     }
 
     @Override
@@ -106,9 +134,29 @@ public final class ExtractAction extends ACommandWithSmartOverwrite implements M
         if (singleOverlapPenalty > 0)
             throw new ValidationException(spec.commandLine(), singleOverlapPenalty + " is invalid value for " +
                     "--single-overlap-penalty! Single overlap penalty must be 0 or negative.", false);
+        if (decompressionThreads < 0)
+            throw new ValidationException(spec.commandLine(), decompressionThreads + " is invalid value for " +
+                    "--decompression-threads! Valid values are positive or 0.", false);
+        if (outputShards < 1)
+            throw new ValidationException(spec.commandLine(), outputShards + " is invalid value for " +
+                    "--output-shards! Valid values are positive.", false);
+        if (outputShards > 1) {
+            if (outputFileName == null)
+                throw new ValidationException(spec.commandLine(), "--output must be specified when output is " +
+                        "written to multiple shards!", false);
+            if (shardGroups == null)
+                throw new ValidationException(spec.commandLine(), "--shard-by must be specified when output is " +
+                        "written to multiple shards!", false);
+        }
+        if ((sortChunkSize < 1) && (sortChunkSize != -1))
+            throw new ValidationException(spec.commandLine(), sortChunkSize + " is invalid value for " +
+                    "--sort-chunk-size! Valid values are positive.", false);
         if (bitapMaxErrors < 0)
             throw new ValidationException(spec.commandLine(), bitapMaxErrors + " is invalid value for " +
                     "--bitap-max-errors! Valid values are positive or 0.", false);
+        if (fairSorting && (adaptivePortLimits || (pinnedPortLimitsFileName != null)))
+            throw new ValidationException(spec.commandLine(), "Port limits are not used with --fair-sorting!",
+                    false);
     }
 
     @Override
@@ -119,8 +167,13 @@ public final class ExtractAction extends ACommandWithSmartOverwrite implements M
     @Override
     protected List<String> getOutputFiles() {
         List<String> outputFileNames = new ArrayList<>();
-        if (outputFileName != null)
-            outputFileNames.add(outputFileName);
+        if (outputFileName != null) {
+            if (outputShards > 1)
+                for (int i = 0; i < outputShards; i++)
+                    outputFileNames.add(ShardedMifWriter.getShardFileName(outputFileName, i));
+            else
+                outputFileNames.add(outputFileName);
+        }
         if (notMatchedOutputFileName != null)
             outputFileNames.add(notMatchedOutputFileName);
         return outputFileNames;
@@ -140,7 +193,8 @@ public final class ExtractAction extends ACommandWithSmartOverwrite implements M
         return new ExtractActionConfiguration(new ExtractActionConfiguration.ExtractActionParameters(query,
                 inputFormat, oriented, matchScore, mismatchScore, uppercaseMismatchScore, gapScore, scoreThreshold,
                 goodQuality, badQuality, maxQualityPenalty, singleOverlapPenalty, maxOverlap, bitapMaxErrors,
-                fairSorting, inputReadsLimit, descriptionGroupsMap, simplifiedSyntax));
+                fairSorting, inputReadsLimit, descriptionGroupsMap, simplifiedSyntax, outputShards,
+                (outputShards > 1) ? shardGroups : null, sortGroups));
     }
 
     @Override
@@ -168,6 +222,30 @@ public final class ExtractAction extends ACommandWithSmartOverwrite implements M
             names = "--not-matched-output")
     private String notMatchedOutputFileName = null;
 
+    @Option(description = "Number of output files (shards). If more than 1, matched reads are partitioned to " +
+            "shards by hash of values of groups specified in --shard-by, so all reads with the same values of " +
+            "these groups are written to the same shard. Shard file names are created from --output file name by " +
+            "adding shard index, for example output_shard0.mif, output_shard1.mif.",
+            names = "--output-shards")
+    private int outputShards = DEFAULT_OUTPUT_SHARDS;
+
+    @Option(description = "Group names which values are used to partition reads to shards. " +
+            "Used only if --output-shards is more than 1.",
+            names = "--shard-by",
+            arity = "1..*")
+    private List<String> shardGroups = null;
+
+    @Option(description = "Group names to sort output reads by. Priority is in descending order. If specified, " +
+            "output is sorted in the same way as with sort action, without writing and reading back an " +
+            "intermediate file.",
+            names = "--sort-groups",
+            arity = "1..*")
+    private List<String> sortGroups = null;
+
+    @Option(description = "Chunk size for sorter. Used only if --sort-groups is specified.",
+            names = "--sort-chunk-size")
+    private int sortChunkSize = -1;
+
     @Option(description = "Input data format. Available options: FASTQ, MIF.",
             names = "--input-format")
     private MinnnDataFormat inputFormat = DEFAULT_INPUT_FORMAT;
@@ -225,6 +303,19 @@ public final class ExtractAction extends ACommandWithSmartOverwrite implements M
             names = "--fair-sorting")
     private boolean fairSorting = false;
 
+    @Option(description = "Learn port limits of unfair sorter for each pattern node while reads are processed: " +
+            "limits are decreased if best matches are found in the beginning of ports, and increased if best " +
+            "matches are found near the limits. Learned limits are written to JSON report. With multiple threads, " +
+            "results may differ between runs.",
+            names = "--adaptive-port-limits")
+    private boolean adaptivePortLimits = false;
+
+    @Option(description = "JSON report of previous extract run with --adaptive-port-limits; learned port limits " +
+            "from this report will be used as fixed limits for the same pattern nodes. Port limits of other " +
+            "pattern nodes are learned as with --adaptive-port-limits.",
+            names = "--pinned-port-limits")
+    private String pinnedPortLimitsFileName = null;
+
     @Option(description = NUMBER_OF_READS,
             names = {"-n", "--number-of-reads"})
     private long inputReadsLimit = 0;
@@ -233,6 +324,12 @@ public final class ExtractAction extends ACommandWithSmartOverwrite implements M
             names = "--threads")
     private int threads = DEFAULT_THREADS;
 
+    @Option(description = "Number of threads for decompression of gzipped FASTQ input files. BGZF files are " +
+            "decompressed block by block in parallel, other gzipped files are decompressed on a separate thread. " +
+            "0 means that input files are decompressed on the reading thread.",
+            names = "--decompression-threads")
+    private int decompressionThreads = DEFAULT_DECOMPRESSION_THREADS;
+
     @Option(description = REPORT,
             names = "--report")
     private String reportFileName = null;
@@ -35,8 +35,7 @@ import com.milaboratory.minnn.io.MinnnDataFormat;
 import com.milaboratory.primitivio.annotations.Serializable;
 import com.milaboratory.util.GlobalObjectMappers;
 
-import java.util.LinkedHashMap;
-import java.util.Objects;
+import java.util.*;
 
 import static com.milaboratory.minnn.cli.ExtractAction.EXTRACT_ACTION_NAME;
 
@@ -94,6 +93,9 @@ public final class ExtractActionConfiguration implements ActionConfiguration {
         private long inputReadsLimit;
         private LinkedHashMap<String, String> descriptionGroupsMap;
         private boolean simplifiedSyntax;
+        private int outputShards;
+        private List<String> shardGroups;
+        private List<String> sortGroups;
 
         @JsonCreator
         public ExtractActionParameters(
@@ -114,7 +116,10 @@ public final class ExtractActionConfiguration implements ActionConfiguration {
                 @JsonProperty("fairSorting") boolean fairSorting,
                 @JsonProperty("inputReadsLimit") long inputReadsLimit,
                 @JsonProperty("descriptionGroupsMap") LinkedHashMap<String, String> descriptionGroupsMap,
-                @JsonProperty("simplifiedSyntax") boolean simplifiedSyntax) {
+                @JsonProperty("simplifiedSyntax") boolean simplifiedSyntax,
+                @JsonProperty("outputShards") int outputShards,
+                @JsonProperty("shardGroups") List<String> shardGroups,
+                @JsonProperty("sortGroups") List<String> sortGroups) {
             this.query = query;
             this.inputFormat = inputFormat;
             this.oriented = oriented;
@@ -133,6 +138,9 @@ public final class ExtractActionConfiguration implements ActionConfiguration {
             this.inputReadsLimit = inputReadsLimit;
             this.descriptionGroupsMap = descriptionGroupsMap;
             this.simplifiedSyntax = simplifiedSyntax;
+            this.outputShards = outputShards;
+            this.shardGroups = shardGroups;
+            this.sortGroups = sortGroups;
         }
 
         public String getQuery() {
@@ -279,6 +287,30 @@ public final class ExtractActionConfiguration implements ActionConfiguration {
             this.simplifiedSyntax = simplifiedSyntax;
         }
 
+        public int getOutputShards() {
+            return outputShards;
+        }
+
+        public void setOutputShards(int outputShards) {
+            this.outputShards = outputShards;
+        }
+
+        public List<String> getShardGroups() {
+            return shardGroups;
+        }
+
+        public void setShardGroups(List<String> shardGroups) {
+            this.shardGroups = shardGroups;
+        }
+
+        public List<String> getSortGroups() {
+            return sortGroups;
+        }
+
+        public void setSortGroups(List<String> sortGroups) {
+            this.sortGroups = sortGroups;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -299,9 +331,12 @@ public final class ExtractActionConfiguration implements ActionConfiguration {
             if (fairSorting != that.fairSorting) return false;
             if (inputReadsLimit != that.inputReadsLimit) return false;
             if (simplifiedSyntax != that.simplifiedSyntax) return false;
+            if (outputShards != that.outputShards) return false;
             if (!Objects.equals(query, that.query)) return false;
             if (inputFormat != that.inputFormat) return false;
-            return Objects.equals(descriptionGroupsMap, that.descriptionGroupsMap);
+            if (!Objects.equals(descriptionGroupsMap, that.descriptionGroupsMap)) return false;
+            if (!Objects.equals(shardGroups, that.shardGroups)) return false;
+            return Objects.equals(sortGroups, that.sortGroups);
         }
 
         @Override
@@ -324,6 +359,9 @@ public final class ExtractActionConfiguration implements ActionConfiguration {
             result = 31 * result + (int)(inputReadsLimit ^ (inputReadsLimit >>> 32));
             result = 31 * result + (descriptionGroupsMap != null ? descriptionGroupsMap.hashCode() : 0);
             result = 31 * result + (simplifiedSyntax ? 1 : 0);
+            result = 31 * result + outputShards;
+            result = 31 * result + (shardGroups != null ? shardGroups.hashCode() : 0);
+            result = 31 * result + (sortGroups != null ? sortGroups.hashCode() : 0);
             return result;
         }
 
@@ -38,7 +38,13 @@ public final class Magic {
     public static final int BEGIN_MAGIC_LENGTH = 14;
     public static final int BEGIN_MAGIC_LENGTH_SHORT = 9;
     public static final String BEGIN_MAGIC_MIF = "MiNNN.MIF";
-    private static final int MAGIC_VERSION = 12;
+    public static final int MAGIC_VERSION = 14;
+    // files of older versions than this can't be read
+    public static final int OLDEST_READABLE_MAGIC_VERSION = 12;
+    // first version where header contains shard groups, shard index and number of shards
+    public static final int SHARDS_MAGIC_VERSION = 13;
+    // first version where reads are stored in independently serialized blocks
+    public static final int BLOCKS_MAGIC_VERSION = 14;
     private static final TIntObjectHashMap<String> MAGIC_VERSIONS = new TIntObjectHashMap<>();
     static {
         for (int i = 1; i <= MAGIC_VERSION; i++)
@@ -57,4 +63,22 @@ public final class Magic {
     public static byte[] getEndMagicBytes() {
         return END_MAGIC_BYTES.clone();
     }
+
+    /**
+     * Get MIF format version from begin magic string.
+     *
+     * @param beginMagic    begin magic string from the file
+     * @return              format version (it can be newer than the version of this MiNNN build),
+     *                      or -1 if this is not a begin magic string of MIF file
+     */
+    public static int getMagicVersion(String beginMagic) {
+        String versionPrefix = BEGIN_MAGIC_MIF + ".V";
+        if ((beginMagic.length() != BEGIN_MAGIC_LENGTH) || !beginMagic.startsWith(versionPrefix))
+            return -1;
+        try {
+            return Integer.parseInt(beginMagic.substring(versionPrefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 }
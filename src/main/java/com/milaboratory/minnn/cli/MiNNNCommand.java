@@ -33,6 +33,7 @@ import com.milaboratory.cli.BinaryFileInfo;
 import java.io.File;
 import java.util.*;
 
+import static com.milaboratory.minnn.cli.Magic.*;
 import static com.milaboratory.minnn.io.MifInfoExtractor.mifInfoExtractor;
 
 public interface MiNNNCommand {
@@ -43,6 +44,12 @@ public interface MiNNNCommand {
         BinaryFileInfo info = mifInfoExtractor.getFileInfo(inputFile);
         if ((info != null) && !info.valid)
             throwValidationException("ERROR: input file \"" + inputFile + "\" is corrupted.", false);
+        int formatVersion = mifInfoExtractor.getFormatVersion(inputFile);
+        if ((formatVersion != -1) && ((formatVersion < OLDEST_READABLE_MAGIC_VERSION)
+                || (formatVersion > MAGIC_VERSION)))
+            throwValidationException("ERROR: input file \"" + inputFile + "\" has MIF format version "
+                    + formatVersion + " that is not supported by this MiNNN version; supported versions are "
+                    + OLDEST_READABLE_MAGIC_VERSION + " to " + MAGIC_VERSION + ".", false);
     }
 
     /** Default validation procedure for input and output files */
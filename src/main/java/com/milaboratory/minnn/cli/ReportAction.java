@@ -73,6 +73,12 @@ public final class ReportAction extends ACommand implements MiNNNCommand {
             System.err.println("Error while parsing the pattern!");
             throw exitWithError(e.getMessage());
         }
+        Pattern optimizedPattern = PatternPlanner.optimize(pattern);
+        if (explain) {
+            System.out.println("Original plan:\n" + PatternPlanner.explain(pattern));
+            System.out.println("Optimized plan:\n" + PatternPlanner.explain(optimizedPattern));
+        }
+        pattern = optimizedPattern;
         MultiNSequenceWithQuality target = parseMultiTargetString(stripQuotes(targetString));
         try {
             for (int i = 0; i < target.numberOfSequences(); i++)
@@ -195,4 +201,9 @@ public final class ReportAction extends ACommand implements MiNNNCommand {
     @Option(description = FAIR_SORTING,
             names = {"--fair-sorting"})
     private boolean fairSorting = true;
+
+    @Option(description = "Print the tree of the parsed and optimized pattern with estimated complexity and " +
+            "maximal score of each node before the report.",
+            names = {"--explain"})
+    private boolean explain = false;
 }
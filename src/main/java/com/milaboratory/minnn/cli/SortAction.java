@@ -55,7 +55,7 @@ public final class SortAction extends ACommandWithSmartOverwrite implements MiNN
     @Override
     public void run1() {
         SorterIO sorterIO = new SorterIO(getFullPipelineConfiguration(), inputFileName, outputFileName,
-                sortGroupNames, chunkSize, reportFileName, jsonReportFileName, tmpFile);
+                sortGroupNames, chunkSize, reportFileName, jsonReportFileName, tmpFile, readIdIndex);
         sorterIO.go();
     }
 
@@ -67,6 +67,8 @@ public final class SortAction extends ACommandWithSmartOverwrite implements MiNN
     @Override
     public void validate() {
         MiNNNCommand.super.validate(getInputFiles(), getOutputFiles());
+        if (readIdIndex && (outputFileName == null))
+            throwValidationException("--read-id-index can't be used when output is to stdout!");
     }
 
     @Override
@@ -128,6 +130,12 @@ public final class SortAction extends ACommandWithSmartOverwrite implements MiNN
             names = {"--chunk-size"})
     private int chunkSize = -1;
 
+    @Option(description = "Write read id index to the file with the output file name and .ridx suffix. With this " +
+            "index, consensus takes original reads from its input file by read id instead of keeping them in " +
+            "memory when it writes original read stats or not used reads.",
+            names = {"--read-id-index"})
+    private boolean readIdIndex = false;
+
     @Option(description = REPORT,
             names = "--report")
     private String reportFileName = null;
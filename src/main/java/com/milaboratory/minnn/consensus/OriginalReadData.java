@@ -29,7 +29,6 @@
 package com.milaboratory.minnn.consensus;
 
 import com.milaboratory.minnn.outputconverter.ParsedRead;
-import gnu.trove.map.hash.TByteIntHashMap;
 
 import java.util.*;
 
@@ -37,12 +36,12 @@ import static com.milaboratory.minnn.consensus.OriginalReadStatus.*;
 import static com.milaboratory.minnn.util.CommonUtils.*;
 
 public final class OriginalReadData {
+    // null if the read will be taken from input file by read id when it is needed
     public final ParsedRead read;
     public OriginalReadStatus status = NOT_USED_IN_CONSENSUS;
     public TrimmedLettersCounters trimmedLettersCounters = null;
     public TrimmedLettersCounters consensusTrimmedLettersCounters = null;
     private Consensus consensus = null;
-    private TByteIntHashMap consensusDistances = null;
     public List<long[]> alignmentScores = Arrays.asList(null, null);
 
     public OriginalReadData(ParsedRead read) {
@@ -51,20 +50,23 @@ public final class OriginalReadData {
 
     public void setConsensus(Consensus consensus) {
         this.consensus = consensus;
-        if (consensus.sequences != null) {
-            if (consensusDistances == null)
-                consensusDistances = new TByteIntHashMap();
-            for (byte targetId = 1; targetId <= consensus.numberOfTargets; targetId++)
-                consensusDistances.put(targetId, calculateLevenshteinDistance(
-                        read.getMatchTarget(targetId).getSequence(), consensus.sequences.get(targetId).getSeq()));
-        }
     }
 
     public Consensus getConsensus() {
         return consensus;
     }
 
-    public int getConsensusDistance(byte targetId) {
-        return (consensusDistances == null) ? -1 : consensusDistances.get(targetId);
+    /**
+     * Calculate distance between the read and its consensus.
+     *
+     * @param read      original parsed read; it is the read from this object, or the same read from input file
+     * @param targetId  target id
+     * @return          Levenshtein distance, or -1 if there is no consensus with sequences
+     */
+    public int getConsensusDistance(ParsedRead read, byte targetId) {
+        if ((consensus == null) || (consensus.sequences == null))
+            return -1;
+        return calculateLevenshteinDistance(read.getMatchTarget(targetId).getSequence(),
+                consensus.sequences.get(targetId).getSeq());
     }
 }
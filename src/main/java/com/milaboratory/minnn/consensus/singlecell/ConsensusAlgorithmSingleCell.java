@@ -44,6 +44,7 @@ import java.util.function.Consumer;
 
 import static com.milaboratory.minnn.consensus.ConsensusStageForDebug.*;
 import static com.milaboratory.minnn.consensus.OriginalReadStatus.*;
+import static com.milaboratory.minnn.util.SequenceKernels.*;
 
 public class ConsensusAlgorithmSingleCell extends ConsensusAlgorithm {
     private final int kmerLength;
@@ -206,12 +207,17 @@ public class ConsensusAlgorithmSingleCell extends ConsensusAlgorithm {
         int length = seq.size();
         if (length < kmerLength)
             throw new IllegalStateException("length: " + length + ", kmerLength: " + kmerLength);
+        if (kmerSeq.size() != kmerLength)
+            throw new IllegalArgumentException("kmerSeq: " + kmerSeq + ", kmerLength = " + kmerLength);
         int bestPosition = -1;
         int bestNumErrors = kmerMatchMaxErrors + 1;
         int from = Math.max(0, length / 2 - kmerLength / 2 - kmerMaxOffset);
         int to = Math.min(length - kmerLength, length / 2 - kmerLength / 2 + kmerMaxOffset);
+        // sequences are packed once, then all kmer positions are compared by 16 letters at once
+        long[] packedSeq = packCodes(seq);
+        long[] packedKmer = packCodes(kmerSeq);
         for (int kmerStart = from; kmerStart <= to; kmerStart++) {
-            int currentNumErrors = seqDiff(seq.getRange(kmerStart, kmerStart + kmerLength), kmerSeq);
+            int currentNumErrors = countDifferences(packedSeq, kmerStart, packedKmer, kmerLength);
             if (currentNumErrors < bestNumErrors) {
                 bestPosition = kmerStart;
                 bestNumErrors = currentNumErrors;
@@ -220,16 +226,6 @@ public class ConsensusAlgorithmSingleCell extends ConsensusAlgorithm {
         return bestPosition;
     }
 
-    private int seqDiff(NucleotideSequence seq1, NucleotideSequence seq2) {
-        if ((seq1.size() != kmerLength) || (seq2.size() != kmerLength))
-            throw new IllegalArgumentException("seq1: " + seq1 + ", seq2: " + seq2 + ", kmerLength = " + kmerLength);
-        int diff = 0;
-        for (int i = 0; i < kmerLength; i++)
-            if (seq1.codeAt(i) != seq2.codeAt(i))
-                diff++;
-        return diff;
-    }
-
     private Consensus calculateConsensus(OffsetSearchResults offsetSearchResults) {
         ConsensusDebugData debugData = (debugOutputStream == null) ? null
                 : new ConsensusDebugData(numberOfTargets, debugQualityThreshold, NO_STAGE, false);
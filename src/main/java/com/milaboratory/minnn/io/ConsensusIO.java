@@ -95,6 +95,8 @@ public final class ConsensusIO {
     private final byte debugQualityThreshold;
     private final AtomicLong totalReads = new AtomicLong(0);
     private final ConcurrentHashMap<Long, OriginalReadData> originalReadsData;
+    // if true, original reads are not kept in originalReadsData, and taken from input file by read id index
+    private boolean originalReadsFromInput = false;
     private final TLongLongHashMap consensusFinalIds;
     private ConsensusAlgorithm consensusAlgorithm;
     private long consensusReads = 0;
@@ -211,6 +213,8 @@ public final class ConsensusIO {
         }
         try (MifReader reader = createReader();
              MifWriter writer = createWriter(mifHeader = reader.getHeader())) {
+            originalReadsFromInput = (originalReadsData != null) && (inputFileName != null)
+                    && reader.hasReadIdIndex();
             if (inputReadsLimit > 0)
                 reader.setParsedReadsLimit(inputReadsLimit);
             validateInputGroups(reader, consensusGroups, false, "--groups");
@@ -332,7 +336,8 @@ public final class ConsensusIO {
         if (originalReadStatsFileName != null) {
             System.err.println("Writing file with stats for original reads...");
             try (PrintStream originalReadsDataWriter = new PrintStream(
-                    new FileOutputStream(originalReadStatsFileName))) {
+                    new FileOutputStream(originalReadStatsFileName));
+                 MifReader originalReadsReader = createOriginalReadsReader()) {
                 List<String> defaultGroups = IntStream.rangeClosed(1, numberOfTargets).mapToObj(i -> "R" + i)
                         .collect(Collectors.toList());
                 StringBuilder header = new StringBuilder();
@@ -358,6 +363,7 @@ public final class ConsensusIO {
                     OriginalReadData currentReadData = originalReadsData.get(readId);
                     OriginalReadStatus status = (currentReadData == null) ? NOT_MATCHED : currentReadData.status;
                     Consensus consensus = (status == USED_IN_CONSENSUS) ? currentReadData.getConsensus() : null;
+                    ParsedRead parsedRead = getOriginalRead(currentReadData, readId, originalReadsReader);
 
                     StringBuilder line = new StringBuilder();
                     line.append(readId).append(' ');        // common column 1
@@ -391,7 +397,6 @@ public final class ConsensusIO {
                         if (currentReadData == null) {
                             line.append(" - -");        // target columns 1, 2
                         } else {
-                            ParsedRead parsedRead = currentReadData.read;
                             NSequenceWithQuality currentOriginalRead;
                             if (parsedRead.isNumberOfTargetsOverride()) {
                                 currentOriginalRead = parsedRead.getMatchTarget(targetId);
@@ -416,7 +421,7 @@ public final class ConsensusIO {
                             line.append(' ').append(currentSeq.getSeq());                   // target column 3
                             line.append(' ').append(currentSeq.getQual());                  // target column 4
                             int consensusDistance = (currentReadData == null) ? -1
-                                    : currentReadData.getConsensusDistance(targetId);
+                                    : currentReadData.getConsensusDistance(parsedRead, targetId);
                             line.append(' ').append(consensusDistance).append(' ');         // target column 5
                         }
                         if (currentReadData == null) {
@@ -450,11 +455,13 @@ public final class ConsensusIO {
             System.err.println("Writing not matched reads...");
             try (MifWriter notUsedReadsWriter = new MifWriter(notUsedReadsOutputFileName, new MifHeader(
                     pipelineConfiguration, numberOfTargets, mifHeader.getCorrectedGroups(),
-                    mifHeader.getSortedGroups(), mifHeader.getGroupEdges()))) {
+                    mifHeader.getSortedGroups(), mifHeader.getGroupEdges(), mifHeader.getShardGroups(),
+                    mifHeader.getShardIndex(), mifHeader.getNumberOfShards()));
+                 MifReader originalReadsReader = createOriginalReadsReader()) {
                 for (long readId = 0; readId < originalNumberOfReads; readId++) {
                     OriginalReadData currentReadData = originalReadsData.get(readId);
                     if ((currentReadData != null) && (currentReadData.status != USED_IN_CONSENSUS))
-                        notUsedReadsWriter.write(currentReadData.read);
+                        notUsedReadsWriter.write(getOriginalRead(currentReadData, readId, originalReadsReader));
                 }
                 notUsedReadsWriter.setOriginalNumberOfReads(originalNumberOfReads);
             } catch (IOException e) {
@@ -494,7 +501,28 @@ public final class ConsensusIO {
     }
 
     private MifReader createReader() throws IOException {
-        return (inputFileName == null) ? new MifReader(System.in) : new MifReader(inputFileName);
+        MifReader reader = (inputFileName == null) ? new MifReader(System.in) : new MifReader(inputFileName);
+        reader.setDecodingThreads(threads);
+        return reader;
+    }
+
+    /**
+     * Create reader for random access to original reads if they are not kept in memory.
+     *
+     * @return reader, or null if original reads are kept in originalReadsData
+     */
+    private MifReader createOriginalReadsReader() throws IOException {
+        return originalReadsFromInput ? new MifReader(inputFileName) : null;
+    }
+
+    private ParsedRead getOriginalRead(OriginalReadData originalReadData, long readId,
+                                       MifReader originalReadsReader) {
+        if (originalReadData == null)
+            return null;
+        else if (originalReadData.read != null)
+            return originalReadData.read;
+        else
+            return Objects.requireNonNull(Objects.requireNonNull(originalReadsReader).readAt(readId));
     }
 
     private MifWriter createWriter(MifHeader mifHeader) throws IOException {
@@ -514,7 +542,8 @@ public final class ConsensusIO {
             });
         }
         newHeader = new MifHeader(pipelineConfiguration, numberOfTargets, mifHeader.getCorrectedGroups(),
-                new ArrayList<>(), groupEdges);
+                new ArrayList<>(), groupEdges, mifHeader.getShardGroups(), mifHeader.getShardIndex(),
+                mifHeader.getNumberOfShards());
         return (outputFileName == null) ? new MifWriter(new SystemOutStream(), newHeader)
                 : new MifWriter(outputFileName, newHeader);
     }
@@ -532,7 +561,8 @@ public final class ConsensusIO {
 
     private void saveOriginalReadsData(ParsedRead parsedRead) {
         if (originalReadsData != null)
-            originalReadsData.putIfAbsent(parsedRead.getOriginalRead().getId(), new OriginalReadData(parsedRead));
+            originalReadsData.putIfAbsent(parsedRead.getOriginalRead().getId(),
+                    new OriginalReadData(originalReadsFromInput ? null : parsedRead));
     }
 
     private synchronized void displayWarning(String text) {
@@ -101,6 +101,8 @@ public final class CorrectBarcodesIO {
                 pass1Reader.setParsedReadsLimit(inputReadsLimit);
                 pass2Reader.setParsedReadsLimit(inputReadsLimit);
             }
+            pass1Reader.setDecodingThreads(threads);
+            pass2Reader.setDecodingThreads(threads);
 
             validateInputGroups(pass1Reader, keyGroups, false, "--groups");
             validateInputGroups(pass1Reader, primaryGroups, false, "--primary-groups");
@@ -266,7 +268,8 @@ public final class CorrectBarcodesIO {
         LinkedHashSet<String> allCorrectedGroups = new LinkedHashSet<>(inputHeader.getCorrectedGroups());
         allCorrectedGroups.addAll(keyGroups);
         MifHeader outputHeader = new MifHeader(pipelineConfiguration, inputHeader.getNumberOfTargets(),
-                new ArrayList<>(allCorrectedGroups), new ArrayList<>(), inputHeader.getGroupEdges());
+                new ArrayList<>(allCorrectedGroups), new ArrayList<>(), inputHeader.getGroupEdges(),
+                inputHeader.getShardGroups(), inputHeader.getShardIndex(), inputHeader.getNumberOfShards());
         if (excludedBarcodes)
             return (excludedBarcodesOutputFileName == null) ? null
                     : new MifWriter(excludedBarcodesOutputFileName, outputHeader);
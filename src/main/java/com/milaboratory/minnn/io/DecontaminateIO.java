@@ -85,6 +85,7 @@ public final class DecontaminateIO {
                 pass1Reader.setParsedReadsLimit(inputReadsLimit);
                 pass2Reader.setParsedReadsLimit(inputReadsLimit);
             }
+            pass2Reader.setLazyDecoding(true);
             validateInputGroups(pass1Reader, groupNames, false, "--groups");
             validateInputGroups(pass1Reader, primaryGroupNames, false,
                     "--primary-groups");
@@ -138,7 +139,8 @@ public final class DecontaminateIO {
 
     private MifWriter createWriter(MifHeader inputHeader, boolean excludedBarcodes) throws IOException {
         MifHeader outputHeader = new MifHeader(pipelineConfiguration, inputHeader.getNumberOfTargets(),
-                inputHeader.getCorrectedGroups(), inputHeader.getSortedGroups(), inputHeader.getGroupEdges());
+                inputHeader.getCorrectedGroups(), inputHeader.getSortedGroups(), inputHeader.getGroupEdges(),
+                inputHeader.getShardGroups(), inputHeader.getShardIndex(), inputHeader.getNumberOfShards());
         if (excludedBarcodes)
             return (excludedBarcodesOutputFileName == null) ? null
                     : new MifWriter(excludedBarcodesOutputFileName, outputHeader);
@@ -158,11 +160,13 @@ public final class DecontaminateIO {
 
         // 1st pass: counting barcodes in each cell
         SmartProgressReporter.startProgressReport("Counting barcodes", pass1Reader, System.err);
-        for (ParsedRead parsedRead : CUtils.it(pass1Reader)) {
+        Set<String> allGroupNames = new HashSet<>(groupNames);
+        allGroupNames.addAll(primaryGroupNames);
+        for (ProjectedRead projectedRead : CUtils.it(pass1Reader.readGroups(allGroupNames))) {
             Set<NucleotideSequence> groupValues = groupNames.stream()
-                    .map(name -> parsedRead.getGroupValue(name).getSequence()).collect(Collectors.toSet());
+                    .map(name -> projectedRead.getGroupValue(name).getSequence()).collect(Collectors.toSet());
             Set<NucleotideSequence> primaryGroupValues = primaryGroupNames.stream()
-                    .map(name -> parsedRead.getGroupValue(name).getSequence()).collect(Collectors.toSet());
+                    .map(name -> projectedRead.getGroupValue(name).getSequence()).collect(Collectors.toSet());
             Set<NucleotideSequence> cachedGroupValues = barcodeCombinationsCache.get(groupValues);
             if (cachedGroupValues != null)
                 groupValues = cachedGroupValues;
@@ -90,9 +90,11 @@ public final class DemultiplexIO {
         try (MifReader reader = new MifReader(inputFileName);
              PrintStream logWriter = new PrintStream(new FileOutputStream(logFileName))) {
             header = new MifHeader(pipelineConfiguration, reader.getNumberOfTargets(), reader.getCorrectedGroups(),
-                    reader.getSortedGroups(), reader.getGroupEdges());
+                    reader.getSortedGroups(), reader.getGroupEdges(), reader.getShardGroups(), reader.getShardIndex(),
+                    reader.getNumberOfShards());
             if (inputReadsLimit > 0)
                 reader.setParsedReadsLimit(inputReadsLimit);
+            reader.setLazyDecoding(true);
             SmartProgressReporter.startProgressReport("Demultiplexing reads", reader, System.err);
             for (ParsedRead parsedRead : CUtils.it(reader)) {
                 DemultiplexResult demultiplexResult = demultiplex(parsedRead);
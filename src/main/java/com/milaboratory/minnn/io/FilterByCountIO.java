@@ -85,6 +85,7 @@ public final class FilterByCountIO {
                 pass1Reader.setParsedReadsLimit(inputReadsLimit);
                 pass2Reader.setParsedReadsLimit(inputReadsLimit);
             }
+            pass2Reader.setLazyDecoding(true);
             validateInputGroups(pass1Reader, keyGroups, false, "--groups");
 
             SmartProgressReporter.startProgressReport("Counting barcodes", pass1Reader, System.err);
@@ -157,7 +158,8 @@ public final class FilterByCountIO {
 
     private MifWriter createWriter(MifHeader inputHeader, boolean excludedBarcodes) throws IOException {
         MifHeader outputHeader = new MifHeader(pipelineConfiguration, inputHeader.getNumberOfTargets(),
-                inputHeader.getCorrectedGroups(), inputHeader.getSortedGroups(), inputHeader.getGroupEdges());
+                inputHeader.getCorrectedGroups(), inputHeader.getSortedGroups(), inputHeader.getGroupEdges(),
+                inputHeader.getShardGroups(), inputHeader.getShardIndex(), inputHeader.getNumberOfShards());
         if (excludedBarcodes)
             return (excludedBarcodesOutputFileName == null) ? null
                     : new MifWriter(excludedBarcodesOutputFileName, outputHeader);
@@ -173,10 +175,10 @@ public final class FilterByCountIO {
             includedBarcodes.put(groupName, new HashSet<>());
         }
         long processedReads = 0;
-        for (ParsedRead parsedRead : CUtils.it(pass1Reader)) {
+        for (ProjectedRead projectedRead : CUtils.it(pass1Reader.readGroups(keyGroups))) {
             for (String groupName : keyGroups) {
                 Map<NucleotideSequence, SequenceCounter> currentGroupCounters = sequenceCounters.get(groupName);
-                NucleotideSequence seq = parsedRead.getGroupValue(groupName).getSequence();
+                NucleotideSequence seq = projectedRead.getGroupValue(groupName).getSequence();
                 currentGroupCounters.putIfAbsent(seq, new SequenceCounter(seq));
                 currentGroupCounters.get(seq).count++;
             }
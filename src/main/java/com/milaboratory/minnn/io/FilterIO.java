@@ -33,7 +33,6 @@ import cc.redberry.pipe.OutputPort;
 import cc.redberry.pipe.Processor;
 import cc.redberry.pipe.blocks.Merger;
 import cc.redberry.pipe.blocks.ParallelProcessor;
-import cc.redberry.pipe.util.Chunk;
 import cc.redberry.pipe.util.OrderedOutputPort;
 import com.milaboratory.cli.PipelineConfiguration;
 import com.milaboratory.minnn.outputconverter.ParsedRead;
@@ -41,6 +40,7 @@ import com.milaboratory.minnn.readfilter.ReadFilter;
 import com.milaboratory.util.SmartProgressReporter;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -51,6 +51,8 @@ import static com.milaboratory.minnn.util.SystemUtils.exitWithError;
 import static com.milaboratory.util.FormatUtils.nanoTimeToString;
 
 public final class FilterIO {
+    private static final int READS_BATCH_SIZE = 4 * 64;
+    private static final int BATCHES_BUFFER_SIZE = 4 * 16;
     private final PipelineConfiguration pipelineConfiguration;
     private final ReadFilter readFilter;
     private final String filterQuery;
@@ -87,17 +89,17 @@ public final class FilterIO {
         long matchedReads = 0;
         try (MifReader reader = createReader();
              MifWriter writer = createWriter(new MifHeader(pipelineConfiguration, reader.getNumberOfTargets(),
-                     reader.getCorrectedGroups(), reader.getSortedGroups(), reader.getGroupEdges()))) {
+                     reader.getCorrectedGroups(), reader.getSortedGroups(), reader.getGroupEdges(),
+                     reader.getShardGroups(), reader.getShardIndex(), reader.getNumberOfShards()))) {
             if (inputReadsLimit > 0)
                 reader.setParsedReadsLimit(inputReadsLimit);
             SmartProgressReporter.startProgressReport("Filtering reads", reader, System.err);
-            Merger<Chunk<ParsedRead>> bufferedReaderPort = CUtils.buffered(CUtils.chunked(
-                    new NumberedParsedReadsPort(reader, inputReadsLimit, totalReadsCounter),
-                    4 * 64), 4 * 16);
-            OutputPort<Chunk<ParsedRead>> filteredReadsPort = new ParallelProcessor<>(bufferedReaderPort,
-                    CUtils.chunked(new FilterProcessor()), threads);
+            Merger<ParsedRead[]> bufferedReaderPort = CUtils.buffered(new ParsedReadsBatchesPort(
+                    new NumberedParsedReadsPort(reader, inputReadsLimit, totalReadsCounter)), BATCHES_BUFFER_SIZE);
+            OutputPort<ParsedRead[]> filteredBatchesPort = new ParallelProcessor<>(bufferedReaderPort,
+                    new FilterProcessor(), threads);
             OrderedOutputPort<ParsedRead> orderedReadsPort = new OrderedOutputPort<>(
-                    CUtils.unchunked(filteredReadsPort), ParsedRead::getOutputPortId);
+                    new UnbatchedReadsPort(filteredBatchesPort), ParsedRead::getOutputPortId);
             for (ParsedRead parsedRead : CUtils.it(orderedReadsPort)) {
                 if (parsedRead.getBestMatch() != null) {
                     writer.write(parsedRead);
@@ -153,7 +155,10 @@ public final class FilterIO {
     }
 
     private MifReader createReader() throws IOException {
-        return (inputFileName == null) ? new MifReader(System.in) : new MifReader(inputFileName);
+        MifReader reader = (inputFileName == null) ? new MifReader(System.in) : new MifReader(inputFileName);
+        reader.setDecodingThreads(threads);
+        reader.setLazyDecoding(true);
+        return reader;
     }
 
     private MifWriter createWriter(MifHeader mifHeader) throws IOException {
@@ -161,10 +166,57 @@ public final class FilterIO {
                 : new MifWriter(outputFileName, mifHeader);
     }
 
-    private class FilterProcessor implements Processor<ParsedRead, ParsedRead> {
+    private class FilterProcessor implements Processor<ParsedRead[], ParsedRead[]> {
         @Override
-        public ParsedRead process(ParsedRead parsedRead) {
-            return readFilter.filter(parsedRead);
+        public ParsedRead[] process(ParsedRead[] parsedReads) {
+            return readFilter.filterBatch(parsedReads);
+        }
+    }
+
+    /**
+     * Port that takes reads from the reader in batches, so read filters can use batch matching API of patterns.
+     * This port is drained only by the single thread of the buffering Merger.
+     */
+    private static class ParsedReadsBatchesPort implements OutputPort<ParsedRead[]> {
+        private final OutputPort<ParsedRead> readsPort;
+
+        ParsedReadsBatchesPort(OutputPort<ParsedRead> readsPort) {
+            this.readsPort = readsPort;
+        }
+
+        @Override
+        public ParsedRead[] take() {
+            ParsedRead[] batch = new ParsedRead[READS_BATCH_SIZE];
+            int batchSize = 0;
+            ParsedRead parsedRead;
+            while ((batchSize < READS_BATCH_SIZE) && ((parsedRead = readsPort.take()) != null))
+                batch[batchSize++] = parsedRead;
+            if (batchSize == 0)
+                return null;
+            return (batchSize == READS_BATCH_SIZE) ? batch : Arrays.copyOf(batch, batchSize);
+        }
+    }
+
+    private static class UnbatchedReadsPort implements OutputPort<ParsedRead> {
+        private final OutputPort<ParsedRead[]> batchesPort;
+        private ParsedRead[] currentBatch = new ParsedRead[0];
+        private int currentIndex = 0;
+
+        UnbatchedReadsPort(OutputPort<ParsedRead[]> batchesPort) {
+            this.batchesPort = batchesPort;
+        }
+
+        @Override
+        public ParsedRead take() {
+            while (currentIndex == currentBatch.length) {
+                currentBatch = batchesPort.take();
+                if (currentBatch == null) {
+                    currentBatch = new ParsedRead[0];
+                    return null;
+                }
+                currentIndex = 0;
+            }
+            return currentBatch[currentIndex++];
         }
     }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.core.io.sequence.*;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import com.milaboratory.util.CanReportProgress;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.milaboratory.minnn.util.SystemUtils.exitWithError;
+
+/**
+ * FASTQ reader for 1 or more input files that are decompressed by ParallelGzipInputStream. Reads from all files are
+ * taken in lockstep, so mates are always combined from the same positions in the input files.
+ */
+final class LockstepFastqReader implements OutputPortCloseable<SequenceRead>, CanReportProgress {
+    private final List<String> fileNames;
+    private final ParallelGzipInputStream[] streams;
+    private final SingleFastqReader[] readers;
+    private boolean finished = false;
+
+    LockstepFastqReader(List<String> fileNames, int decompressionThreads) throws IOException {
+        this.fileNames = fileNames;
+        this.streams = new ParallelGzipInputStream[fileNames.size()];
+        this.readers = new SingleFastqReader[fileNames.size()];
+        for (int i = 0; i < fileNames.size(); i++) {
+            streams[i] = new ParallelGzipInputStream(fileNames.get(i), decompressionThreads);
+            readers[i] = new SingleFastqReader(streams[i]);
+        }
+    }
+
+    @Override
+    public synchronized SequenceRead take() {
+        if (finished)
+            return null;
+        SingleRead[] mates = new SingleRead[readers.length];
+        int finishedReaders = 0;
+        for (int i = 0; i < readers.length; i++) {
+            mates[i] = readers[i].take();
+            if (mates[i] == null)
+                finishedReaders++;
+        }
+        if (finishedReaders > 0) {
+            finished = true;
+            if (finishedReaders < readers.length)
+                throw exitWithError("Different number of reads in input files " + fileNames + "!");
+            return null;
+        }
+        switch (mates.length) {
+            case 1:
+                return mates[0];
+            case 2:
+                return new PairedRead(mates[0], mates[1]);
+            default:
+                return new MultiRead(mates);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (SingleFastqReader reader : readers)
+            reader.close();
+        try {
+            for (ParallelGzipInputStream stream : streams)
+                stream.close();
+        } catch (IOException e) {
+            throw exitWithError(e.getMessage());
+        }
+        finished = true;
+    }
+
+    @Override
+    public double getProgress() {
+        double progress = 1;
+        for (ParallelGzipInputStream stream : streams)
+            progress = Math.min(progress, stream.getProgress());
+        return progress;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+}
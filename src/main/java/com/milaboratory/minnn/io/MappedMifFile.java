@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static com.milaboratory.minnn.cli.Magic.*;
+import static com.milaboratory.minnn.io.MifBlocks.*;
+
+/**
+ * Memory-mapped blocks of uncompressed MIF file of format version 14 or newer. Boundaries of the blocks are taken
+ * from the block index in the end of the file, and the file is mapped in regions that contain only whole blocks,
+ * so the payload of any block is available as a slice of mapped memory without copying. Mapped regions are never
+ * modified, and each call returns independent buffers, so blocks can be accessed from multiple threads.
+ */
+final class MappedMifFile {
+    private static final long MAX_MAPPED_REGION_LENGTH = 1L << 30;
+    private final long[] blockOffsets;
+    private final int[] blockReads;
+    private final long blocksEndOffset;
+    private final long numberOfReads;
+    private final long originalNumberOfReads;
+    private final MappedByteBuffer[] regions;
+    private final long[] regionOffsets;
+    private final int[] blockRegions;
+
+    private MappedMifFile(FileChannel channel, long blockIndexOffset, long originalNumberOfReads)
+            throws IOException {
+        int numberOfBlocks = readFully(channel, blockIndexOffset, 4).getInt();
+        ByteBuffer blockIndex = readFully(channel, blockIndexOffset + 4, numberOfBlocks * 12);
+        this.blockOffsets = new long[numberOfBlocks];
+        this.blockReads = new int[numberOfBlocks];
+        long numberOfReads = 0;
+        for (int i = 0; i < numberOfBlocks; i++) {
+            blockOffsets[i] = blockIndex.getLong();
+            blockReads[i] = blockIndex.getInt();
+            numberOfReads += blockReads[i];
+        }
+        this.numberOfReads = numberOfReads;
+        this.blocksEndOffset = blockIndexOffset;
+        this.originalNumberOfReads = originalNumberOfReads;
+
+        this.blockRegions = new int[numberOfBlocks];
+        MappedByteBuffer[] regions = new MappedByteBuffer[numberOfBlocks];
+        long[] regionOffsets = new long[numberOfBlocks];
+        int numberOfRegions = 0;
+        int firstBlock = 0;
+        while (firstBlock < numberOfBlocks) {
+            long regionStart = blockOffsets[firstBlock];
+            int lastBlock = firstBlock;
+            while ((lastBlock + 1 < numberOfBlocks)
+                    && (getBlockEnd(lastBlock + 1) - regionStart <= MAX_MAPPED_REGION_LENGTH))
+                lastBlock++;
+            long regionLength = getBlockEnd(lastBlock) - regionStart;
+            if (regionLength > Integer.MAX_VALUE)
+                throw new IllegalStateException("MIF block is too big for memory mapping: " + regionLength
+                        + " bytes");
+            regions[numberOfRegions] = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionLength);
+            regionOffsets[numberOfRegions] = regionStart;
+            for (int i = firstBlock; i <= lastBlock; i++)
+                blockRegions[i] = numberOfRegions;
+            numberOfRegions++;
+            firstBlock = lastBlock + 1;
+        }
+        this.regions = Arrays.copyOf(regions, numberOfRegions);
+        this.regionOffsets = Arrays.copyOf(regionOffsets, numberOfRegions);
+    }
+
+    /**
+     * Map blocks of the file into memory.
+     *
+     * @param file  uncompressed MIF file of format version 14 or newer
+     * @return      mapped file, or null if the file doesn't end with valid footer (for example, if it was not
+     *              completely written), so it can be read only sequentially
+     */
+    static MappedMifFile map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < BEGIN_MAGIC_LENGTH + 16 + END_MAGIC_LENGTH)
+                return null;
+            byte[] endMagic = new byte[END_MAGIC_LENGTH];
+            readFully(channel, size - END_MAGIC_LENGTH, END_MAGIC_LENGTH).get(endMagic);
+            if (!Arrays.equals(endMagic, getEndMagicBytes()))
+                return null;
+            ByteBuffer footer = readFully(channel, size - END_MAGIC_LENGTH - 16, 16);
+            long originalNumberOfReads = footer.getLong();
+            long blockIndexOffset = footer.getLong();
+            if ((blockIndexOffset < BEGIN_MAGIC_LENGTH) || (blockIndexOffset > size - END_MAGIC_LENGTH - 20))
+                return null;
+            return new MappedMifFile(channel, blockIndexOffset, originalNumberOfReads);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) == -1)
+                throw new EOFException("Unexpected end of MIF file");
+        buffer.flip();
+        return buffer;
+    }
+
+    private long getBlockEnd(int blockNumber) {
+        // blocks are followed by the end of blocks marker
+        return (blockNumber + 1 < blockOffsets.length) ? blockOffsets[blockNumber + 1] : blocksEndOffset - 4;
+    }
+
+    int getNumberOfBlocks() {
+        return blockOffsets.length;
+    }
+
+    long getBlockOffset(int blockNumber) {
+        return blockOffsets[blockNumber];
+    }
+
+    long getNumberOfReads() {
+        return numberOfReads;
+    }
+
+    long getOriginalNumberOfReads() {
+        return originalNumberOfReads;
+    }
+
+    /**
+     * Get the block; its stored payload is a slice of mapped memory. This function is thread-safe.
+     */
+    RawBlock getRawBlock(int blockNumber) {
+        int regionIndex = blockRegions[blockNumber];
+        ByteBuffer block = regions[regionIndex].duplicate();
+        block.position((int)(blockOffsets[blockNumber] - regionOffsets[regionIndex]));
+        int numberOfReads = block.getInt();
+        byte layout = block.get();
+        byte compression = block.get();
+        int payloadLength = block.getInt();
+        int storedLength = block.getInt();
+        if (numberOfReads != blockReads[blockNumber])
+            throw new IllegalStateException("MIF block " + blockNumber + " is corrupted: block header contains "
+                    + numberOfReads + " reads, block index contains " + blockReads[blockNumber] + " reads");
+        block.limit(block.position() + storedLength);
+        return new RawBlock(numberOfReads, layout, compression, payloadLength, block.slice());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static com.milaboratory.minnn.io.MifBlocks.*;
+
+/**
+ * Memory-mapped read id index of MIF file. Entries of the index are sorted by read id, so reads are found by binary
+ * search in mapped memory, and the index is not loaded into the heap. The index is mapped in regions that contain
+ * only whole entries. Mapped regions are never modified and only absolute reads are used, so the index can be
+ * accessed from multiple threads.
+ */
+final class MappedReadIdIndex {
+    private static final long ENTRIES_IN_REGION = (1L << 30) / READ_ID_INDEX_ENTRY_LENGTH;
+    private final long numberOfEntries;
+    private final MappedByteBuffer[] regions;
+
+    private MappedReadIdIndex(FileChannel channel, long numberOfEntries) throws IOException {
+        this.numberOfEntries = numberOfEntries;
+        this.regions = new MappedByteBuffer[(int)((numberOfEntries + ENTRIES_IN_REGION - 1) / ENTRIES_IN_REGION)];
+        for (int i = 0; i < regions.length; i++) {
+            long firstEntry = i * ENTRIES_IN_REGION;
+            long regionEntries = Math.min(ENTRIES_IN_REGION, numberOfEntries - firstEntry);
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, firstEntry * READ_ID_INDEX_ENTRY_LENGTH,
+                    regionEntries * READ_ID_INDEX_ENTRY_LENGTH);
+        }
+    }
+
+    /**
+     * Map read id index into memory.
+     *
+     * @param indexFile     read id index file
+     * @param mifFileLength length of the indexed MIF file
+     * @return              mapped index, or null if the index file doesn't exist or it is not valid for the MIF file
+     *                      with this length
+     */
+    static MappedReadIdIndex map(File indexFile, long mifFileLength) throws IOException {
+        if (!indexFile.isFile())
+            return null;
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < READ_ID_INDEX_TRAILER_LENGTH)
+                return null;
+            ByteBuffer trailer = ByteBuffer.allocate(READ_ID_INDEX_TRAILER_LENGTH);
+            while (trailer.hasRemaining())
+                if (channel.read(trailer, size - READ_ID_INDEX_TRAILER_LENGTH + trailer.position()) == -1)
+                    return null;
+            trailer.flip();
+            long numberOfEntries = trailer.getLong();
+            long indexedFileLength = trailer.getLong();
+            if ((indexedFileLength != mifFileLength)
+                    || (size != numberOfEntries * READ_ID_INDEX_ENTRY_LENGTH + READ_ID_INDEX_TRAILER_LENGTH))
+                return null;
+            return new MappedReadIdIndex(channel, numberOfEntries);
+        }
+    }
+
+    /**
+     * Find the index entry of the read.
+     *
+     * @param readId    read id
+     * @return          entry number, or -1 if there is no read with this id in the index
+     */
+    long find(long readId) {
+        long low = 0;
+        long high = numberOfEntries - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long middleReadId = getRegion(middle).getLong(getEntryPosition(middle));
+            if (middleReadId < readId)
+                low = middle + 1;
+            else if (middleReadId > readId)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    int getBlockNumber(long entry) {
+        return getRegion(entry).getInt(getEntryPosition(entry) + 8);
+    }
+
+    int getRecordOffset(long entry) {
+        return getRegion(entry).getInt(getEntryPosition(entry) + 12);
+    }
+
+    int getRecordLength(long entry) {
+        return getRegion(entry).getInt(getEntryPosition(entry) + 16);
+    }
+
+    private ByteBuffer getRegion(long entry) {
+        return regions[(int)(entry / ENTRIES_IN_REGION)];
+    }
+
+    private static int getEntryPosition(long entry) {
+        return (int)(entry % ENTRIES_IN_REGION) * READ_ID_INDEX_ENTRY_LENGTH;
+    }
+}
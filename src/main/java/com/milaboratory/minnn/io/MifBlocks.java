@@ -0,0 +1,714 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import cc.redberry.pipe.OutputPort;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.minnn.outputconverter.ParsedRead;
+import com.milaboratory.minnn.outputconverter.SerializedRecord;
+import com.milaboratory.minnn.pattern.GroupEdge;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
+import com.milaboratory.primitivio.SerializersManager;
+import com.milaboratory.util.ObjectSerializer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.zip.*;
+
+/**
+ * Blocks of reads in MIF files starting from format version 14 (BLOCKS_MAGIC_VERSION). Each block is serialized
+ * into a separate PrimitivO stream with its own table of known objects (group edges from the header), so blocks
+ * can be decoded independently and in parallel.
+ *
+ * Block layout: number of reads (int; 0 marks the end of blocks), payload layout (byte), compression type (byte),
+ * length of uncompressed payload (int), length of stored payload (int) and stored payload bytes. Blocks are followed
+ * by the block index: number of blocks (int) and offset (long) and number of reads (int) for each block; then
+ * original number of reads (long), offset of the block index (long) and end magic.
+ *
+ * Payload with rows layout contains serialized reads. Payload with columns layout starts with column directory:
+ * length of records column (int), number of other columns (int) and name (UTF) and length (int) of each column;
+ * then records column (serialized reads, the same as payload with rows layout) and other columns in the order
+ * of the directory. Records index column (RECORDS_INDEX_COLUMN) contains read id (long) and length of the record
+ * (int) for each read, so reads can be kept serialized until they are needed. Group columns contain serialized
+ * values of the group for all reads in the block; they are written for groups that are not default groups,
+ * so the commands that need only barcodes can skip records column.
+ *
+ * Optional read id index is written to a separate file with READ_ID_INDEX_SUFFIX. It contains an entry for each read,
+ * sorted by read id: read id (long), block number (int), offset of the record in the uncompressed payload (int) and
+ * length of the record (int); then number of entries (long) and length of the MIF file (long), which is used to
+ * detect stale index files. The writer collects entries in the order of the file in a file with
+ * READ_ID_INDEX_UNSORTED_SUFFIX and sorts them when the MIF file is closed.
+ */
+final class MifBlocks {
+    private MifBlocks() {}
+
+    static final int MAX_READS_IN_BLOCK = 1024;
+    static final int MAX_BLOCK_PAYLOAD_LENGTH = 1 << 20;
+    static final byte LAYOUT_ROWS = 0;
+    static final byte LAYOUT_COLUMNS = 1;
+    static final byte COMPRESSION_NONE = 0;
+    static final byte COMPRESSION_DEFLATE = 1;
+    static final int BLOCK_HEADER_LENGTH = 14;
+    // group names can't contain '#', so this column name doesn't conflict with group columns
+    static final String RECORDS_INDEX_COLUMN = "#records";
+    static final int RECORDS_INDEX_ENTRY_LENGTH = 12;
+    static final String READ_ID_INDEX_SUFFIX = ".ridx";
+    static final String READ_ID_INDEX_UNSORTED_SUFFIX = ".ridx.unsorted";
+    static final int READ_ID_INDEX_ENTRY_LENGTH = 20;
+    static final int READ_ID_INDEX_TRAILER_LENGTH = 16;
+
+    static final class RawBlock {
+        final int numberOfReads;
+        final byte layout;
+        final byte compression;
+        final int payloadLength;
+        // buffer with position 0 and limit at the end of the stored payload; it must not be modified
+        final ByteBuffer storedPayload;
+
+        RawBlock(int numberOfReads, byte layout, byte compression, int payloadLength, ByteBuffer storedPayload) {
+            this.numberOfReads = numberOfReads;
+            this.layout = layout;
+            this.compression = compression;
+            this.payloadLength = payloadLength;
+            this.storedPayload = storedPayload;
+        }
+    }
+
+    /**
+     * Read next block without decoding it.
+     *
+     * @param input     input stream positioned at the start of the block
+     * @return          raw block, or null if the end of blocks marker was read
+     */
+    static RawBlock readRawBlock(PrimitivI input) {
+        int numberOfReads = input.readInt();
+        if (numberOfReads == 0)
+            return null;
+        byte layout = input.readByte();
+        byte compression = input.readByte();
+        int payloadLength = input.readInt();
+        byte[] storedPayload = new byte[input.readInt()];
+        input.readFully(storedPayload);
+        return new RawBlock(numberOfReads, layout, compression, payloadLength, ByteBuffer.wrap(storedPayload));
+    }
+
+    /**
+     * Decode reads from the block. It can be called from multiple threads for different blocks of the same file
+     * if each thread uses its own serializers manager.
+     */
+    static ParsedRead[] decodeBlock(RawBlock block, List<GroupEdge> groupEdges,
+                                    SerializersManager serializersManager) {
+        ByteBuffer payload = getPayload(block);
+        int recordsOffset = 0;
+        int recordsLength = payload.limit();
+        if (block.layout == LAYOUT_COLUMNS) {
+            ColumnsDirectory directory = new ColumnsDirectory(payload);
+            recordsOffset = directory.recordsOffset;
+            recordsLength = directory.recordsLength;
+        }
+        return decodeRecords(block.numberOfReads, payload, recordsOffset, recordsLength, groupEdges,
+                serializersManager);
+    }
+
+    /**
+     * Create lazy parsed reads for the block: records stay serialized until they are needed, and values of groups
+     * that have columns are decoded from the columns. Full reads are decoded if the block doesn't have records
+     * index column. Lazy reads can be decoded on any thread, so serializers manager is taken from the supplier
+     * at the moment of decoding; the supplier must return separate instances for different threads.
+     */
+    static ParsedRead[] decodeBlockLazy(RawBlock block, List<GroupEdge> groupEdges,
+                                        Supplier<SerializersManager> serializersManagers) {
+        if (block.layout == LAYOUT_COLUMNS) {
+            ByteBuffer payload = getPayload(block);
+            ColumnsDirectory directory = new ColumnsDirectory(payload);
+            int[] indexColumn = directory.groupColumns.get(RECORDS_INDEX_COLUMN);
+            if (indexColumn != null) {
+                LazyBlock lazyBlock = new LazyBlock(block.numberOfReads, payload, directory, groupEdges,
+                        serializersManagers);
+                ByteBuffer recordsIndex = payload.duplicate();
+                recordsIndex.position(indexColumn[0]);
+                ParsedRead[] parsedReads = new ParsedRead[block.numberOfReads];
+                int recordOffset = directory.recordsOffset;
+                for (int i = 0; i < block.numberOfReads; i++) {
+                    long readId = recordsIndex.getLong();
+                    int recordLength = recordsIndex.getInt();
+                    parsedReads[i] = ParsedRead.lazy(new BlockRecord(lazyBlock, i, readId, recordOffset,
+                            recordLength));
+                    recordOffset += recordLength;
+                }
+                return parsedReads;
+            }
+        }
+        return decodeBlock(block, groupEdges, serializersManagers.get());
+    }
+
+    /**
+     * Decode values of the specified groups from the block. Only group columns are decoded if the block has
+     * columns layout and all requested groups have columns; otherwise, full reads are decoded. Like decodeBlock,
+     * it can be called from multiple threads if each thread uses its own serializers manager.
+     *
+     * @param groupIndexes  map of requested group names to their indexes in projected reads; this map is shared
+     *                      by all projected reads
+     */
+    static ProjectedRead[] decodeBlockGroups(RawBlock block, List<GroupEdge> groupEdges,
+                                             SerializersManager serializersManager,
+                                             Map<String, Integer> groupIndexes) {
+        ByteBuffer payload = getPayload(block);
+        ProjectedRead[] projectedReads = new ProjectedRead[block.numberOfReads];
+        if (block.layout == LAYOUT_COLUMNS) {
+            ColumnsDirectory directory = new ColumnsDirectory(payload);
+            if (directory.groupColumns.keySet().containsAll(groupIndexes.keySet())) {
+                NSequenceWithQuality[][] values = new NSequenceWithQuality[block.numberOfReads][groupIndexes.size()];
+                for (Map.Entry<String, Integer> groupIndex : groupIndexes.entrySet()) {
+                    int[] column = directory.groupColumns.get(groupIndex.getKey());
+                    PrimitivI columnInput = new PrimitivI(new ByteBufferInputStream(payload, column[0], column[1]),
+                            serializersManager);
+                    for (int i = 0; i < block.numberOfReads; i++)
+                        values[i][groupIndex.getValue()] = columnInput.readObject(NSequenceWithQuality.class);
+                }
+                for (int i = 0; i < block.numberOfReads; i++)
+                    projectedReads[i] = new ProjectedRead(groupIndexes, values[i]);
+                return projectedReads;
+            }
+        }
+        ParsedRead[] parsedReads = decodeBlock(block, groupEdges, serializersManager);
+        for (int i = 0; i < block.numberOfReads; i++)
+            projectedReads[i] = new ProjectedRead(groupIndexes, parsedReads[i]);
+        return projectedReads;
+    }
+
+    /**
+     * Find index of the read in the block by offset of its record in the payload.
+     */
+    static int findRecordIndex(RawBlock block, int recordOffset, List<GroupEdge> groupEdges,
+                               SerializersManager serializersManager) {
+        ByteBuffer payload = getPayload(block);
+        int recordsOffset = (block.layout == LAYOUT_COLUMNS) ? new ColumnsDirectory(payload).recordsOffset : 0;
+        ByteBufferInputStream recordsStream = new ByteBufferInputStream(payload, recordsOffset,
+                payload.limit() - recordsOffset);
+        PrimitivI recordsInput = new PrimitivI(recordsStream, serializersManager);
+        groupEdges.forEach(recordsInput::putKnownObject);
+        for (int i = 0; i < block.numberOfReads; i++) {
+            if (payload.limit() - recordsStream.available() == recordOffset)
+                return i;
+            recordsInput.readObject(ParsedRead.class);
+        }
+        throw new IllegalStateException("Record with offset " + recordOffset + " not found in MIF block!");
+    }
+
+    /**
+     * Decode one read from the uncompressed payload; this is used for random access by read id.
+     */
+    static ParsedRead decodeRecord(ByteBuffer payload, int offset, int length, List<GroupEdge> groupEdges,
+                                   SerializersManager serializersManager) {
+        return decodeRecords(1, payload, offset, length, groupEdges, serializersManager)[0];
+    }
+
+    private static ParsedRead[] decodeRecords(int numberOfReads, ByteBuffer payload, int offset, int length,
+                                              List<GroupEdge> groupEdges, SerializersManager serializersManager) {
+        PrimitivI recordsInput = new PrimitivI(new ByteBufferInputStream(payload, offset, length),
+                serializersManager);
+        groupEdges.forEach(recordsInput::putKnownObject);
+        ParsedRead[] parsedReads = new ParsedRead[numberOfReads];
+        for (int i = 0; i < numberOfReads; i++)
+            parsedReads[i] = recordsInput.readObject(ParsedRead.class);
+        return parsedReads;
+    }
+
+    /**
+     * Get uncompressed payload of the block. For blocks without compression, stored payload is returned without
+     * copying; it can be a slice of memory-mapped file.
+     */
+    static ByteBuffer getPayload(RawBlock block) {
+        switch (block.compression) {
+            case COMPRESSION_NONE:
+                return block.storedPayload;
+            case COMPRESSION_DEFLATE:
+                return ByteBuffer.wrap(inflate(block.storedPayload, block.payloadLength));
+            default:
+                throw new IllegalStateException("Unknown compression type of MIF block: " + block.compression);
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer storedPayload, int payloadLength) {
+        Inflater inflater = new Inflater();
+        try {
+            if (storedPayload.hasArray())
+                inflater.setInput(storedPayload.array(), storedPayload.arrayOffset(), storedPayload.limit());
+            else {
+                byte[] storedBytes = new byte[storedPayload.limit()];
+                storedPayload.duplicate().get(storedBytes);
+                inflater.setInput(storedBytes);
+            }
+            byte[] payload = new byte[payloadLength];
+            int inflatedLength = 0;
+            while ((inflatedLength < payloadLength) && !inflater.finished())
+                inflatedLength += inflater.inflate(payload, inflatedLength, payloadLength - inflatedLength);
+            if (inflatedLength != payloadLength)
+                throw new IllegalStateException("MIF block is corrupted: expected " + payloadLength
+                        + " bytes after decompression, got " + inflatedLength);
+            return payload;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("MIF block is corrupted: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class ColumnsDirectory {
+        final int recordsOffset;
+        final int recordsLength;
+        // values are offset and length of the column in the payload; this includes records index column
+        final Map<String, int[]> groupColumns = new HashMap<>();
+
+        ColumnsDirectory(ByteBuffer payload) {
+            ByteBufferInputStream directoryStream = new ByteBufferInputStream(payload, 0, payload.limit());
+            PrimitivI directoryInput = new PrimitivI(directoryStream);
+            recordsLength = directoryInput.readInt();
+            int numberOfGroupColumns = directoryInput.readInt();
+            String[] groupNames = new String[numberOfGroupColumns];
+            int[] lengths = new int[numberOfGroupColumns];
+            for (int i = 0; i < numberOfGroupColumns; i++) {
+                groupNames[i] = directoryInput.readUTF();
+                lengths[i] = directoryInput.readInt();
+            }
+            recordsOffset = payload.limit() - directoryStream.available();
+            int currentOffset = recordsOffset + recordsLength;
+            for (int i = 0; i < numberOfGroupColumns; i++) {
+                groupColumns.put(groupNames[i], new int[] { currentOffset, lengths[i] });
+                currentOffset += lengths[i];
+            }
+        }
+    }
+
+    /**
+     * Columns of the block that are shared by its lazy parsed reads. Group columns are decoded on the first request
+     * of the group value.
+     */
+    private static final class LazyBlock {
+        final int numberOfReads;
+        final ByteBuffer payload;
+        final ColumnsDirectory directory;
+        final List<GroupEdge> groupEdges;
+        final Supplier<SerializersManager> serializersManagers;
+        private final Map<String, NSequenceWithQuality[]> decodedColumns = new HashMap<>();
+
+        LazyBlock(int numberOfReads, ByteBuffer payload, ColumnsDirectory directory, List<GroupEdge> groupEdges,
+                  Supplier<SerializersManager> serializersManagers) {
+            this.numberOfReads = numberOfReads;
+            this.payload = payload;
+            this.directory = directory;
+            this.groupEdges = groupEdges;
+            this.serializersManagers = serializersManagers;
+        }
+
+        synchronized NSequenceWithQuality getGroupValue(String groupName, int readIndex) {
+            NSequenceWithQuality[] values = decodedColumns.get(groupName);
+            if (values == null) {
+                int[] column = directory.groupColumns.get(groupName);
+                if ((column == null) || groupName.equals(RECORDS_INDEX_COLUMN))
+                    return null;
+                PrimitivI columnInput = new PrimitivI(new ByteBufferInputStream(payload, column[0], column[1]),
+                        serializersManagers.get());
+                values = new NSequenceWithQuality[numberOfReads];
+                for (int i = 0; i < numberOfReads; i++)
+                    values[i] = columnInput.readObject(NSequenceWithQuality.class);
+                decodedColumns.put(groupName, values);
+            }
+            return values[readIndex];
+        }
+    }
+
+    private static final class BlockRecord implements SerializedRecord {
+        private final LazyBlock lazyBlock;
+        private final int readIndex;
+        private final long readId;
+        private final int recordOffset;
+        private final int recordLength;
+
+        BlockRecord(LazyBlock lazyBlock, int readIndex, long readId, int recordOffset, int recordLength) {
+            this.lazyBlock = lazyBlock;
+            this.readIndex = readIndex;
+            this.readId = readId;
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+        }
+
+        @Override
+        public ParsedRead decode() {
+            return decodeRecord(lazyBlock.payload, recordOffset, recordLength, lazyBlock.groupEdges,
+                    lazyBlock.serializersManagers.get());
+        }
+
+        @Override
+        public long getReadId() {
+            return readId;
+        }
+
+        @Override
+        public NSequenceWithQuality getGroupValue(String groupName) {
+            return lazyBlock.getGroupValue(groupName, readIndex);
+        }
+
+        @Override
+        public List<GroupEdge> getGroupEdges() {
+            return lazyBlock.groupEdges;
+        }
+
+        @Override
+        public void writeTo(PrimitivO output) {
+            ByteBuffer payload = lazyBlock.payload;
+            if (payload.hasArray())
+                output.write(payload.array(), payload.arrayOffset() + recordOffset, recordLength);
+            else {
+                byte[] record = new byte[recordLength];
+                ByteBuffer recordBuffer = payload.duplicate();
+                recordBuffer.position(recordOffset);
+                recordBuffer.get(record);
+                output.write(record, 0, recordLength);
+            }
+        }
+    }
+
+    /**
+     * Input stream over the region of the buffer; it doesn't change position of the buffer, so the same buffer can
+     * be read by multiple streams concurrently.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer.duplicate();
+            this.buffer.limit(offset + length);
+            this.buffer.position(offset);
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int length = Math.min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            return length;
+        }
+
+        @Override
+        public long skip(long n) {
+            int length = (int)Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Serializes reads into blocks on the writer side. Not thread-safe: in MifWriter it is used either by the
+     * calling thread or by the serialization thread.
+     */
+    static final class BlockEncoder {
+        private final List<GroupEdge> groupEdges;
+        private final SerializersManager serializersManager = new SerializersManager();
+        private final Deflater deflater;
+        private final int maxPayloadLength;
+        private final ExposedByteArrayOutputStream records = new ExposedByteArrayOutputStream();
+        private final boolean columns;
+        private final String[] groupColumnNames;
+        private final ExposedByteArrayOutputStream[] groupColumns;
+        private final PrimitivO[] groupColumnOutputs;
+        private final ExposedByteArrayOutputStream payload;
+        private PrimitivO recordsOutput = null;
+        private int numberOfReads = 0;
+        // ids and offsets of reads in records column; they are collected for columns layout and for read id index
+        private PrimitivO readIdIndexOutput = null;
+        private final long[] recordReadIds = new long[MAX_READS_IN_BLOCK];
+        private final int[] recordOffsets = new int[MAX_READS_IN_BLOCK];
+        private int numberOfBlocks = 0;
+        // group edges of the last serialized record that was copied to this block
+        private List<GroupEdge> copiedRecordsGroupEdges = null;
+
+        /**
+         * @param mifHeader         header of the file
+         * @param compress          compress blocks with Deflater
+         * @param columns           write blocks in columns layout: records index and values of not default groups
+         *                          are written in separate columns
+         * @param maxPayloadLength  block is finished when its serialized length exceeds this value even if
+         *                          it contains less than MAX_READS_IN_BLOCK reads
+         */
+        BlockEncoder(MifHeader mifHeader, boolean compress, boolean columns, int maxPayloadLength) {
+            this.groupEdges = mifHeader.getGroupEdges();
+            this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+            this.maxPayloadLength = maxPayloadLength;
+            this.columns = columns;
+            if (columns) {
+                Set<String> defaultGroups = new HashSet<>();
+                for (int i = 1; i <= mifHeader.getNumberOfTargets(); i++)
+                    defaultGroups.add("R" + i);
+                this.groupColumnNames = groupEdges.stream().map(GroupEdge::getGroupName)
+                        .filter(groupName -> !defaultGroups.contains(groupName)).distinct().toArray(String[]::new);
+            } else
+                this.groupColumnNames = new String[0];
+            this.groupColumns = new ExposedByteArrayOutputStream[groupColumnNames.length];
+            for (int i = 0; i < groupColumnNames.length; i++)
+                groupColumns[i] = new ExposedByteArrayOutputStream();
+            this.groupColumnOutputs = new PrimitivO[groupColumnNames.length];
+            this.payload = columns ? new ExposedByteArrayOutputStream() : records;
+        }
+
+        /**
+         * Write entries of read id index for all following blocks to the specified stream.
+         */
+        void setReadIdIndexOutput(PrimitivO readIdIndexOutput) {
+            this.readIdIndexOutput = readIdIndexOutput;
+        }
+
+        /**
+         * @return true if the block is full and must be written with writeBlock()
+         */
+        boolean add(ParsedRead parsedRead) {
+            if (recordsOutput == null) {
+                recordsOutput = new PrimitivO(records, serializersManager);
+                groupEdges.forEach(recordsOutput::putKnownObject);
+                for (int i = 0; i < groupColumnNames.length; i++)
+                    groupColumnOutputs[i] = new PrimitivO(groupColumns[i], serializersManager);
+            }
+            if (columns || (readIdIndexOutput != null)) {
+                recordsOutput.flush();
+                recordReadIds[numberOfReads] = parsedRead.getOriginalReadId();
+                recordOffsets[numberOfReads] = records.size();
+            }
+            SerializedRecord serializedRecord = parsedRead.getSerializedRecord();
+            if ((serializedRecord != null) && canCopy(serializedRecord))
+                serializedRecord.writeTo(recordsOutput);
+            else
+                recordsOutput.writeObject(parsedRead);
+            int payloadLength = records.size();
+            for (int i = 0; i < groupColumnNames.length; i++) {
+                groupColumnOutputs[i].writeObject(parsedRead.getGroupValue(groupColumnNames[i]));
+                payloadLength += groupColumns[i].size();
+            }
+            numberOfReads++;
+            return (numberOfReads == MAX_READS_IN_BLOCK) || (payloadLength >= maxPayloadLength);
+        }
+
+        private boolean canCopy(SerializedRecord serializedRecord) {
+            List<GroupEdge> recordGroupEdges = serializedRecord.getGroupEdges();
+            if (recordGroupEdges == copiedRecordsGroupEdges)
+                return true;
+            if (recordGroupEdges.equals(groupEdges)) {
+                copiedRecordsGroupEdges = recordGroupEdges;
+                return true;
+            }
+            return false;
+        }
+
+        private int getRecordLength(int readIndex) {
+            int recordEnd = (readIndex == numberOfReads - 1) ? records.size() : recordOffsets[readIndex + 1];
+            return recordEnd - recordOffsets[readIndex];
+        }
+
+        int getNumberOfReads() {
+            return numberOfReads;
+        }
+
+        /**
+         * Write current block to the output and start a new block. Does nothing if there are no reads in
+         * the current block.
+         */
+        void writeBlock(PrimitivO output) {
+            if (numberOfReads == 0)
+                return;
+            recordsOutput.flush();
+            byte layout = LAYOUT_ROWS;
+            int recordsOffset = 0;
+            if (columns) {
+                layout = LAYOUT_COLUMNS;
+                PrimitivO payloadOutput = new PrimitivO(payload);
+                payloadOutput.writeInt(records.size());
+                payloadOutput.writeInt(groupColumnNames.length + 1);
+                payloadOutput.writeUTF(RECORDS_INDEX_COLUMN);
+                payloadOutput.writeInt(numberOfReads * RECORDS_INDEX_ENTRY_LENGTH);
+                for (int i = 0; i < groupColumnNames.length; i++) {
+                    groupColumnOutputs[i].flush();
+                    payloadOutput.writeUTF(groupColumnNames[i]);
+                    payloadOutput.writeInt(groupColumns[i].size());
+                }
+                payloadOutput.flush();
+                recordsOffset = payload.size();
+                payloadOutput.write(records.getBuffer(), 0, records.size());
+                for (int i = 0; i < numberOfReads; i++) {
+                    payloadOutput.writeLong(recordReadIds[i]);
+                    payloadOutput.writeInt(getRecordLength(i));
+                }
+                for (ExposedByteArrayOutputStream groupColumn : groupColumns)
+                    payloadOutput.write(groupColumn.getBuffer(), 0, groupColumn.size());
+                payloadOutput.flush();
+            }
+            byte compression = COMPRESSION_NONE;
+            byte[] storedPayload = payload.getBuffer();
+            int storedLength = payload.size();
+            if (deflater != null) {
+                byte[] compressed = deflate(payload.getBuffer(), payload.size());
+                if (compressed.length < payload.size()) {
+                    compression = COMPRESSION_DEFLATE;
+                    storedPayload = compressed;
+                    storedLength = compressed.length;
+                }
+            }
+            output.writeInt(numberOfReads);
+            output.writeByte(layout);
+            output.writeByte(compression);
+            output.writeInt(payload.size());
+            output.writeInt(storedLength);
+            output.write(storedPayload, 0, storedLength);
+            if (readIdIndexOutput != null)
+                for (int i = 0; i < numberOfReads; i++)
+                    new ReadIdIndexEntry(recordReadIds[i], numberOfBlocks, recordsOffset + recordOffsets[i],
+                            getRecordLength(i)).write(readIdIndexOutput);
+            numberOfBlocks++;
+            records.reset();
+            payload.reset();
+            for (int i = 0; i < groupColumnNames.length; i++)
+                groupColumns[i].reset();
+            recordsOutput = null;
+            numberOfReads = 0;
+        }
+
+        private byte[] deflate(byte[] data, int length) {
+            deflater.reset();
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 16);
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished())
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            return compressed.toByteArray();
+        }
+
+        void close() {
+            if (deflater != null)
+                deflater.end();
+        }
+    }
+
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() {
+            super(4096);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * Stream that counts written bytes; it is used to get offsets of blocks for the block index.
+     */
+    static final class CountingOutputStream extends FilterOutputStream {
+        private long bytesWritten = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytesWritten += len;
+        }
+
+        long getBytesWritten() {
+            return bytesWritten;
+        }
+    }
+
+    static final class ReadIdIndexEntry {
+        final long readId;
+        final int blockNumber;
+        final int recordOffset;
+        final int recordLength;
+
+        ReadIdIndexEntry(long readId, int blockNumber, int recordOffset, int recordLength) {
+            this.readId = readId;
+            this.blockNumber = blockNumber;
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+        }
+
+        static ReadIdIndexEntry read(PrimitivI input) {
+            return new ReadIdIndexEntry(input.readLong(), input.readInt(), input.readInt(), input.readInt());
+        }
+
+        void write(PrimitivO output) {
+            output.writeLong(readId);
+            output.writeInt(blockNumber);
+            output.writeInt(recordOffset);
+            output.writeInt(recordLength);
+        }
+    }
+
+    /**
+     * Serializer for sorting read id index entries with Sorter; each chunk starts with the number of entries.
+     */
+    static final class ReadIdIndexEntrySerializer implements ObjectSerializer<ReadIdIndexEntry> {
+        @Override
+        public void write(Collection<ReadIdIndexEntry> data, OutputStream stream) {
+            PrimitivO output = new PrimitivO(new DataOutputStream(stream));
+            output.writeInt(data.size());
+            for (ReadIdIndexEntry entry : data)
+                entry.write(output);
+        }
+
+        @Override
+        public OutputPort<ReadIdIndexEntry> read(InputStream stream) {
+            PrimitivI input = new PrimitivI(new DataInputStream(stream));
+            int[] remainingEntries = { input.readInt() };
+            return () -> (remainingEntries[0]-- > 0) ? ReadIdIndexEntry.read(input) : null;
+        }
+    }
+}
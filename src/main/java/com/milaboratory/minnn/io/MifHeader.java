@@ -39,15 +39,42 @@ public class MifHeader {
     private final ArrayList<String> correctedGroups;
     private final ArrayList<String> sortedGroups;
     private final ArrayList<GroupEdge> groupEdges;
+    private final ArrayList<String> shardGroups;
+    private final int shardIndex;
+    private final int numberOfShards;
 
     public MifHeader(PipelineConfiguration pipelineConfiguration, int numberOfTargets,
                      ArrayList<String> correctedGroups, ArrayList<String> sortedGroups,
                      ArrayList<GroupEdge> groupEdges) {
+        this(pipelineConfiguration, numberOfTargets, correctedGroups, sortedGroups, groupEdges, new ArrayList<>(),
+                -1, 1);
+    }
+
+    /**
+     * Header for MIF file.
+     *
+     * @param pipelineConfiguration     pipeline configuration
+     * @param numberOfTargets           number of targets in reads
+     * @param correctedGroups           groups that were corrected by "correct" action
+     * @param sortedGroups              groups by which reads in the file are sorted
+     * @param groupEdges                group edges of all groups in reads
+     * @param shardGroups               groups by which values reads were partitioned to shards by "extract" action;
+     *                                  empty if the file is not a shard
+     * @param shardIndex                index of this shard, starting from 0; -1 if the file is not a shard
+     * @param numberOfShards            total number of shards; 1 if the file is not a shard
+     */
+    public MifHeader(PipelineConfiguration pipelineConfiguration, int numberOfTargets,
+                     ArrayList<String> correctedGroups, ArrayList<String> sortedGroups,
+                     ArrayList<GroupEdge> groupEdges, ArrayList<String> shardGroups, int shardIndex,
+                     int numberOfShards) {
         this.pipelineConfiguration = pipelineConfiguration;
         this.numberOfTargets = numberOfTargets;
         this.correctedGroups = correctedGroups;
         this.sortedGroups = sortedGroups;
         this.groupEdges = groupEdges;
+        this.shardGroups = shardGroups;
+        this.shardIndex = shardIndex;
+        this.numberOfShards = numberOfShards;
     }
 
     public PipelineConfiguration getPipelineConfiguration() {
@@ -69,4 +96,16 @@ public class MifHeader {
     public ArrayList<GroupEdge> getGroupEdges() {
         return groupEdges;
     }
+
+    public ArrayList<String> getShardGroups() {
+        return shardGroups;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getNumberOfShards() {
+        return numberOfShards;
+    }
 }
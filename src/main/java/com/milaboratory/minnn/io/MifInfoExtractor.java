@@ -77,4 +77,30 @@ public final class MifInfoExtractor implements BinaryFileInfoExtractor {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Get MIF format version of the file.
+     *
+     * @param fileName  file name
+     * @return          format version from the begin magic, or -1 if this is not a MIF file
+     */
+    public int getFormatVersion(String fileName) {
+        try {
+            Path path = new File(fileName).toPath();
+
+            if (!Files.isRegularFile(path))
+                return -1;
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() < BEGIN_MAGIC_LENGTH)
+                    return -1;
+
+                byte[] beginMagic = new byte[BEGIN_MAGIC_LENGTH];
+                channel.read(ByteBuffer.wrap(beginMagic));
+                return getMagicVersion(new String(beginMagic, StandardCharsets.US_ASCII));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -36,21 +36,29 @@ import com.milaboratory.minnn.outputconverter.ParsedRead;
 import com.milaboratory.minnn.pattern.GroupEdge;
 import com.milaboratory.primitivio.PrimitivI;
 import com.milaboratory.primitivio.PrimitivO;
+import com.milaboratory.primitivio.SerializersManager;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.CountingInputStream;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static com.milaboratory.minnn.cli.Magic.*;
+import static com.milaboratory.minnn.io.MifBlocks.*;
 import static com.milaboratory.minnn.util.SystemUtils.*;
 import static java.lang.Double.NaN;
 
 public final class MifReader extends PipelineConfigurationReaderMiNNN
         implements OutputPortCloseable<ParsedRead>, CanReportProgress {
     private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
-    private final PrimitivI input;
-    private final CountingInputStream countingInputStream;
+    private static final int DEFAULT_DECODING_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    // input stream is null if blocks are read from memory-mapped file
+    private PrimitivI input;
+    private CountingInputStream countingInputStream;
+    // file is null if reading from stream or compressed file
+    private final File file;
     private final long size;
     private long parsedReadsLimit = -1;
     private long parsedReadsTaken = 0;
@@ -61,14 +69,41 @@ public final class MifReader extends PipelineConfigurationReaderMiNNN
     private ArrayList<String> correctedGroups = new ArrayList<>();
     private ArrayList<String> sortedGroups = new ArrayList<>();
     private ArrayList<GroupEdge> groupEdges = new ArrayList<>();
+    private ArrayList<String> shardGroups = new ArrayList<>();
+    private int shardIndex = -1;
+    private int numberOfShards = 1;
     private long firstReadSerializedLength = -1;
     private long originalNumberOfReads = -1;
     private String mifVersionInfo;
+    private int formatVersion;
+    // fields for reading files that consist of blocks of reads
+    // SerializersManager is not thread-safe, so decoding threads and threads that decode lazy reads use their own
+    private final ThreadLocal<SerializersManager> serializersManagers = ThreadLocal.withInitial(
+            SerializersManager::new);
+    private final ArrayDeque<Future<Object[]>> decodingBlocks = new ArrayDeque<>();
+    private int decodingThreads = DEFAULT_DECODING_THREADS;
+    private boolean lazyDecoding = false;
+    private ExecutorService decodingPool = null;
+    private boolean lastBlockRead = false;
+    private Object[] currentBlock = new Object[0];
+    private int currentBlockPosition = 0;
+    // group names and their indexes in projected reads if readGroups() was called, otherwise null
+    private Map<String, Integer> projectedGroups = null;
+    // blocks of uncompressed files are read from memory-mapped file; it is null for other files and for files
+    // of older format versions
+    private MappedMifFile mappedFile = null;
+    private int nextMappedBlock = 0;
+    // fields for random access by read id
+    private MappedReadIdIndex readIdIndex = null;
+    private boolean readIdIndexLoaded = false;
+    private int cachedBlockNumber = -1;
+    private ByteBuffer cachedBlockPayload = null;
 
     public MifReader(InputStream stream) {
         input = new PrimitivI(this.countingInputStream = new CountingInputStream(stream));
         readHeader();
         size = -1;
+        file = null;
     }
 
     public MifReader(String fileName) throws IOException {
@@ -78,11 +113,20 @@ public final class MifReader extends PipelineConfigurationReaderMiNNN
         if (ct == CompressionType.None) {
             input = new PrimitivI(new BufferedInputStream(this.countingInputStream, DEFAULT_BUFFER_SIZE));
             size = file.length();
+            this.file = file;
         } else {
             input = new PrimitivI(ct.createInputStream(this.countingInputStream, DEFAULT_BUFFER_SIZE));
             size = -1;
+            this.file = null;
         }
         readHeader();
+        if ((this.file != null) && isBlocksFormat()) {
+            mappedFile = MappedMifFile.map(this.file);
+            if (mappedFile != null) {
+                input.close();
+                input = null;
+            }
+        }
     }
 
     private void readHeader() {
@@ -93,7 +137,8 @@ public final class MifReader extends PipelineConfigurationReaderMiNNN
             throw exitWithError("Unsupported file format; error while reading file header: " + e.getMessage());
         }
         String magicString = new String(magicBytes);
-        if (!magicString.equals(BEGIN_MAGIC))
+        formatVersion = getMagicVersion(magicString);
+        if ((formatVersion < OLDEST_READABLE_MAGIC_VERSION) || (formatVersion > MAGIC_VERSION))
             throw exitWithError("Unsupported file format; .mif file of version " + magicString +
                     " while you are running MiNNN " + BEGIN_MAGIC);
         mifVersionInfo = input.readUTF();
@@ -111,13 +156,29 @@ public final class MifReader extends PipelineConfigurationReaderMiNNN
             input.putKnownObject(groupEdge);
             groupEdges.add(groupEdge);
         }
+        // files of older versions don't contain shard information; they are read as not sharded
+        if (formatVersion >= SHARDS_MAGIC_VERSION) {
+            int shardGroupsNum = input.readInt();
+            for (int i = 0; i < shardGroupsNum; i++)
+                shardGroups.add(input.readObject(String.class));
+            shardIndex = input.readInt();
+            numberOfShards = input.readInt();
+        }
     }
 
     @Override
     public synchronized void close() {
         if (!closed) {
-            originalNumberOfReads = finished ? input.readLong() : parsedReadsTaken;
-            input.close();
+            if (decodingPool != null)
+                decodingPool.shutdownNow();
+            if (mappedFile != null)
+                originalNumberOfReads = finished ? mappedFile.getOriginalNumberOfReads() : parsedReadsTaken;
+            else {
+                if (finished && isBlocksFormat())
+                    readBlockIndex();
+                originalNumberOfReads = finished ? input.readLong() : parsedReadsTaken;
+                input.close();
+            }
             finished = true;
             closed = true;
         }
@@ -129,37 +190,288 @@ public final class MifReader extends PipelineConfigurationReaderMiNNN
             if (size == -1)
                 return NaN;
             else
-                return (double)(countingInputStream.getBytesRead()) / size;
+                return (double)getBytesRead() / size;
         } else {
             double estimationByTakenReads = (double)parsedReadsTaken / parsedReadsLimit;
             if (size == -1)
                 return estimationByTakenReads;
             else
-                return Math.max(estimationByTakenReads, (double)(countingInputStream.getBytesRead()) / size);
+                return Math.max(estimationByTakenReads, (double)getBytesRead() / size);
         }
     }
 
+    private long getBytesRead() {
+        if (mappedFile == null)
+            return countingInputStream.getBytesRead();
+        else
+            return (nextMappedBlock < mappedFile.getNumberOfBlocks())
+                    ? mappedFile.getBlockOffset(nextMappedBlock) : size;
+    }
+
     @Override
     public boolean isFinished() {
         return finished;
     }
 
     @Override
-    public synchronized ParsedRead take() {
+    public ParsedRead take() {
+        if (projectedGroups != null)
+            throw new IllegalStateException("MifReader.take() used after readGroups()!");
+        return (ParsedRead)takeRecord();
+    }
+
+    /**
+     * Read only values of the specified groups. For files with columnar blocks, only columns of these groups are
+     * decoded, which is much faster than decoding full reads. For other files, full reads are decoded and then
+     * projected. Reads must be taken only from the returned port after calling this function.
+     *
+     * @param groupNames    names of groups to read
+     * @return              port that returns values of the specified groups for each read
+     */
+    public synchronized OutputPortCloseable<ProjectedRead> readGroups(Set<String> groupNames) {
+        if ((projectedGroups != null) || (parsedReadsTaken > 0))
+            throw new IllegalStateException("MifReader.readGroups() must be called before taking the first read!");
+        Set<String> availableGroups = new HashSet<>();
+        groupEdges.forEach(groupEdge -> availableGroups.add(groupEdge.getGroupName()));
+        Map<String, Integer> groupIndexes = new LinkedHashMap<>();
+        for (String groupName : groupNames) {
+            if (!availableGroups.contains(groupName))
+                throw new IllegalArgumentException("Group " + groupName + " not found in the input file; "
+                        + "available groups: " + availableGroups);
+            groupIndexes.put(groupName, groupIndexes.size());
+        }
+        projectedGroups = Collections.unmodifiableMap(groupIndexes);
+        return new OutputPortCloseable<ProjectedRead>() {
+            @Override
+            public ProjectedRead take() {
+                return (ProjectedRead)takeRecord();
+            }
+
+            @Override
+            public void close() {
+                MifReader.this.close();
+            }
+        };
+    }
+
+    /**
+     * Take next record: ParsedRead, or ProjectedRead if readGroups() was called.
+     *
+     * @return next record, or null if there are no more reads
+     */
+    private synchronized Object takeRecord() {
         if (finished)
             return null;
-        ParsedRead parsedRead = input.readObject(ParsedRead.class);
-        if (parsedRead == null)
-            finished = true;
+        Object record;
+        if (isBlocksFormat())
+            record = takeFromBlocks();
         else {
-            if (firstReadSerializedLength == -1)
+            ParsedRead parsedRead = input.readObject(ParsedRead.class);
+            if ((parsedRead != null) && (firstReadSerializedLength == -1))
                 calculateFirstReadLength(parsedRead);
+            record = ((parsedRead == null) || (projectedGroups == null)) ? parsedRead
+                    : new ProjectedRead(projectedGroups, parsedRead);
+        }
+        if (record == null)
+            finished = true;
+        else {
             parsedReadsTaken++;
             if ((parsedReadsLimit != -1) && (parsedReadsTaken > parsedReadsLimit))
                 throw new IllegalStateException("Specified parsed reads limit (" + parsedReadsLimit + ") was "
                         + "exceeded in MifReader!");
         }
-        return parsedRead;
+        return record;
+    }
+
+    /**
+     * Take next record from decoded blocks. Blocks are read from the input stream or from memory-mapped file
+     * on the calling thread, and decoded in parallel on the pool of decoding threads; blocks are still returned
+     * in the order of the file.
+     *
+     * @return next record, or null if there are no more reads
+     */
+    private Object takeFromBlocks() {
+        while (currentBlockPosition == currentBlock.length) {
+            readRawBlocks();
+            Future<Object[]> nextBlock = decodingBlocks.poll();
+            if (nextBlock == null)
+                return null;
+            try {
+                currentBlock = nextBlock.get();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error while decoding MIF block: " + e.getCause().getMessage(),
+                        e.getCause());
+            }
+            currentBlockPosition = 0;
+        }
+        Object record = currentBlock[currentBlockPosition];
+        currentBlock[currentBlockPosition++] = null;
+        return record;
+    }
+
+    private void readRawBlocks() {
+        while (!lastBlockRead && (decodingBlocks.size() < 2 * decodingThreads)) {
+            RawBlock rawBlock;
+            if (mappedFile == null)
+                rawBlock = readRawBlock(input);
+            else
+                rawBlock = (nextMappedBlock < mappedFile.getNumberOfBlocks())
+                        ? mappedFile.getRawBlock(nextMappedBlock++) : null;
+            if (rawBlock == null)
+                lastBlockRead = true;
+            else {
+                if (firstReadSerializedLength == -1)
+                    firstReadSerializedLength = (BLOCK_HEADER_LENGTH + rawBlock.storedPayload.limit())
+                            / rawBlock.numberOfReads;
+                if (decodingThreads > 1) {
+                    if (decodingPool == null)
+                        decodingPool = Executors.newFixedThreadPool(decodingThreads, runnable -> {
+                            Thread thread = new Thread(runnable, "MifReader");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                    decodingBlocks.add(decodingPool.submit(() -> decodeRawBlock(rawBlock)));
+                } else
+                    decodingBlocks.add(CompletableFuture.completedFuture(decodeRawBlock(rawBlock)));
+            }
+        }
+    }
+
+    private Object[] decodeRawBlock(RawBlock rawBlock) {
+        if (projectedGroups == null)
+            return lazyDecoding ? decodeBlockLazy(rawBlock, groupEdges, serializersManagers::get)
+                    : decodeBlock(rawBlock, groupEdges, serializersManagers.get());
+        else
+            return decodeBlockGroups(rawBlock, groupEdges, serializersManagers.get(), projectedGroups);
+    }
+
+    private void readBlockIndex() {
+        int numberOfBlocks = input.readInt();
+        for (int i = 0; i < numberOfBlocks; i++) {
+            input.readLong();
+            input.readInt();
+        }
+    }
+
+    /**
+     * Check whether the file has a valid read id index, written by MifWriter.enableReadIdIndex(). The index is
+     * required for random access with readAt() and seek(); it is supported only for uncompressed files.
+     *
+     * @return true if random access by read id is available
+     */
+    public synchronized boolean hasReadIdIndex() {
+        loadReadIdIndex();
+        return readIdIndex != null;
+    }
+
+    /**
+     * Read the read with the specified id from any position in the file. This function doesn't change the position
+     * of sequential reading with take(). Reads from uncompressed blocks are decoded directly from memory-mapped file;
+     * for compressed blocks, the last decompressed block is cached.
+     *
+     * @param readId    read id (id of the original read)
+     * @return          parsed read, or null if there is no read with this id in the file
+     */
+    public synchronized ParsedRead readAt(long readId) {
+        long entry = findReadIdIndexEntry(readId);
+        if (entry == -1)
+            return null;
+        int blockNumber = readIdIndex.getBlockNumber(entry);
+        RawBlock rawBlock = mappedFile.getRawBlock(blockNumber);
+        ByteBuffer payload;
+        if (rawBlock.compression == COMPRESSION_NONE)
+            payload = getPayload(rawBlock);
+        else {
+            if (cachedBlockNumber != blockNumber) {
+                cachedBlockPayload = getPayload(rawBlock);
+                cachedBlockNumber = blockNumber;
+            }
+            payload = cachedBlockPayload;
+        }
+        return decodeRecord(payload, readIdIndex.getRecordOffset(entry), readIdIndex.getRecordLength(entry),
+                groupEdges, serializersManagers.get());
+    }
+
+    /**
+     * Move the position of sequential reading to the read with the specified id: the next take() returns this read,
+     * and then the reads that follow it in the file.
+     *
+     * @param readId    read id (id of the original read)
+     * @return          true if the read was found; if not, the position is not changed
+     */
+    public synchronized boolean seek(long readId) {
+        long entry = findReadIdIndexEntry(readId);
+        if (entry == -1)
+            return false;
+        int blockNumber = readIdIndex.getBlockNumber(entry);
+        decodingBlocks.forEach(decodingBlock -> decodingBlock.cancel(false));
+        decodingBlocks.clear();
+        RawBlock rawBlock = mappedFile.getRawBlock(blockNumber);
+        currentBlock = decodeRawBlock(rawBlock);
+        currentBlockPosition = findRecordIndex(rawBlock, readIdIndex.getRecordOffset(entry), groupEdges,
+                serializersManagers.get());
+        nextMappedBlock = blockNumber + 1;
+        lastBlockRead = false;
+        finished = false;
+        return true;
+    }
+
+    private void loadReadIdIndex() {
+        if (readIdIndexLoaded)
+            return;
+        readIdIndexLoaded = true;
+        if (mappedFile != null)
+            try {
+                readIdIndex = MappedReadIdIndex.map(new File(file.getPath() + READ_ID_INDEX_SUFFIX), size);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+    }
+
+    private long findReadIdIndexEntry(long readId) {
+        loadReadIdIndex();
+        if (readIdIndex == null)
+            throw new IllegalStateException("File " + file + " doesn't have valid read id index!");
+        return readIdIndex.find(readId);
+    }
+
+    /**
+     * Check whether blocks of this file are read from memory-mapped file. This is available for uncompressed files
+     * starting from format version 14 that were completely written.
+     *
+     * @return true if the file is memory-mapped
+     */
+    public boolean isMemoryMapped() {
+        return mappedFile != null;
+    }
+
+    private boolean isBlocksFormat() {
+        return formatVersion >= BLOCKS_MAGIC_VERSION;
+    }
+
+    /**
+     * Set number of threads for decoding blocks of reads; it must be called before taking the first read.
+     * If number of threads is 1 or less, blocks are decoded on the calling thread.
+     *
+     * @param decodingThreads number of decoding threads
+     */
+    public void setDecodingThreads(int decodingThreads) {
+        this.decodingThreads = Math.max(1, decodingThreads);
+    }
+
+    /**
+     * Enable lazy parsed reads; it must be called before taking the first read. Lazy parsed reads are decoded only
+     * when their contents are needed; values of barcodes and read ids are taken from the block columns without
+     * decoding, and reads that are written to MifWriter without changes are copied in serialized form. This is
+     * useful for commands that only filter or reorder reads. Lazy decoding is available only for files
+     * with columnar blocks; reads from other files are decoded as usual.
+     *
+     * @param lazyDecoding true if lazy parsed reads must be used
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
     }
 
     @Override
@@ -183,14 +495,34 @@ public final class MifReader extends PipelineConfigurationReaderMiNNN
         return new ArrayList<>(groupEdges);
     }
 
+    public ArrayList<String> getShardGroups() {
+        return shardGroups;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getNumberOfShards() {
+        return numberOfShards;
+    }
+
     public MifHeader getHeader() {
-        return new MifHeader(pipelineConfiguration, numberOfTargets, correctedGroups, sortedGroups, groupEdges);
+        return new MifHeader(pipelineConfiguration, numberOfTargets, correctedGroups, sortedGroups, groupEdges,
+                shardGroups, shardIndex, numberOfShards);
     }
 
     public String getMifVersionInfo() {
         return mifVersionInfo;
     }
 
+    /**
+     * @return MIF format version of the file, see MAGIC_VERSION in Magic class
+     */
+    public int getMifFormatVersion() {
+        return formatVersion;
+    }
+
     private void calculateFirstReadLength(ParsedRead parsedRead) {
         ByteArrayOutputStream counterStream = new ByteArrayOutputStream();
         PrimitivO outStream = new PrimitivO(counterStream);
@@ -206,7 +538,10 @@ public final class MifReader extends PipelineConfigurationReaderMiNNN
     }
 
     public long getEstimatedNumberOfReads() {
-        if ((size == -1) || (firstReadSerializedLength == -1))
+        if (mappedFile != null)
+            return (parsedReadsLimit == -1) ? mappedFile.getNumberOfReads()
+                    : Math.min(parsedReadsLimit, mappedFile.getNumberOfReads());
+        else if ((size == -1) || (firstReadSerializedLength == -1))
             return -1;
         else {
             long estimatedNumberOfReads = size / Math.max(1, firstReadSerializedLength);
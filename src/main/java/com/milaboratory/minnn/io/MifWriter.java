@@ -28,42 +28,124 @@
  */
 package com.milaboratory.minnn.io;
 
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
 import com.milaboratory.cli.AppVersionInfo.*;
 import com.milaboratory.cli.PipelineConfigurationWriter;
 import com.milaboratory.minnn.outputconverter.ParsedRead;
 import com.milaboratory.minnn.pattern.GroupEdge;
+import com.milaboratory.primitivio.PrimitivI;
 import com.milaboratory.primitivio.PrimitivO;
 import com.milaboratory.util.CanReportProgress;
+import com.milaboratory.util.Sorter;
+import com.milaboratory.util.TempFileManager;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
 
 import java.io.*;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.*;
 
 import static com.milaboratory.minnn.cli.Magic.*;
+import static com.milaboratory.minnn.io.MifBlocks.*;
 import static com.milaboratory.minnn.util.MinnnVersionInfo.getVersionString;
 import static java.lang.Double.NaN;
 
 public final class MifWriter implements PipelineConfigurationWriter, AutoCloseable, CanReportProgress {
     private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final int WRITE_QUEUE_CAPACITY = 16;
+    private static final long PUT_BATCH_TIMEOUT_MS = 100;
+    private static final int READ_ID_INDEX_SORT_CHUNK_SIZE = 1 << 20;
+    private static final ParsedRead[] END_OF_BATCHES = new ParsedRead[0];
+    private final String fileName;
+    private final CountingOutputStream countingOutputStream;
     private final PrimitivO output;
+    private final BlockEncoder blockEncoder;
+    private final TLongArrayList blockOffsets = new TLongArrayList();
+    private final TIntArrayList blockSizes = new TIntArrayList();
+    private final BlockingQueue<ParsedRead[]> batchesQueue;
+    private final Thread serializationThread;
+    private volatile Throwable serializationError = null;
+    private ParsedRead[] currentBatch = null;
+    private int currentBatchSize = 0;
     private boolean closed = false;
     private long estimatedNumberOfReads = -1;
     private long writtenReads = 0;
     private long originalNumberOfReads = -1;
+    private PrimitivO readIdIndexOutput = null;
+    private long readIdIndexEntries = 0;
 
     public MifWriter(OutputStream outputStream, MifHeader mifHeader) {
-        output = new PrimitivO(outputStream);
-        writeHeader(mifHeader);
+        this(null, outputStream, mifHeader, true, false, true, MAX_BLOCK_PAYLOAD_LENGTH);
     }
 
     public MifWriter(String file, MifHeader mifHeader)
             throws IOException {
-        output = new PrimitivO(new BufferedOutputStream(new FileOutputStream(file), DEFAULT_BUFFER_SIZE));
-        writeHeader(mifHeader);
+        this(file, mifHeader, false, true);
+    }
+
+    /**
+     * Constructor for writer with custom encoding of blocks.
+     *
+     * @param compressBlocks if true, blocks of reads are compressed with Deflater; MifReader decompresses them
+     *                       in parallel
+     * @param columnarBlocks if true, records index and values of groups that are not default groups are also
+     *                       written in separate columns; MifReader.readGroups() reads only these columns,
+     *                       and lazy parsed reads use them to avoid decoding the records
+     */
+    public MifWriter(String file, MifHeader mifHeader, boolean compressBlocks, boolean columnarBlocks)
+            throws IOException {
+        this(file, new BufferedOutputStream(new FileOutputStream(file), DEFAULT_BUFFER_SIZE), mifHeader, true,
+                compressBlocks, columnarBlocks, MAX_BLOCK_PAYLOAD_LENGTH);
     }
 
+    /**
+     * Constructor for writer with custom buffer size. It serializes reads on the calling thread; this is intended
+     * for cases when many writers are open at the same time, and a separate thread for each writer is not desirable.
+     * Blocks of reads are limited by the buffer size, so memory usage of each writer stays bounded.
+     */
     public MifWriter(String file, MifHeader mifHeader, int bufferSize)
             throws IOException {
-        output = new PrimitivO(new BufferedOutputStream(new FileOutputStream(file), bufferSize));
+        this(file, new BufferedOutputStream(new FileOutputStream(file), bufferSize), mifHeader, false, false, true,
+                Math.min(bufferSize, MAX_BLOCK_PAYLOAD_LENGTH));
+    }
+
+    /**
+     * Common constructor for MIF writer.
+     *
+     * @param fileName output file name, or null if writing to stream
+     * @param outputStream output stream
+     * @param mifHeader header of the output file
+     * @param asyncWriting if true, reads are collected into batches and serialized on a separate thread;
+     *                     write() blocks when the queue of batches is full, so memory usage is bounded
+     * @param compressBlocks compress blocks of reads
+     * @param columnarBlocks write blocks in columns layout
+     * @param maxBlockPayloadLength maximal length of serialized reads in one block
+     */
+    private MifWriter(String fileName, OutputStream outputStream, MifHeader mifHeader, boolean asyncWriting,
+                      boolean compressBlocks, boolean columnarBlocks, int maxBlockPayloadLength) {
+        this.fileName = fileName;
+        // read id index from the previous file with the same name is not valid for the new file
+        if (fileName != null) {
+            new File(fileName + READ_ID_INDEX_SUFFIX).delete();
+            new File(fileName + READ_ID_INDEX_UNSORTED_SUFFIX).delete();
+        }
+        this.countingOutputStream = new CountingOutputStream(outputStream);
+        this.output = new PrimitivO(countingOutputStream);
+        this.blockEncoder = new BlockEncoder(mifHeader, compressBlocks, columnarBlocks, maxBlockPayloadLength);
         writeHeader(mifHeader);
+        if (asyncWriting) {
+            this.batchesQueue = new ArrayBlockingQueue<>(WRITE_QUEUE_CAPACITY);
+            this.currentBatch = new ParsedRead[MAX_READS_IN_BLOCK];
+            this.serializationThread = new Thread(this::serializeBatches, "MifWriter");
+            serializationThread.setDaemon(true);
+            serializationThread.start();
+        } else {
+            this.batchesQueue = null;
+            this.serializationThread = null;
+        }
     }
 
     private void writeHeader(MifHeader mifHeader) {
@@ -82,21 +164,183 @@ public final class MifWriter implements PipelineConfigurationWriter, AutoCloseab
             output.writeObject(groupEdge);
             output.putKnownObject(groupEdge);
         }
+        output.writeInt(mifHeader.getShardGroups().size());
+        for (String shardGroup : mifHeader.getShardGroups())
+            output.writeObject(shardGroup);
+        output.writeInt(mifHeader.getShardIndex());
+        output.writeInt(mifHeader.getNumberOfShards());
+    }
+
+    /**
+     * Write read id index file that allows random access to reads by read id with MifReader.readAt().
+     * This function must be called before writing the first read. Index entries are sorted by read id when the
+     * writer is closed; sorting uses temporary files in the directory of the output file.
+     */
+    public void enableReadIdIndex() throws IOException {
+        if (fileName == null)
+            throw new IllegalStateException("Read id index can't be written when MIF is written to stream!");
+        if (writtenReads > 0)
+            throw new IllegalStateException("enableReadIdIndex() must be called before writing the first read!");
+        if (readIdIndexOutput == null) {
+            readIdIndexOutput = new PrimitivO(new BufferedOutputStream(new FileOutputStream(
+                    fileName + READ_ID_INDEX_UNSORTED_SUFFIX), DEFAULT_BUFFER_SIZE));
+            blockEncoder.setReadIdIndexOutput(readIdIndexOutput);
+        }
     }
 
     public void write(ParsedRead parsedRead) {
-        output.writeObject(parsedRead);
+        if (batchesQueue == null)
+            serializeRead(parsedRead);
+        else {
+            currentBatch[currentBatchSize++] = parsedRead;
+            if (currentBatchSize == MAX_READS_IN_BLOCK) {
+                checkSerializationError();
+                flushCurrentBatch();
+            }
+        }
         writtenReads++;
     }
 
+    private void flushCurrentBatch() {
+        if (currentBatchSize > 0) {
+            putBatch((currentBatchSize == MAX_READS_IN_BLOCK) ? currentBatch
+                    : Arrays.copyOf(currentBatch, currentBatchSize));
+            currentBatch = new ParsedRead[MAX_READS_IN_BLOCK];
+            currentBatchSize = 0;
+        }
+    }
+
+    private void putBatch(ParsedRead[] batch) {
+        try {
+            // if serialization thread is stopped, nobody takes batches from the queue, so waiting must not be endless
+            while (!batchesQueue.offer(batch, PUT_BATCH_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                if (!serializationThread.isAlive()) {
+                    checkSerializationError();
+                    throw new IllegalStateException("MIF serialization thread is stopped!");
+                }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void serializeRead(ParsedRead parsedRead) {
+        if (blockEncoder.add(parsedRead))
+            writeBlock();
+    }
+
+    private void writeBlock() {
+        int numberOfReads = blockEncoder.getNumberOfReads();
+        if (numberOfReads > 0) {
+            blockOffsets.add(countingOutputStream.getBytesWritten());
+            blockSizes.add(numberOfReads);
+            if (readIdIndexOutput != null)
+                readIdIndexEntries += numberOfReads;
+            blockEncoder.writeBlock(output);
+        }
+    }
+
+    private void writeBlockIndex() {
+        output.writeInt(0);
+        long blockIndexOffset = countingOutputStream.getBytesWritten();
+        output.writeInt(blockOffsets.size());
+        for (int i = 0; i < blockOffsets.size(); i++) {
+            output.writeLong(blockOffsets.get(i));
+            output.writeInt(blockSizes.get(i));
+        }
+        output.writeLong(originalNumberOfReads);
+        output.writeLong(blockIndexOffset);
+    }
+
+    private void checkSerializationError() {
+        if (serializationError != null)
+            throw new RuntimeException("Error while writing MIF file: " + serializationError.getMessage(),
+                    serializationError);
+    }
+
+    /**
+     * Background thread body: it is the only thread that uses output stream and block encoder between writing
+     * header and trailer.
+     * After an error, batches are still taken from the queue to release the producer; the error is thrown
+     * from the next write() or close() call.
+     */
+    private void serializeBatches() {
+        try {
+            ParsedRead[] batch;
+            while ((batch = batchesQueue.take()) != END_OF_BATCHES)
+                if (serializationError == null)
+                    try {
+                        for (ParsedRead parsedRead : batch)
+                            serializeRead(parsedRead);
+                    } catch (Throwable e) {
+                        serializationError = e;
+                    }
+        } catch (InterruptedException e) {
+            serializationError = e;
+        }
+    }
+
+    /**
+     * Finish the file and close it. If serialization failed, the error is thrown, but the output streams are closed
+     * anyway, and the incomplete read id index is removed.
+     */
     @Override
     public void close() {
         if (!closed) {
-            output.writeObject(null);
-            output.writeLong(originalNumberOfReads);
-            output.write(getEndMagicBytes());
-            output.close();
             closed = true;
+            boolean completed = false;
+            try {
+                if (batchesQueue != null) {
+                    flushCurrentBatch();
+                    putBatch(END_OF_BATCHES);
+                    try {
+                        serializationThread.join();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    checkSerializationError();
+                }
+                writeBlock();
+                writeBlockIndex();
+                output.write(getEndMagicBytes());
+                completed = true;
+            } finally {
+                blockEncoder.close();
+                output.close();
+                if (readIdIndexOutput != null) {
+                    readIdIndexOutput.close();
+                    if (completed)
+                        writeSortedReadIdIndex();
+                    else
+                        new File(fileName + READ_ID_INDEX_UNSORTED_SUFFIX).delete();
+                }
+            }
+        }
+    }
+
+    private void writeSortedReadIdIndex() {
+        File unsortedIndexFile = new File(fileName + READ_ID_INDEX_UNSORTED_SUFFIX);
+        File sorterTempFile = TempFileManager.getTempFile(Paths.get(new File(fileName).getAbsolutePath())
+                .getParent());
+        try (InputStream unsortedIndexStream = new BufferedInputStream(new FileInputStream(unsortedIndexFile),
+                DEFAULT_BUFFER_SIZE);
+             OutputStream indexStream = new BufferedOutputStream(new FileOutputStream(
+                     fileName + READ_ID_INDEX_SUFFIX), DEFAULT_BUFFER_SIZE)) {
+            PrimitivI unsortedIndexInput = new PrimitivI(unsortedIndexStream);
+            long[] remainingEntries = { readIdIndexEntries };
+            OutputPort<ReadIdIndexEntry> unsortedEntries = () -> (remainingEntries[0]-- > 0)
+                    ? ReadIdIndexEntry.read(unsortedIndexInput) : null;
+            OutputPort<ReadIdIndexEntry> sortedEntries = Sorter.sort(unsortedEntries,
+                    Comparator.comparingLong((ReadIdIndexEntry entry) -> entry.readId),
+                    READ_ID_INDEX_SORT_CHUNK_SIZE, new ReadIdIndexEntrySerializer(), sorterTempFile);
+            PrimitivO indexOutput = new PrimitivO(indexStream);
+            for (ReadIdIndexEntry entry : CUtils.it(sortedEntries))
+                entry.write(indexOutput);
+            indexOutput.writeLong(readIdIndexEntries);
+            indexOutput.writeLong(countingOutputStream.getBytesWritten());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            unsortedIndexFile.delete();
         }
     }
 
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import com.milaboratory.util.CanReportProgress;
+import com.milaboratory.util.CountingInputStream;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Input stream that decompresses gzip file in background threads. BGZF files (gzip files that consist of independent
+ * members with block size in the extra field) are inflated block by block in parallel on the thread pool, and blocks
+ * are returned in the original order. Other gzip files (including plain multi-member files, where member borders are
+ * not known without inflating) are inflated on a single background thread, so the consumer thread only parses
+ * already decompressed data.
+ */
+public final class ParallelGzipInputStream extends InputStream implements CanReportProgress {
+    private static final int GZIP_ID1 = 0x1f;
+    private static final int GZIP_ID2 = 0x8b;
+    private static final int GZIP_FLAG_EXTRA = 4;
+    private static final int BGZF_HEADER_SIZE = 18;
+    private static final int GZIP_FOOTER_SIZE = 8;
+    private static final int PIPELINE_CHUNK_SIZE = 1 << 20;
+    private static final int PIPELINE_QUEUE_SIZE = 16;
+    private static final byte[] END_OF_STREAM = new byte[0];
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    private final String fileName;
+    private final CountingInputStream compressedInput;
+    private final long compressedSize;
+    private final boolean blockGzip;
+    private final ExecutorService blockInflaters;
+    private final ArrayDeque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private final int maxPendingBlocks;
+    private final ArrayBlockingQueue<byte[]> inflatedChunks;
+    private final Thread inflaterThread;
+    private volatile Throwable inflaterError = null;
+    private volatile boolean closed = false;
+    private boolean finished = false;
+    private byte[] currentChunk = END_OF_STREAM;
+    private int position = 0;
+
+    /**
+     * Open gzip file for multi-threaded decompression.
+     *
+     * @param fileName  gzip file name
+     * @param threads   number of threads that inflate BGZF blocks; not used for other gzip files
+     */
+    public ParallelGzipInputStream(String fileName, int threads) throws IOException {
+        File file = new File(fileName);
+        this.fileName = fileName;
+        this.compressedSize = file.length();
+        this.blockGzip = isBlockGzip(file);
+        this.compressedInput = new CountingInputStream(new BufferedInputStream(new FileInputStream(file),
+                PIPELINE_CHUNK_SIZE));
+        if (blockGzip) {
+            this.blockInflaters = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+                Thread thread = new Thread(runnable, "bgzf-inflater");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.maxPendingBlocks = 4 * Math.max(1, threads);
+            this.inflatedChunks = null;
+            this.inflaterThread = null;
+        } else {
+            this.blockInflaters = null;
+            this.maxPendingBlocks = 0;
+            this.inflatedChunks = new ArrayBlockingQueue<>(PIPELINE_QUEUE_SIZE);
+            this.inflaterThread = new Thread(this::inflateSequentially, "gzip-inflater");
+            this.inflaterThread.setDaemon(true);
+            this.inflaterThread.start();
+        }
+    }
+
+    /**
+     * Check first bytes of the file for gzip magic.
+     *
+     * @param file  file to check
+     * @return      true if file starts with gzip header
+     */
+    public static boolean isGzip(File file) throws IOException {
+        byte[] header = readHeader(file, 2);
+        return (header.length == 2) && ((header[0] & 0xff) == GZIP_ID1) && ((header[1] & 0xff) == GZIP_ID2);
+    }
+
+    private static boolean isBlockGzip(File file) throws IOException {
+        byte[] header = readHeader(file, BGZF_HEADER_SIZE);
+        return (header.length == BGZF_HEADER_SIZE) && isBgzfHeader(header);
+    }
+
+    private static boolean isBgzfHeader(byte[] header) {
+        return ((header[0] & 0xff) == GZIP_ID1) && ((header[1] & 0xff) == GZIP_ID2) && (header[2] == 8)
+                && ((header[3] & GZIP_FLAG_EXTRA) != 0) && (readShort(header, 10) == 6)
+                && (header[12] == 'B') && (header[13] == 'C') && (readShort(header, 14) == 2);
+    }
+
+    private static byte[] readHeader(File file, int length) throws IOException {
+        try (InputStream stream = new FileInputStream(file)) {
+            byte[] header = new byte[length];
+            int read = readFully(stream, header, 0, length);
+            return (read == length) ? header : Arrays.copyOf(header, read);
+        }
+    }
+
+    private static int readFully(InputStream stream, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = stream.read(buffer, offset + total, length - total);
+            if (read < 0)
+                break;
+            total += read;
+        }
+        return total;
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return readShort(data, offset) | (readShort(data, offset + 2) << 16);
+    }
+
+    /**
+     * Read next compressed BGZF block; this is done on the consumer thread and involves only copying of bytes.
+     *
+     * @return  full block with header and footer, or null if end of file is reached
+     */
+    private byte[] readCompressedBlock() throws IOException {
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        int headerLength = readFully(compressedInput, header, 0, BGZF_HEADER_SIZE);
+        if (headerLength == 0)
+            return null;
+        if ((headerLength < BGZF_HEADER_SIZE) || !isBgzfHeader(header))
+            throw new IOException("Malformed BGZF block in file " + fileName);
+        int blockSize = readShort(header, 16) + 1;
+        if (blockSize < BGZF_HEADER_SIZE + GZIP_FOOTER_SIZE)
+            throw new IOException("Malformed BGZF block in file " + fileName);
+        byte[] block = Arrays.copyOf(header, blockSize);
+        if (readFully(compressedInput, block, BGZF_HEADER_SIZE, blockSize - BGZF_HEADER_SIZE)
+                != blockSize - BGZF_HEADER_SIZE)
+            throw new IOException("Truncated BGZF block in file " + fileName);
+        return block;
+    }
+
+    private static byte[] inflateBlock(byte[] block) throws IOException, DataFormatException {
+        int uncompressedSize = readInt(block, block.length - 4);
+        byte[] result = new byte[uncompressedSize];
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(block, BGZF_HEADER_SIZE, block.length - BGZF_HEADER_SIZE - GZIP_FOOTER_SIZE);
+        int inflated = 0;
+        while (inflated < uncompressedSize) {
+            int length = inflater.inflate(result, inflated, uncompressedSize - inflated);
+            if ((length == 0) && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                break;
+            inflated += length;
+        }
+        if (inflated != uncompressedSize)
+            throw new IOException("Wrong uncompressed size of BGZF block: expected " + uncompressedSize
+                    + ", got " + inflated);
+        CRC32 crc = new CRC32();
+        crc.update(result, 0, uncompressedSize);
+        if ((int)crc.getValue() != readInt(block, block.length - GZIP_FOOTER_SIZE))
+            throw new IOException("CRC mismatch in BGZF block");
+        return result;
+    }
+
+    private void inflateSequentially() {
+        try (InputStream gzipStream = new GZIPInputStream(compressedInput, PIPELINE_CHUNK_SIZE)) {
+            while (!closed) {
+                byte[] chunk = new byte[PIPELINE_CHUNK_SIZE];
+                int length = readFully(gzipStream, chunk, 0, PIPELINE_CHUNK_SIZE);
+                if (length > 0)
+                    inflatedChunks.put((length == PIPELINE_CHUNK_SIZE) ? chunk : Arrays.copyOf(chunk, length));
+                if (length < PIPELINE_CHUNK_SIZE)
+                    break;
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (Throwable e) {
+            if (!closed)
+                inflaterError = e;
+        }
+        try {
+            inflatedChunks.put(END_OF_STREAM);
+        } catch (InterruptedException ignored) {}
+    }
+
+    private byte[] nextChunk() throws IOException {
+        try {
+            if (blockGzip) {
+                while ((pendingBlocks.size() < maxPendingBlocks) && !finished) {
+                    byte[] block = readCompressedBlock();
+                    if (block == null)
+                        finished = true;
+                    else
+                        pendingBlocks.add(blockInflaters.submit(() -> inflateBlock(block)));
+                }
+                Future<byte[]> nextBlock = pendingBlocks.poll();
+                return (nextBlock == null) ? null : nextBlock.get();
+            } else {
+                if (finished)
+                    return null;
+                byte[] chunk = inflatedChunks.take();
+                if (chunk == END_OF_STREAM) {
+                    finished = true;
+                    if (inflaterError != null)
+                        throw new IOException("Error while decompressing " + fileName + ": "
+                                + inflaterError.getMessage(), inflaterError);
+                    return null;
+                }
+                return chunk;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing " + fileName);
+        } catch (ExecutionException e) {
+            throw new IOException("Error while decompressing " + fileName + ": " + e.getCause().getMessage(),
+                    e.getCause());
+        }
+    }
+
+    private boolean ensureData() throws IOException {
+        if (closed)
+            throw new IOException("Stream is closed: " + fileName);
+        while (position == currentChunk.length) {
+            byte[] chunk = nextChunk();
+            if (chunk == null)
+                return false;
+            currentChunk = chunk;
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return ensureData() ? (currentChunk[position++] & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        if (!ensureData())
+            return -1;
+        int copied = Math.min(length, currentChunk.length - position);
+        System.arraycopy(currentChunk, position, buffer, offset, copied);
+        position += copied;
+        return copied;
+    }
+
+    @Override
+    public int available() {
+        return currentChunk.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (blockGzip) {
+                blockInflaters.shutdownNow();
+                compressedInput.close();
+            } else
+                inflaterThread.interrupt();
+        }
+    }
+
+    @Override
+    public double getProgress() {
+        return (compressedSize == 0) ? 1 : Math.min(1, (double)compressedInput.getBytesRead() / compressedSize);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return closed;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.minnn.outputconverter.ParsedRead;
+
+import java.util.*;
+
+/**
+ * Comparator that orders reads by values of specified groups; priority of groups is in descending order.
+ * Reads with wildcards in any group are moved to the end.
+ */
+final class ParsedReadGroupsComparator implements Comparator<ParsedRead> {
+    private final List<String> sortGroupNames;
+
+    ParsedReadGroupsComparator(List<String> sortGroupNames) {
+        this.sortGroupNames = sortGroupNames;
+    }
+
+    @Override
+    public int compare(ParsedRead parsedRead1, ParsedRead parsedRead2) {
+        boolean firstContainsWildcards = false;
+        boolean secondContainsWildcards = false;
+        int comparisonResult = 0;
+        for (String groupName : sortGroupNames) {
+            NSequenceWithQuality read1Value = parsedRead1.getGroupValue(groupName);
+            NSequenceWithQuality read2Value = parsedRead2.getGroupValue(groupName);
+            if ((read1Value != null) && !firstContainsWildcards)
+                firstContainsWildcards = read1Value.getSequence().containsWildcards();
+            if ((read2Value != null) && !secondContainsWildcards)
+                secondContainsWildcards = read2Value.getSequence().containsWildcards();
+
+            if (comparisonResult == 0) {
+                if ((read1Value == null) && (read2Value != null))
+                    comparisonResult = -1;
+                else if ((read1Value != null) && (read2Value == null))
+                    comparisonResult = 1;
+                else if (read1Value != null)
+                    comparisonResult = read1Value.getSequence().compareTo(read2Value.getSequence());
+            }
+
+            if (firstContainsWildcards && secondContainsWildcards && (comparisonResult != 0))
+                return comparisonResult;
+        }
+        if (firstContainsWildcards && !secondContainsWildcards)
+            return 1;
+        else if (!firstContainsWildcards && secondContainsWildcards)
+            return -1;
+        return comparisonResult;
+    }
+}
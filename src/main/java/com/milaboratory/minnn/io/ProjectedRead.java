@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.minnn.outputconverter.ParsedRead;
+
+import java.util.Map;
+
+/**
+ * Values of the selected groups of the read; it is returned by the port from MifReader.readGroups().
+ */
+public final class ProjectedRead {
+    private final Map<String, Integer> groupIndexes;
+    private final NSequenceWithQuality[] groupValues;
+
+    ProjectedRead(Map<String, Integer> groupIndexes, NSequenceWithQuality[] groupValues) {
+        this.groupIndexes = groupIndexes;
+        this.groupValues = groupValues;
+    }
+
+    ProjectedRead(Map<String, Integer> groupIndexes, ParsedRead parsedRead) {
+        this.groupIndexes = groupIndexes;
+        this.groupValues = new NSequenceWithQuality[groupIndexes.size()];
+        for (Map.Entry<String, Integer> groupIndex : groupIndexes.entrySet())
+            groupValues[groupIndex.getValue()] = parsedRead.getGroupValue(groupIndex.getKey());
+    }
+
+    public NSequenceWithQuality getGroupValue(String groupName) {
+        Integer groupIndex = groupIndexes.get(groupName);
+        if (groupIndex == null)
+            throw new IllegalArgumentException("Group " + groupName + " was not requested when reading the file; "
+                    + "requested groups: " + groupIndexes.keySet());
+        return groupValues[groupIndex];
+    }
+}
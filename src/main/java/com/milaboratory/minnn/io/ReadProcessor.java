@@ -31,7 +31,6 @@ package com.milaboratory.minnn.io;
 import cc.redberry.pipe.*;
 import cc.redberry.pipe.blocks.Merger;
 import cc.redberry.pipe.blocks.ParallelProcessor;
-import cc.redberry.pipe.util.Chunk;
 import cc.redberry.pipe.util.OrderedOutputPort;
 import com.milaboratory.cli.PipelineConfiguration;
 import com.milaboratory.core.io.sequence.*;
@@ -41,30 +40,44 @@ import com.milaboratory.core.sequence.*;
 import com.milaboratory.minnn.cli.DescriptionGroups;
 import com.milaboratory.minnn.outputconverter.*;
 import com.milaboratory.minnn.pattern.*;
+import com.milaboratory.minnn.util.AdaptivePortLimits;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.SmartProgressReporter;
+import com.milaboratory.util.Sorter;
+import com.milaboratory.util.TempFileManager;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import static com.milaboratory.minnn.cli.CliUtils.floatFormat;
-import static com.milaboratory.minnn.cli.Defaults.BUILTIN_READ_GROUPS_NUM;
+import static com.milaboratory.minnn.cli.Defaults.*;
 import static com.milaboratory.minnn.io.MinnnDataFormat.*;
 import static com.milaboratory.minnn.io.ReportWriter.*;
+import static com.milaboratory.minnn.util.AdaptivePortLimits.LEARNED_PORT_LIMITS_JSON_KEY;
+import static com.milaboratory.minnn.util.MemoryStatistics.*;
 import static com.milaboratory.minnn.util.MinnnVersionInfo.getShortestVersionString;
 import static com.milaboratory.minnn.util.SystemUtils.exitWithError;
 import static com.milaboratory.util.FormatUtils.nanoTimeToString;
 import static java.lang.Double.NaN;
 
 public final class ReadProcessor {
+    private static final int READS_BATCH_SIZE = 4 * 64;
+    private static final int BATCHES_BUFFER_SIZE = 4 * 16;
     private final PipelineConfiguration pipelineConfiguration;
     private final List<String> inputFileNames;
     private final String outputFileName;
     private final String notMatchedOutputFileName;
+    private final int outputShards;
+    private final List<String> shardGroups;
+    private final List<String> sortGroups;
+    private final int sortChunkSize;
     private final Pattern pattern;
     private final String patternQuery;
     private final int outputNumberOfTargets;
@@ -72,17 +85,24 @@ public final class ReadProcessor {
     private final boolean fairSorting;
     private final long inputReadsLimit;
     private final int threads;
+    private final int decompressionThreads;
     private final String reportFileName;
     private final String jsonReportFileName;
     private final MinnnDataFormat inputFormat;
     private final DescriptionGroups descriptionGroups;
+    private final AnchorPrefilter prefilter;
     private final AtomicLong totalReads = new AtomicLong(0);
+    private final LongAdder prefilterRejectedReads = new LongAdder();
+    private final LongAdder notSwappedBestMatches = new LongAdder();
+    private final LongAdder swappedBestMatches = new LongAdder();
+    private final LongAdder parsingAllocatedBytes = new LongAdder();
 
     public ReadProcessor(PipelineConfiguration pipelineConfiguration, List<String> inputFileNames,
-                         String outputFileName, String notMatchedOutputFileName, Pattern pattern, String patternQuery,
-                         boolean orientedReads, boolean fairSorting, long inputReadsLimit, int threads,
-                         String reportFileName, String jsonReportFileName, MinnnDataFormat inputFormat,
-                         DescriptionGroups descriptionGroups) {
+                         String outputFileName, String notMatchedOutputFileName, int outputShards,
+                         List<String> shardGroups, List<String> sortGroups, int sortChunkSize, Pattern pattern,
+                         String patternQuery, boolean orientedReads, boolean fairSorting, long inputReadsLimit,
+                         int threads, int decompressionThreads, String reportFileName, String jsonReportFileName,
+                         MinnnDataFormat inputFormat, DescriptionGroups descriptionGroups) {
         if ((inputFormat == MIF) && (inputFileNames.size() > 1))
             throw exitWithError("Mif data format uses single file; specified " + inputFileNames.size()
                     + " input files!");
@@ -90,6 +110,10 @@ public final class ReadProcessor {
         this.inputFileNames = inputFileNames;
         this.outputFileName = outputFileName;
         this.notMatchedOutputFileName = notMatchedOutputFileName;
+        this.outputShards = outputShards;
+        this.shardGroups = shardGroups;
+        this.sortGroups = sortGroups;
+        this.sortChunkSize = (sortChunkSize == -1) ? estimateSortChunkSize() : sortChunkSize;
         this.pattern = pattern;
         this.patternQuery = patternQuery;
         this.outputNumberOfTargets = calculateOutputNumberOfTargets();
@@ -97,35 +121,50 @@ public final class ReadProcessor {
         this.fairSorting = fairSorting;
         this.inputReadsLimit = inputReadsLimit;
         this.threads = threads;
+        this.decompressionThreads = decompressionThreads;
         this.reportFileName = reportFileName;
         this.jsonReportFileName = jsonReportFileName;
         this.inputFormat = inputFormat;
         this.descriptionGroups = descriptionGroups;
+        this.prefilter = AnchorPrefilter.compile(pattern);
     }
 
     public void processReadsParallel() {
         long startTime = System.currentTimeMillis();
+        long startGcCount = getGcCount();
+        long startGcTime = getGcTime();
         long matchedReads = 0;
-        try (IndexedSequenceReader<?> reader = createReader();
-             MifWriter writer = Objects.requireNonNull(createWriter(false));
+        long[] shardMatchedReads = null;
+        try (BatchedSequenceReader<?> reader = createReader();
+             MifWriter writer = (outputShards > 1) ? null : Objects.requireNonNull(createWriter(false));
+             ShardedMifWriter shardedWriter = (outputShards > 1) ? createShardedWriter() : null;
              MifWriter mismatchedReadsWriter = createWriter(true)) {
             SmartProgressReporter.startProgressReport("Parsing", reader, System.err);
-            Merger<Chunk<IndexedSequenceRead>> bufferedReaderPort = CUtils.buffered(CUtils.chunked(reader,
-                    4 * 64), 4 * 16);
-            OutputPort<Chunk<ParsedRead>> parsedReadsPort = new ParallelProcessor<>(bufferedReaderPort,
-                    CUtils.chunked(new ReadParserProcessor(orientedReads)), threads);
-            OrderedOutputPort<ParsedRead> orderedReadsPort = new OrderedOutputPort<>(CUtils.unchunked(parsedReadsPort),
-                    ParsedRead::getOutputPortId);
-            for (ParsedRead parsedRead : CUtils.it(orderedReadsPort)) {
-                if (parsedRead.getBestMatch() != null) {
+            Merger<SequenceReadsBatch> bufferedReaderPort = CUtils.buffered(reader, BATCHES_BUFFER_SIZE);
+            OutputPort<ParsedReadsBatch> parsedReadsPort = new ParallelProcessor<>(bufferedReaderPort,
+                    new ReadParserProcessor(orientedReads), threads);
+            OrderedOutputPort<ParsedReadsBatch> orderedBatchesPort = new OrderedOutputPort<>(parsedReadsPort,
+                    batch -> batch.batchIndex);
+            OutputPort<ParsedRead> matchedReadsPort = new MatchedReadsPort(orderedBatchesPort,
+                    mismatchedReadsWriter);
+            if (sortGroups.size() > 0)
+                matchedReadsPort = Sorter.sort(matchedReadsPort, new ParsedReadGroupsComparator(sortGroups),
+                        sortChunkSize, new ParsedReadObjectSerializer(createOutputHeader(true).getGroupEdges()),
+                        createTmpFile());
+            for (ParsedRead parsedRead : CUtils.it(matchedReadsPort)) {
+                if (shardedWriter != null)
+                    shardedWriter.write(parsedRead);
+                else
                     writer.write(parsedRead);
-                    matchedReads++;
-                } else if (mismatchedReadsWriter != null)
-                    mismatchedReadsWriter.write(parsedRead);
+                matchedReads++;
             }
             reader.close();
             long originalNumberOfReads = (inputFormat == MIF) ? reader.getOriginalNumberOfReads() : totalReads.get();
-            writer.setOriginalNumberOfReads(originalNumberOfReads);
+            if (shardedWriter != null) {
+                shardedWriter.setOriginalNumberOfReads(originalNumberOfReads);
+                shardMatchedReads = shardedWriter.getWrittenReads();
+            } else
+                writer.setOriginalNumberOfReads(originalNumberOfReads);
             if (mismatchedReadsWriter != null)
                 mismatchedReadsWriter.setOriginalNumberOfReads(originalNumberOfReads);
         } catch (IOException e) {
@@ -150,42 +189,92 @@ public final class ReadProcessor {
         }
         if (outputFileName == null)
             reportFileHeader.append("Output is to stdout\n");
+        else if (outputShards > 1)
+            reportFileHeader.append("Output file names: ").append(ShardedMifWriter.getShardFileName(
+                    outputFileName, 0)).append(" ... ").append(ShardedMifWriter.getShardFileName(outputFileName,
+                    outputShards - 1)).append(" (").append(outputShards).append(" shards by groups ")
+                    .append(shardGroups).append(")\n");
         else
             reportFileHeader.append("Output file name: ").append(outputFileName).append('\n');
         if (notMatchedOutputFileName != null)
             reportFileHeader.append("Output file for not matched reads: ").append(notMatchedOutputFileName)
                     .append('\n');
         reportFileHeader.append("Pattern: ").append(patternQuery).append('\n');
+        if (sortGroups.size() > 0)
+            reportFileHeader.append("Sorted groups: ").append(sortGroups).append('\n');
 
         long elapsedTime = System.currentTimeMillis() - startTime;
         report.append("\nProcessing time: ").append(nanoTimeToString(elapsedTime * 1000000)).append('\n');
         float percent = (totalReads.get() == 0) ? 0 : (float)matchedReads / totalReads.get() * 100;
         report.append("Processed ").append(totalReads).append(" reads, matched ").append(matchedReads)
                 .append(" reads (").append(floatFormat.format(percent)).append("%)\n");
+        float prefilterPercent = (totalReads.get() == 0) ? 0
+                : (float)prefilterRejectedReads.sum() / totalReads.get() * 100;
+        if (prefilter != null)
+            report.append("Prefilter rejected ").append(prefilterRejectedReads.sum()).append(" reads (")
+                    .append(floatFormat.format(prefilterPercent)).append("%) without full pattern matching\n");
+        if (shardMatchedReads != null)
+            report.append("Matched reads in shards: ").append(Arrays.toString(shardMatchedReads)).append('\n');
+        long gcCount = getGcCount() - startGcCount;
+        long gcTime = getGcTime() - startGcTime;
+        float gcTimePercent = (elapsedTime == 0) ? 0 : (float)gcTime / elapsedTime * 100;
+        long allocatedBytes = parsingAllocatedBytes.sum();
+        long allocatedBytesPerRead = (totalReads.get() == 0) ? 0 : allocatedBytes / totalReads.get();
+        if (allocatedBytes > 0)
+            report.append("Memory allocated by parsing threads: ").append(allocatedBytes / (1024 * 1024))
+                    .append(" MB (").append(allocatedBytesPerRead).append(" bytes per read)\n");
+        List<LinkedHashMap<String, Object>> learnedPortLimits = AdaptivePortLimits.isEnabled()
+                ? AdaptivePortLimits.learnedLimits() : null;
+        if (learnedPortLimits != null) {
+            report.append("Port limits of unfair sorter:\n");
+            for (LinkedHashMap<String, Object> portLimit : learnedPortLimits) {
+                report.append("  ").append(portLimit.get("pattern")).append(": ").append(portLimit.get("portLimit"))
+                        .append(" (default ").append(portLimit.get("defaultPortLimit"));
+                report.append(Boolean.TRUE.equals(portLimit.get("pinned")) ? ", pinned)\n" : ")\n");
+            }
+        }
+        report.append("Garbage collections: ").append(gcCount).append(", GC time: ")
+                .append(nanoTimeToString(gcTime * 1000000)).append(" (").append(floatFormat.format(gcTimePercent))
+                .append("% of processing time)\n");
 
         jsonReportData.put("version", getShortestVersionString());
         jsonReportData.put("inputFileNames", inputFileNames);
         jsonReportData.put("outputFileName", outputFileName);
         jsonReportData.put("notMatchedOutputFileName", notMatchedOutputFileName);
+        jsonReportData.put("outputShards", outputShards);
+        jsonReportData.put("shardGroups", shardGroups);
+        jsonReportData.put("sortGroups", sortGroups);
+        if (sortGroups.size() > 0)
+            jsonReportData.put("sortChunkSize", sortChunkSize);
         jsonReportData.put("patternQuery", patternQuery);
         jsonReportData.put("pattern", pattern.toString());
         jsonReportData.put("elapsedTime", elapsedTime);
         jsonReportData.put("matchedReads", matchedReads);
         jsonReportData.put("totalReads", totalReads.get());
+        jsonReportData.put("prefilterEnabled", prefilter != null);
+        jsonReportData.put("prefilterRejectedReads", prefilterRejectedReads.sum());
+        jsonReportData.put("prefilterRejectedPercent", prefilterPercent);
+        jsonReportData.put("shardMatchedReads", shardMatchedReads);
+        jsonReportData.put("parsingAllocatedBytes", allocatedBytes);
+        jsonReportData.put("parsingAllocatedBytesPerRead", allocatedBytesPerRead);
+        if (learnedPortLimits != null)
+            jsonReportData.put(LEARNED_PORT_LIMITS_JSON_KEY, learnedPortLimits);
+        jsonReportData.put("gcCount", gcCount);
+        jsonReportData.put("gcTime", gcTime);
 
         humanReadableReport(reportFileName, reportFileHeader.toString(), report.toString());
         jsonReport(jsonReportFileName, jsonReportData);
     }
 
-    private IndexedSequenceReader createReader() throws IOException {
-        IndexedSequenceReader reader;
+    private BatchedSequenceReader createReader() throws IOException {
+        BatchedSequenceReader reader;
         int numberOfTargets;
         switch (inputFormat) {
             case FASTQ:
                 switch (inputFileNames.size()) {
                     case 0:
                         numberOfTargets = 1;
-                        reader = new IndexedSequenceReader<>(new SingleFastqReader(System.in), t -> t);
+                        reader = new BatchedSequenceReader<>(new SingleFastqReader(System.in), t -> t);
                         break;
                     case 1:
                         numberOfTargets = 1;
@@ -193,22 +282,34 @@ public final class ReadProcessor {
                         if (s[s.length - 1].equals("fasta") || s[s.length - 1].equals("fa")
                                 || ((s.length > 2) && s[s.length - 1].equals("gz")
                                     && (s[s.length - 2].equals("fasta") || s[s.length - 2].equals("fa"))))
-                            reader = new IndexedSequenceReader<>(new FastaSequenceReaderWrapper(new FastaReader<>(
+                            reader = new BatchedSequenceReader<>(new FastaSequenceReaderWrapper(new FastaReader<>(
                                     inputFileNames.get(0), NucleotideSequence.ALPHABET)), t -> t);
+                        else if (useParallelDecompression())
+                            reader = new BatchedSequenceReader<>(new LockstepFastqReader(inputFileNames,
+                                    decompressionThreads), t -> t);
                         else
-                            reader = new IndexedSequenceReader<>(new SingleFastqReader(inputFileNames.get(0)), t -> t);
+                            reader = new BatchedSequenceReader<>(new SingleFastqReader(inputFileNames.get(0)), t -> t);
                         break;
                     case 2:
                         numberOfTargets = 2;
-                        reader = new IndexedSequenceReader<>(new PairedFastqReader(inputFileNames.get(0),
-                                inputFileNames.get(1)), t -> t);
+                        if (useParallelDecompression())
+                            reader = new BatchedSequenceReader<>(new LockstepFastqReader(inputFileNames,
+                                    decompressionThreads), t -> t);
+                        else
+                            reader = new BatchedSequenceReader<>(new PairedFastqReader(inputFileNames.get(0),
+                                    inputFileNames.get(1)), t -> t);
                         break;
                     default:
                         numberOfTargets = inputFileNames.size();
-                        SingleFastqReader[] readers = new SingleFastqReader[inputFileNames.size()];
-                        for (int i = 0; i < inputFileNames.size(); i++)
-                            readers[i] = new SingleFastqReader(inputFileNames.get(i));
-                        reader = new IndexedSequenceReader<>(new MultiReader(readers), t -> t);
+                        if (useParallelDecompression())
+                            reader = new BatchedSequenceReader<>(new LockstepFastqReader(inputFileNames,
+                                    decompressionThreads), t -> t);
+                        else {
+                            SingleFastqReader[] readers = new SingleFastqReader[inputFileNames.size()];
+                            for (int i = 0; i < inputFileNames.size(); i++)
+                                readers[i] = new SingleFastqReader(inputFileNames.get(i));
+                            reader = new BatchedSequenceReader<>(new MultiReader(readers), t -> t);
+                        }
                 }
                 break;
             case MIF:
@@ -217,7 +318,7 @@ public final class ReadProcessor {
                 if (inputReadsLimit > 0)
                     mifReader.setParsedReadsLimit(inputReadsLimit);
                 numberOfTargets = mifReader.getNumberOfTargets();
-                reader = new IndexedSequenceReader<>(mifReader, ParsedRead::getOriginalRead);
+                reader = new BatchedSequenceReader<>(mifReader, ParsedRead::getOriginalRead);
                 break;
             default:
                 throw new IllegalStateException("Unknown input format: " + inputFormat);
@@ -230,14 +331,38 @@ public final class ReadProcessor {
         return reader;
     }
 
-    private MifWriter createWriter(boolean mismatchedReads) throws IOException {
+    /**
+     * Multi-threaded decompression is used if it is enabled and all input files are gzipped FASTQ files.
+     *
+     * @return true if input files must be read with LockstepFastqReader
+     */
+    private boolean useParallelDecompression() throws IOException {
+        if (decompressionThreads < 1)
+            return false;
+        for (String inputFileName : inputFileNames)
+            if (!ParallelGzipInputStream.isGzip(new File(inputFileName)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Create header for output files.
+     *
+     * @param sorted    true if reads in this output are sorted by sortGroups; only matched reads are sorted
+     * @return          header for output files
+     */
+    private MifHeader createOutputHeader(boolean sorted) {
         ArrayList<GroupEdge> outputGroupEdges = new ArrayList<>(pattern.getGroupEdges());
         descriptionGroups.getGroupNames().forEach(groupName -> {
             outputGroupEdges.add(new GroupEdge(groupName, true));
             outputGroupEdges.add(new GroupEdge(groupName, false));
         });
-        MifHeader mifHeader = new MifHeader(pipelineConfiguration, outputNumberOfTargets, new ArrayList<>(),
-                new ArrayList<>(), outputGroupEdges);
+        return new MifHeader(pipelineConfiguration, outputNumberOfTargets, new ArrayList<>(),
+                sorted ? new ArrayList<>(sortGroups) : new ArrayList<>(), outputGroupEdges);
+    }
+
+    private MifWriter createWriter(boolean mismatchedReads) throws IOException {
+        MifHeader mifHeader = createOutputHeader(!mismatchedReads);
         if (mismatchedReads)
             return (notMatchedOutputFileName == null) ? null : new MifWriter(notMatchedOutputFileName, mifHeader);
         else
@@ -245,6 +370,20 @@ public final class ReadProcessor {
                     : new MifWriter(outputFileName, mifHeader);
     }
 
+    private ShardedMifWriter createShardedWriter() throws IOException {
+        return new ShardedMifWriter(outputFileName, createOutputHeader(true), shardGroups, outputShards);
+    }
+
+    private File createTmpFile() {
+        return TempFileManager.getTempFile((outputFileName == null)
+                ? null : Paths.get(new File(outputFileName).getAbsolutePath()).getParent());
+    }
+
+    private int estimateSortChunkSize() {
+        float chunkSize = Runtime.getRuntime().freeMemory() * DEFAULT_SORT_CHUNK_MEMORY_SHARE;
+        return (int)(Math.max(DEFAULT_SORT_MIN_CHUNK_SIZE, Math.min(DEFAULT_SORT_MAX_CHUNK_SIZE, chunkSize)));
+    }
+
     private int calculateOutputNumberOfTargets() {
         Set<String> outputGroupNames = pattern.getGroupEdges().stream().map(GroupEdge::getGroupName)
                 .collect(Collectors.toSet());
@@ -266,23 +405,76 @@ public final class ReadProcessor {
         return foundDefaultGroups;
     }
 
-    private static class IndexedSequenceRead {
-        final SequenceRead sequenceRead;
-        final long index;
+    private static class SequenceReadsBatch {
+        final long batchIndex;
+        final long firstReadIndex;
+        final SequenceRead[] reads;
 
-        IndexedSequenceRead(SequenceRead sequenceRead, long index) {
-            this.sequenceRead = sequenceRead;
-            this.index = index;
+        SequenceReadsBatch(long batchIndex, long firstReadIndex, SequenceRead[] reads) {
+            this.batchIndex = batchIndex;
+            this.firstReadIndex = firstReadIndex;
+            this.reads = reads;
         }
     }
 
-    private class IndexedSequenceReader<T> implements OutputPortCloseable<IndexedSequenceRead>, CanReportProgress {
+    private static class ParsedReadsBatch {
+        final long batchIndex;
+        final ParsedRead[] parsedReads;
+
+        ParsedReadsBatch(long batchIndex, ParsedRead[] parsedReads) {
+            this.batchIndex = batchIndex;
+            this.parsedReads = parsedReads;
+        }
+    }
+
+    /**
+     * Port that unpacks ordered batches and returns only matched reads; not matched reads are written to
+     * mismatchedReadsWriter on the way if it is not null. When output is sorted, this port is drained by Sorter,
+     * so sorted runs are built directly from parsed reads without writing and reading back an intermediate file.
+     */
+    private static class MatchedReadsPort implements OutputPort<ParsedRead> {
+        private final OutputPort<ParsedReadsBatch> batchesPort;
+        private final MifWriter mismatchedReadsWriter;
+        private ParsedRead[] currentBatch = new ParsedRead[0];
+        private int currentIndex = 0;
+
+        MatchedReadsPort(OutputPort<ParsedReadsBatch> batchesPort, MifWriter mismatchedReadsWriter) {
+            this.batchesPort = batchesPort;
+            this.mismatchedReadsWriter = mismatchedReadsWriter;
+        }
+
+        @Override
+        public ParsedRead take() {
+            while (true) {
+                while (currentIndex < currentBatch.length) {
+                    ParsedRead parsedRead = currentBatch[currentIndex++];
+                    if (parsedRead.getBestMatch() != null)
+                        return parsedRead;
+                    else if (mismatchedReadsWriter != null)
+                        mismatchedReadsWriter.write(parsedRead);
+                }
+                ParsedReadsBatch nextBatch = batchesPort.take();
+                if (nextBatch == null)
+                    return null;
+                currentBatch = nextBatch.parsedReads;
+                currentIndex = 0;
+            }
+        }
+    }
+
+    /**
+     * Ingest stage that takes reads from the inner reader in batches. Indexes are assigned once per batch, so workers
+     * receive whole batches and there is no per-read locking or atomic counter update. This port is drained only by
+     * the single thread of the buffering Merger, so take() is not synchronized.
+     */
+    private class BatchedSequenceReader<T> implements OutputPortCloseable<SequenceReadsBatch>, CanReportProgress {
         private final OutputPortCloseable<? extends T> innerReader;
         private final Function<T, SequenceRead> toSequenceRead;
         private final CanReportProgress progress;
-        private boolean finished = false;
+        private long nextBatchIndex = 0;
+        private volatile boolean finished = false;
 
-        IndexedSequenceReader(OutputPortCloseable<? extends T> innerReader, Function<T, SequenceRead> toSequenceRead) {
+        BatchedSequenceReader(OutputPortCloseable<? extends T> innerReader, Function<T, SequenceRead> toSequenceRead) {
             this.innerReader = innerReader;
             this.toSequenceRead = toSequenceRead;
             this.progress = innerReader instanceof CanReportProgress ? (CanReportProgress)innerReader : null;
@@ -295,18 +487,30 @@ public final class ReadProcessor {
         }
 
         @Override
-        public synchronized IndexedSequenceRead take() {
+        public SequenceReadsBatch take() {
             if (finished)
                 return null;
-            T t = innerReader.take();
-            if (t == null) {
+            int batchSize = (inputReadsLimit > 0)
+                    ? (int)Math.min(READS_BATCH_SIZE, inputReadsLimit - totalReads.get()) : READS_BATCH_SIZE;
+            SequenceRead[] reads = new SequenceRead[Math.max(0, batchSize)];
+            int readsInBatch = 0;
+            while (readsInBatch < batchSize) {
+                T t = innerReader.take();
+                if (t == null) {
+                    finished = true;
+                    break;
+                }
+                reads[readsInBatch++] = toSequenceRead.apply(t);
+            }
+            if (readsInBatch == 0) {
                 finished = true;
                 return null;
-            } else {
-                if (totalReads.incrementAndGet() == inputReadsLimit)
-                    finished = true;
-                return new IndexedSequenceRead(toSequenceRead.apply(t), totalReads.get() - 1);
             }
+            long firstReadIndex = totalReads.getAndAdd(readsInBatch);
+            if (firstReadIndex + readsInBatch == inputReadsLimit)
+                finished = true;
+            return new SequenceReadsBatch(nextBatchIndex++, firstReadIndex,
+                    (readsInBatch == reads.length) ? reads : Arrays.copyOf(reads, readsInBatch));
         }
 
         @Override
@@ -326,7 +530,7 @@ public final class ReadProcessor {
         }
 
         @Override
-        public synchronized boolean isFinished() {
+        public boolean isFinished() {
             return finished;
         }
 
@@ -338,7 +542,7 @@ public final class ReadProcessor {
         }
     }
 
-    private class ReadParserProcessor implements Processor<IndexedSequenceRead, ParsedRead> {
+    private class ReadParserProcessor implements Processor<SequenceReadsBatch, ParsedReadsBatch> {
         private final boolean orientedReads;
 
         ReadParserProcessor(boolean orientedReads) {
@@ -346,51 +550,116 @@ public final class ReadProcessor {
         }
 
         @Override
-        public ParsedRead process(IndexedSequenceRead input) {
-            Match bestMatch = null;
-            boolean reverseMatch = false;
-            if (orientedReads) {
-                MultiNSequenceWithQualityImpl target = new MultiNSequenceWithQualityImpl(StreamSupport.stream(
-                        input.sequenceRead.spliterator(), false).map(SingleRead::getData)
-                        .toArray(NSequenceWithQuality[]::new));
-                bestMatch = pattern.match(target).getBestMatch(fairSorting);
-            } else {
-                NSequenceWithQuality[] sequences = StreamSupport.stream(input.sequenceRead.spliterator(), false)
+        public ParsedReadsBatch process(SequenceReadsBatch input) {
+            long allocatedBytesBefore = getCurrentThreadAllocatedBytes();
+            ParsedReadsBatch parsedReadsBatch = new ParsedReadsBatch(input.batchIndex, parseReads(input.reads,
+                    input.firstReadIndex));
+            if (allocatedBytesBefore != -1)
+                parsingAllocatedBytes.add(getCurrentThreadAllocatedBytes() - allocatedBytesBefore);
+            return parsedReadsBatch;
+        }
+
+        /**
+         * Check the target with the prefilter, if the pattern has literals that can be used for prefiltering.
+         *
+         * @param target    target for matching
+         * @return          false if the pattern can't match this target, otherwise true
+         */
+        private boolean passesPrefilter(MultiNSequenceWithQuality target) {
+            return (prefilter == null) || prefilter.mayMatch(target);
+        }
+
+        /**
+         * Match all reads of the batch with batch matching API of the pattern. For not oriented reads with multiple
+         * sequences, both orientations are matched: first the orientation that more often had the best match on
+         * previous batches, then the other orientation with score of the first orientation match as lower bound.
+         *
+         * @param reads             reads of the batch
+         * @param firstReadIndex    index of the first read of the batch
+         * @return                  parsed reads
+         */
+        private ParsedRead[] parseReads(SequenceRead[] reads, long firstReadIndex) {
+            int batchSize = reads.length;
+            MultiNSequenceWithQuality[] notSwappedTargets = new MultiNSequenceWithQuality[batchSize];
+            MultiNSequenceWithQuality[] swappedTargets = new MultiNSequenceWithQuality[batchSize];
+            boolean[] canBeSwapped = new boolean[batchSize];
+            boolean swappedTargetsFound = false;
+            for (int i = 0; i < batchSize; i++) {
+                NSequenceWithQuality[] sequences = StreamSupport.stream(reads[i].spliterator(), false)
                         .map(SingleRead::getData).toArray(NSequenceWithQuality[]::new);
-                int numberOfReads = sequences.length;
-                if (numberOfReads == 1)
-                    bestMatch = pattern.match(sequences[0]).getBestMatch(fairSorting);
-                else {
+                if (orientedReads || (sequences.length == 1)) {
+                    MultiNSequenceWithQuality target = orientedReads
+                            ? new MultiNSequenceWithQualityImpl(sequences) : sequences[0];
+                    if (passesPrefilter(target))
+                        notSwappedTargets[i] = target;
+                    else
+                        prefilterRejectedReads.increment();
+                } else {
+                    canBeSwapped[i] = true;
                     NSequenceWithQuality[] sequencesWithSwap = sequences.clone();
                     sequencesWithSwap[0] = sequences[1];
                     sequencesWithSwap[1] = sequences[0];
                     MultiNSequenceWithQualityImpl notSwappedTarget = new MultiNSequenceWithQualityImpl(sequences);
                     MultiNSequenceWithQualityImpl swappedTarget = new MultiNSequenceWithQualityImpl(sequencesWithSwap);
-                    Match notSwappedMatch = pattern.match(notSwappedTarget).getBestMatch(fairSorting);
-                    Match swappedMatch = pattern.match(swappedTarget).getBestMatch(fairSorting);
-                    if (notSwappedMatch == null) {
-                        if (swappedMatch != null) {
-                            bestMatch = swappedMatch;
-                            reverseMatch = true;
-                        }
-                    } else {
-                        if (swappedMatch != null) {
-                            if (swappedMatch.getScore() > notSwappedMatch.getScore()) {
-                                bestMatch = swappedMatch;
-                                reverseMatch = true;
-                            } else
-                                bestMatch = notSwappedMatch;
-                        } else
-                            bestMatch = notSwappedMatch;
+                    if (passesPrefilter(notSwappedTarget))
+                        notSwappedTargets[i] = notSwappedTarget;
+                    if (passesPrefilter(swappedTarget)) {
+                        swappedTargets[i] = swappedTarget;
+                        swappedTargetsFound = true;
                     }
+                    if ((notSwappedTargets[i] == null) && (swappedTargets[i] == null))
+                        prefilterRejectedReads.increment();
+                }
+            }
+
+            MatchIntermediate[] notSwappedMatches;
+            MatchIntermediate[] swappedMatches;
+            if (!swappedTargetsFound) {
+                notSwappedMatches = pattern.matchBatch(notSwappedTargets, fairSorting);
+                swappedMatches = new MatchIntermediate[batchSize];
+            } else if (swappedBestMatches.sum() > notSwappedBestMatches.sum()) {
+                // if scores are equal, not swapped match wins, so it needs the same score as swapped match
+                swappedMatches = pattern.matchBatch(swappedTargets, fairSorting);
+                notSwappedMatches = pattern.matchBatch(notSwappedTargets, fairSorting,
+                        minScores(swappedMatches, 0));
+            } else {
+                // swapped match must have strictly better score than not swapped match
+                notSwappedMatches = pattern.matchBatch(notSwappedTargets, fairSorting);
+                swappedMatches = pattern.matchBatch(swappedTargets, fairSorting, minScores(notSwappedMatches, 1));
+            }
+
+            ParsedRead[] parsedReads = new ParsedRead[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                Match notSwappedMatch = notSwappedMatches[i];
+                Match swappedMatch = swappedMatches[i];
+                boolean reverseMatch = (swappedMatch != null)
+                        && ((notSwappedMatch == null) || (swappedMatch.getScore() > notSwappedMatch.getScore()));
+                Match bestMatch = reverseMatch ? swappedMatch : notSwappedMatch;
+                if (canBeSwapped[i]) {
+                    if (reverseMatch)
+                        swappedBestMatches.increment();
+                    else if (bestMatch != null)
+                        notSwappedBestMatches.increment();
                 }
+                parsedReads[i] = createParsedRead(reads[i], reverseMatch, bestMatch, firstReadIndex + i);
             }
+            return parsedReads;
+        }
+
+        private long[] minScores(MatchIntermediate[] matches, long increment) {
+            long[] minScores = new long[matches.length];
+            for (int i = 0; i < matches.length; i++)
+                minScores[i] = (matches[i] == null) ? Long.MIN_VALUE : matches[i].getScore() + increment;
+            return minScores;
+        }
 
+        private ParsedRead createParsedRead(SequenceRead sequenceRead, boolean reverseMatch, Match bestMatch,
+                                            long readIndex) {
             int numberOfTargetsOverride = pattern.getConfiguration().defaultGroupsOverride
                     ? outputNumberOfTargets : -1;
-            return new ParsedRead(input.sequenceRead, reverseMatch, numberOfTargetsOverride,
-                    (bestMatch == null) ? null : descriptionGroups.addDescriptionGroups(bestMatch, input.sequenceRead),
-                    0, input.index);
+            return new ParsedRead(sequenceRead, reverseMatch, numberOfTargetsOverride,
+                    (bestMatch == null) ? null : descriptionGroups.addDescriptionGroups(bestMatch, sequenceRead),
+                    0, readIndex);
         }
     }
 }
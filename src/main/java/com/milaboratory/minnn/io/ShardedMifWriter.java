@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.minnn.outputconverter.ParsedRead;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Writer that partitions parsed reads to multiple MIF files (shards) by hash of values of specified groups.
+ * All reads with the same values of these groups are written to the same shard, so shards can be processed
+ * independently by actions that work with barcodes.
+ */
+public final class ShardedMifWriter implements AutoCloseable {
+    // used instead of group value hash if the group is not matched in the read
+    private static final int MISSING_GROUP_HASH = 0x5bd1e995;
+    private final List<String> shardGroups;
+    private final MifWriter[] writers;
+    private final long[] writtenReads;
+
+    /**
+     * Create writers for all shards.
+     *
+     * @param outputFileName    output file name; shard file names are created from it with getShardFileName()
+     * @param mifHeader         header for output files; shard information will be added to it
+     * @param shardGroups       group names which values are used to calculate shard index
+     * @param numberOfShards    number of shards
+     */
+    public ShardedMifWriter(String outputFileName, MifHeader mifHeader, List<String> shardGroups, int numberOfShards)
+            throws IOException {
+        this.shardGroups = shardGroups;
+        this.writers = new MifWriter[numberOfShards];
+        this.writtenReads = new long[numberOfShards];
+        try {
+            for (int i = 0; i < numberOfShards; i++)
+                writers[i] = new MifWriter(getShardFileName(outputFileName, i), new MifHeader(
+                        mifHeader.getPipelineConfiguration(), mifHeader.getNumberOfTargets(),
+                        mifHeader.getCorrectedGroups(), mifHeader.getSortedGroups(), mifHeader.getGroupEdges(),
+                        new ArrayList<>(shardGroups), i, numberOfShards));
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get file name for the shard: shard index is inserted before .mif extension.
+     *
+     * @param outputFileName    output file name specified by user
+     * @param shardIndex        shard index, starting from 0
+     * @return                  file name for the shard
+     */
+    public static String getShardFileName(String outputFileName, int shardIndex) {
+        String prefix = ((outputFileName.length() > 4)
+                && outputFileName.substring(outputFileName.length() - 4).equals(".mif"))
+                ? outputFileName.substring(0, outputFileName.length() - 4) : outputFileName;
+        return prefix + "_shard" + shardIndex + ".mif";
+    }
+
+    /**
+     * Calculate shard index for the parsed read. Hash is calculated from string representation of group values,
+     * so shard indexes don't depend on JVM and can be reproduced on different machines. Groups that are not matched
+     * in the read (optional groups) are hashed as a fixed marker, so all such reads with the same values of other
+     * groups get into the same shard.
+     *
+     * @param parsedRead        parsed read
+     * @param shardGroups       group names which values are used to calculate shard index
+     * @param numberOfShards    number of shards
+     * @return                  shard index
+     */
+    public static int getShardIndex(ParsedRead parsedRead, List<String> shardGroups, int numberOfShards) {
+        int hash = 1;
+        for (String groupName : shardGroups) {
+            NSequenceWithQuality groupValue = parsedRead.getGroupValue(groupName);
+            hash = 31 * hash + ((groupValue == null) ? MISSING_GROUP_HASH
+                    : groupValue.getSequence().toString().hashCode());
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return Math.floorMod(hash, numberOfShards);
+    }
+
+    public void write(ParsedRead parsedRead) {
+        int shardIndex = getShardIndex(parsedRead, shardGroups, writers.length);
+        writers[shardIndex].write(parsedRead);
+        writtenReads[shardIndex]++;
+    }
+
+    /**
+     * Original number of reads is the same for all shards: it is the number of reads in extract input,
+     * as for files created by demultiplex action.
+     *
+     * @param originalNumberOfReads number of reads in extract input
+     */
+    public void setOriginalNumberOfReads(long originalNumberOfReads) {
+        for (MifWriter writer : writers)
+            writer.setOriginalNumberOfReads(originalNumberOfReads);
+    }
+
+    public long[] getWrittenReads() {
+        return writtenReads.clone();
+    }
+
+    @Override
+    public void close() {
+        for (MifWriter writer : writers)
+            if (writer != null)
+                writer.close();
+    }
+}
@@ -32,7 +32,6 @@ import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.OutputPortCloseable;
 import com.milaboratory.cli.PipelineConfiguration;
 import com.milaboratory.core.io.CompressionType;
-import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.minnn.outputconverter.ParsedRead;
 import com.milaboratory.minnn.outputconverter.ParsedReadObjectSerializer;
 import com.milaboratory.util.SmartProgressReporter;
@@ -60,11 +59,12 @@ public final class SorterIO {
     private final String reportFileName;
     private final String jsonReportFileName;
     private final File tmpFile;
+    private final boolean readIdIndex;
 
     public SorterIO(
             PipelineConfiguration pipelineConfiguration, String inputFileName, String outputFileName,
             List<String> sortGroupNames, int chunkSize, String reportFileName, String jsonReportFileName,
-            String tmpFile) {
+            String tmpFile, boolean readIdIndex) {
         this.pipelineConfiguration = pipelineConfiguration;
         this.inputFileName = inputFileName;
         this.outputFileName = outputFileName;
@@ -74,6 +74,7 @@ public final class SorterIO {
         this.jsonReportFileName = jsonReportFileName;
         this.tmpFile = (tmpFile != null) ? new File(tmpFile) : TempFileManager.getTempFile((outputFileName == null)
                 ? null : Paths.get(new File(outputFileName).getAbsolutePath()).getParent());
+        this.readIdIndex = readIdIndex;
     }
 
     public void go() {
@@ -83,7 +84,8 @@ public final class SorterIO {
              MifWriter writer = createWriter(reader.getHeader())) {
             validateInputGroups(reader, sortGroupNames, true, "--groups");
             SmartProgressReporter.startProgressReport("Reading", reader, System.err);
-            OutputPortCloseable<ParsedRead> sorted = Sorter.sort(reader, new ParsedReadComparator(), chunkSize,
+            OutputPortCloseable<ParsedRead> sorted = Sorter.sort(reader,
+                    new ParsedReadGroupsComparator(sortGroupNames), chunkSize,
                     new ParsedReadObjectSerializer(reader.getGroupEdges()), tmpFile);
             SmartProgressReporter.startProgressReport("Writing", writer, System.err);
             for (ParsedRead parsedRead : CUtils.it(sorted)) {
@@ -131,14 +133,24 @@ public final class SorterIO {
     }
 
     private MifReader createReader() throws IOException {
-        return (inputFileName == null) ? new MifReader(System.in) : new MifReader(inputFileName);
+        MifReader reader = (inputFileName == null) ? new MifReader(System.in) : new MifReader(inputFileName);
+        reader.setLazyDecoding(true);
+        return reader;
     }
 
     private MifWriter createWriter(MifHeader inputHeader) throws IOException {
         MifHeader outputHeader = new MifHeader(pipelineConfiguration, inputHeader.getNumberOfTargets(),
-                inputHeader.getCorrectedGroups(), new ArrayList<>(sortGroupNames), inputHeader.getGroupEdges());
-        return (outputFileName == null) ? new MifWriter(new SystemOutStream(), outputHeader)
-                : new MifWriter(outputFileName, outputHeader);
+                inputHeader.getCorrectedGroups(), new ArrayList<>(sortGroupNames), inputHeader.getGroupEdges(),
+                inputHeader.getShardGroups(), inputHeader.getShardIndex(), inputHeader.getNumberOfShards());
+        if (outputFileName == null)
+            return new MifWriter(new SystemOutStream(), outputHeader);
+        else {
+            MifWriter writer = new MifWriter(outputFileName, outputHeader);
+            // sorted files are used as input for consensus, which can take original reads by read id index
+            if (readIdIndex)
+                writer.enableReadIdIndex();
+            return writer;
+        }
     }
 
     private int estimateChunkSize() {
@@ -152,39 +164,4 @@ public final class SorterIO {
         }
         return (int)(Math.max(DEFAULT_SORT_MIN_CHUNK_SIZE, Math.min(DEFAULT_SORT_MAX_CHUNK_SIZE, chunkSize)));
     }
-
-    // comparator that moves reads with wildcards in any group to the end
-    private class ParsedReadComparator implements Comparator<ParsedRead> {
-        @Override
-        public int compare(ParsedRead parsedRead1, ParsedRead parsedRead2) {
-            boolean firstContainsWildcards = false;
-            boolean secondContainsWildcards = false;
-            int comparisonResult = 0;
-            for (String groupName : sortGroupNames) {
-                NSequenceWithQuality read1Value = parsedRead1.getBestMatch().getGroupValue(groupName);
-                NSequenceWithQuality read2Value = parsedRead2.getBestMatch().getGroupValue(groupName);
-                if ((read1Value != null) && !firstContainsWildcards)
-                    firstContainsWildcards = read1Value.getSequence().containsWildcards();
-                if ((read2Value != null) && !secondContainsWildcards)
-                    secondContainsWildcards = read2Value.getSequence().containsWildcards();
-
-                if (comparisonResult == 0) {
-                    if ((read1Value == null) && (read2Value != null))
-                        comparisonResult = -1;
-                    else if ((read1Value != null) && (read2Value == null))
-                        comparisonResult = 1;
-                    else if (read1Value != null)
-                        comparisonResult = read1Value.getSequence().compareTo(read2Value.getSequence());
-                }
-
-                if (firstContainsWildcards && secondContainsWildcards && (comparisonResult != 0))
-                    return comparisonResult;
-            }
-            if (firstContainsWildcards && !secondContainsWildcards)
-                return 1;
-            else if (!firstContainsWildcards && secondContainsWildcards)
-                return -1;
-            return comparisonResult;
-        }
-    }
 }
@@ -32,8 +32,6 @@ import cc.redberry.pipe.CUtils;
 import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.core.sequence.SequenceQuality;
-import com.milaboratory.minnn.outputconverter.MatchedGroup;
-import com.milaboratory.minnn.outputconverter.ParsedRead;
 import com.milaboratory.util.SmartProgressReporter;
 
 import java.io.*;
@@ -90,11 +88,9 @@ public final class StatGroupsIO {
             if (inputReadsLimit > 0)
                 reader.setParsedReadsLimit(inputReadsLimit);
             SmartProgressReporter.startProgressReport("Processing", reader, System.err);
-            for (ParsedRead parsedRead : CUtils.it(reader)) {
-                Map<String, MatchedGroup> matchedGroups = parsedRead.getGroups().stream()
-                        .collect(Collectors.toMap(MatchedGroup::getGroupName, mg -> mg));
+            for (ProjectedRead projectedRead : CUtils.it(reader.readGroups(groupList))) {
                 List<NSequenceWithQuality> groupValues = groupList.stream()
-                        .map(groupName -> matchedGroups.get(groupName).getValue()).collect(Collectors.toList());
+                        .map(projectedRead::getGroupValue).collect(Collectors.toList());
                 if (groupValues.stream().allMatch(this::checkQuality)) {
                     StatGroupsKey currentKey = new StatGroupsKey(groupValues);
                     StatGroupsValue currentValue = statGroups.get(currentKey);
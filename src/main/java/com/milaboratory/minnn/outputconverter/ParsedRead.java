@@ -45,16 +45,21 @@ import static com.milaboratory.minnn.outputconverter.GroupUtils.*;
 
 @Serializable(by = IO.ParsedReadSerializer.class)
 public final class ParsedRead {
-    private final SequenceRead originalRead;
-    private final boolean reverseMatch;
+    // these fields are not final only because lazy parsed reads fill them on decoding
+    private SequenceRead originalRead;
+    private boolean reverseMatch;
     /* positive value if there was default groups override in the pattern, otherwise -1
      * (number of targets can be determined by originalRead) */
-    private final int numberOfTargetsOverride;
-    private final Match bestMatch;
+    private int numberOfTargetsOverride;
+    private Match bestMatch;
     /* number of reads used to calculate this consensus: used for consensuses and for reads that contain consensuses
      * as groups (--consensuses-to-separate-groups argument in consensus); in other cases it must be 0 */
-    private final int consensusReads;
+    private int consensusReads;
     private long outputPortId;
+    // serialized record of lazy parsed read, otherwise null; it is kept after decoding to write the read without
+    // serializing it again
+    private SerializedRecord serializedRecord = null;
+    private volatile boolean decoded = true;
     private Map<String, MatchedGroup> matchedGroups = null;
     private HashMap<String, ArrayList<GroupEdgePosition>> innerGroupEdgesCache = null;
     private HashMap<String, HashMap<String, Range>> innerRangesCache = null;
@@ -78,15 +83,64 @@ public final class ParsedRead {
         this.outputPortId = outputPortId;
     }
 
+    /**
+     * Create lazy parsed read: the record is decoded on the first access to the data that is not available
+     * from the serialized record, and the record is written without serializing it again if the read is written
+     * to the output with the same group edges.
+     *
+     * @param serializedRecord  serialized record
+     * @return                  lazy parsed read
+     */
+    public static ParsedRead lazy(SerializedRecord serializedRecord) {
+        ParsedRead parsedRead = new ParsedRead(null, false, -1, null, 0);
+        parsedRead.serializedRecord = serializedRecord;
+        parsedRead.decoded = false;
+        return parsedRead;
+    }
+
+    private void decode() {
+        if (!decoded)
+            synchronized (this) {
+                if (!decoded) {
+                    ParsedRead decodedRead = serializedRecord.decode();
+                    originalRead = decodedRead.originalRead;
+                    reverseMatch = decodedRead.reverseMatch;
+                    numberOfTargetsOverride = decodedRead.numberOfTargetsOverride;
+                    bestMatch = decodedRead.bestMatch;
+                    consensusReads = decodedRead.consensusReads;
+                    decoded = true;
+                }
+            }
+    }
+
+    /**
+     * @return serialized record if this is lazy parsed read, otherwise null
+     */
+    public SerializedRecord getSerializedRecord() {
+        return serializedRecord;
+    }
+
     public SequenceRead getOriginalRead() {
+        decode();
         return originalRead;
     }
 
+    /**
+     * Get id of the original read; for lazy parsed reads it doesn't decode the record.
+     *
+     * @return id of the original read
+     */
+    public long getOriginalReadId() {
+        return decoded ? originalRead.getId() : serializedRecord.getReadId();
+    }
+
     public boolean isReverseMatch() {
+        decode();
         return reverseMatch;
     }
 
     public boolean isNumberOfTargetsOverride() {
+        decode();
         return numberOfTargetsOverride > 0;
     }
 
@@ -95,18 +149,22 @@ public final class ParsedRead {
     }
 
     public int getRawNumberOfTargetsOverride() {
+        decode();
         return numberOfTargetsOverride;
     }
 
     public Match getBestMatch() {
+        decode();
         return bestMatch;
     }
 
     public int getConsensusReads() {
+        decode();
         return consensusReads;
     }
 
     public ArrayList<MatchedGroup> getGroups() {
+        decode();
         if (bestMatch == null)
             return new ArrayList<>();
         else
@@ -114,6 +172,7 @@ public final class ParsedRead {
     }
 
     public ArrayList<MatchedGroupEdge> getMatchedGroupEdges() {
+        decode();
         if (bestMatch == null)
             return new ArrayList<>();
         else
@@ -121,14 +180,22 @@ public final class ParsedRead {
     }
 
     public long getBestMatchScore() {
+        decode();
         return (bestMatch == null) ? Long.MIN_VALUE : bestMatch.getScore();
     }
 
     public NSequenceWithQuality getMatchTarget(byte targetId) {
+        decode();
         return Objects.requireNonNull(bestMatch).getGroupValue("R" + targetId);
     }
 
     public NSequenceWithQuality getGroupValue(String groupName) {
+        if (!decoded) {
+            NSequenceWithQuality serializedValue = serializedRecord.getGroupValue(groupName);
+            if (serializedValue != null)
+                return serializedValue;
+            decode();
+        }
         if (bestMatch == null) {
             // this is used when mif2fastq called on file with mismatched reads from extract
             if (originalDefaultGroups == null)
@@ -255,6 +322,7 @@ public final class ParsedRead {
     public ParsedRead retarget(String... groupNames) {
         if (groupNames.length == 0)
             throw new IllegalArgumentException("Basic groups for output parsed read are not specified!");
+        decode();
 
         ArrayList<MatchedGroupEdge> matchedGroupEdges = new ArrayList<>();
         HashSet<String> usedGroupNames = new HashSet<>();
@@ -294,6 +362,7 @@ public final class ParsedRead {
                                        String... groupNames) {
         if (groupNames.length == 0)
             throw new IllegalArgumentException("Basic groups for output sequence read are not specified!");
+        decode();
 
         if (defaultGroups == null)
             calculateDefaultGroups(getNumberOfTargets());
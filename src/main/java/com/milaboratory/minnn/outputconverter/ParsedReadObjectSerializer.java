@@ -50,8 +50,14 @@ public final class ParsedReadObjectSerializer implements ObjectSerializer<Parsed
     public void write(Collection<ParsedRead> data, OutputStream stream) {
         final PrimitivO out = new PrimitivO(new DataOutputStream(stream), serializersManager);
         groupEdges.forEach(out::putKnownObject);
-        for (ParsedRead parsedRead : data)
-            out.writeObject(parsedRead);
+        for (ParsedRead parsedRead : data) {
+            // lazy parsed reads from the file with the same group edges are written without serializing them again
+            SerializedRecord serializedRecord = parsedRead.getSerializedRecord();
+            if ((serializedRecord != null) && serializedRecord.getGroupEdges().equals(groupEdges))
+                serializedRecord.writeTo(out);
+            else
+                out.writeObject(parsedRead);
+        }
         out.writeObject(null);
     }
 
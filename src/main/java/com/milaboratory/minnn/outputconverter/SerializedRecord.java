@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.outputconverter;
+
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.minnn.pattern.GroupEdge;
+import com.milaboratory.primitivio.PrimitivO;
+
+import java.util.List;
+
+/**
+ * Serialized parsed read that is kept in serialized form until its contents are needed. Lazy parsed reads
+ * use it to get read id and values of some groups without decoding the record, and to write the record
+ * without serializing it again.
+ */
+public interface SerializedRecord {
+    /**
+     * Decode the full parsed read. This function is thread-safe.
+     *
+     * @return decoded parsed read
+     */
+    ParsedRead decode();
+
+    /**
+     * @return id of the original read
+     */
+    long getReadId();
+
+    /**
+     * Get value of the group without decoding the record.
+     *
+     * @param groupName group name
+     * @return          group value, or null if it is not available without decoding the record
+     */
+    NSequenceWithQuality getGroupValue(String groupName);
+
+    /**
+     * @return group edges from the header of the file; the record can be copied without changes only
+     *         to the output that has the same group edges registered as known objects
+     */
+    List<GroupEdge> getGroupEdges();
+
+    /**
+     * Write serialized record; written bytes are the same as the output of writeObject() for the decoded read.
+     *
+     * @param output    output with the same group edges registered as known objects
+     */
+    void writeTo(PrimitivO output);
+}
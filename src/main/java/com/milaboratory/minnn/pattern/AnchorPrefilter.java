@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.pattern;
+
+import com.milaboratory.core.motif.BitapPattern;
+import com.milaboratory.core.sequence.*;
+
+import java.util.*;
+
+/**
+ * Prefilter that quickly rejects targets where the pattern can't match, before building matching results, sorters
+ * and alignments. It is compiled from FuzzyMatchPattern literals of the pattern tree: FuzzyMatchPattern can match
+ * only at positions found by its bitap matcher with bitapMaxErrors or less errors, so if a literal that is required
+ * by all branches of the pattern is not found by bitap, the pattern can't match. Patterns that don't require any
+ * literal in the target (NotOperator, AnyPattern, RepeatPattern, RepeatNPattern) don't add requirements.
+ */
+public final class AnchorPrefilter {
+    private final Requirement requirement;
+
+    private AnchorPrefilter(Requirement requirement) {
+        this.requirement = requirement;
+    }
+
+    /**
+     * Compile prefilter from the pattern.
+     *
+     * @param pattern   pattern for which the prefilter is created
+     * @return          prefilter, or null if this pattern doesn't require any literals in the target
+     */
+    public static AnchorPrefilter compile(Pattern pattern) {
+        Requirement requirement = compileRequirement(pattern);
+        return (requirement == null) ? null : new AnchorPrefilter(requirement);
+    }
+
+    /**
+     * Check whether the pattern can match the target.
+     *
+     * @param target    target for the pattern
+     * @return          false if the pattern can't match this target, true if it may match
+     */
+    public boolean mayMatch(MultiNSequenceWithQuality target) {
+        return requirement.check(target);
+    }
+
+    /**
+     * Compile requirement for the pattern.
+     *
+     * @param pattern   pattern
+     * @return          requirement, or null if this pattern can match without any literals
+     */
+    private static Requirement compileRequirement(Pattern pattern) {
+        if (pattern instanceof FuzzyMatchPattern) {
+            FuzzyMatchPattern fuzzyMatchPattern = (FuzzyMatchPattern)pattern;
+            return new LiteralRequirement(fuzzyMatchPattern.targetId, fuzzyMatchPattern.conf.bitapMaxErrors,
+                    fuzzyMatchPattern.getAnchorBitapPatterns());
+        } else if (pattern instanceof FullReadPattern)
+            return compileRequirement(((FullReadPattern)pattern).getOperand());
+        else if (pattern instanceof FilterPattern)
+            return compileRequirement(((FilterPattern)pattern).getOperand());
+        else if (pattern instanceof MultipleReadsFilterPattern)
+            return compileRequirement(((MultipleReadsFilterPattern)pattern).operandPatterns[0]);
+        else if ((pattern instanceof AndPattern) || (pattern instanceof PlusPattern)
+                || (pattern instanceof SequencePattern))
+            return allOf(((MultiplePatternsOperator)pattern).operandPatterns);
+        else if (pattern instanceof OrPattern)
+            return anyOf(((MultiplePatternsOperator)pattern).operandPatterns);
+        else if (pattern instanceof MultiPattern)
+            return allOf(((MultipleReadsOperator)pattern).singlePatterns);
+        else if (pattern instanceof AndOperator)
+            return allOf(((MultipleReadsOperator)pattern).operandPatterns);
+        else if (pattern instanceof OrOperator)
+            return anyOf(((MultipleReadsOperator)pattern).operandPatterns);
+        else
+            return null;
+    }
+
+    private static Requirement allOf(Pattern[] operands) {
+        List<Requirement> requirements = new ArrayList<>();
+        for (Pattern operand : operands) {
+            Requirement requirement = compileRequirement(operand);
+            if (requirement != null)
+                requirements.add(requirement);
+        }
+        if (requirements.size() == 0)
+            return null;
+        else if (requirements.size() == 1)
+            return requirements.get(0);
+        else
+            return new AllRequirement(requirements.toArray(new Requirement[0]));
+    }
+
+    private static Requirement anyOf(Pattern[] operands) {
+        List<Requirement> requirements = new ArrayList<>();
+        for (Pattern operand : operands) {
+            Requirement requirement = compileRequirement(operand);
+            // if any operand can match without literals, the whole OR can match without literals
+            if (requirement == null)
+                return null;
+            requirements.add(requirement);
+        }
+        if (requirements.size() == 1)
+            return requirements.get(0);
+        else
+            return new AnyRequirement(requirements.toArray(new Requirement[0]));
+    }
+
+    private interface Requirement {
+        boolean check(MultiNSequenceWithQuality target);
+    }
+
+    private static class LiteralRequirement implements Requirement {
+        private final int targetIndex;
+        private final int maxErrors;
+        private final List<BitapPattern> bitapPatterns;
+
+        LiteralRequirement(byte targetId, int maxErrors, List<BitapPattern> bitapPatterns) {
+            this.targetIndex = targetId - 1;
+            this.maxErrors = maxErrors;
+            this.bitapPatterns = bitapPatterns;
+        }
+
+        @Override
+        public boolean check(MultiNSequenceWithQuality target) {
+            NucleotideSequence sequence = ((target instanceof NSequenceWithQuality) ? (NSequenceWithQuality)target
+                    : target.get(targetIndex)).getSequence();
+            for (BitapPattern bitapPattern : bitapPatterns)
+                if (bitapPattern.substitutionAndIndelMatcherLast(maxErrors, sequence, 0, sequence.size())
+                        .findNext() != -1)
+                    return true;
+            return false;
+        }
+    }
+
+    private static class AllRequirement implements Requirement {
+        private final Requirement[] requirements;
+
+        AllRequirement(Requirement[] requirements) {
+            this.requirements = requirements;
+        }
+
+        @Override
+        public boolean check(MultiNSequenceWithQuality target) {
+            for (Requirement requirement : requirements)
+                if (!requirement.check(target))
+                    return false;
+            return true;
+        }
+    }
+
+    private static class AnyRequirement implements Requirement {
+        private final Requirement[] requirements;
+
+        AnyRequirement(Requirement[] requirements) {
+            this.requirements = requirements;
+        }
+
+        @Override
+        public boolean check(MultiNSequenceWithQuality target) {
+            for (Requirement requirement : requirements)
+                if (requirement.check(target))
+                    return true;
+            return false;
+        }
+    }
+}
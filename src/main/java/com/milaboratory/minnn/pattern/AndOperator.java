@@ -35,6 +35,8 @@ import com.milaboratory.minnn.util.*;
 import java.util.Arrays;
 
 import static com.milaboratory.minnn.pattern.MatchValidationType.LOGICAL_AND;
+import static com.milaboratory.minnn.pattern.PatternUtils.sumMaxScores;
+import static com.milaboratory.minnn.util.AdaptivePortLimits.portLimit;
 import static com.milaboratory.minnn.util.UnfairSorterConfiguration.unfairSorterPortLimits;
 
 public final class AndOperator extends MultipleReadsOperator {
@@ -57,6 +59,11 @@ public final class AndOperator extends MultipleReadsOperator {
         return Arrays.stream(operandPatterns).mapToLong(Pattern::estimateComplexity).sum();
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return sumMaxScores(operandPatterns);
+    }
+
     private class AndOperatorMatchingResult implements MatchingResult {
         private final MultiNSequenceWithQuality target;
 
@@ -66,9 +73,14 @@ public final class AndOperator extends MultipleReadsOperator {
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
+            return getMatches(fairSorting, conf.scoreThreshold);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
             ApproximateSorterConfiguration approximateSorterConfiguration = new ApproximateSorterConfiguration(target,
-                    conf, false, true, fairSorting, LOGICAL_AND,
-                    unfairSorterPortLimits.get(AndOperator.class), operandPatterns);
+                    conf, fairSorting ? minScore : conf.scoreThreshold, false, true, fairSorting, LOGICAL_AND,
+                    portLimit(AndOperator.this, unfairSorterPortLimits.get(AndOperator.class)), operandPatterns);
             return new ApproximateSorter(approximateSorterConfiguration).getOutputPort();
         }
     }
@@ -35,6 +35,8 @@ import com.milaboratory.minnn.util.*;
 import java.util.*;
 
 import static com.milaboratory.minnn.pattern.MatchValidationType.INTERSECTION;
+import static com.milaboratory.minnn.pattern.PatternUtils.sumMaxScores;
+import static com.milaboratory.minnn.util.AdaptivePortLimits.portLimit;
 import static com.milaboratory.minnn.util.UnfairSorterConfiguration.unfairSorterPortLimits;
 
 public final class AndPattern extends MultiplePatternsOperator {
@@ -69,6 +71,11 @@ public final class AndPattern extends MultiplePatternsOperator {
         return Arrays.stream(operandPatterns).mapToLong(Pattern::estimateComplexity).sum();
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return sumMaxScores(operandPatterns);
+    }
+
     @Override
     SinglePattern setTargetId(byte targetId) {
         validateTargetId(targetId);
@@ -89,9 +96,14 @@ public final class AndPattern extends MultiplePatternsOperator {
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
+            return getMatches(fairSorting, conf.scoreThreshold);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
             ApproximateSorterConfiguration approximateSorterConfiguration = new ApproximateSorterConfiguration(target,
-                    from, to, conf, true, fairSorting, INTERSECTION,
-                    unfairSorterPortLimits.get(AndPattern.class), operandPatterns);
+                    from, to, conf, fairSorting ? minScore : conf.scoreThreshold, true, fairSorting, INTERSECTION,
+                    portLimit(AndPattern.this, unfairSorterPortLimits.get(AndPattern.class)), operandPatterns);
             return new ApproximateSorter(approximateSorterConfiguration).getOutputPort();
         }
     }
@@ -33,7 +33,6 @@ import com.milaboratory.core.Range;
 import com.milaboratory.core.sequence.NSequenceWithQuality;
 
 import java.util.ArrayList;
-import java.util.stream.Collectors;
 
 import static com.milaboratory.minnn.pattern.PatternUtils.defaultGroupIds;
 
@@ -83,6 +82,11 @@ public final class AnyPattern extends SinglePattern {
         return 1;
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return 0;
+    }
+
     @Override
     SinglePattern setTargetId(byte targetId) {
         validateTargetId(targetId);
@@ -114,14 +118,18 @@ public final class AnyPattern extends SinglePattern {
                 firstTake = false;
 
                 MatchedRange matchedRange = new MatchedRange(target, targetId, 0, new Range(from, to));
-                ArrayList<MatchedGroupEdge> matchedGroupEdges = groupEdges.stream().map(ge -> {
-                    byte matchedGroupTargetId = conf.defaultGroupsOverride
-                            ? defaultGroupIds.get(ge.getGroupName()) : targetId;
-                    return new MatchedGroupEdge(target, matchedGroupTargetId, 0, ge,
-                            ge.isStart() ? 0 : target.size());
-                }).collect(Collectors.toCollection(ArrayList::new));
+                int numberOfGroupEdges = groupEdges.size();
+                GroupEdge[] matchedGroupEdges = groupEdges.toArray(new GroupEdge[numberOfGroupEdges]);
+                int[] groupEdgePositions = new int[numberOfGroupEdges];
+                byte[] groupEdgeTargetIds = new byte[numberOfGroupEdges];
+                for (int i = 0; i < numberOfGroupEdges; i++) {
+                    GroupEdge groupEdge = matchedGroupEdges[i];
+                    groupEdgePositions[i] = groupEdge.isStart() ? 0 : target.size();
+                    groupEdgeTargetIds[i] = conf.defaultGroupsOverride
+                            ? defaultGroupIds.get(groupEdge.getGroupName()) : targetId;
+                }
                 return new MatchIntermediate(1, 0, -1, -1,
-                        matchedGroupEdges, matchedRange);
+                        matchedGroupEdges, groupEdgePositions, groupEdgeTargetIds, null, matchedRange);
             }
         }
     }
@@ -96,6 +96,11 @@ public final class FilterPattern extends SinglePattern implements CanBeSingleSeq
         return pattern.estimateComplexity();
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return pattern.estimateMaxScore();
+    }
+
     @Override
     SinglePattern setTargetId(byte targetId) {
         validateTargetId(targetId);
@@ -106,6 +111,14 @@ public final class FilterPattern extends SinglePattern implements CanBeSingleSeq
             throw new IllegalStateException("setTargetId() called for argument of class " + pattern.getClass());
     }
 
+    Pattern getOperand() {
+        return pattern;
+    }
+
+    Filter getFilter() {
+        return filter;
+    }
+
     @Override
     public boolean isSingleSequence() {
         return pattern instanceof CanBeSingleSequence && ((CanBeSingleSequence)pattern).isSingleSequence();
@@ -151,15 +164,21 @@ public final class FilterPattern extends SinglePattern implements CanBeSingleSeq
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
+            return getMatches(fairSorting, Long.MIN_VALUE);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
+            // filters don't change match scores, so lower bound for score can be passed to the operand
             if (targetMulti != null) {
                 if (!(pattern instanceof MultipleReadsOperator)) throw new IllegalArgumentException(
                         "Trying to use filter with single-target pattern and multi-target match arguments.");
-                return new FilterOutputPort(pattern.match(targetMulti).getMatches(fairSorting));
+                return new FilterOutputPort(pattern.match(targetMulti).getMatches(fairSorting, minScore));
             } else if (targetSingle != null) {
                 if (!(pattern instanceof SinglePattern)) throw new IllegalArgumentException(
                         "Trying to use filter with multi-target pattern and single-target match arguments.");
                 return new FilterOutputPort(((SinglePattern)pattern).match(targetSingle, from, to)
-                        .getMatches(fairSorting));
+                        .getMatches(fairSorting, minScore));
             } else throw new IllegalStateException("Both targetMulti and targetSingle are null.");
         }
 
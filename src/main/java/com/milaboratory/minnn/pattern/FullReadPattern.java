@@ -94,6 +94,11 @@ public final class FullReadPattern extends SinglePattern {
         return operandPattern.estimateComplexity();
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return operandPattern.estimateMaxScore();
+    }
+
     @Override
     public SinglePattern setTargetId(byte targetId) {
         validateTargetId(targetId);
@@ -109,28 +114,56 @@ public final class FullReadPattern extends SinglePattern {
         private final NSequenceWithQuality target;
         private final int from;
         private final int to;
+        private final GroupEdge mainGroupStart;
+        private final GroupEdge mainGroupEnd;
 
         public FullReadPatternMatchingResult(NSequenceWithQuality target, int from, int to) {
             this.target = target;
             this.from = from;
             this.to = to;
+            String mainGroupName = "R" + targetId;
+            this.mainGroupStart = new GroupEdge(mainGroupName, true);
+            this.mainGroupEnd = new GroupEdge(mainGroupName, false);
         }
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
-            OutputPort<MatchIntermediate> operandPort = operandPattern.match(target, from, to).getMatches(fairSorting);
+            return getMatches(fairSorting, Long.MIN_VALUE);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
+            // full read pattern doesn't change match score, so lower bound for score can be passed to the operand
+            OutputPort<MatchIntermediate> operandPort = operandPattern.match(target, from, to)
+                    .getMatches(fairSorting, minScore);
             return conf.defaultGroupsOverride ? operandPort : () -> {
                 MatchIntermediate match = operandPort.take();
                 if (match == null) return null;
-                String mainGroupName = "R" + targetId;
                 int patternIndex = match.getMatchedRange().getPatternIndex();
-                ArrayList<MatchedGroupEdge> matchedGroupEdges = new ArrayList<>(match.getMatchedGroupEdges());
-                matchedGroupEdges.add(new MatchedGroupEdge(target, targetId, patternIndex,
-                        new GroupEdge(mainGroupName, true), 0));
-                matchedGroupEdges.add(new MatchedGroupEdge(null, targetId, patternIndex,
-                        new GroupEdge(mainGroupName, false), target.size()));
-                return new MatchIntermediate(1, match.getScore(),
-                        -1, -1, matchedGroupEdges, match.getMatchedRanges());
+                int operandGroupEdgesCount = match.getGroupEdgesCount();
+                int numberOfGroupEdges = operandGroupEdgesCount + 2;
+                GroupEdge[] groupEdges = new GroupEdge[numberOfGroupEdges];
+                int[] groupEdgePositions = new int[numberOfGroupEdges];
+                byte[] groupEdgeTargetIds = new byte[numberOfGroupEdges];
+                int[] groupEdgePatternIndexes = (patternIndex == 0) ? null : new int[numberOfGroupEdges];
+                for (int i = 0; i < operandGroupEdgesCount; i++) {
+                    groupEdges[i] = match.getGroupEdge(i);
+                    groupEdgePositions[i] = match.getGroupEdgePosition(i);
+                    groupEdgeTargetIds[i] = match.getGroupEdgeTargetId(i);
+                    if (groupEdgePatternIndexes != null)
+                        groupEdgePatternIndexes[i] = match.getGroupEdgePatternIndex(i);
+                }
+                groupEdges[operandGroupEdgesCount] = mainGroupStart;
+                groupEdges[operandGroupEdgesCount + 1] = mainGroupEnd;
+                groupEdgePositions[operandGroupEdgesCount + 1] = target.size();
+                groupEdgeTargetIds[operandGroupEdgesCount] = targetId;
+                groupEdgeTargetIds[operandGroupEdgesCount + 1] = targetId;
+                if (groupEdgePatternIndexes != null) {
+                    groupEdgePatternIndexes[operandGroupEdgesCount] = patternIndex;
+                    groupEdgePatternIndexes[operandGroupEdgesCount + 1] = patternIndex;
+                }
+                return new MatchIntermediate(1, match.getScore(), -1, -1, groupEdges, groupEdgePositions,
+                        groupEdgeTargetIds, groupEdgePatternIndexes, match.getMatchedRanges());
             };
         }
     }
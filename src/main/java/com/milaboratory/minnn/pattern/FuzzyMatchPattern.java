@@ -36,7 +36,6 @@ import com.milaboratory.core.sequence.*;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import static com.milaboratory.minnn.cli.Defaults.*;
 import static com.milaboratory.minnn.pattern.PatternUtils.*;
@@ -45,14 +44,22 @@ import static com.milaboratory.minnn.util.UnfairSorterConfiguration.*;
 public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingleSequence, CanFixBorders {
     private final ArrayList<NucleotideSequenceCaseSensitive> sequences;
     private final ArrayList<Motif<NucleotideSequence>> motifs;
+    /* For each sequence, there is either bitap pattern (if sequence length is not more than BITAP_MAX_LENGTH) or
+     * multi-word bitap pattern for longer sequences; other list contains null for this index. */
     private final ArrayList<BitapPattern> bitapPatterns;
-    private final ArrayList<Integer> bitapPositionCorrections;
+    private final ArrayList<MultiWordBitapPattern> multiWordBitapPatterns;
+    private final List<BitapPattern> anchorBitapPatterns;
     private final int leftCut;
     private final int rightCut;
     private final int fixedLeftBorder;
     private final int fixedRightBorder;
     private final List<GroupEdgePosition> groupEdgePositions;
     private final ArrayList<Integer> groupOffsets;
+    /* Per-sequence data that doesn't depend on the target; calculated once in constructor, so matching doesn't
+     * recalculate it for each found match. */
+    private final int[] firstUppercasePositions;
+    private final int[] lastUppercasePositions;
+    private final ArrayList<List<GroupEdgePosition>> fixedGroupEdgePositions;
 
     public FuzzyMatchPattern(
             PatternConfiguration conf, NucleotideSequenceCaseSensitive patternSeq) {
@@ -128,33 +135,31 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
                         + groupEdgePosition.getPosition() + ") is outside of motif (motif size: " + size + ")");
 
         this.bitapPatterns = new ArrayList<>();
-        this.bitapPositionCorrections = new ArrayList<>();
+        this.multiWordBitapPatterns = new ArrayList<>();
         for (int i = 0; i < sequences.size(); i++) {
             NucleotideSequenceCaseSensitive currentSequence = sequences.get(i);
             if (currentSequence.size() > BITAP_MAX_LENGTH) {
-                String seqString = currentSequence.toString();
-                int seqLength = currentSequence.size();
-                String seqStart = seqString.substring(0, BITAP_MAX_LENGTH);
-                String seqEnd = seqString.substring(seqLength - BITAP_MAX_LENGTH, seqLength);
-                if (estimateSequenceComplexity(seqStart) > estimateSequenceComplexity(seqEnd)) {
-                    this.bitapPatterns.add(new NucleotideSequence(seqEnd).toMotif().getBitapPattern());
-                    this.bitapPositionCorrections.add(0);
-                } else {
-                    this.bitapPatterns.add(new NucleotideSequence(seqStart).toMotif().getBitapPattern());
-                    this.bitapPositionCorrections.add(seqLength - BITAP_MAX_LENGTH);
-                }
+                this.bitapPatterns.add(null);
+                this.multiWordBitapPatterns.add(new MultiWordBitapPattern(currentSequence.toNucleotideSequence()));
             } else {
                 this.bitapPatterns.add(motifs.get(i).getBitapPattern());
-                this.bitapPositionCorrections.add(0);
+                this.multiWordBitapPatterns.add(null);
             }
         }
+        this.anchorBitapPatterns = Collections.singletonList(calculateAnchorBitapPattern(
+                sequences.get(sequences.size() - 1)));
+        this.firstUppercasePositions = sequences.stream().mapToInt(PatternUtils::firstUppercase).toArray();
+        this.lastUppercasePositions = sequences.stream().mapToInt(PatternUtils::lastUppercase).toArray();
+        this.fixedGroupEdgePositions = calculateFixedGroupEdgePositions(sequences, groupEdgePositions, groupOffsets);
     }
 
     private FuzzyMatchPattern(
             PatternConfiguration conf, byte targetId, ArrayList<NucleotideSequenceCaseSensitive> sequences,
             ArrayList<Motif<NucleotideSequence>> motifs, int leftCut, int rightCut, int fixedLeftBorder,
             int fixedRightBorder, List<GroupEdgePosition> groupEdgePositions, ArrayList<Integer> groupOffsets,
-            ArrayList<BitapPattern> bitapPatterns, ArrayList<Integer> bitapPositionCorrections) {
+            ArrayList<BitapPattern> bitapPatterns, ArrayList<MultiWordBitapPattern> multiWordBitapPatterns,
+            List<BitapPattern> anchorBitapPatterns, int[] firstUppercasePositions, int[] lastUppercasePositions,
+            ArrayList<List<GroupEdgePosition>> fixedGroupEdgePositions) {
         super(conf, targetId);
         this.sequences = sequences;
         this.motifs = motifs;
@@ -165,7 +170,21 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
         this.groupEdgePositions = groupEdgePositions;
         this.groupOffsets = groupOffsets;
         this.bitapPatterns = bitapPatterns;
-        this.bitapPositionCorrections = bitapPositionCorrections;
+        this.multiWordBitapPatterns = multiWordBitapPatterns;
+        this.anchorBitapPatterns = anchorBitapPatterns;
+        this.firstUppercasePositions = firstUppercasePositions;
+        this.lastUppercasePositions = lastUppercasePositions;
+        this.fixedGroupEdgePositions = fixedGroupEdgePositions;
+    }
+
+    private static ArrayList<List<GroupEdgePosition>> calculateFixedGroupEdgePositions(
+            List<NucleotideSequenceCaseSensitive> sequences, List<GroupEdgePosition> groupEdgePositions,
+            List<Integer> groupOffsets) {
+        ArrayList<List<GroupEdgePosition>> fixedGroupEdgePositions = new ArrayList<>();
+        for (int i = 0; i < sequences.size(); i++)
+            fixedGroupEdgePositions.add(Collections.unmodifiableList(fixGroupEdgePositions(groupEdgePositions,
+                    groupOffsets.get(i), sequences.get(i).size())));
+        return fixedGroupEdgePositions;
     }
 
     @Override
@@ -239,8 +258,15 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
                     * estimateSequenceComplexity(sequences.get(0).toString()));
     }
 
+    @Override
+    public long estimateMaxScore() {
+        ScoringBounds scoringBounds = conf.getScoringBounds();
+        return sequences.stream().mapToLong(seq -> scoringBounds.maxScore(seq.size())).max()
+                .orElseThrow(IllegalStateException::new);
+    }
+
     /**
-     * Estimate complexity for single sequence. Used in estimateComplexity() and in bitap matching
+     * Estimate complexity for single sequence. Used in estimateComplexity() and in choosing anchor for prefilter
      * for long (>63 nucleotides) sequences.
      *
      * @param s     nucleotide sequence string
@@ -253,6 +279,106 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
             return singleNucleotideComplexity / s.chars().mapToDouble(c -> 1.0 / lettersComplexity.get((char)c)).sum();
     }
 
+    /**
+     * Get bitap patterns that are enough to check whether this pattern can match the target: the pattern can match
+     * only if at least one of these bitap patterns is found with bitapMaxErrors or less errors.
+     * Used in AnchorPrefilter.
+     *
+     * @return list of bitap patterns for quick check whether the target can contain this pattern
+     */
+    List<BitapPattern> getAnchorBitapPatterns() {
+        return anchorBitapPatterns;
+    }
+
+    /**
+     * The shortest sequence with cuts is part of all other sequences, so it is enough to search only it. If it is
+     * longer than BITAP_MAX_LENGTH, any its part can be used as anchor, and the part with lower complexity is chosen.
+     *
+     * @param shortestSequence the shortest sequence from the list of sequences with cuts
+     * @return bitap pattern for anchor that is used in prefilter
+     */
+    private static BitapPattern calculateAnchorBitapPattern(NucleotideSequenceCaseSensitive shortestSequence) {
+        if (shortestSequence.size() <= BITAP_MAX_LENGTH)
+            return shortestSequence.toNucleotideSequence().toMotif().getBitapPattern();
+        String seqString = shortestSequence.toString();
+        int seqLength = shortestSequence.size();
+        String seqStart = seqString.substring(0, BITAP_MAX_LENGTH);
+        String seqEnd = seqString.substring(seqLength - BITAP_MAX_LENGTH, seqLength);
+        return new NucleotideSequence((estimateSequenceComplexity(seqStart) > estimateSequenceComplexity(seqEnd))
+                ? seqEnd : seqStart).toMotif().getBitapPattern();
+    }
+
+    /**
+     * Create bitap matcher for sequence with specified index: single-word bitap from milib for short sequences and
+     * multi-word bitap for long sequences.
+     *
+     * @param index index in list of sequences
+     * @param maxErrors maximal number of substitutions and indels
+     * @param target target nucleotide sequence
+     * @param from left border in target, inclusive
+     * @param to right border in target, exclusive
+     * @return bitap matcher that returns positions of last letters of matches
+     */
+    private BitapMatcher createBitapMatcher(int index, int maxErrors, NucleotideSequence target, int from, int to) {
+        BitapPattern bitapPattern = bitapPatterns.get(index);
+        return (bitapPattern != null) ? bitapPattern.substitutionAndIndelMatcherLast(maxErrors, target, from, to)
+                : multiWordBitapPatterns.get(index).substitutionAndIndelMatcherLast(maxErrors, target, from, to);
+    }
+
+    /**
+     * Get motif of this pattern if it is a plain literal: a sequence without cuts and fixed borders, not longer
+     * than BITAP_MAX_LENGTH. Such pattern can match only if its motif is found by bitap with bitapMaxErrors or less
+     * errors in the range where it is searched. Used for single-scan search of many literals in OrPattern.
+     *
+     * @return motif, or null if this pattern is not a plain literal
+     */
+    NucleotideSequence getPlainLiteralMotif() {
+        if ((leftCut != 0) || (rightCut != 0) || (fixedLeftBorder != -1) || (fixedRightBorder != -1)
+                || (sequences.get(0).size() > BITAP_MAX_LENGTH))
+            return null;
+        return sequences.get(0).toNucleotideSequence();
+    }
+
+    /**
+     * Check that SequencePattern of this pattern and the next pattern is equivalent to a single pattern with
+     * concatenated sequence. Both patterns must be plain literals that can be found only without errors, and
+     * uppercase letters on the junction allow neither overlap nor insertion between the operands.
+     * Separate exact matches of both patterns must always pass the score threshold, so only the score
+     * of the concatenated match is checked.
+     *
+     * @param next  pattern that follows this pattern in SequencePattern
+     * @return      true if the patterns can be replaced with concatenate() result
+     */
+    boolean canBeConcatenatedWith(FuzzyMatchPattern next) {
+        if ((conf != next.conf) || (conf.bitapMaxErrors != 0) || (getPlainLiteralMotif() == null)
+                || (next.getPlainLiteralMotif() == null))
+            return false;
+        NucleotideSequenceCaseSensitive leftSeq = sequences.get(0);
+        NucleotideSequenceCaseSensitive rightSeq = next.sequences.get(0);
+        ScoringBounds scoringBounds = conf.getScoringBounds();
+        return Character.isUpperCase(leftSeq.symbolAt(leftSeq.size() - 1))
+                && Character.isUpperCase(rightSeq.symbolAt(0))
+                && (scoringBounds.minExactMatchScore(leftSeq.size()) >= conf.scoreThreshold)
+                && (scoringBounds.minExactMatchScore(rightSeq.size()) >= conf.scoreThreshold);
+    }
+
+    /**
+     * Create pattern with concatenated sequences of this and the next pattern; group edge positions of the next
+     * pattern are shifted by the length of this pattern.
+     *
+     * @param next  pattern that follows this pattern; must be checked with canBeConcatenatedWith()
+     * @return      pattern with concatenated sequence
+     */
+    FuzzyMatchPattern concatenate(FuzzyMatchPattern next) {
+        NucleotideSequenceCaseSensitive leftSeq = sequences.get(0);
+        List<GroupEdgePosition> newGroupEdgePositions = new ArrayList<>(groupEdgePositions);
+        for (GroupEdgePosition groupEdgePosition : next.groupEdgePositions)
+            newGroupEdgePositions.add(new GroupEdgePosition(groupEdgePosition.getGroupEdge(),
+                    groupEdgePosition.getPosition() + leftSeq.size()));
+        return new FuzzyMatchPattern(conf, new NucleotideSequenceCaseSensitive(leftSeq.toString()
+                + next.sequences.get(0).toString()), newGroupEdgePositions);
+    }
+
     @Override
     public boolean isSingleSequence() {
         return true;
@@ -270,7 +396,8 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
     SinglePattern setTargetId(byte targetId) {
         validateTargetId(targetId);
         return new FuzzyMatchPattern(conf, targetId, sequences, motifs, leftCut, rightCut, fixedLeftBorder,
-                fixedRightBorder, groupEdgePositions, groupOffsets, bitapPatterns, bitapPositionCorrections);
+                fixedRightBorder, groupEdgePositions, groupOffsets, bitapPatterns, multiWordBitapPatterns,
+                anchorBitapPatterns, firstUppercasePositions, lastUppercasePositions, fixedGroupEdgePositions);
     }
 
     private class FuzzyMatchingResult implements MatchingResult {
@@ -290,13 +417,22 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
-            return new FuzzyMatchOutputPort(fairSorting);
+            return new FuzzyMatchOutputPort(fairSorting, Long.MIN_VALUE);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
+            return new FuzzyMatchOutputPort(fairSorting, fairSorting ? minScore : Long.MIN_VALUE);
         }
 
         private class FuzzyMatchOutputPort implements OutputPort<MatchIntermediate> {
             private final boolean fixedBorder;
             private final boolean fairSorting;
-            private final List<BitapMatcherFilter> bitapMatcherFilters;
+            private final BitapMatcherFilter[] bitapMatcherFilters;
+
+            /* For each sequence, max number of bitap errors with which the match still can get the needed score;
+             * -1 if the sequence can't get it. Null if there is no lower bound for score. */
+            private final int[] maxErrorsForScore;
 
             /* Current index in lists of sequences and bitap patterns.
              * Index represents combination of numbers of cut nucleotides on the left and right sides. */
@@ -310,22 +446,30 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
             private int currentNumBitapErrors = 0;
 
             /* Used only in takeUnfairByScore(). Already returned positions saved to skip them when searching with
-             * bigger number of errors. Separate HashSet for each pattern index. */
-            private ArrayList<HashSet<Integer>> alreadyReturnedPositions;
+             * bigger number of errors. Separate BitSet for each pattern index, created when the first position
+             * for this index is found; positions are bitap positions, so they are always less than target size. */
+            private BitSet[] alreadyReturnedPositions;
 
-            FuzzyMatchOutputPort(boolean fairSorting) {
+            FuzzyMatchOutputPort(boolean fairSorting, long minScore) {
                 this.fairSorting = fairSorting;
                 this.fixedBorder = (fixedLeftBorder != -1) || (fixedRightBorder != -1);
-                if (!fixedBorder && !fairSorting) {
-                    this.bitapMatcherFilters = bitapPatterns.stream().map(bp -> new BitapMatcherFilter(
-                            bp.substitutionAndIndelMatcherLast(0, target.getSequence(), from, to)))
-                            .collect(Collectors.toList());
-                    this.alreadyReturnedPositions = IntStream.range(0, sequences.size())
-                            .mapToObj(i -> new HashSet<Integer>()).collect(Collectors.toCollection(ArrayList::new));
+                int bitapErrors = (!fixedBorder && !fairSorting) ? 0 : conf.bitapMaxErrors;
+                this.bitapMatcherFilters = new BitapMatcherFilter[bitapPatterns.size()];
+                for (int i = 0; i < bitapMatcherFilters.length; i++)
+                    bitapMatcherFilters[i] = new BitapMatcherFilter(createBitapMatcher(i, bitapErrors,
+                            target.getSequence(), from, to));
+                if (!fixedBorder && !fairSorting)
+                    this.alreadyReturnedPositions = new BitSet[sequences.size()];
+                if (minScore > conf.scoreThreshold) {
+                    ScoringBounds scoringBounds = conf.getScoringBounds();
+                    this.maxErrorsForScore = sequences.stream().mapToInt(seq -> scoringBounds.maxErrorsForScore(
+                            seq.size(), minScore, conf.bitapMaxErrors)).toArray();
                 } else
-                    this.bitapMatcherFilters = bitapPatterns.stream().map(bp -> new BitapMatcherFilter(
-                            bp.substitutionAndIndelMatcherLast(conf.bitapMaxErrors, target.getSequence(), from, to)))
-                            .collect(Collectors.toList());
+                    this.maxErrorsForScore = null;
+            }
+
+            private boolean cantGetScore(int sequenceIndex) {
+                return (maxErrorsForScore != null) && (maxErrorsForScore[sequenceIndex] == -1);
             }
 
             @Override
@@ -345,27 +489,29 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
             private MatchIntermediate takeUnfair() {
                 while (currentNumBitapErrors <= conf.bitapMaxErrors) {
                     while (currentIndex < sequences.size()) {
-                        int position = correctBitapPosition(bitapMatcherFilters.get(currentIndex).findNext());
+                        int position = bitapMatcherFilters[currentIndex].findNext();
                         if (position == -1) {
-                            bitapMatcherFilters.set(currentIndex, new BitapMatcherFilter(
-                                    bitapPatterns.get(currentIndex).substitutionAndIndelMatcherLast(
-                                            currentNumBitapErrors + 1, target.getSequence(),
-                                            from, to)));
+                            if (currentNumBitapErrors < conf.bitapMaxErrors)
+                                bitapMatcherFilters[currentIndex] = new BitapMatcherFilter(createBitapMatcher(
+                                        currentIndex, currentNumBitapErrors + 1, target.getSequence(), from, to));
                             currentIndex++;
                         } else {
-                            HashSet<Integer> currentReturnedPositions = alreadyReturnedPositions.get(currentIndex);
-                            if (currentReturnedPositions.contains(position))
+                            BitSet currentReturnedPositions = alreadyReturnedPositions[currentIndex];
+                            if (currentReturnedPositions == null) {
+                                currentReturnedPositions = new BitSet(target.size());
+                                alreadyReturnedPositions[currentIndex] = currentReturnedPositions;
+                            }
+                            if (currentReturnedPositions.get(position))
                                 continue;
                             else
-                                currentReturnedPositions.add(position);
+                                currentReturnedPositions.set(position);
                             NucleotideSequenceCaseSensitive currentSeq = sequences.get(currentIndex);
                             Alignment<NucleotideSequenceCaseSensitive> alignment = Objects.requireNonNull(
                                     conf.patternAligner.align(conf, false, currentSeq, target, position));
                             if (alignment.getScore() >= conf.scoreThreshold)
                                 return generateMatch(alignment, target, targetId,
-                                        firstUppercase(currentSeq), lastUppercase(currentSeq),
-                                        fixGroupEdgePositions(groupEdgePositions, groupOffsets.get(currentIndex),
-                                                currentSeq.size()), 0, conf.defaultGroupsOverride);
+                                        firstUppercasePositions[currentIndex], lastUppercasePositions[currentIndex],
+                                        fixedGroupEdgePositions.get(currentIndex), 0, conf.defaultGroupsOverride);
                         }
                     }
                     currentIndex = 0;
@@ -405,21 +551,24 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
                 int matchLastPosition;
 
                 for (currentIndex = 0; currentIndex < sequences.size(); currentIndex++) {
-                    BitapMatcherFilter currentBitapFilter = bitapMatcherFilters.get(currentIndex);
+                    if (cantGetScore(currentIndex))
+                        continue;
+                    BitapMatcherFilter currentBitapFilter = bitapMatcherFilters[currentIndex];
                     NucleotideSequenceCaseSensitive currentSeq = sequences.get(currentIndex);
                     HashSet<Range> uniqueRanges = new HashSet<>();
                     do {
-                        matchLastPosition = correctBitapPosition(currentBitapFilter.findNext());
-                        if (matchLastPosition != -1) {
+                        matchLastPosition = currentBitapFilter.findNext();
+                        // alignment ends on bitap position, so it has at least as many errors as found by bitap
+                        if ((matchLastPosition != -1) && ((maxErrorsForScore == null)
+                                || (currentBitapFilter.getNumberOfErrors() <= maxErrorsForScore[currentIndex]))) {
                             alignment = Objects.requireNonNull(conf.patternAligner.align(conf, false,
                                     currentSeq, target, matchLastPosition));
                             Range range = alignment.getSequence2Range();
                             if ((alignment.getScore() >= conf.scoreThreshold) && !uniqueRanges.contains(range)) {
                                 uniqueRanges.add(range);
                                 MatchIntermediate match = generateMatch(alignment, target, targetId,
-                                        firstUppercase(currentSeq), lastUppercase(currentSeq),
-                                        fixGroupEdgePositions(groupEdgePositions, groupOffsets.get(currentIndex),
-                                        currentSeq.size()), 0, conf.defaultGroupsOverride);
+                                        firstUppercasePositions[currentIndex], lastUppercasePositions[currentIndex],
+                                        fixedGroupEdgePositions.get(currentIndex), 0, conf.defaultGroupsOverride);
                                 allMatches.add(new ComparableMatch(range, match));
                             }
                         }
@@ -438,7 +587,7 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
                 Alignment<NucleotideSequenceCaseSensitive> alignment;
 
                 for (currentIndex = 0; currentIndex < sequences.size(); currentIndex++) {
-                    if (bitapMatcherFilters.get(currentIndex).findNext() == -1)
+                    if (cantGetScore(currentIndex) || (bitapMatcherFilters[currentIndex].findNext() == -1))
                         continue;
                     NucleotideSequenceCaseSensitive currentSeq = sequences.get(currentIndex);
                     HashSet<Range> uniqueRanges = new HashSet<>();
@@ -455,9 +604,8 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
                                     && !uniqueRanges.contains(range)) {
                                 uniqueRanges.add(range);
                                 MatchIntermediate match = generateMatch(alignment, target, targetId,
-                                        firstUppercase(currentSeq), lastUppercase(currentSeq),
-                                        fixGroupEdgePositions(groupEdgePositions, groupOffsets.get(currentIndex),
-                                        currentSeq.size()), 0, conf.defaultGroupsOverride);
+                                        firstUppercasePositions[currentIndex], lastUppercasePositions[currentIndex],
+                                        fixedGroupEdgePositions.get(currentIndex), 0, conf.defaultGroupsOverride);
                                 allMatches.add(new ComparableMatch(range, match));
                             }
                         }
@@ -476,45 +624,21 @@ public final class FuzzyMatchPattern extends SinglePattern implements CanBeSingl
                 Alignment<NucleotideSequenceCaseSensitive> alignment;
 
                 for (currentIndex = 0; currentIndex < sequences.size(); currentIndex++) {
-                    if (bitapMatcherFilters.get(currentIndex).findNext() == -1)
+                    if (cantGetScore(currentIndex) || (bitapMatcherFilters[currentIndex].findNext() == -1))
                         continue;
                     NucleotideSequenceCaseSensitive currentSeq = sequences.get(currentIndex);
                     alignment = Objects.requireNonNull(fixedConfiguration.patternAligner.align(
                             fixedConfiguration, false, currentSeq, target, fixedRightBorder));
                     if (alignment.getScore() >= fixedConfiguration.scoreThreshold) {
                         MatchIntermediate match = generateMatch(alignment, target, targetId,
-                                firstUppercase(currentSeq), lastUppercase(currentSeq),
-                                fixGroupEdgePositions(groupEdgePositions, groupOffsets.get(currentIndex),
-                                        currentSeq.size()), 0, conf.defaultGroupsOverride);
+                                firstUppercasePositions[currentIndex], lastUppercasePositions[currentIndex],
+                                fixedGroupEdgePositions.get(currentIndex), 0, conf.defaultGroupsOverride);
                         allMatches.add(new ComparableMatch(alignment.getSequence2Range(), match));
                     }
                 }
 
                 allMatchesIterator = allMatches.iterator();
             }
-
-            /**
-             * Apply correction to position found by bitap, if needed. Correction may be needed for long sequence
-             * when bitap is searching for part of the sequence.
-             *
-             * @param position position found by bitap
-             * @return position with correction
-             */
-            private int correctBitapPosition(int position) {
-                if (position == -1)
-                    return -1;
-                int correction = bitapPositionCorrections.get(currentIndex);
-                if (correction == 0)
-                    return position;
-                else {
-                    int targetLength = target.size();
-                    int correctPosition = position + correction;
-                    if (correctPosition >= targetLength + conf.bitapMaxErrors)
-                        return -1;
-                    else
-                        return Math.min(correctPosition, targetLength - 1);
-                }
-            }
         }
     }
 }
@@ -43,7 +43,8 @@ import java.util.stream.Collectors;
 public class Match {
     protected final int numberOfTargets;
     protected final long score;
-    protected final ArrayList<MatchedGroupEdge> matchedGroupEdges;
+    // MatchIntermediate keeps group edges in compact form and creates this list only when it is requested
+    protected ArrayList<MatchedGroupEdge> matchedGroupEdges;
     private ArrayList<MatchedGroup> groups = null;
     private Map<String, NSequenceWithQuality> groupValues = null;
     private HashMap<MatchedGroupEdgeIndex, MatchedGroupEdge> matchedGroupEdgesCache = null;
@@ -76,7 +77,7 @@ public class Match {
         if (cachedMatchedGroupEdge != null)
             return cachedMatchedGroupEdge;
         else {
-            for (MatchedGroupEdge matchedGroupEdge : matchedGroupEdges)
+            for (MatchedGroupEdge matchedGroupEdge : getMatchedGroupEdges())
                 if (matchedGroupEdge.getGroupName().equals(groupName) && (matchedGroupEdge.isStart() == isStart)) {
                     matchedGroupEdgesCache.put(index, matchedGroupEdge);
                     return matchedGroupEdge;
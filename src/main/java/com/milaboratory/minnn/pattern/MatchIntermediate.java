@@ -37,6 +37,14 @@ public final class MatchIntermediate extends Match {
     private final int leftUppercaseDistance;
     private final int rightUppercaseDistance;
     private final MatchedRange[] matchedRanges;
+    /* Compact representation of matched group edges that is used while matches are combined in patterns:
+     * group edges, their positions and target ids are stored in arrays; pattern indexes array is null if all
+     * pattern indexes are 0. Target of each group edge is the target of the matched range with the same pattern
+     * index, so targets are not stored. MatchedGroupEdge objects are created only if they are requested. */
+    private final GroupEdge[] groupEdges;
+    private final int[] groupEdgePositions;
+    private final byte[] groupEdgeTargetIds;
+    private final int[] groupEdgePatternIndexes;
     private HashMap<Integer, ArrayList<MatchedGroupEdge>> edgesByPatternCache = null;
 
     /**
@@ -59,6 +67,87 @@ public final class MatchIntermediate extends Match {
         this.leftUppercaseDistance = leftUppercaseDistance;
         this.rightUppercaseDistance = rightUppercaseDistance;
         this.matchedRanges = matchedRanges;
+        int size = matchedGroupEdges.size();
+        this.groupEdges = new GroupEdge[size];
+        this.groupEdgePositions = new int[size];
+        this.groupEdgeTargetIds = new byte[size];
+        int[] patternIndexes = null;
+        for (int i = 0; i < size; i++) {
+            MatchedGroupEdge matchedGroupEdge = matchedGroupEdges.get(i);
+            groupEdges[i] = matchedGroupEdge.getGroupEdge();
+            groupEdgePositions[i] = matchedGroupEdge.getPosition();
+            groupEdgeTargetIds[i] = matchedGroupEdge.getTargetId();
+            if (matchedGroupEdge.getPatternIndex() != 0) {
+                if (patternIndexes == null)
+                    patternIndexes = new int[size];
+                patternIndexes[i] = matchedGroupEdge.getPatternIndex();
+            }
+        }
+        this.groupEdgePatternIndexes = patternIndexes;
+    }
+
+    /**
+     * Match with group edges in compact representation; arrays are not copied, so they must not be modified
+     * after the match is created.
+     *
+     * @param numberOfPatterns          number of patterns in multi-pattern, or 1 if it is single pattern
+     * @param score                     match score
+     * @param leftUppercaseDistance     first uppercase letter position, or -1 for no restrictions
+     * @param rightUppercaseDistance    first uppercase letter position if count from right to left of this match,
+     *                                  or -1 for no restrictions
+     * @param groupEdges                matched group edges
+     * @param groupEdgePositions        positions of group edges in their targets
+     * @param groupEdgeTargetIds        target ids of group edges
+     * @param groupEdgePatternIndexes   pattern indexes of group edges; null if all pattern indexes are 0;
+     *                                  target of each group edge is the target of the matched range with the same
+     *                                  pattern index
+     * @param matchedRanges             array of matched ranges for every pattern
+     */
+    public MatchIntermediate(int numberOfPatterns, long score, int leftUppercaseDistance, int rightUppercaseDistance,
+                             GroupEdge[] groupEdges, int[] groupEdgePositions, byte[] groupEdgeTargetIds,
+                             int[] groupEdgePatternIndexes, MatchedRange... matchedRanges) {
+        super(numberOfPatterns, score, null);
+        if (matchedRanges.length == 0) throw new IllegalArgumentException("Missing matched ranges!");
+        this.leftUppercaseDistance = leftUppercaseDistance;
+        this.rightUppercaseDistance = rightUppercaseDistance;
+        this.matchedRanges = matchedRanges;
+        this.groupEdges = groupEdges;
+        this.groupEdgePositions = groupEdgePositions;
+        this.groupEdgeTargetIds = groupEdgeTargetIds;
+        this.groupEdgePatternIndexes = groupEdgePatternIndexes;
+    }
+
+    @Override
+    public ArrayList<MatchedGroupEdge> getMatchedGroupEdges() {
+        if (matchedGroupEdges == null) {
+            matchedGroupEdges = new ArrayList<>(groupEdges.length);
+            for (int i = 0; i < groupEdges.length; i++) {
+                int patternIndex = getGroupEdgePatternIndex(i);
+                matchedGroupEdges.add(new MatchedGroupEdge(matchedRanges[patternIndex].getTarget(),
+                        groupEdgeTargetIds[i], patternIndex, groupEdges[i], groupEdgePositions[i]));
+            }
+        }
+        return matchedGroupEdges;
+    }
+
+    public int getGroupEdgesCount() {
+        return groupEdges.length;
+    }
+
+    public GroupEdge getGroupEdge(int index) {
+        return groupEdges[index];
+    }
+
+    public int getGroupEdgePosition(int index) {
+        return groupEdgePositions[index];
+    }
+
+    public byte getGroupEdgeTargetId(int index) {
+        return groupEdgeTargetIds[index];
+    }
+
+    public int getGroupEdgePatternIndex(int index) {
+        return (groupEdgePatternIndexes == null) ? 0 : groupEdgePatternIndexes[index];
     }
 
     /**
@@ -117,7 +206,7 @@ public final class MatchIntermediate extends Match {
     public ArrayList<MatchedGroupEdge> getMatchedGroupEdgesByPattern(int patternIndex) {
         if (edgesByPatternCache == null) {
             edgesByPatternCache = new HashMap<>();
-            for (MatchedGroupEdge matchedGroupEdge : matchedGroupEdges) {
+            for (MatchedGroupEdge matchedGroupEdge : getMatchedGroupEdges()) {
                 int currentPatternIndex = matchedGroupEdge.getPatternIndex();
                 edgesByPatternCache.computeIfAbsent(currentPatternIndex, k -> new ArrayList<>());
                 edgesByPatternCache.get(currentPatternIndex).add(matchedGroupEdge);
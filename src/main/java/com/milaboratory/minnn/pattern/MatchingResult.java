@@ -48,6 +48,19 @@ public interface MatchingResult {
         return getMatches(false);
     }
 
+    /**
+     * Get iterator for match results with lower bound for score. Matches with score below minScore can be skipped
+     * without building them, so the iterator may return less matches than getMatches(fairSorting). Lower bound is
+     * used only with fair sorting: for unfair sorting it would change the order of returned matches.
+     *
+     * @param fairSorting true if we need fair sorting, otherwise false
+     * @param minScore matches with score below this value may be skipped
+     * @return OutputPort iterator for match results
+     */
+    default OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
+        return getMatches(fairSorting);
+    }
+
     /**
      * Get best matching result
      *
@@ -58,6 +71,18 @@ public interface MatchingResult {
         return getMatches(fairSorting).take();
     }
 
+    /**
+     * Get best matching result if its score is not below minScore
+     *
+     * @param fairSorting true if we need fair sorting, otherwise false
+     * @param minScore minimal score of the match that we need
+     * @return best matching result, or null if there is no match or best match score is below minScore
+     */
+    default MatchIntermediate getBestMatch(boolean fairSorting, long minScore) {
+        MatchIntermediate bestMatch = getMatches(fairSorting, minScore).take();
+        return ((bestMatch == null) || (bestMatch.getScore() < minScore)) ? null : bestMatch;
+    }
+
     /**
      * Get best matching result
      *
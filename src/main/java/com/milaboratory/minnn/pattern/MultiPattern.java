@@ -35,6 +35,8 @@ import com.milaboratory.minnn.util.*;
 import java.util.Arrays;
 
 import static com.milaboratory.minnn.pattern.MatchValidationType.LOGICAL_AND;
+import static com.milaboratory.minnn.pattern.PatternUtils.sumMaxScores;
+import static com.milaboratory.minnn.util.AdaptivePortLimits.portLimit;
 import static com.milaboratory.minnn.util.UnfairSorterConfiguration.unfairSorterPortLimits;
 
 public final class MultiPattern extends MultipleReadsOperator {
@@ -78,6 +80,11 @@ public final class MultiPattern extends MultipleReadsOperator {
         return Arrays.stream(singlePatterns).mapToLong(Pattern::estimateComplexity).sum();
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return sumMaxScores(singlePatterns);
+    }
+
     private class MultiPatternMatchingResult implements MatchingResult {
         private final MultiNSequenceWithQuality target;
 
@@ -87,9 +94,14 @@ public final class MultiPattern extends MultipleReadsOperator {
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
+            return getMatches(fairSorting, conf.scoreThreshold);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
             ApproximateSorterConfiguration approximateSorterConfiguration = new ApproximateSorterConfiguration(target,
-                    conf, true, true, fairSorting, LOGICAL_AND,
-                    unfairSorterPortLimits.get(MultiPattern.class), singlePatterns);
+                    conf, fairSorting ? minScore : conf.scoreThreshold, true, true, fairSorting, LOGICAL_AND,
+                    portLimit(MultiPattern.this, unfairSorterPortLimits.get(MultiPattern.class)), singlePatterns);
             return new ApproximateSorter(approximateSorterConfiguration).getOutputPort();
         }
     }
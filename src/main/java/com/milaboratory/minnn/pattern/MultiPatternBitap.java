@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.pattern;
+
+import com.milaboratory.core.sequence.*;
+
+import java.util.*;
+
+import static com.milaboratory.core.sequence.NucleotideSequence.ALPHABET;
+
+/**
+ * Bit-parallel approximate matcher for many short motifs at once: Wu-Manber bitap (shift-and with one state vector
+ * per number of errors) where motifs are packed into long[] words one after another, so the target is scanned once
+ * for all motifs, and each target letter costs (maxErrors + 1) word operations per 64 letters of all motifs instead
+ * of a separate bitap scan for each motif. It finds which motifs are present in the target with the specified
+ * maximal number of substitutions and indels (edit distance), like BitapPattern.substitutionAndIndelMatcherLast().
+ */
+final class MultiPatternBitap {
+    private final int numberOfMotifs;
+    private final int numberOfWords;
+    // equality masks: peq[targetLetterCode][word] has bits set for motif letters that match the target letter
+    private final long[][] peq;
+    // bits for the first and the last letter of each motif in each word
+    private final long[] firstLetterMasks;
+    private final long[] lastLetterMasks;
+    // for each motif: word, first bit and length of its segment
+    private final int[] motifWords;
+    private final int[] motifFirstBits;
+    private final int[] motifSizes;
+    // motif index by word and by bit of the last letter
+    private final int[][] motifIndexes;
+
+    /**
+     * Pack motifs into words.
+     *
+     * @param motifs motifs, each not longer than 64 letters
+     */
+    MultiPatternBitap(List<NucleotideSequence> motifs) {
+        this.numberOfMotifs = motifs.size();
+        this.motifWords = new int[numberOfMotifs];
+        this.motifFirstBits = new int[numberOfMotifs];
+        this.motifSizes = new int[numberOfMotifs];
+        int currentWord = 0;
+        int currentBit = 0;
+        for (int i = 0; i < numberOfMotifs; i++) {
+            int size = motifs.get(i).size();
+            if ((size == 0) || (size > 64))
+                throw new IllegalArgumentException("Wrong motif size for MultiPatternBitap: " + size);
+            if (currentBit + size > 64) {
+                currentWord++;
+                currentBit = 0;
+            }
+            motifWords[i] = currentWord;
+            motifFirstBits[i] = currentBit;
+            motifSizes[i] = size;
+            currentBit += size;
+        }
+        this.numberOfWords = (numberOfMotifs == 0) ? 0 : currentWord + 1;
+        this.peq = new long[ALPHABET.size()][numberOfWords];
+        this.firstLetterMasks = new long[numberOfWords];
+        this.lastLetterMasks = new long[numberOfWords];
+        this.motifIndexes = new int[numberOfWords][64];
+        for (int i = 0; i < numberOfMotifs; i++) {
+            NucleotideSequence motif = motifs.get(i);
+            int word = motifWords[i];
+            int firstBit = motifFirstBits[i];
+            int lastBit = firstBit + motifSizes[i] - 1;
+            firstLetterMasks[word] |= 1L << firstBit;
+            lastLetterMasks[word] |= 1L << lastBit;
+            motifIndexes[word][lastBit] = i;
+            for (byte targetCode = 0; targetCode < ALPHABET.size(); targetCode++) {
+                Wildcard targetWildcard = ALPHABET.codeToWildcard(targetCode);
+                for (int j = 0; j < motif.size(); j++)
+                    if (ALPHABET.codeToWildcard(motif.codeAt(j)).intersectsWith(targetWildcard))
+                        peq[targetCode][word] |= 1L << (firstBit + j);
+            }
+        }
+    }
+
+    int getNumberOfMotifs() {
+        return numberOfMotifs;
+    }
+
+    /**
+     * Scan the target once and find which motifs end at any position in the range with maxErrors or less
+     * substitutions and indels.
+     *
+     * @param maxErrors maximal allowed edit distance
+     * @param sequence target sequence
+     * @param from left border in target, inclusive
+     * @param to right border in target, exclusive
+     * @return indexes of found motifs
+     */
+    BitSet findMotifs(int maxErrors, NucleotideSequence sequence, int from, int to) {
+        BitSet foundMotifs = new BitSet(numberOfMotifs);
+        if (numberOfMotifs == 0)
+            return foundMotifs;
+        // states[errors][word]: bit i is set if motif prefix that ends with letter i matches the target
+        // substring that ends at the current position with this number of errors or less
+        long[][] states = new long[maxErrors + 1][numberOfWords];
+        for (int i = 0; i < numberOfMotifs; i++)
+            for (int errors = 1; errors <= maxErrors; errors++) {
+                // motif prefix of length not more than number of errors matches empty substring with deletions
+                int prefixLength = Math.min(errors, motifSizes[i]);
+                long prefixMask = (prefixLength == 64) ? -1L : (1L << prefixLength) - 1;
+                states[errors][motifWords[i]] |= prefixMask << motifFirstBits[i];
+            }
+        // last letter bits of motifs that are not found yet
+        long[] notFoundMasks = lastLetterMasks.clone();
+        int notFoundCount = numberOfMotifs;
+        for (int position = from; position < to; position++) {
+            long[] currentPeq = peq[sequence.codeAt(position)];
+            for (int word = 0; word < numberOfWords; word++) {
+                long eq = currentPeq[word];
+                long firstLetters = firstLetterMasks[word];
+                /* the last letter of each motif is shifted to the first letter of the next motif, but first letters
+                 * are always set before applying equality mask, so motifs in the same word don't interfere */
+                long previousOld = states[0][word];
+                long previousNew = ((previousOld << 1) | firstLetters) & eq;
+                states[0][word] = previousNew;
+                for (int errors = 1; errors <= maxErrors; errors++) {
+                    long currentOld = states[errors][word];
+                    long currentNew = (((currentOld << 1) | firstLetters) & eq)     // match
+                            | previousOld                                           // insertion
+                            | (previousOld << 1)                                    // substitution
+                            | (previousNew << 1)                                    // deletion
+                            | firstLetters;
+                    states[errors][word] = currentNew;
+                    previousOld = currentOld;
+                    previousNew = currentNew;
+                }
+                long found = previousNew & notFoundMasks[word];
+                while (found != 0) {
+                    int bit = Long.numberOfTrailingZeros(found);
+                    found &= found - 1;
+                    notFoundMasks[word] &= ~(1L << bit);
+                    foundMotifs.set(motifIndexes[word][bit]);
+                    notFoundCount--;
+                }
+            }
+            if (notFoundCount == 0)
+                break;
+        }
+        return foundMotifs;
+    }
+}
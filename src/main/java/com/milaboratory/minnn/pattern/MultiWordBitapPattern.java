@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.pattern;
+
+import com.milaboratory.core.motif.BitapMatcher;
+import com.milaboratory.core.sequence.*;
+
+import static com.milaboratory.core.sequence.NucleotideSequence.ALPHABET;
+
+/**
+ * Bit-parallel approximate matcher for motifs of any length: Myers algorithm with blocks of 64 pattern letters
+ * in long[] words. It finds all positions in the target where the whole motif ends with the specified maximal
+ * number of substitutions and indels (edit distance), like BitapPattern.substitutionAndIndelMatcherLast(), which
+ * is limited to motifs of 63 letters.
+ */
+final class MultiWordBitapPattern {
+    private final int size;
+    private final int numberOfWords;
+    // bit masks for the highest pattern letter in each word; the last word can be filled partially
+    private final long lastLetterMask;
+    // equality masks: peq[targetLetterCode][word] has bits set for motif letters that match the target letter
+    private final long[][] peq;
+
+    MultiWordBitapPattern(NucleotideSequence motif) {
+        this.size = motif.size();
+        if (size == 0)
+            throw new IllegalArgumentException("Empty motif for MultiWordBitapPattern!");
+        this.numberOfWords = (size + 63) / 64;
+        this.lastLetterMask = 1L << ((size - 1) % 64);
+        this.peq = new long[ALPHABET.size()][numberOfWords];
+        for (byte targetCode = 0; targetCode < ALPHABET.size(); targetCode++) {
+            Wildcard targetWildcard = ALPHABET.codeToWildcard(targetCode);
+            for (int i = 0; i < size; i++)
+                if (ALPHABET.codeToWildcard(motif.codeAt(i)).intersectsWith(targetWildcard))
+                    peq[targetCode][i / 64] |= 1L << (i % 64);
+        }
+    }
+
+    /**
+     * Create matcher that returns positions of last letters of matches with maxErrors or less substitutions and
+     * indels, in ascending order.
+     *
+     * @param maxErrors maximal allowed edit distance
+     * @param sequence target sequence
+     * @param from left border in target, inclusive
+     * @param to right border in target, exclusive
+     * @return matcher for the target
+     */
+    BitapMatcher substitutionAndIndelMatcherLast(int maxErrors, NucleotideSequence sequence, int from, int to) {
+        return new MultiWordBitapMatcher(maxErrors, sequence, from, to);
+    }
+
+    private final class MultiWordBitapMatcher implements BitapMatcher {
+        private final int maxErrors;
+        private final NucleotideSequence sequence;
+        private final int to;
+        private final long[] pv;
+        private final long[] mv;
+        private int currentPosition;
+        // edit distance between the whole motif and the best substring that ends at currentPosition
+        private int currentErrors;
+
+        MultiWordBitapMatcher(int maxErrors, NucleotideSequence sequence, int from, int to) {
+            this.maxErrors = maxErrors;
+            this.sequence = sequence;
+            this.to = to;
+            this.pv = new long[numberOfWords];
+            this.mv = new long[numberOfWords];
+            for (int i = 0; i < numberOfWords; i++)
+                pv[i] = -1L;
+            this.currentPosition = from - 1;
+            this.currentErrors = size;
+        }
+
+        @Override
+        public int findNext() {
+            while (++currentPosition < to) {
+                long[] currentPeq = peq[sequence.codeAt(currentPosition)];
+                // top row of the matrix is zero, because match can start at any position
+                int carry = 0;
+                for (int word = 0; word < numberOfWords; word++) {
+                    long highBit = (word == numberOfWords - 1) ? lastLetterMask : Long.MIN_VALUE;
+                    carry = advanceBlock(word, currentPeq[word], carry, highBit);
+                }
+                currentErrors += carry;
+                if (currentErrors <= maxErrors)
+                    return currentPosition;
+            }
+            return -1;
+        }
+
+        @Override
+        public int getNumberOfErrors() {
+            return currentErrors;
+        }
+
+        /**
+         * Calculate next column for one 64-letter block of the matrix.
+         *
+         * @param word index of the block
+         * @param eq equality mask of the block for the current target letter
+         * @param hin horizontal difference (-1, 0 or 1) that comes from the previous block
+         * @param highBit mask of the lowest row of the block that is used to calculate horizontal difference
+         * @return horizontal difference in the lowest row of the block
+         */
+        private int advanceBlock(int word, long eq, int hin, long highBit) {
+            long pvWord = pv[word];
+            long mvWord = mv[word];
+            long xv = eq | mvWord;
+            if (hin < 0)
+                eq |= 1L;
+            long xh = (((eq & pvWord) + pvWord) ^ pvWord) | eq;
+            long ph = mvWord | ~(xh | pvWord);
+            long mh = pvWord & xh;
+            int hout = 0;
+            if ((ph & highBit) != 0)
+                hout = 1;
+            else if ((mh & highBit) != 0)
+                hout = -1;
+            ph <<= 1;
+            mh <<= 1;
+            if (hin < 0)
+                mh |= 1L;
+            else if (hin > 0)
+                ph |= 1L;
+            pv[word] = mh | ~(xv | ph);
+            mv[word] = ph & xv;
+            return hout;
+        }
+    }
+}
@@ -56,8 +56,17 @@ public final class MultipleReadsFilterPattern extends MultipleReadsOperator {
         return filterPattern.match(target);
     }
 
+    Filter getFilter() {
+        return filter;
+    }
+
     @Override
     public long estimateComplexity() {
         return filterPattern.estimateComplexity();
     }
+
+    @Override
+    public long estimateMaxScore() {
+        return filterPattern.estimateMaxScore();
+    }
 }
@@ -60,6 +60,11 @@ public final class NotOperator extends MultipleReadsOperator {
         return operandPatterns[0].estimateComplexity();
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return conf.notResultScore;
+    }
+
     private class NotOperatorMatchingResult implements MatchingResult {
         private final MultipleReadsOperator operandPattern;
         private final MultiNSequenceWithQuality target;
@@ -91,8 +96,8 @@ public final class NotOperator extends MultipleReadsOperator {
                     return null;
                 else {
                     return new MatchIntermediate(1, conf.notResultScore,
-                            -1, -1,
-                            new ArrayList<>(), new NullMatchedRange(0));
+                            -1, -1, new GroupEdge[0], new int[0], new byte[0], null,
+                            new NullMatchedRange(0));
                 }
             }
         }
@@ -35,6 +35,7 @@ import com.milaboratory.minnn.util.*;
 import java.util.Arrays;
 
 import static com.milaboratory.minnn.pattern.MatchValidationType.LOGICAL_OR;
+import static com.milaboratory.minnn.util.AdaptivePortLimits.portLimit;
 import static com.milaboratory.minnn.util.UnfairSorterConfiguration.unfairSorterPortLimits;
 
 public final class OrOperator extends MultipleReadsOperator {
@@ -58,6 +59,12 @@ public final class OrOperator extends MultipleReadsOperator {
                 .orElseThrow(IllegalStateException::new);
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return Arrays.stream(operandPatterns).mapToLong(Pattern::estimateMaxScore).max()
+                .orElseThrow(IllegalStateException::new);
+    }
+
     private class OrOperatorMatchingResult implements MatchingResult {
         private final MultiNSequenceWithQuality target;
 
@@ -67,9 +74,14 @@ public final class OrOperator extends MultipleReadsOperator {
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
+            return getMatches(fairSorting, conf.scoreThreshold);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
             ApproximateSorterConfiguration approximateSorterConfiguration = new ApproximateSorterConfiguration(target,
-                    conf, false, false, fairSorting, LOGICAL_OR,
-                    unfairSorterPortLimits.get(OrOperator.class), operandPatterns);
+                    conf, fairSorting ? minScore : conf.scoreThreshold, false, false, fairSorting, LOGICAL_OR,
+                    portLimit(OrOperator.this, unfairSorterPortLimits.get(OrOperator.class)), operandPatterns);
             return new ApproximateSorter(approximateSorterConfiguration).getOutputPort();
         }
     }
@@ -33,8 +33,11 @@ import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.minnn.util.*;
 
 import java.util.*;
+import java.util.stream.*;
 
+import static com.milaboratory.minnn.cli.Defaults.*;
 import static com.milaboratory.minnn.pattern.MatchValidationType.FIRST;
+import static com.milaboratory.minnn.util.AdaptivePortLimits.portLimit;
 import static com.milaboratory.minnn.util.UnfairSorterConfiguration.unfairSorterPortLimits;
 
 /**
@@ -42,14 +45,34 @@ import static com.milaboratory.minnn.util.UnfairSorterConfiguration.unfairSorter
  * if all arguments didn't match.
  */
 public final class OrPattern extends MultiplePatternsOperator implements CanFixBorders {
+    /* Operands that are plain FuzzyMatchPattern literals are searched in the target with a single scan; operands
+     * which motifs are not found can't match and are excluded before ApproximateSorter. Indexes array is empty
+     * and bitap is null if there are not enough literal operands. */
+    private final int[] literalOperandIndexes;
+    private final MultiPatternBitap literalsBitap;
+
     public OrPattern(PatternConfiguration conf, SinglePattern... operandPatterns) {
         super(conf, false, operandPatterns);
+        this.literalOperandIndexes = findLiteralOperandIndexes(conf, operandPatterns);
+        this.literalsBitap = (literalOperandIndexes.length == 0) ? null : new MultiPatternBitap(
+                Arrays.stream(literalOperandIndexes).mapToObj(i -> ((FuzzyMatchPattern)(operandPatterns[i]))
+                        .getPlainLiteralMotif()).collect(Collectors.toList()));
     }
 
     private OrPattern(
             PatternConfiguration conf, byte targetId, SinglePattern[] operandPatterns,
-            ArrayList<GroupEdge> groupEdges) {
+            ArrayList<GroupEdge> groupEdges, int[] literalOperandIndexes, MultiPatternBitap literalsBitap) {
         super(conf, targetId, operandPatterns, groupEdges);
+        this.literalOperandIndexes = literalOperandIndexes;
+        this.literalsBitap = literalsBitap;
+    }
+
+    private static int[] findLiteralOperandIndexes(PatternConfiguration conf, SinglePattern[] operandPatterns) {
+        int[] indexes = IntStream.range(0, operandPatterns.length)
+                .filter(i -> (operandPatterns[i] instanceof FuzzyMatchPattern)
+                        && (operandPatterns[i].conf.bitapMaxErrors == conf.bitapMaxErrors)
+                        && (((FuzzyMatchPattern)(operandPatterns[i])).getPlainLiteralMotif() != null)).toArray();
+        return (indexes.length < MULTI_PATTERN_BITAP_MIN_LITERALS) ? new int[0] : indexes;
     }
 
     @Override
@@ -91,6 +114,12 @@ public final class OrPattern extends MultiplePatternsOperator implements CanFixB
                 .orElseThrow(IllegalStateException::new);
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return Arrays.stream(operandPatterns).mapToLong(Pattern::estimateMaxScore).max()
+                .orElseThrow(IllegalStateException::new);
+    }
+
     @Override
     public SinglePattern fixBorder(boolean left, int position) {
         return new OrPattern(conf, Arrays.stream(operandPatterns)
@@ -102,13 +131,14 @@ public final class OrPattern extends MultiplePatternsOperator implements CanFixB
     SinglePattern setTargetId(byte targetId) {
         validateTargetId(targetId);
         SinglePattern[] newOperandPatterns = setTargetIdForOperands();
-        return new OrPattern(conf, targetId, newOperandPatterns, groupEdges);
+        return new OrPattern(conf, targetId, newOperandPatterns, groupEdges, literalOperandIndexes, literalsBitap);
     }
 
     private class OrPatternMatchingResult implements MatchingResult {
         private final NSequenceWithQuality target;
         private final int from;
         private final int to;
+        private SinglePattern[] possibleOperandPatterns = null;
 
         OrPatternMatchingResult(NSequenceWithQuality target, int from, int to) {
             this.target = target;
@@ -118,10 +148,42 @@ public final class OrPattern extends MultiplePatternsOperator implements CanFixB
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
+            return getMatches(fairSorting, conf.scoreThreshold);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
+            if (possibleOperandPatterns == null)
+                possibleOperandPatterns = findPossibleOperandPatterns();
+            if ((possibleOperandPatterns.length == 0) && (operandPatterns.length > 0))
+                return () -> null;
             ApproximateSorterConfiguration approximateSorterConfiguration = new ApproximateSorterConfiguration(target,
-                    from, to, conf, false, fairSorting, FIRST,
-                    unfairSorterPortLimits.get(OrPattern.class), operandPatterns);
+                    from, to, conf, fairSorting ? minScore : conf.scoreThreshold, false, fairSorting, FIRST,
+                    portLimit(OrPattern.this, unfairSorterPortLimits.get(OrPattern.class)), possibleOperandPatterns);
             return new ApproximateSorter(approximateSorterConfiguration).getOutputPort();
         }
+
+        /**
+         * Scan the target once for all literal operands and exclude literals that are not found: they have no
+         * matches, and with FIRST validation type operands without matches don't change the result.
+         *
+         * @return operands that can match in this target, in the original order
+         */
+        private SinglePattern[] findPossibleOperandPatterns() {
+            if (literalsBitap == null)
+                return operandPatterns;
+            BitSet foundLiterals = literalsBitap.findMotifs(conf.bitapMaxErrors, target.getSequence(), from, to);
+            List<SinglePattern> possibleOperands = new ArrayList<>();
+            int literalNumber = 0;
+            for (int i = 0; i < operandPatterns.length; i++) {
+                if ((literalNumber < literalOperandIndexes.length) && (literalOperandIndexes[literalNumber] == i)) {
+                    if (foundLiterals.get(literalNumber))
+                        possibleOperands.add(operandPatterns[i]);
+                    literalNumber++;
+                } else
+                    possibleOperands.add(operandPatterns[i]);
+            }
+            return possibleOperands.toArray(new SinglePattern[0]);
+        }
     }
 }
@@ -29,6 +29,8 @@
 package com.milaboratory.minnn.pattern;
 
 import com.milaboratory.core.sequence.MultiNSequenceWithQuality;
+import com.milaboratory.minnn.util.ApproximateSorter;
+import com.milaboratory.minnn.util.BatchMatchingScope;
 
 import java.util.ArrayList;
 
@@ -47,6 +49,54 @@ public abstract class Pattern {
      */
     public abstract MatchingResult match(MultiNSequenceWithQuality target);
 
+    /**
+     * Search for best matches of this pattern in a batch of targets. Data that sorters derive only from patterns are
+     * calculated once for the whole batch (see BatchMatchingScope), and bookkeeping buffers of sorters are reused for
+     * all targets. Before matching each target, ApproximateSorter.recycleThreadBuffers() is called, so matching
+     * results and output ports that were created by current thread before this call must not be used after it;
+     * returned matches can be used.
+     *
+     * @param targets       targets; null values are skipped
+     * @param fairSorting   true if we need fair sorting, otherwise false
+     * @return              best matches for targets, same length as targets array; null for null targets and for
+     *                      targets without matches
+     */
+    public MatchIntermediate[] matchBatch(MultiNSequenceWithQuality[] targets, boolean fairSorting) {
+        return matchBatch(targets, fairSorting, null);
+    }
+
+    /**
+     * Search for best matches of this pattern in a batch of targets, with lower bound for match score for each
+     * target. See matchBatch(targets, fairSorting) for details.
+     *
+     * @param targets       targets; null values are skipped
+     * @param fairSorting   true if we need fair sorting, otherwise false
+     * @param minScores     lower bounds for scores of best matches, same length as targets array; Long.MIN_VALUE
+     *                      means no bound; null if there are no bounds for all targets
+     * @return              best matches for targets, same length as targets array; null for null targets, for
+     *                      targets without matches and for targets where best match score is below the bound
+     */
+    public MatchIntermediate[] matchBatch(MultiNSequenceWithQuality[] targets, boolean fairSorting,
+                                         long[] minScores) {
+        MatchIntermediate[] bestMatches = new MatchIntermediate[targets.length];
+        BatchMatchingScope.open();
+        try {
+            for (int i = 0; i < targets.length; i++) {
+                if (targets[i] == null)
+                    continue;
+                // sorters from the previous target are not used anymore, so their buffers can be reused
+                ApproximateSorter.recycleThreadBuffers();
+                MatchingResult matchingResult = match(targets[i]);
+                bestMatches[i] = ((minScores == null) || (minScores[i] == Long.MIN_VALUE))
+                        ? matchingResult.getBestMatch(fairSorting)
+                        : matchingResult.getBestMatch(fairSorting, minScores[i]);
+            }
+        } finally {
+            BatchMatchingScope.close();
+        }
+        return bestMatches;
+    }
+
     /**
      * Get list of group edges that are inside this pattern.
      *
@@ -64,4 +114,12 @@ public abstract class Pattern {
      * @return estimated computational complexity: bigger values mean higher complexity
      */
     public abstract long estimateComplexity();
+
+    /**
+     * Estimate maximal score that matches of this pattern can get. It is upper bound that is used to skip
+     * subpatterns and combinations of operand matches that can't reach the needed score.
+     *
+     * @return upper bound for match score; Long.MAX_VALUE if score is not bounded
+     */
+    public abstract long estimateMaxScore();
 }
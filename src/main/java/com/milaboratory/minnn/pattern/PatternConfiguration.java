@@ -40,6 +40,7 @@ public class PatternConfiguration {
     public final int maxOverlap;
     final int leftBorder;
     final long notResultScore;
+    private volatile ScoringBounds scoringBounds = null;
 
     /**
      * @param defaultGroupsOverride     true if there is default groups override in any pattern in the query
@@ -76,6 +77,12 @@ public class PatternConfiguration {
         this.notResultScore = notResultScore;
     }
 
+    ScoringBounds getScoringBounds() {
+        if (scoringBounds == null)
+            scoringBounds = ScoringBounds.get(scoring);
+        return scoringBounds;
+    }
+
     public PatternConfiguration overrideScoreThreshold(long newThresholdValue) {
         return new PatternConfiguration(defaultGroupsOverride, patternAligner, scoring, newThresholdValue,
                 singleOverlapPenalty, bitapMaxErrors, maxOverlap, leftBorder, notResultScore);
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.pattern;
+
+import java.util.*;
+
+import static com.milaboratory.minnn.pattern.PatternUtils.operandsEvaluationOrder;
+
+/**
+ * Optimization pass between parsing and matching: it rewrites the parsed pattern tree into equivalent tree that is
+ * cheaper to match. Fixed borders from ^ and $ are already pushed down to the leaves by the parser; operands of
+ * operators are matched in the order of estimated complexity by ApproximateSorter. The planner merges adjacent
+ * literals in SequencePattern, collapses nested OrPatterns and shares equal subpatterns, and it can print the plan
+ * with estimated costs.
+ */
+public final class PatternPlanner {
+    private PatternPlanner() {}
+
+    /**
+     * Rewrite the pattern into equivalent pattern that is cheaper to match.
+     *
+     * @param pattern   parsed pattern
+     * @return          optimized pattern; the same object if there is nothing to optimize
+     */
+    public static Pattern optimize(Pattern pattern) {
+        return optimize(pattern, new IdentityHashMap<>());
+    }
+
+    /**
+     * Optimize the pattern; equal single-read subpatterns are replaced with the same object, so their matches
+     * for the same target and range are memoized by ApproximateSorter.
+     *
+     * @param pattern               pattern
+     * @param canonicalPatterns     for each configuration: already optimized subpatterns by their string
+     *                              representations and target ids
+     * @return                      optimized pattern
+     */
+    private static Pattern optimize(
+            Pattern pattern, Map<PatternConfiguration, Map<String, SinglePattern>> canonicalPatterns) {
+        Pattern[] operands = getOperands(pattern);
+        Pattern[] newOperands = Arrays.stream(operands).map(operand -> optimize(operand, canonicalPatterns))
+                .toArray(Pattern[]::new);
+        boolean operandsChanged = false;
+        for (int i = 0; i < operands.length; i++)
+            operandsChanged |= (operands[i] != newOperands[i]);
+
+        Pattern optimizedPattern;
+        if (pattern instanceof SequencePattern)
+            optimizedPattern = optimizeSequence((SequencePattern)pattern, toSinglePatterns(newOperands),
+                    operandsChanged);
+        else if (pattern instanceof OrPattern)
+            optimizedPattern = optimizeOr((OrPattern)pattern, toSinglePatterns(newOperands), operandsChanged);
+        else if (operandsChanged)
+            optimizedPattern = rebuild(pattern, newOperands);
+        else
+            optimizedPattern = pattern;
+
+        if (optimizedPattern instanceof SinglePattern) {
+            SinglePattern singlePattern = (SinglePattern)optimizedPattern;
+            return canonicalPatterns.computeIfAbsent(singlePattern.conf, conf -> new HashMap<>())
+                    .computeIfAbsent(singlePattern.targetId + ":" + singlePattern, key -> singlePattern);
+        } else
+            return optimizedPattern;
+    }
+
+    /**
+     * Print the tree of the pattern with estimated complexity and maximal score of each node, and with order of
+     * matching operands for operators.
+     *
+     * @param pattern   pattern
+     * @return          multi-line string with pattern tree
+     */
+    public static String explain(Pattern pattern) {
+        StringBuilder plan = new StringBuilder();
+        explain(plan, pattern, 0);
+        return plan.toString();
+    }
+
+    private static void explain(StringBuilder plan, Pattern pattern, int level) {
+        Pattern[] operands = getOperands(pattern);
+        for (int i = 0; i < level; i++)
+            plan.append("  ");
+        if (operands.length == 0)
+            plan.append(pattern);
+        else if (pattern instanceof FilterPattern)
+            plan.append("FilterPattern(").append(((FilterPattern)pattern).getFilter()).append(")");
+        else if (pattern instanceof MultipleReadsFilterPattern)
+            plan.append("MultipleReadsFilterPattern(").append(((MultipleReadsFilterPattern)pattern).getFilter())
+                    .append(")");
+        else
+            plan.append(pattern.getClass().getSimpleName());
+        long maxScore = pattern.estimateMaxScore();
+        plan.append("  [complexity: ").append(pattern.estimateComplexity()).append(", max score: ")
+                .append((maxScore == Long.MAX_VALUE) ? "unbounded" : String.valueOf(maxScore));
+        if ((operands.length > 1) && !(pattern instanceof OrPattern) && !(pattern instanceof OrOperator))
+            plan.append(", operands order: ").append(Arrays.toString(operandsEvaluationOrder(operands)));
+        plan.append("]\n");
+        for (Pattern operand : operands)
+            explain(plan, operand, level + 1);
+    }
+
+    /**
+     * Merge adjacent literals; SequencePattern of a single merged literal is replaced with this literal.
+     */
+    private static SinglePattern optimizeSequence(
+            SequencePattern pattern, SinglePattern[] operands, boolean operandsChanged) {
+        List<SinglePattern> newOperands = new ArrayList<>();
+        for (SinglePattern operand : operands) {
+            int lastIndex = newOperands.size() - 1;
+            if ((lastIndex >= 0) && (newOperands.get(lastIndex) instanceof FuzzyMatchPattern)
+                    && (operand instanceof FuzzyMatchPattern)
+                    && ((FuzzyMatchPattern)newOperands.get(lastIndex))
+                        .canBeConcatenatedWith((FuzzyMatchPattern)operand))
+                newOperands.set(lastIndex, ((FuzzyMatchPattern)newOperands.get(lastIndex))
+                        .concatenate((FuzzyMatchPattern)operand));
+            else
+                newOperands.add(operand);
+        }
+        if (newOperands.size() == 1)
+            return withTargetId(newOperands.get(0), pattern.targetId);
+        else if (operandsChanged || (newOperands.size() < operands.length))
+            return withTargetId(new SequencePattern(pattern.conf, newOperands.toArray(new SinglePattern[0])),
+                    pattern.targetId);
+        else
+            return pattern;
+    }
+
+    /**
+     * Collapse nested OrPatterns: OrPattern returns the best match of its operands, and the best match of nested
+     * OrPattern operand is the best match of its own operands.
+     */
+    private static SinglePattern optimizeOr(OrPattern pattern, SinglePattern[] operands, boolean operandsChanged) {
+        List<SinglePattern> newOperands = new ArrayList<>();
+        for (SinglePattern operand : operands) {
+            if (operand instanceof OrPattern)
+                newOperands.addAll(Arrays.asList(((OrPattern)operand).operandPatterns));
+            else
+                newOperands.add(operand);
+        }
+        if (operandsChanged || (newOperands.size() > operands.length))
+            return withTargetId(new OrPattern(pattern.conf, newOperands.toArray(new SinglePattern[0])),
+                    pattern.targetId);
+        else
+            return pattern;
+    }
+
+    private static Pattern rebuild(Pattern pattern, Pattern[] operands) {
+        PatternConfiguration conf = pattern.conf;
+        if (pattern instanceof AndPattern)
+            return withTargetId(new AndPattern(conf, toSinglePatterns(operands)), ((AndPattern)pattern).targetId);
+        else if (pattern instanceof PlusPattern)
+            return withTargetId(new PlusPattern(conf, toSinglePatterns(operands)),
+                    ((PlusPattern)pattern).targetId);
+        else if (pattern instanceof FilterPattern) {
+            FilterPattern filterPattern = new FilterPattern(conf, ((FilterPattern)pattern).getFilter(), operands[0]);
+            return (operands[0] instanceof SinglePattern)
+                    ? withTargetId(filterPattern, ((FilterPattern)pattern).targetId) : filterPattern;
+        }
+        else if (pattern instanceof FullReadPattern)
+            return new FullReadPattern(conf, (SinglePattern)operands[0])
+                    .setTargetId(((FullReadPattern)pattern).targetId);
+        else if (pattern instanceof MultiPattern)
+            return new MultiPattern(conf, toSinglePatterns(operands));
+        else if (pattern instanceof AndOperator)
+            return new AndOperator(conf, toMultipleReadsOperators(operands));
+        else if (pattern instanceof OrOperator)
+            return new OrOperator(conf, toMultipleReadsOperators(operands));
+        else if (pattern instanceof NotOperator)
+            return new NotOperator(conf, toMultipleReadsOperators(operands));
+        else if (pattern instanceof MultipleReadsFilterPattern)
+            return new MultipleReadsFilterPattern(conf, ((MultipleReadsFilterPattern)pattern).getFilter(),
+                    toMultipleReadsOperators(operands));
+        else
+            throw new IllegalStateException("Unsupported pattern with operands: " + pattern);
+    }
+
+    private static Pattern[] getOperands(Pattern pattern) {
+        if (pattern instanceof MultiplePatternsOperator)
+            return ((MultiplePatternsOperator)pattern).operandPatterns;
+        else if (pattern instanceof FilterPattern)
+            return new Pattern[] { ((FilterPattern)pattern).getOperand() };
+        else if (pattern instanceof FullReadPattern)
+            return new Pattern[] { ((FullReadPattern)pattern).getOperand() };
+        else if (pattern instanceof MultipleReadsOperator) {
+            MultipleReadsOperator multipleReadsOperator = (MultipleReadsOperator)pattern;
+            return (multipleReadsOperator.singlePatterns.length > 0) ? multipleReadsOperator.singlePatterns
+                    : multipleReadsOperator.operandPatterns;
+        } else
+            return new Pattern[0];
+    }
+
+    private static SinglePattern withTargetId(SinglePattern pattern, byte targetId) {
+        return (pattern.targetId == targetId) ? pattern : pattern.setTargetId(targetId);
+    }
+
+    private static SinglePattern[] toSinglePatterns(Pattern[] patterns) {
+        return Arrays.stream(patterns).map(p -> (SinglePattern)p).toArray(SinglePattern[]::new);
+    }
+
+    private static MultipleReadsOperator[] toMultipleReadsOperators(Pattern[] patterns) {
+        return Arrays.stream(patterns).map(p -> (MultipleReadsOperator)p).toArray(MultipleReadsOperator[]::new);
+    }
+}
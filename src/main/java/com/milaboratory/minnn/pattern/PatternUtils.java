@@ -36,6 +36,7 @@ import com.milaboratory.core.sequence.NucleotideSequenceCaseSensitive;
 import gnu.trove.map.hash.TObjectByteHashMap;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 import static com.milaboratory.minnn.cli.Defaults.BUILTIN_READ_GROUPS_NUM;
 
@@ -50,6 +51,40 @@ public final class PatternUtils {
             defaultGroupIds.put("R" + targetId, (byte)targetId);
     }
 
+    /**
+     * Sum of estimated maximal scores of patterns, for operators that combine scores of operands by sum.
+     *
+     * @param patterns operand patterns
+     * @return sum of maximal scores, or Long.MAX_VALUE if any of the patterns has unbounded score
+     */
+    static long sumMaxScores(Pattern[] patterns) {
+        long sum = 0;
+        for (Pattern pattern : patterns) {
+            long maxScore = pattern.estimateMaxScore();
+            if (maxScore == Long.MAX_VALUE)
+                return Long.MAX_VALUE;
+            sum += maxScore;
+        }
+        return sum;
+    }
+
+    /**
+     * Order in which operands are matched when all their matches are needed: operands with lower estimated
+     * complexity go first, because they are cheaper and more selective, and when any operand has no matches,
+     * other operands don't need to be matched. Operands with equal complexity keep their original order.
+     *
+     * @param patterns operand patterns
+     * @return indexes of operands in the order of matching
+     */
+    public static int[] operandsEvaluationOrder(Pattern[] patterns) {
+        long[] complexities = new long[patterns.length];
+        for (int i = 0; i < patterns.length; i++)
+            complexities[i] = patterns[i].estimateComplexity();
+        return IntStream.range(0, patterns.length).boxed()
+                .sorted(Comparator.comparingLong((Integer i) -> complexities[i]))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
     public static int invertCoordinate(int x) {
         return -2 - x;
     }
@@ -126,16 +161,15 @@ public final class PatternUtils {
         Range foundRange = alignment.getSequence2Range();
         long matchScore = (long)alignment.getScore() + extraScorePenalty;
         MatchedRange matchedRange = new MatchedRange(target, targetId, 0, foundRange);
-        ArrayList<MatchedGroupEdge> matchedGroupEdges = new ArrayList<>();
-
-        for (GroupEdgePosition groupEdgePosition : groupEdgePositions) {
-            byte matchedGroupTargetId = overrideTargetIds
-                    ? defaultGroupIds.get(groupEdgePosition.getGroupEdge().getGroupName())
-                    : targetId;
-            int foundGroupEdgePosition = toSeq2Position(alignment, groupEdgePosition.getPosition());
-            MatchedGroupEdge matchedGroupEdge = new MatchedGroupEdge(target, matchedGroupTargetId, 0,
-                    groupEdgePosition.getGroupEdge(), foundGroupEdgePosition);
-            matchedGroupEdges.add(matchedGroupEdge);
+        int numberOfGroupEdges = groupEdgePositions.size();
+        GroupEdge[] groupEdges = new GroupEdge[numberOfGroupEdges];
+        int[] foundGroupEdgePositions = new int[numberOfGroupEdges];
+        byte[] groupEdgeTargetIds = new byte[numberOfGroupEdges];
+        for (int i = 0; i < numberOfGroupEdges; i++) {
+            GroupEdgePosition groupEdgePosition = groupEdgePositions.get(i);
+            groupEdges[i] = groupEdgePosition.getGroupEdge();
+            foundGroupEdgePositions[i] = toSeq2Position(alignment, groupEdgePosition.getPosition());
+            groupEdgeTargetIds[i] = overrideTargetIds ? defaultGroupIds.get(groupEdges[i].getGroupName()) : targetId;
         }
 
         if (((firstUppercase != -1) && (firstUppercase < alignment.getSequence1Range().getLower()))
@@ -149,7 +183,7 @@ public final class PatternUtils {
                 : foundRange.getUpper() - 1 - toSeq2Position(alignment, lastUppercase);
 
         return new MatchIntermediate(1, matchScore, leftUppercaseDistance, rightUppercaseDistance,
-                matchedGroupEdges, matchedRange);
+                groupEdges, foundGroupEdgePositions, groupEdgeTargetIds, null, matchedRange);
     }
 
     /**
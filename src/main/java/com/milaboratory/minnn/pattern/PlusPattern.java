@@ -37,6 +37,8 @@ import java.util.Arrays;
 import java.util.stream.IntStream;
 
 import static com.milaboratory.minnn.pattern.MatchValidationType.ORDER;
+import static com.milaboratory.minnn.pattern.PatternUtils.sumMaxScores;
+import static com.milaboratory.minnn.util.AdaptivePortLimits.portLimit;
 import static com.milaboratory.minnn.util.UnfairSorterConfiguration.unfairSorterPortLimits;
 
 public final class PlusPattern extends MultiplePatternsOperator implements CanFixBorders {
@@ -77,6 +79,11 @@ public final class PlusPattern extends MultiplePatternsOperator implements CanFi
         return Arrays.stream(operandPatterns).mapToLong(Pattern::estimateComplexity).sum();
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return sumMaxScores(operandPatterns);
+    }
+
     @Override
     public SinglePattern fixBorder(boolean left, int position) {
         int targetOperandIndex = left ? 0 : operandPatterns.length - 1;
@@ -110,9 +117,14 @@ public final class PlusPattern extends MultiplePatternsOperator implements CanFi
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
+            return getMatches(fairSorting, conf.scoreThreshold);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
             ApproximateSorterConfiguration approximateSorterConfiguration = new ApproximateSorterConfiguration(target,
-                    from, to, conf, true, fairSorting, ORDER,
-                    unfairSorterPortLimits.get(PlusPattern.class), operandPatterns);
+                    from, to, conf, fairSorting ? minScore : conf.scoreThreshold, true, fairSorting, ORDER,
+                    portLimit(PlusPattern.this, unfairSorterPortLimits.get(PlusPattern.class)), operandPatterns);
             return new ApproximateSorter(approximateSorterConfiguration).getOutputPort();
         }
     }
@@ -156,6 +156,15 @@ public final class RepeatNPattern extends SinglePattern implements CanBeSingleSe
                     * lettersComplexity.get('N');
     }
 
+    @Override
+    public long estimateMaxScore() {
+        ScoringBounds scoringBounds = conf.getScoringBounds();
+        if (scoringBounds.maxScore(1) <= 0)
+            return scoringBounds.maxScore(minRepeats);
+        else
+            return (maxRepeats == Integer.MAX_VALUE) ? Long.MAX_VALUE : scoringBounds.maxScore(maxRepeats);
+    }
+
     @Override
     public boolean isSingleSequence() {
         return true;
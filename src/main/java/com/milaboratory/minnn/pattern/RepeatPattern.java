@@ -32,7 +32,7 @@ import cc.redberry.pipe.OutputPort;
 import com.milaboratory.core.Range;
 import com.milaboratory.core.alignment.Alignment;
 import com.milaboratory.core.sequence.*;
-import gnu.trove.map.hash.TCharObjectHashMap;
+import gnu.trove.map.hash.TCharIntHashMap;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -166,6 +166,15 @@ public final class RepeatPattern extends SinglePattern implements CanBeSingleSeq
                     * lettersComplexity.get(patternSeq.symbolAt(0)) / minRepeats;
     }
 
+    @Override
+    public long estimateMaxScore() {
+        ScoringBounds scoringBounds = conf.getScoringBounds();
+        if (scoringBounds.maxScore(1) <= 0)
+            return scoringBounds.maxScore(minRepeats);
+        else
+            return (maxRepeats == Integer.MAX_VALUE) ? Long.MAX_VALUE : scoringBounds.maxScore(maxRepeats);
+    }
+
     @Override
     public boolean isSingleSequence() {
         return true;
@@ -204,7 +213,12 @@ public final class RepeatPattern extends SinglePattern implements CanBeSingleSeq
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
-            return new RepeatPatternOutputPort(fairSorting);
+            return new RepeatPatternOutputPort(fairSorting, Long.MIN_VALUE);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
+            return new RepeatPatternOutputPort(fairSorting, fairSorting ? minScore : Long.MIN_VALUE);
         }
 
         private class RepeatPatternOutputPort implements OutputPort<MatchIntermediate> {
@@ -212,14 +226,11 @@ public final class RepeatPattern extends SinglePattern implements CanBeSingleSeq
             private final int maxRepeats;
             private final boolean fixedBorder;
             private final boolean fairSorting;
-            private final TargetSections targetSections;
+            private final TargetMismatches targetMismatches;
+            private final long minScore;
+            private final ScoringBounds scoringBounds;
             private boolean noMoreMatches = false;
 
-            /* Length of longest valid section starting from this position (index1) in target inside (from->to) range.
-             * Section is valid when number of errors (index2) isn't bigger than bitapMaxErrors
-             * in PatternConfiguration. */
-            private final int[][] longestValidSections;
-
             // Data structures used for unfair sorting.
             private final HashSet<Range> uniqueRangesUnfair = new HashSet<>();
             private final HashSet<UniqueAlignedSequence> uniqueAlignedSequencesUnfair = new HashSet<>();
@@ -231,31 +242,23 @@ public final class RepeatPattern extends SinglePattern implements CanBeSingleSeq
             private TreeSet<ComparableMatch> allMatches = null;
             private Iterator<ComparableMatch> allMatchesIterator = null;
 
-            RepeatPatternOutputPort(boolean fairSorting) {
+            RepeatPatternOutputPort(boolean fairSorting, long minScore) {
                 int maxErrors = conf.bitapMaxErrors;
+                this.minScore = minScore;
+                this.scoringBounds = (minScore > conf.scoreThreshold) ? conf.getScoringBounds() : null;
                 this.maxRepeats = Math.min(RepeatPattern.this.maxRepeats, to - from);
                 this.fixedBorder = (fixedLeftBorder != -1) || (fixedRightBorder != -1);
                 if ((from >= to) || (minRepeats > this.maxRepeats + maxErrors)
                         || ((fixedLeftBorder != -1) && (from > fixedLeftBorder + maxErrors))
-                        || ((fixedRightBorder != -1) && (to <= fixedRightBorder - maxErrors)))
+                        || ((fixedRightBorder != -1) && (to <= fixedRightBorder - maxErrors))
+                        || ((scoringBounds != null) && (minScore > estimateMaxScore())))
                     noMoreMatches = true;
                 this.uppercasePattern = Character.isUpperCase(patternSeq.symbolAt(0));
                 this.fairSorting = fairSorting;
                 this.currentRepeats = maxRepeats + maxErrors;
 
-                if (!noMoreMatches) {
-                    this.targetSections = new TargetSections(target.getSequence().toString().substring(from, to),
-                            patternSeq);
-                    this.longestValidSections = new int[to - from][maxErrors + 1];
-                    for (int i = 0; i < to - from; i++) {
-                        longestValidSections[i] = new int[maxErrors + 1];
-                        for (int j = 0; j <= maxErrors; j++)
-                            longestValidSections[i][j] = calculateLongestValidSection(i, j);
-                    }
-                } else {
-                    this.targetSections = null;
-                    this.longestValidSections = null;
-                }
+                this.targetMismatches = noMoreMatches ? null
+                        : new TargetMismatches(target.getSequence(), from, to, patternSeq);
             }
 
             @Override
@@ -275,7 +278,7 @@ public final class RepeatPattern extends SinglePattern implements CanBeSingleSeq
 
             private MatchIntermediate takeUnfair() {
                 while (!noMoreMatches) {
-                    int currentLongestSection = longestValidSections[currentPosition][currentMaxErrors];
+                    int currentLongestSection = targetMismatches.longestValidSection(currentPosition, currentMaxErrors);
                     if (Math.max(minRepeats, currentRepeats) <= currentLongestSection) {
                         Range currentRange = new Range(currentPosition + from,
                                 Math.min(to, currentPosition + currentRepeats + from));
@@ -348,12 +351,17 @@ public final class RepeatPattern extends SinglePattern implements CanBeSingleSeq
                 HashSet<Range> uniqueRanges = new HashSet<>();
                 int maxErrors = conf.bitapMaxErrors;
 
-                for (int repeats = maxRepeats + maxErrors; repeats >= Math.max(1, minRepeats - maxErrors); repeats--)
+                for (int repeats = maxRepeats + maxErrors;
+                     repeats >= Math.max(1, minRepeats - maxErrors); repeats--) {
+                    // if letter score is positive, shorter ranges can't get the needed score too
+                    if (cantGetScore(repeats) && (scoringBounds.maxScore(1) > 0))
+                        break;
                     for (int i = 0; i <= to - from - Math.max(1, repeats - maxErrors); i++) {
-                        int currentLongestSection = longestValidSections[i][maxErrors];
+                        int currentLongestSection = targetMismatches.longestValidSection(i, maxErrors);
                         if (Math.max(minRepeats, repeats) <= currentLongestSection)
                             uniqueRanges.add(new Range(i + from, Math.min(to, i + repeats + from)));
                     }
+                }
 
                 allMatches = getAllMatchesTreeSet(uniqueRanges, conf);
                 allMatchesIterator = allMatches.iterator();
@@ -368,7 +376,7 @@ public final class RepeatPattern extends SinglePattern implements CanBeSingleSeq
 
                 for (int repeats = maxRepeats + maxErrors; repeats >= Math.max(1, minRepeats - maxErrors); repeats--)
                     for (int i = 0; i <= Math.min(to - from - Math.max(1, repeats - maxErrors), maxErrors); i++) {
-                        int currentLongestSection = longestValidSections[i][maxErrors];
+                        int currentLongestSection = targetMismatches.longestValidSection(i, maxErrors);
                         if (Math.max(minRepeats, repeats) <= currentLongestSection)
                             uniqueRanges.add(new Range(i + from, Math.min(to, i + repeats + from)));
                     }
@@ -391,7 +399,7 @@ public final class RepeatPattern extends SinglePattern implements CanBeSingleSeq
                     int maxIndex = (fixedLeftBorder == -1) ? to - from - repeats
                             : Math.min(maxErrors, to - from - repeats);
                     for (int i = minIndex; i <= maxIndex; i++) {
-                        int currentLongestSection = longestValidSections[i][maxErrors];
+                        int currentLongestSection = targetMismatches.longestValidSection(i, maxErrors);
                         if (Math.max(minRepeats, repeats) <= currentLongestSection)
                             uniqueRanges.add(new Range(i + from, Math.min(to, i + repeats + from)));
                     }
@@ -417,6 +425,8 @@ public final class RepeatPattern extends SinglePattern implements CanBeSingleSeq
                 HashSet<UniqueAlignedSequence> uniqueAlignedSequences = new HashSet<>();
 
                 for (Range range : uniqueRanges) {
+                    if (cantGetScore(range.length()))
+                        continue;
                     int repeats = Math.max(minRepeats, Math.min(maxRepeats, range.length()));
                     int firstUppercase = uppercasePattern ? 0 : -1;
                     int lastUppercase = uppercasePattern ? repeats - 1 : -1;
@@ -444,101 +454,86 @@ public final class RepeatPattern extends SinglePattern implements CanBeSingleSeq
             }
 
             /**
-             * Calculate length of longest valid section starting from specified position inside (from->to) range.
-             * Section is considered valid if number of errors in it is not bigger than numberOfErrors.
-             * Longest valid section length can end out of target bounds if numberOfErrors is not 0.
+             * Check that the range with specified length can't get the needed score: score of the aligned sequence
+             * of repeats is not bigger than maximal score of its letters.
              *
-             * @param position section starting position inside (from->to) range, inclusive
-             * @param numberOfErrors maximum number of errors, inclusive
-             * @return length of longest valid section that starts from this position
+             * @param rangeLength length of range in the target
+             * @return true if the needed score can't be reached, false if it can be reached or there is no bound
              */
-            private int calculateLongestValidSection(int position, int numberOfErrors) {
-                int[] sections = targetSections.sections;
-                boolean currentSectionIsMatching = targetSections.firstMatching;
-                int currentLength = 0;
-                int currentPosition = 0;
-                int currentErrors = 0;
-                for (int i = 0; i < sections.length; i++, currentSectionIsMatching = !currentSectionIsMatching) {
-                    int currentSectionValue = sections[i];
-                    if (currentPosition + currentSectionValue < position) {
-                        currentPosition += currentSectionValue;
-                        continue;
-                    } else if (currentPosition <= position) {
-                        if (currentSectionIsMatching) {
-                            currentLength = currentPosition + currentSectionValue - position;
-                        } else if (currentPosition + currentSectionValue - position <= numberOfErrors) {
-                            currentErrors = currentPosition + currentSectionValue - position;
-                            currentLength = currentErrors;
-                        } else {
-                            currentLength = numberOfErrors;
-                            currentErrors = numberOfErrors;
-                            break;
-                        }
-                    } else {
-                        if (currentSectionIsMatching) {
-                            currentLength += currentSectionValue;
-                        } else if (currentErrors + currentSectionValue <= numberOfErrors) {
-                            currentErrors += currentSectionValue;
-                            currentLength += currentSectionValue;
-                        } else {
-                            currentLength += numberOfErrors - currentErrors;
-                            currentErrors = numberOfErrors;
-                            break;
-                        }
-                    }
-                    currentPosition += currentSectionValue;
-                }
-                return currentLength + (numberOfErrors - currentErrors);
+            private boolean cantGetScore(int rangeLength) {
+                return (scoringBounds != null) && (scoringBounds.maxScore(Math.max(minRepeats,
+                        Math.min(maxRepeats, rangeLength))) < minScore);
             }
         }
     }
 
     /**
-     * This class represents sections in the target substring (from "from" to "to" coordinates) with array of
-     * integers. Each integer is length of section that consists of only matching or only non-matching letters.
-     * firstMatching is true if first section is matching, otherwise false.
+     * Target letters that don't match the pattern letter, in the target substring (from "from" to "to" coordinates).
+     * Letters are checked by 4-bit basic masks of target wildcards; numbers of mismatches before each position are
+     * stored as prefix sums, so longest valid section for any position and number of errors is found in constant time.
      */
-    private static class TargetSections {
-        final int[] sections;
-        final boolean firstMatching;
-
-        private static TCharObjectHashMap<String> allMatchingLetters = new TCharObjectHashMap<>();
+    static class TargetMismatches {
+        /* For each pattern letter: bit number M is set if target wildcard with basic mask M matches
+         * the pattern letter. */
+        private static final TCharIntHashMap matchingMasks = new TCharIntHashMap();
+        // basic masks of target wildcards by letter code
+        private static final byte[] targetBasicMasks = new byte[NucleotideSequence.ALPHABET.size()];
         static {
             for (Wildcard wildcard : NucleotideSequenceCaseSensitive.ALPHABET.getAllWildcards()) {
-                char letter = wildcard.getSymbol();
                 StringBuilder matchingLetters = new StringBuilder();
                 NucleotideSequenceCaseSensitive.ALPHABET.getAllWildcards().stream().filter(wildcard::intersectsWith)
                         .forEach(targetWildcard -> matchingLetters.append(targetWildcard.getSymbol()));
-                allMatchingLetters.put(letter, matchingLetters.toString());
+                int currentMatchingMasks = 0;
+                for (Wildcard targetWildcard : NucleotideSequence.ALPHABET.getAllWildcards())
+                    if (matchingLetters.indexOf(String.valueOf(targetWildcard.getSymbol())) != -1)
+                        currentMatchingMasks |= 1 << targetWildcard.getBasicMask();
+                matchingMasks.put(wildcard.getSymbol(), currentMatchingMasks);
             }
+            for (byte code = 0; code < targetBasicMasks.length; code++)
+                targetBasicMasks[code] = (byte)NucleotideSequence.ALPHABET.codeToWildcard(code).getBasicMask();
         }
 
-        TargetSections(String targetSubstring, NucleotideSequenceCaseSensitive patternSeq) {
-            String matchingLetters = allMatchingLetters.get(patternSeq.symbolAt(0));
-            if (matchingLetters == null)
-                throw new IllegalArgumentException("Wrong patternSeq for RepeatPattern: "
-                        + patternSeq);
-            if (targetSubstring.length() < 1)
-                throw new IllegalArgumentException("Wrong targetSubstring for RepeatPattern: "
-                        + targetSubstring);
-            else {
-                ArrayList<Integer> sectionsList = new ArrayList<>();
-                boolean currentSectionMatching = matchingLetters.contains(targetSubstring.substring(0, 1));
-                int currentSectionLength = 1;
-                this.firstMatching = currentSectionMatching;
-                for (int i = 1; i < targetSubstring.length(); i++) {
-                    String currentLetter = targetSubstring.substring(i, i + 1);
-                    boolean currentLetterMatching = matchingLetters.contains(currentLetter);
-                    if (currentLetterMatching != currentSectionMatching) {
-                        sectionsList.add(currentSectionLength);
-                        currentSectionLength = 1;
-                        currentSectionMatching = currentLetterMatching;
-                    } else
-                        currentSectionLength++;
-                }
-                sectionsList.add(currentSectionLength);
-                this.sections = sectionsList.stream().mapToInt(i -> i).toArray();
+        private final int length;
+        // number of mismatches before each position; last element is total number of mismatches
+        private final int[] mismatchesBefore;
+        // positions of mismatches in ascending order
+        private final int[] mismatchPositions;
+
+        TargetMismatches(NucleotideSequence target, int from, int to, NucleotideSequenceCaseSensitive patternSeq) {
+            if (!matchingMasks.containsKey(patternSeq.symbolAt(0)))
+                throw new IllegalArgumentException("Wrong patternSeq for RepeatPattern: " + patternSeq);
+            if (to <= from)
+                throw new IllegalArgumentException("Wrong target range for RepeatPattern: from " + from
+                        + " to " + to);
+            int currentMatchingMasks = matchingMasks.get(patternSeq.symbolAt(0));
+            this.length = to - from;
+            this.mismatchesBefore = new int[length + 1];
+            this.mismatchPositions = new int[length];
+            int mismatches = 0;
+            for (int i = 0; i < length; i++) {
+                mismatchesBefore[i] = mismatches;
+                if (((currentMatchingMasks >>> targetBasicMasks[target.codeAt(from + i)]) & 1) == 0)
+                    mismatchPositions[mismatches++] = i;
             }
+            mismatchesBefore[length] = mismatches;
+        }
+
+        /**
+         * Calculate length of longest valid section starting from specified position inside (from->to) range.
+         * Section is considered valid if number of errors in it is not bigger than numberOfErrors.
+         * Longest valid section length can end out of target bounds if numberOfErrors is not 0.
+         *
+         * @param position section starting position inside (from->to) range, inclusive
+         * @param numberOfErrors maximum number of errors, inclusive
+         * @return length of longest valid section that starts from this position
+         */
+        int longestValidSection(int position, int numberOfErrors) {
+            // index of the first mismatch that doesn't fit into numberOfErrors
+            int firstExcessMismatch = mismatchesBefore[position] + numberOfErrors;
+            if (firstExcessMismatch < mismatchesBefore[length])
+                return mismatchPositions[firstExcessMismatch] - position;
+            else
+                return length - position + (firstExcessMismatch - mismatchesBefore[length]);
         }
     }
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.pattern;
+
+import com.milaboratory.core.alignment.PatternAndTargetAlignmentScoring;
+import com.milaboratory.core.sequence.*;
+
+import java.util.*;
+
+import static com.milaboratory.core.alignment.PatternAndTargetAligner.*;
+import static com.milaboratory.core.sequence.NucleotideSequence.*;
+import static com.milaboratory.minnn.cli.Defaults.*;
+import static com.milaboratory.minnn.util.SequencesCache.*;
+
+/**
+ * Upper bounds for alignment scores, calculated from the scoring by aligning all pairs of single letters with all
+ * qualities. They allow to skip alignments and whole subpatterns that can't reach the needed score.
+ */
+final class ScoringBounds {
+    private static final Map<PatternAndTargetAlignmentScoring, ScoringBounds> cache =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    // maximal score for pair of pattern letter and target letter that are considered matching by bitap
+    private final long maxMatchScore;
+    // minimal score for pair of pattern letter and target letter that are considered matching by bitap
+    private final long minMatchScore;
+    // maximal score for any pair of pattern letter and target letter
+    private final long maxLetterScore;
+    // minimal penalty for 1 bitap error (mismatch, insertion or deletion); 0 if errors are not always penalized
+    private final long minErrorPenalty;
+
+    private ScoringBounds(PatternAndTargetAlignmentScoring scoring) {
+        long maxMatch = Long.MIN_VALUE;
+        long minMatch = Long.MAX_VALUE;
+        long maxMismatch = Long.MIN_VALUE;
+        long maxDeletion = Long.MIN_VALUE;
+        long maxInsertion = Long.MIN_VALUE;
+        for (Wildcard patternWildcard : NucleotideSequenceCaseSensitive.ALPHABET.getAllWildcards()) {
+            String patternSymbol = String.valueOf(patternWildcard.getSymbol());
+            NucleotideSequenceCaseSensitive patternLetter = new NucleotideSequenceCaseSensitive(patternSymbol);
+            NucleotideSequenceCaseSensitive patternTwoLetters = new NucleotideSequenceCaseSensitive(
+                    patternSymbol + patternSymbol);
+            Wildcard patternWildcardIgnoreCase = ALPHABET.codeToWildcard(
+                    new NucleotideSequence(patternSymbol.toUpperCase()).codeAt(0));
+            for (NucleotideSequence targetLetter : ONE_LETTER_SEQUENCES) {
+                boolean matching = patternWildcardIgnoreCase.intersectsWith(
+                        ALPHABET.codeToWildcard(targetLetter.codeAt(0)));
+                NucleotideSequence targetTwoLetters = new NucleotideSequence(targetLetter.toString()
+                        + targetLetter.toString());
+                for (byte quality = 0; quality <= DEFAULT_MAX_QUALITY; quality++) {
+                    NSequenceWithQuality target = new NSequenceWithQuality(targetLetter, getCachedQuality(quality));
+                    long letterScore = alignLeftAddedWithoutIndels(scoring, patternLetter, target, 0).getScore();
+                    if (matching) {
+                        maxMatch = Math.max(maxMatch, letterScore);
+                        minMatch = Math.min(minMatch, letterScore);
+                    } else
+                        maxMismatch = Math.max(maxMismatch, letterScore);
+                    // global alignment scores minus letter score are not less than scores of single indels
+                    maxDeletion = Math.max(maxDeletion,
+                            alignGlobal(scoring, patternTwoLetters, target).getScore() - letterScore);
+                    maxInsertion = Math.max(maxInsertion, alignGlobal(scoring, patternLetter,
+                            new NSequenceWithQuality(targetTwoLetters,
+                                    new SequenceQuality(new byte[] { quality, quality }))).getScore()
+                                    - letterScore);
+                }
+            }
+        }
+        this.maxMatchScore = maxMatch;
+        this.minMatchScore = minMatch;
+        this.maxLetterScore = Math.max(maxMatch, maxMismatch);
+        this.minErrorPenalty = Math.max(0, Math.min(Math.min(maxMatch - maxMismatch, maxMatch - maxDeletion),
+                -maxInsertion));
+    }
+
+    static ScoringBounds get(PatternAndTargetAlignmentScoring scoring) {
+        return cache.computeIfAbsent(scoring, ScoringBounds::new);
+    }
+
+    /**
+     * Maximal score of alignment of the pattern with specified length, without repeats penalty.
+     *
+     * @param patternLength pattern length
+     * @return maximal score
+     */
+    long maxScore(int patternLength) {
+        return patternLength * maxLetterScore;
+    }
+
+    /**
+     * Minimal score of alignment of the pattern with specified length without errors.
+     *
+     * @param patternLength pattern length
+     * @return minimal score of exact match
+     */
+    long minExactMatchScore(int patternLength) {
+        return patternLength * minMatchScore;
+    }
+
+    /**
+     * Maximal number of bitap errors for which alignment of the pattern with specified length still can get
+     * minScore: each bitap error in the aligned part of the target decreases the best possible score at least
+     * by minErrorPenalty.
+     *
+     * @param patternLength pattern length
+     * @param minScore      needed score
+     * @param maxErrors     number of errors allowed in configuration
+     * @return number of errors, not bigger than maxErrors; -1 if minScore can't be reached with any alignment
+     */
+    int maxErrorsForScore(int patternLength, long minScore, int maxErrors) {
+        if (minScore > maxScore(patternLength))
+            return -1;
+        long perfectScore = patternLength * maxMatchScore;
+        if ((minErrorPenalty == 0) || (minScore <= perfectScore - maxErrors * minErrorPenalty))
+            return maxErrors;
+        else if (minScore > perfectScore)
+            return -1;
+        else
+            return (int)((perfectScore - minScore) / minErrorPenalty);
+    }
+}
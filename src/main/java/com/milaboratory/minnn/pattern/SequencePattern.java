@@ -37,6 +37,8 @@ import java.util.Arrays;
 import java.util.stream.IntStream;
 
 import static com.milaboratory.minnn.pattern.MatchValidationType.FOLLOWING;
+import static com.milaboratory.minnn.pattern.PatternUtils.sumMaxScores;
+import static com.milaboratory.minnn.util.AdaptivePortLimits.portLimit;
 import static com.milaboratory.minnn.util.UnfairSorterConfiguration.*;
 
 public final class SequencePattern extends MultiplePatternsOperator implements CanBeSingleSequence, CanFixBorders {
@@ -96,6 +98,11 @@ public final class SequencePattern extends MultiplePatternsOperator implements C
             return Arrays.stream(operandPatterns).mapToLong(Pattern::estimateComplexity).sum();
     }
 
+    @Override
+    public long estimateMaxScore() {
+        return sumMaxScores(operandPatterns);
+    }
+
     @Override
     public boolean isSingleSequence() {
         return Arrays.stream(operandPatterns)
@@ -135,9 +142,15 @@ public final class SequencePattern extends MultiplePatternsOperator implements C
 
         @Override
         public OutputPort<MatchIntermediate> getMatches(boolean fairSorting) {
+            return getMatches(fairSorting, conf.scoreThreshold);
+        }
+
+        @Override
+        public OutputPort<MatchIntermediate> getMatches(boolean fairSorting, long minScore) {
             ApproximateSorterConfiguration approximateSorterConfiguration = new ApproximateSorterConfiguration(target,
-                    from, to, conf, true, fairSorting, FOLLOWING,
-                    unfairSorterPortLimits.get(SequencePattern.class), operandPatterns);
+                    from, to, conf, fairSorting ? minScore : conf.scoreThreshold, true, fairSorting, FOLLOWING,
+                    portLimit(SequencePattern.this, unfairSorterPortLimits.get(SequencePattern.class)),
+                    operandPatterns);
             return new ApproximateSorter(approximateSorterConfiguration).getOutputPort();
         }
     }
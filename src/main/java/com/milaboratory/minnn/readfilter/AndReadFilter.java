@@ -31,6 +31,7 @@ package com.milaboratory.minnn.readfilter;
 import com.milaboratory.minnn.outputconverter.ParsedRead;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 public final class AndReadFilter implements ReadFilter {
     private final List<ReadFilter> operands;
@@ -46,4 +47,24 @@ public final class AndReadFilter implements ReadFilter {
         else
             return parsedRead;
     }
+
+    @Override
+    public ParsedRead[] filterBatch(ParsedRead[] parsedReads) {
+        boolean[] notMatched = new boolean[parsedReads.length];
+        for (ReadFilter operand : operands) {
+            // next operands get only reads that are matched by all previous operands
+            int[] remainingIndexes = IntStream.range(0, parsedReads.length).filter(i -> !notMatched[i]).toArray();
+            if (remainingIndexes.length == 0)
+                break;
+            ParsedRead[] filteredReads = operand.filterBatch(Arrays.stream(remainingIndexes)
+                    .mapToObj(i -> parsedReads[i]).toArray(ParsedRead[]::new));
+            for (int i = 0; i < remainingIndexes.length; i++)
+                if (filteredReads[i].getBestMatch() == null)
+                    notMatched[remainingIndexes[i]] = true;
+        }
+        ParsedRead[] results = new ParsedRead[parsedReads.length];
+        for (int i = 0; i < parsedReads.length; i++)
+            results[i] = notMatched[i] ? notMatchedRead(parsedReads[i]) : parsedReads[i];
+        return results;
+    }
 }
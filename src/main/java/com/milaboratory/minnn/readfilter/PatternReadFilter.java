@@ -29,6 +29,8 @@
 package com.milaboratory.minnn.readfilter;
 
 import com.milaboratory.core.alignment.PatternAndTargetAlignmentScoring;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.minnn.outputconverter.MatchedGroup;
 import com.milaboratory.minnn.outputconverter.ParsedRead;
 import com.milaboratory.minnn.parser.Parser;
 import com.milaboratory.minnn.parser.ParserConfiguration;
@@ -60,7 +62,7 @@ public final class PatternReadFilter implements ReadFilter {
         if (pattern.getGroupEdges().stream().map(GroupEdge::getGroupName).anyMatch(g -> !g.equals("R1")))
             throw exitWithError("Filter patterns must be for single read and must not contain capture groups! "
                     + "Found wrong pattern: " + patternQuery);
-        this.pattern = pattern;
+        this.pattern = PatternPlanner.optimize(pattern);
         this.fairSorting = fairSorting;
     }
 
@@ -73,4 +75,20 @@ public final class PatternReadFilter implements ReadFilter {
         else
             return notMatchedRead(parsedRead);
     }
+
+    @Override
+    public ParsedRead[] filterBatch(ParsedRead[] parsedReads) {
+        NSequenceWithQuality[] targets = new NSequenceWithQuality[parsedReads.length];
+        for (int i = 0; i < parsedReads.length; i++)
+            for (MatchedGroup group : parsedReads[i].getGroups())
+                if (group.getGroupName().equals(groupName)) {
+                    targets[i] = group.getValue();
+                    break;
+                }
+        MatchIntermediate[] bestMatches = pattern.matchBatch(targets, fairSorting);
+        ParsedRead[] filteredReads = new ParsedRead[parsedReads.length];
+        for (int i = 0; i < parsedReads.length; i++)
+            filteredReads[i] = (bestMatches[i] != null) ? parsedReads[i] : notMatchedRead(parsedReads[i]);
+        return filteredReads;
+    }
 }
@@ -38,6 +38,21 @@ import static com.milaboratory.minnn.util.SystemUtils.*;
 public interface ReadFilter {
     ParsedRead filter(ParsedRead parsedRead);
 
+    /**
+     * Filter a batch of reads. Filters that match patterns override this method to use batch matching API of
+     * patterns.
+     *
+     * @param parsedReads   reads
+     * @return              filtered reads, in the same order as input reads; not matched reads are replaced with
+     *                      reads without best match
+     */
+    default ParsedRead[] filterBatch(ParsedRead[] parsedReads) {
+        ParsedRead[] filteredReads = new ParsedRead[parsedReads.length];
+        for (int i = 0; i < parsedReads.length; i++)
+            filteredReads[i] = filter(parsedReads[i]);
+        return filteredReads;
+    }
+
     default ParsedRead notMatchedRead(ParsedRead parsedRead) {
         return new ParsedRead(parsedRead.getOriginalRead(), parsedRead.isReverseMatch(),
                 parsedRead.getRawNumberOfTargetsOverride(), null, parsedRead.getConsensusReads(),
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.milaboratory.minnn.pattern.Pattern;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.milaboratory.minnn.util.SystemUtils.exitWithError;
+import static com.milaboratory.minnn.util.UnfairSorterConfiguration.*;
+
+/**
+ * Port limits of unfair sorter that are learned at runtime for each pattern node. For each operand of
+ * ApproximateSorter, the depth (index in the operand output port) of the operand match that was used in the first
+ * match returned by the sorter is sampled. After each window of samples, the limit of the node is doubled if
+ * the depth reached the limit too often, or halved if all sampled depths were much lower than the limit. Limits are
+ * kept between approximateSorterStage1Depth + 1 and default limit multiplied by adaptivePortLimitsMaxFactor;
+ * default limits that are not bigger than approximateSorterStage1Depth + 1 are not changed. Limits can be pinned
+ * by pattern node description (pattern toString()); pinned limits are not changed either. Adaptive limits are
+ * disabled by default; if they are disabled, default limits are used.
+ */
+public final class AdaptivePortLimits {
+    private AdaptivePortLimits() {}
+
+    public static final String LEARNED_PORT_LIMITS_JSON_KEY = "learnedPortLimits";
+    private static final ConcurrentHashMap<Pattern, NodeLimit> nodeLimits = new ConcurrentHashMap<>();
+    private static volatile Map<String, Integer> pinnedLimits = Collections.emptyMap();
+    private static volatile boolean enabled = false;
+
+    /**
+     * Enable adaptive port limits and forget all limits that were learned before.
+     *
+     * @param pinnedLimits  fixed limits by pattern node descriptions; nodes with these descriptions will not
+     *                      use adaptive limits
+     */
+    public static void enable(Map<String, Integer> pinnedLimits) {
+        nodeLimits.clear();
+        AdaptivePortLimits.pinnedLimits = new HashMap<>(pinnedLimits);
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+        nodeLimits.clear();
+        pinnedLimits = Collections.emptyMap();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get current port limit for the pattern node.
+     *
+     * @param pattern       pattern node
+     * @param defaultLimit  default port limit for this pattern class
+     * @return              learned or pinned port limit if adaptive limits are enabled, otherwise default limit
+     */
+    public static int portLimit(Pattern pattern, int defaultLimit) {
+        if (!enabled)
+            return defaultLimit;
+        return getNodeLimit(pattern, defaultLimit).limit;
+    }
+
+    /**
+     * Save depth of the operand match that was used in the best match of unfair sorter.
+     *
+     * @param pattern   operand pattern
+     * @param depth     index of the match in the operand output port
+     */
+    static void recordDepth(Pattern pattern, int depth) {
+        if (enabled) {
+            NodeLimit nodeLimit = nodeLimits.get(pattern);
+            if (nodeLimit != null)
+                nodeLimit.recordDepth(depth);
+        }
+    }
+
+    /**
+     * Get port limits for JSON report. Each entry contains pattern node description, default limit, current limit,
+     * number of samples and whether the limit was pinned. Entries are sorted by pattern node description; if there
+     * are different nodes with the same description, the entry with the biggest limit is used.
+     *
+     * @return list of port limits for pattern nodes
+     */
+    public static List<LinkedHashMap<String, Object>> learnedLimits() {
+        TreeMap<String, NodeLimit> limitsByDescription = new TreeMap<>();
+        for (NodeLimit nodeLimit : nodeLimits.values())
+            limitsByDescription.merge(nodeLimit.description, nodeLimit,
+                    (limit1, limit2) -> (limit1.limit >= limit2.limit) ? limit1 : limit2);
+        List<LinkedHashMap<String, Object>> learnedLimits = new ArrayList<>();
+        for (NodeLimit nodeLimit : limitsByDescription.values()) {
+            LinkedHashMap<String, Object> entry = new LinkedHashMap<>();
+            entry.put("pattern", nodeLimit.description);
+            entry.put("defaultPortLimit", nodeLimit.defaultLimit);
+            entry.put("portLimit", nodeLimit.limit);
+            entry.put("samples", nodeLimit.getTotalSamples());
+            entry.put("pinned", nodeLimit.pinned);
+            learnedLimits.add(entry);
+        }
+        return learnedLimits;
+    }
+
+    /**
+     * Read port limits learned by previous run from JSON report of extract action.
+     *
+     * @param jsonReportFileName    JSON report file name
+     * @return                      port limits by pattern node descriptions
+     */
+    public static Map<String, Integer> readPinnedLimits(String jsonReportFileName) {
+        JsonNode learnedLimitsNode;
+        try {
+            learnedLimitsNode = new ObjectMapper().readTree(new File(jsonReportFileName))
+                    .get(LEARNED_PORT_LIMITS_JSON_KEY);
+        } catch (IOException e) {
+            throw exitWithError("Error while reading port limits from " + jsonReportFileName + ": " + e);
+        }
+        if ((learnedLimitsNode == null) || !learnedLimitsNode.isArray())
+            throw exitWithError("Port limits are not found in " + jsonReportFileName + "!");
+        Map<String, Integer> pinnedLimits = new HashMap<>();
+        for (JsonNode entry : learnedLimitsNode) {
+            JsonNode patternNode = entry.get("pattern");
+            JsonNode portLimitNode = entry.get("portLimit");
+            if ((patternNode == null) || (portLimitNode == null) || !portLimitNode.canConvertToInt()
+                    || (portLimitNode.asInt() < 1))
+                throw exitWithError("Wrong port limit entry in " + jsonReportFileName + ": " + entry);
+            pinnedLimits.put(patternNode.asText(), portLimitNode.asInt());
+        }
+        return pinnedLimits;
+    }
+
+    private static NodeLimit getNodeLimit(Pattern pattern, int defaultLimit) {
+        NodeLimit nodeLimit = nodeLimits.get(pattern);
+        if (nodeLimit == null)
+            nodeLimit = nodeLimits.computeIfAbsent(pattern, p -> new NodeLimit(p.toString(), defaultLimit));
+        return nodeLimit;
+    }
+
+    private static final class NodeLimit {
+        final String description;
+        final int defaultLimit;
+        final int minLimit;
+        final int maxLimit;
+        final boolean pinned;
+        final boolean adaptive;
+        volatile int limit;
+        private long totalSamples = 0;
+        private int windowSamples = 0;
+        private int windowSaturatedSamples = 0;
+        private int windowMaxDepth = 0;
+
+        NodeLimit(String description, int defaultLimit) {
+            this.description = description;
+            this.defaultLimit = defaultLimit;
+            this.minLimit = Math.min(defaultLimit, approximateSorterStage1Depth + 1);
+            this.maxLimit = defaultLimit * adaptivePortLimitsMaxFactor;
+            Integer pinnedLimit = pinnedLimits.get(description);
+            this.pinned = pinnedLimit != null;
+            // limits that are not bigger than depth of unfair sorter stage 1 are not changed
+            this.adaptive = !pinned && (minLimit < defaultLimit);
+            this.limit = pinned ? pinnedLimit : defaultLimit;
+        }
+
+        synchronized void recordDepth(int depth) {
+            totalSamples++;
+            if (!adaptive)
+                return;
+            windowSamples++;
+            // match found on the last allowed position; better matches could be cut by the limit
+            if (depth >= limit - 1)
+                windowSaturatedSamples++;
+            windowMaxDepth = Math.max(windowMaxDepth, depth);
+            if (windowSamples == adaptivePortLimitsWindow) {
+                if (windowSaturatedSamples * 100 > windowSamples)
+                    limit = Math.min(maxLimit, limit * 2);
+                else if ((windowMaxDepth + 1) * 4 <= limit)
+                    limit = Math.max(minLimit, Math.max(limit / 2, (windowMaxDepth + 1) * 2));
+                windowSamples = 0;
+                windowSaturatedSamples = 0;
+                windowMaxDepth = 0;
+            }
+        }
+
+        synchronized long getTotalSamples() {
+            return totalSamples;
+        }
+    }
+}
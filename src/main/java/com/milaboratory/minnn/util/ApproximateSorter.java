@@ -34,18 +34,17 @@ import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.minnn.pattern.*;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 import static com.milaboratory.minnn.pattern.MatchValidationType.*;
-import static com.milaboratory.minnn.pattern.PatternUtils.minValid;
+import static com.milaboratory.minnn.pattern.PatternUtils.*;
 import static com.milaboratory.minnn.util.RangeTools.*;
 import static com.milaboratory.minnn.util.UnfairSorterConfiguration.*;
 
 public final class ApproximateSorter {
     private final ApproximateSorterConfiguration conf;
     private final OutputPort<MatchIntermediate> matchesOutputPort;
-    private final HashMap<SpecificOutputPortIndex, SpecificOutputPort> unfairOutputPorts = new HashMap<>();
-    private final HashSet<IncompatibleIndexes> allIncompatibleIndexes = new HashSet<>();
-    private final HashSet<Integer> unfairReturnedCombinationsHashes = new HashSet<>();
+    private final SorterBuffers buffers;
 
     private int unfairSorterTakenValues = 0;
 
@@ -56,9 +55,21 @@ public final class ApproximateSorter {
      */
     public ApproximateSorter(ApproximateSorterConfiguration conf) {
         this.conf = conf;
+        this.buffers = SorterBuffers.acquire(conf.operandPatterns.length);
         this.matchesOutputPort = new MatchesOutputPort();
     }
 
+    /**
+     * Allow sorters that will be created by current thread to reuse bookkeeping buffers of all sorters that were
+     * created by current thread before. Must be called only when all these sorters and their output ports will not
+     * be used anymore, for example before matching the next read. This call also clears memoized operand matches
+     * and enables memoization of operand matches for current thread until the next call.
+     */
+    public static void recycleThreadBuffers() {
+        SorterBuffers.recycleThreadBuffers();
+        OperandMatchesMemo.reset();
+    }
+
     /**
      * Get output port for sorted combined matches.
      *
@@ -76,8 +87,16 @@ public final class ApproximateSorter {
      * @return          combined match
      */
     private MatchIntermediate combineMatches(MatchIntermediate... matches) {
+        int totalGroupEdgesCount = 0;
+        for (MatchIntermediate match : matches)
+            if (match != null)
+                totalGroupEdgesCount += match.getGroupEdgesCount();
         if (conf.multipleReads) {
-            LinkedHashMap<GroupEdge, MatchedGroupEdge> matchedGroupEdges = new LinkedHashMap<>();
+            GroupEdge[] groupEdges = new GroupEdge[totalGroupEdgesCount];
+            int[] groupEdgePositions = new int[totalGroupEdgesCount];
+            byte[] groupEdgeTargetIds = new byte[totalGroupEdgesCount];
+            int[] groupEdgePatternIndexes = new int[totalGroupEdgesCount];
+            int groupEdgesCount = 0;
             ArrayList<MatchedRange> matchedRanges = new ArrayList<>();
             int patternIndex = 0;
             boolean allMatchesAreNull = true;
@@ -92,20 +111,29 @@ public final class ApproximateSorter {
                 for (int i = 0; i < match.getNumberOfTargets(); i++) {
                     MatchedRange currentMatchedRange = match.getMatchedRange(i);
                     if (currentMatchedRange instanceof NullMatchedRange) {
-                        if (match.getMatchedGroupEdgesByPattern(i).size() > 0)
-                            throw new IllegalStateException("Null pattern contains "
-                                    + match.getMatchedGroupEdgesByPattern(i).size() + " group edges");
+                        for (int j = 0; j < match.getGroupEdgesCount(); j++)
+                            if (match.getGroupEdgePatternIndex(j) == i)
+                                throw new IllegalStateException("Null pattern contains "
+                                        + match.getMatchedGroupEdgesByPattern(i).size() + " group edges");
                         matchedRanges.add(new NullMatchedRange(patternIndex++));
                     } else {
                         matchedRanges.add(new MatchedRange(currentMatchedRange.getTarget(),
                                 currentMatchedRange.getTargetId(), patternIndex, currentMatchedRange.getRange()));
-                        for (MatchedGroupEdge matchedGroupEdge : match.getMatchedGroupEdgesByPattern(i)) {
-                            // put only unique R1, R2... group edges to avoid duplicates
-                            GroupEdge groupEdge = matchedGroupEdge.getGroupEdge();
-                            matchedGroupEdges.putIfAbsent(groupEdge, new MatchedGroupEdge(matchedGroupEdge.getTarget(),
-                                    matchedGroupEdge.getTargetId(), patternIndex, groupEdge,
-                                    matchedGroupEdge.getPosition()));
-                        }
+                        for (int j = 0; j < match.getGroupEdgesCount(); j++)
+                            if (match.getGroupEdgePatternIndex(j) == i) {
+                                // put only unique R1, R2... group edges to avoid duplicates
+                                GroupEdge groupEdge = match.getGroupEdge(j);
+                                boolean isDuplicate = false;
+                                for (int k = 0; (k < groupEdgesCount) && !isDuplicate; k++)
+                                    isDuplicate = groupEdges[k].equals(groupEdge);
+                                if (!isDuplicate) {
+                                    groupEdges[groupEdgesCount] = groupEdge;
+                                    groupEdgePositions[groupEdgesCount] = match.getGroupEdgePosition(j);
+                                    groupEdgeTargetIds[groupEdgesCount] = match.getGroupEdgeTargetId(j);
+                                    groupEdgePatternIndexes[groupEdgesCount] = patternIndex;
+                                    groupEdgesCount++;
+                                }
+                            }
                         patternIndex++;
                     }
                 }
@@ -114,8 +142,10 @@ public final class ApproximateSorter {
             if (allMatchesAreNull)
                 return null;
             else
-                return new MatchIntermediate(patternIndex, combineMatchScores(matches),
-                        -1, -1, new ArrayList<>(matchedGroupEdges.values()),
+                return new MatchIntermediate(patternIndex, combineMatchScores(matches), -1, -1,
+                        Arrays.copyOf(groupEdges, groupEdgesCount), Arrays.copyOf(groupEdgePositions, groupEdgesCount),
+                        Arrays.copyOf(groupEdgeTargetIds, groupEdgesCount),
+                        Arrays.copyOf(groupEdgePatternIndexes, groupEdgesCount),
                         matchedRanges.toArray(new MatchedRange[matchedRanges.size()]));
         } else if (conf.matchValidationType == FIRST) {
             boolean matchExist = false;
@@ -134,20 +164,18 @@ public final class ApproximateSorter {
                 return null;
         } else {
             /* combining matches for FOLLOWING, ORDER and INTERSECTION:
-               matches must already be checked for compatibility with findIncompatibleIndexes() */
+               matches must already be checked for compatibility with checkCompatibility() */
             NSequenceWithQuality target = matches[0].getMatchedRange().getTarget();
             byte targetId = matches[0].getMatchedRange().getTargetId();
 
             MatchIntermediate[] sortedMatches = matches.clone();
             Arrays.sort(sortedMatches, Comparator.comparingInt(m -> m.getRange().getLower()));
 
-            ArrayList<ArrayList<MatchedGroupEdge>> matchedGroupEdgesFromOperands = new ArrayList<>();
-            ArrayList<MatchedGroupEdge> matchedGroupEdges = new ArrayList<>();
-            for (int i = 0; i < sortedMatches.length; i++) {
-                matchedGroupEdgesFromOperands.add(new ArrayList<>());
-                matchedGroupEdgesFromOperands.get(i).addAll(sortedMatches[i].getMatchedGroupEdges());
-            }
-
+            GroupEdge[] groupEdges = new GroupEdge[totalGroupEdgesCount];
+            int[] groupEdgePositions = new int[totalGroupEdgesCount];
+            byte[] groupEdgeTargetIds = new byte[totalGroupEdgesCount];
+            int[] groupEdgePatternIndexes = null;
+            int groupEdgesCount = 0;
             long rangesCombinationPenalty = 0;
             for (int i = 0; i < sortedMatches.length; i++) {
                 Range rangeI = sortedMatches[i].getRange();
@@ -166,16 +194,22 @@ public final class ApproximateSorter {
                                 conf.patternConfiguration, target, rangeJ.getUpper(),
                                 rangeI.getLower() - rangeJ.getUpper());
                 }
-                if (maxIntersection > 0) {
-                    for (MatchedGroupEdge matchedGroupEdge : matchedGroupEdgesFromOperands.get(i)) {
-                        if (matchedGroupEdge.getPosition() >= rangeI.getLower() + maxIntersection)
-                            matchedGroupEdges.add(matchedGroupEdge);
-                        else
-                            matchedGroupEdges.add(matchedGroupEdge.overridePosition(rangeI.getLower()
-                                    + maxIntersection));
+                // group edges inside the overlap are moved to the end of the overlap
+                int minGroupEdgePosition = (maxIntersection > 0) ? rangeI.getLower() + maxIntersection : -1;
+                MatchIntermediate match = sortedMatches[i];
+                for (int j = 0; j < match.getGroupEdgesCount(); j++) {
+                    groupEdges[groupEdgesCount] = match.getGroupEdge(j);
+                    groupEdgePositions[groupEdgesCount] = Math.max(match.getGroupEdgePosition(j),
+                            minGroupEdgePosition);
+                    groupEdgeTargetIds[groupEdgesCount] = match.getGroupEdgeTargetId(j);
+                    int groupEdgePatternIndex = match.getGroupEdgePatternIndex(j);
+                    if (groupEdgePatternIndex != 0) {
+                        if (groupEdgePatternIndexes == null)
+                            groupEdgePatternIndexes = new int[totalGroupEdgesCount];
+                        groupEdgePatternIndexes[groupEdgesCount] = groupEdgePatternIndex;
                     }
-                } else
-                    matchedGroupEdges.addAll(matchedGroupEdgesFromOperands.get(i));
+                    groupEdgesCount++;
+                }
             }
 
             MatchedRange matchedRange = new MatchedRange(target, targetId, 0, combineRanges(sortedMatches));
@@ -184,7 +218,7 @@ public final class ApproximateSorter {
                     combineMatchScores(matches) + rangesCombinationPenalty,
                     sortedMatches[0].getLeftUppercaseDistance(),
                     sortedMatches[sortedMatches.length - 1].getRightUppercaseDistance(),
-                    matchedGroupEdges, matchedRange);
+                    groupEdges, groupEdgePositions, groupEdgeTargetIds, groupEdgePatternIndexes, matchedRange);
         }
     }
 
@@ -222,128 +256,69 @@ public final class ApproximateSorter {
     }
 
     /**
-     * Take all matches with filtering: match combinations that contain incompatible ranges or have score
-     * below threshold will not be included. For unfair sorting, output ports with match number limits will be used.
+     * Take all matches with filtering for unfair sorting with specific output ports: match combinations that contain
+     * incompatible ranges or have score below threshold will not be included. Output ports with match number limits
+     * will be used. Fair sorting and unfair sorting without specific output ports use SortedCombinationsPort.
      *
      * @return list of all matches with filtering
      */
     private ArrayList<MatchIntermediate> takeFilteredMatches() {
         ArrayList<MatchIntermediate> allMatchesFiltered = new ArrayList<>();
-        long scoreThreshold = conf.patternConfiguration.scoreThreshold;
+        long scoreThreshold = conf.scoreThreshold;
         int numberOfOperands = conf.operandPatterns.length;
         int[] matchIndexes = new int[numberOfOperands];
-        MatchIntermediate[] currentMatches = new MatchIntermediate[numberOfOperands];
-
-        if (conf.fairSorting || !conf.specificOutputPorts) {
-            ArrayList<ArrayList<MatchIntermediate>> allMatches = new ArrayList<>();
-            OutputPort<MatchIntermediate> currentPort;
-            ArrayList<MatchIntermediate> currentPortMatchesList;
-            MatchIntermediate currentMatch;
-            int totalNumberOfCombinations = 1;
-
-            // take all matches from all operands
-            for (int i = 0; i < numberOfOperands; i++) {
-                if (conf.fairSorting) {
-                    currentPort = conf.multipleReads
-                            ? (conf.separateTargets
-                                ? ((SinglePattern)conf.operandPatterns[i])
-                                    .match(conf.target.get(i)).getMatches(true)
-                                : conf.operandPatterns[i].match(conf.target).getMatches(true))
-                            : ((SinglePattern)conf.operandPatterns[i])
-                                .match(conf.target.get(0), conf.from(), conf.to()).getMatches(true);
-                    currentPortMatchesList = new ArrayList<>();
-                    do {
-                        currentMatch = currentPort.take();
-                        if ((currentMatch != null)
-                                || (areNullMatchesAllowed() && (currentPortMatchesList.size() == 0)))
-                            currentPortMatchesList.add(currentMatch);
-                    } while (currentMatch != null);
-                } else
-                    currentPortMatchesList = getPortWithParams(i).takeAll(areNullMatchesAllowed());
-
-                allMatches.add(currentPortMatchesList);
-                totalNumberOfCombinations *= currentPortMatchesList.size();
-            }
-
-            for (int i = 0; i < totalNumberOfCombinations; i++) {
-                if (areCompatible(matchIndexes) && newUniqueCombination(matchIndexes)) {
-                    for (int j = 0; j < numberOfOperands; j++)
-                        currentMatches[j] = allMatches.get(j).get(matchIndexes[j]);
-                    IncompatibleIndexes incompatibleIndexes = findIncompatibleIndexes(currentMatches, matchIndexes);
-                    if (incompatibleIndexes != null)
-                        allIncompatibleIndexes.add(incompatibleIndexes);
-                    else {
-                        MatchIntermediate combinedMatch = combineMatches(currentMatches);
-                        if ((combinedMatch != null) && (combinedMatch.getScore() >= scoreThreshold))
-                            allMatchesFiltered.add(combinedMatch);
-                    }
+        MatchIntermediate[] currentMatches;
+        int[] operandOrder = conf.operandOrder();
+        boolean allPortsFinished = false;
+        while (!allPortsFinished) {
+            // all variables with "Unordered" suffix must be converted with operandOrder[] before using as index
+            int firstFoundNullIndexUnordered = numberOfOperands - 1;
+            currentMatches = getMatchesByIndexes(matchIndexes);
+            if (newUniqueCombination(matchIndexes) && Arrays.stream(currentMatches).noneMatch(Objects::isNull)) {
+                if (checkCompatibility(currentMatches, matchIndexes, false)) {
+                    MatchIntermediate combinedMatch = combineMatches(currentMatches);
+                    if ((combinedMatch != null) && (combinedMatch.getScore() >= scoreThreshold))
+                        allMatchesFiltered.add(combinedMatch);
                 }
-
-                // Update matchIndexes to switch to the next combination on next iteration of outer loop
-                for (int j = 0; j < numberOfOperands; j++) {
-                    int currentIndex = matchIndexes[j];
-                    if (currentIndex + 1 < allMatches.get(j).size()) {
-                        matchIndexes[j] = currentIndex + 1;
+            } else
+                for (int indexUnordered = 0; indexUnordered < numberOfOperands - 1; indexUnordered++)
+                    if (currentMatches[operandOrder[indexUnordered]] == null) {
+                        firstFoundNullIndexUnordered = indexUnordered;
                         break;
                     }
-                    // we need to update next index and reset current index to zero
-                    matchIndexes[j] = 0;
-                }
-            }
-        } else {
-            int[] operandOrder = conf.operandOrder();
-            boolean allPortsFinished = false;
-            while (!allPortsFinished) {
-                // all variables with "Unordered" suffix must be converted with operandOrder[] before using as index
-                int firstFoundNullIndexUnordered = numberOfOperands - 1;
-                currentMatches = getMatchesByIndexes(matchIndexes);
-                if (newUniqueCombination(matchIndexes) && Arrays.stream(currentMatches).noneMatch(Objects::isNull)) {
-                    IncompatibleIndexes incompatibleIndexes = findIncompatibleIndexes(currentMatches, matchIndexes);
-                    if (incompatibleIndexes == null) {
-                        MatchIntermediate combinedMatch = combineMatches(currentMatches);
-                        if ((combinedMatch != null) && (combinedMatch.getScore() >= scoreThreshold))
-                            allMatchesFiltered.add(combinedMatch);
-                    }
-                } else
-                    for (int indexUnordered = 0; indexUnordered < numberOfOperands - 1; indexUnordered++)
-                        if (currentMatches[operandOrder[indexUnordered]] == null) {
-                            firstFoundNullIndexUnordered = indexUnordered;
-                            break;
-                        }
 
-                // update matchIndexes
-                if (currentMatches[operandOrder[firstFoundNullIndexUnordered]] == null) {
-                    if (firstFoundNullIndexUnordered == 0)
-                        allPortsFinished = true;
-                    else {
-                        matchIndexes[operandOrder[firstFoundNullIndexUnordered - 1]]++;
-                        for (int indexUnordered = firstFoundNullIndexUnordered; indexUnordered < numberOfOperands;
-                                indexUnordered++)
-                            matchIndexes[operandOrder[indexUnordered]] = 0;
-                    }
-                } else
-                    matchIndexes[operandOrder[numberOfOperands - 1]]++;
-            }
+            // update matchIndexes
+            if (currentMatches[operandOrder[firstFoundNullIndexUnordered]] == null) {
+                if (firstFoundNullIndexUnordered == 0)
+                    allPortsFinished = true;
+                else {
+                    matchIndexes[operandOrder[firstFoundNullIndexUnordered - 1]]++;
+                    for (int indexUnordered = firstFoundNullIndexUnordered; indexUnordered < numberOfOperands;
+                            indexUnordered++)
+                        matchIndexes[operandOrder[indexUnordered]] = 0;
+                }
+            } else
+                matchIndexes[operandOrder[numberOfOperands - 1]]++;
         }
 
         return allMatchesFiltered;
     }
 
     /**
-     * Returns null if this match combination is valid or IncompatibleIndexes structure if it finds
-     * 2 matches that have incompatible ranges.
+     * Check if this match combination is valid, i.e. there are no 2 matches that have incompatible ranges.
      *
-     * @param matches group of matches to check
-     * @param indexes indexes of all provided matches for writing to IncompatibleIndexes structure
-     * @return IncompatibleIndexes structure
+     * @param matches               group of matches to check
+     * @param indexes               indexes of all provided matches in their output ports
+     * @param rememberIncompatible  if true, indexes of first found pair of incompatible matches will be remembered
+     *                              and all combinations that contain them will be skipped by areCompatible()
+     * @return                      true if the combination is valid, false if incompatible matches are found
      */
-    private IncompatibleIndexes findIncompatibleIndexes(MatchIntermediate[] matches, int[] indexes) {
+    private boolean checkCompatibility(MatchIntermediate[] matches, int[] indexes, boolean rememberIncompatible) {
         if (matches.length != indexes.length)
             throw new IllegalArgumentException("matches length is " + matches.length + ", indexes length is "
                 + indexes.length + "; they must be equal!");
 
         NSequenceWithQuality target;
-        IncompatibleIndexes result = null;
         switch (conf.matchValidationType) {
             case LOGICAL_OR:
             case LOGICAL_AND:
@@ -351,17 +326,15 @@ public final class ApproximateSorter {
                 break;
             case INTERSECTION:
                 target = matches[0].getMatchedRange().getTarget();
-                Range[] ranges = new Range[matches.length];
-                { OUTER:
-                    for (int i = 0; i < matches.length; i++) {
-                        ranges[i] = matches[i].getRange();
-                        for (int j = 0; j < i; j++)     // Compare with all previously added matches
-                            if (checkFullIntersection(ranges[i], ranges[j])
-                                    || checkOverlap(target, matches[i], matches[j])) {
-                                result = new IncompatibleIndexes(j, indexes[j], i, indexes[i]);
-                                break OUTER;
-                            }
-                    }
+                for (int i = 1; i < matches.length; i++) {
+                    Range currentRange = matches[i].getRange();
+                    for (int j = 0; j < i; j++)     // Compare with all previously added matches
+                        if (checkFullIntersection(currentRange, matches[j].getRange())
+                                || checkOverlap(target, matches[i], matches[j])) {
+                            if (rememberIncompatible)
+                                buffers.addIncompatibleIndexes(j, indexes[j], i, indexes[i]);
+                            return false;
+                        }
                 }
                 break;
             case ORDER:
@@ -382,13 +355,14 @@ public final class ApproximateSorter {
                             || checkOverlap(target, previousMatch, currentMatch)
                             || ((conf.matchValidationType == FOLLOWING)
                                 && checkInsertion(target, previousMatch, currentMatch))) {
-                        result = new IncompatibleIndexes(i - 1, indexes[i - 1], i, indexes[i]);
-                        break;
+                        if (rememberIncompatible)
+                            buffers.addIncompatibleIndexes(i - 1, indexes[i - 1], i, indexes[i]);
+                        return false;
                     }
                 }
         }
 
-        return result;
+        return true;
     }
 
     /**
@@ -399,12 +373,7 @@ public final class ApproximateSorter {
      * @return true if there are no incompatible indexes found; false if they are found
      */
     private boolean areCompatible(int[] indexes) {
-        if (!conf.specificOutputPorts)
-            for (IncompatibleIndexes currentIndexes : allIncompatibleIndexes)
-                if ((indexes[currentIndexes.port1] == currentIndexes.index1)
-                        && (indexes[currentIndexes.port2] == currentIndexes.index2))
-                    return false;
-        return true;
+        return conf.specificOutputPorts || buffers.areCompatible(indexes);
     }
 
     /**
@@ -414,7 +383,7 @@ public final class ApproximateSorter {
      * @return false if we use unfair sorting and combination was already returned, otherwise true
      */
     private boolean newUniqueCombination(int[] indexes) {
-        return conf.fairSorting || !unfairReturnedCombinationsHashes.contains(Arrays.hashCode(indexes));
+        return conf.fairSorting || !buffers.isReturnedCombination(indexes);
     }
 
     /**
@@ -505,8 +474,7 @@ public final class ApproximateSorter {
      * @return                      new SpecificOutputPort with specified parameters
      */
     private SpecificOutputPort getPortWithParams(int operandIndex, int from, int to, int estimatedMaxOverlap) {
-        SpecificOutputPortIndex currentPortIndex = new SpecificOutputPortIndex(operandIndex, from, to);
-        SpecificOutputPort currentPort = unfairOutputPorts.get(currentPortIndex);
+        SpecificOutputPort currentPort = buffers.getOutputPort(operandIndex, from, to);
         if (currentPort == null) {
             Pattern currentPattern = conf.operandPatterns[operandIndex];
             int matchFrom = -1;
@@ -527,7 +495,8 @@ public final class ApproximateSorter {
                     throw new IllegalStateException("getPortWithParams: to = " + to
                             + ", conf.to() = " + conf.to());
             }
-            int portLimit = unfairSorterPortLimits.get(currentPattern.getClass());
+            int portLimit = AdaptivePortLimits.portLimit(currentPattern,
+                    unfairSorterPortLimits.get(currentPattern.getClass()));
 
             if ((conf.matchValidationType == FOLLOWING)
                     && (((operandIndex > 0) && (from != -1) && (to == -1))
@@ -551,7 +520,7 @@ public final class ApproximateSorter {
                     : ((SinglePattern)currentPattern)
                         .match(conf.target.get(0), matchFrom, matchTo).getMatches(false),
                     operandIndex, from, to, portLimit);
-            unfairOutputPorts.put(currentPortIndex, currentPort);
+            buffers.putOutputPort(operandIndex, from, to, currentPort);
         }
         return currentPort;
     }
@@ -566,14 +535,14 @@ public final class ApproximateSorter {
         int firstOperandIndex = conf.operandOrder()[0];
         int from = conf.firstOperandFrom();
         int to = conf.firstOperandTo();
-        SpecificOutputPortIndex currentPortIndex = new SpecificOutputPortIndex(firstOperandIndex, from, to);
-        SpecificOutputPort firstOperandPort = unfairOutputPorts.get(currentPortIndex);
+        SpecificOutputPort firstOperandPort = buffers.getOutputPort(firstOperandIndex, from, to);
         if (firstOperandPort == null) {
             SinglePattern firstPattern = (SinglePattern)(conf.operandPatterns[firstOperandIndex]);
-            int portLimit = unfairSorterPortLimits.get(firstPattern.getClass());
+            int portLimit = AdaptivePortLimits.portLimit(firstPattern,
+                    unfairSorterPortLimits.get(firstPattern.getClass()));
             firstOperandPort = new SpecificOutputPort(firstPattern.match(conf.target.get(0), from, to)
                     .getMatches(false), firstOperandIndex, from, to, portLimit);
-            unfairOutputPorts.put(currentPortIndex, firstOperandPort);
+            buffers.putOutputPort(firstOperandIndex, from, to, firstOperandPort);
         }
         return firstOperandPort;
     }
@@ -624,76 +593,221 @@ public final class ApproximateSorter {
         return matches;
     }
 
-    private static class IncompatibleIndexes {
-        int port1;
-        int index1;
-        int port2;
-        int index2;
-
-        IncompatibleIndexes(int port1, int index1, int port2, int index2) {
-            this.port1 = port1;
-            this.index1 = index1;
-            this.port2 = port2;
-            this.index2 = index2;
+    /**
+     * Best-first enumeration of operand match combinations: matches of each operand are sorted by score, and
+     * combinations of indexes are taken from priority queue by upper bound of combined score (sum or max of operand
+     * scores; overlap and insertion penalties are never positive, so combined score can't exceed the bound). Each
+     * combination is added to the queue once: children of a combination are made by incrementing the index of the
+     * last incremented operand or any operand after it. Enumeration stops when the best bound in the queue is below
+     * score threshold, so only combinations that can pass the threshold are checked and combined.
+     *
+     * Combined matches are returned in the same order as full enumeration of all combinations followed by stable
+     * sorting by score: a found match is returned only when no combination left in the queue can reach its score,
+     * and matches with equal scores are returned in the order of full enumeration (first operand index changes
+     * fastest).
+     */
+    private class SortedCombinationsPort implements OutputPort<MatchIntermediate> {
+        private final long scoreThreshold = conf.scoreThreshold;
+        private final int numberOfOperands = conf.operandPatterns.length;
+        // for each operand, matches sorted by score and their indexes in operand output port
+        private final ArrayList<ArrayList<MatchIntermediate>> sortedMatches = new ArrayList<>();
+        private final ArrayList<int[]> portIndexes = new ArrayList<>();
+        // scratch arrays for checkCombination(); combineMatches() doesn't keep references to its argument
+        private final int[] matchIndexes = new int[numberOfOperands];
+        private final MatchIntermediate[] currentMatches = new MatchIntermediate[numberOfOperands];
+        private final PriorityQueue<FoundMatch> foundMatches = new PriorityQueue<>(
+                Comparator.comparingLong((FoundMatch m) -> m.match.getScore()).reversed()
+                        .thenComparing(m -> m.portIndexes, ApproximateSorter::compareEnumerationOrder));
+        // indexes in operand output ports of operand matches of the last returned match
+        private int[] takenMatchPortIndexes = null;
+
+        SortedCombinationsPort() {
+            for (int i = 0; i < numberOfOperands; i++) {
+                sortedMatches.add(null);
+                portIndexes.add(null);
+            }
+            // with null matches allowed, operands without matches don't stop matching, so order doesn't matter
+            int[] evaluationOrder = areNullMatchesAllowed() ? IntStream.range(0, numberOfOperands).toArray()
+                    : BatchMatchingScope.evaluationOrder(conf.operandPatterns);
+            for (int i : evaluationOrder) {
+                ArrayList<MatchIntermediate> currentPortMatches = takeOperandMatches(i);
+                // if any operand has no matches, there are no combinations; no need to match other operands
+                if (currentPortMatches.size() == 0)
+                    return;
+                int[] currentPortIndexes = new int[currentPortMatches.size()];
+                for (int j = 0; j < currentPortIndexes.length; j++)
+                    currentPortIndexes[j] = j;
+                if (currentPortMatches.get(0) != null)
+                    currentPortIndexes = Arrays.stream(currentPortIndexes).boxed()
+                            .sorted(Comparator.comparingLong((Integer j) -> currentPortMatches.get(j).getScore())
+                                    .reversed())
+                            .mapToInt(Integer::intValue).toArray();
+                ArrayList<MatchIntermediate> currentSortedMatches = new ArrayList<>();
+                for (int index : currentPortIndexes)
+                    currentSortedMatches.add(currentPortMatches.get(index));
+                sortedMatches.set(i, currentSortedMatches);
+                portIndexes.set(i, currentPortIndexes);
+            }
+            addCombination(buffers.newCombination(), 0);
         }
 
-        @Override
-        public boolean equals(Object other) {
-            if (!(other instanceof IncompatibleIndexes))
-                return false;
-
-            IncompatibleIndexes that = (IncompatibleIndexes) other;
+        /**
+         * Take all matches from the operand port. Null match is added if there are no matches and null matches
+         * are allowed. If the same operand pattern was already matched with the same target and parameters while
+         * matching the current read, matches are taken from OperandMatchesMemo.
+         *
+         * @param operandIndex operand index
+         * @return list of matches in the order of operand output port
+         */
+        private ArrayList<MatchIntermediate> takeOperandMatches(int operandIndex) {
+            Pattern operandPattern = conf.operandPatterns[operandIndex];
+            Object operandTarget = conf.multipleReads
+                    ? (conf.separateTargets ? conf.target.get(operandIndex) : conf.target) : conf.target.get(0);
+            int from = conf.multipleReads ? -1 : conf.from();
+            int to = conf.multipleReads ? -1 : conf.to();
+            long operandMinScore = conf.fairSorting ? operandMinScore(operandIndex) : Long.MIN_VALUE;
+            OperandMatchesMemo memo = OperandMatchesMemo.get();
+            ArrayList<MatchIntermediate> currentPortMatches = memo.isEnabled() ? memo.get(operandPattern,
+                    operandTarget, from, to, conf.fairSorting, operandMinScore) : null;
+            if (currentPortMatches == null) {
+                currentPortMatches = new ArrayList<>();
+                if (conf.fairSorting) {
+                    OutputPort<MatchIntermediate> currentPort = conf.multipleReads
+                            ? (conf.separateTargets
+                                ? ((SinglePattern)operandPattern).match((NSequenceWithQuality)operandTarget)
+                                    .getMatches(true, operandMinScore)
+                                : operandPattern.match(conf.target).getMatches(true, operandMinScore))
+                            : ((SinglePattern)operandPattern).match(conf.target.get(0), from, to)
+                                .getMatches(true, operandMinScore);
+                    MatchIntermediate currentMatch;
+                    while ((currentMatch = currentPort.take()) != null)
+                        currentPortMatches.add(currentMatch);
+                } else
+                    currentPortMatches.addAll(getPortWithParams(operandIndex).takeAll(false));
+                if (memo.isEnabled())
+                    memo.put(operandPattern, operandTarget, from, to, conf.fairSorting, operandMinScore,
+                            currentPortMatches);
+            }
+            if (areNullMatchesAllowed() && (currentPortMatches.size() == 0)) {
+                ArrayList<MatchIntermediate> nullMatch = new ArrayList<>();
+                nullMatch.add(null);
+                return nullMatch;
+            } else
+                return currentPortMatches;
+        }
 
-            return (this.port1 == that.port1) && (this.port2 == that.port2)
-                    && (this.index1 == that.index1) && (this.index2 == that.index2);
+        /**
+         * Calculate minimal score that match of the operand must have to be a part of combination with score not
+         * below threshold. Combined score is not bigger than sum of operand scores because overlap and insertion
+         * penalties are not positive; for operands that are already matched their best scores are known, and for
+         * other operands estimated maximal scores are used.
+         *
+         * @param operandIndex operand index
+         * @return minimal score for matches of this operand, or Long.MIN_VALUE if there is no bound
+         */
+        private long operandMinScore(int operandIndex) {
+            if (!conf.combineScoresBySum || areNullMatchesAllowed())
+                return Long.MIN_VALUE;
+            long otherOperandsMaxScore = 0;
+            for (int i = 0; i < numberOfOperands; i++)
+                if (i != operandIndex) {
+                    long currentMaxScore = (sortedMatches.get(i) != null) ? sortedMatches.get(i).get(0).getScore()
+                            : conf.operandPatterns[i].estimateMaxScore();
+                    if (currentMaxScore == Long.MAX_VALUE)
+                        return Long.MIN_VALUE;
+                    otherOperandsMaxScore += currentMaxScore;
+                }
+            long minScore = scoreThreshold - otherOperandsMaxScore;
+            // overflow is possible only if threshold is very low; in this case there is no bound
+            return ((otherOperandsMaxScore > 0) && (minScore > scoreThreshold)) ? Long.MIN_VALUE : minScore;
         }
 
         @Override
-        public int hashCode() {
-            int hashCode = 1;
-
-            hashCode = hashCode * 37 + this.port1;
-            hashCode = hashCode * 37 + this.port2;
-            hashCode = hashCode * 37 + this.index1;
-            hashCode = hashCode * 37 + this.index2;
-
-            return hashCode;
+        public MatchIntermediate take() {
+            while (true) {
+                FoundMatch bestFoundMatch = foundMatches.peek();
+                int nextCombination = buffers.peekCombination();
+                if ((bestFoundMatch != null) && ((nextCombination == -1)
+                        || (bestFoundMatch.match.getScore() > buffers.combinationBound(nextCombination)))) {
+                    foundMatches.poll();
+                    takenMatchPortIndexes = bestFoundMatch.portIndexes;
+                    return bestFoundMatch.match;
+                }
+                if (nextCombination == -1)
+                    return null;
+                buffers.pollCombination();
+                if (buffers.combinationBound(nextCombination) < scoreThreshold) {
+                    // bounds of all other combinations are not better
+                    buffers.clearCombinations();
+                    continue;
+                }
+                for (int i = buffers.combinationLastIncremented(nextCombination); i < numberOfOperands; i++)
+                    if (buffers.combinationIndex(nextCombination, i) + 1 < sortedMatches.get(i).size())
+                        addCombination(buffers.newChildCombination(nextCombination, i), i);
+                checkCombination(nextCombination);
+                buffers.freeCombination(nextCombination);
+            }
         }
-    }
-
-    private static class SpecificOutputPortIndex {
-        private final int operandIndex;
-        private final int from;
-        private final int to;
 
-        SpecificOutputPortIndex(int operandIndex, int from, int to) {
-            this.operandIndex = operandIndex;
-            this.from = from;
-            this.to = to;
+        private void addCombination(int slot, int lastIncrementedOperand) {
+            long scoreBound = conf.combineScoresBySum ? 0 : Long.MIN_VALUE;
+            boolean allMatchesAreNull = true;
+            for (int i = 0; i < numberOfOperands; i++) {
+                MatchIntermediate match = sortedMatches.get(i).get(buffers.combinationIndex(slot, i));
+                if (match != null) {
+                    allMatchesAreNull = false;
+                    if (conf.combineScoresBySum)
+                        scoreBound += match.getScore();
+                    else
+                        scoreBound = Math.max(scoreBound, match.getScore());
+                }
+            }
+            buffers.pushCombination(slot, lastIncrementedOperand, allMatchesAreNull ? Long.MIN_VALUE : scoreBound);
         }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
+        private void checkCombination(int slot) {
+            for (int i = 0; i < numberOfOperands; i++) {
+                int sortedIndex = buffers.combinationIndex(slot, i);
+                matchIndexes[i] = portIndexes.get(i)[sortedIndex];
+                currentMatches[i] = sortedMatches.get(i).get(sortedIndex);
+            }
+            if (areCompatible(matchIndexes) && newUniqueCombination(matchIndexes)
+                    && checkCompatibility(currentMatches, matchIndexes, true)) {
+                MatchIntermediate combinedMatch = combineMatches(currentMatches);
+                if ((combinedMatch != null) && (combinedMatch.getScore() >= scoreThreshold))
+                    foundMatches.add(new FoundMatch(combinedMatch, matchIndexes.clone()));
+            }
+        }
+    }
 
-            SpecificOutputPortIndex that = (SpecificOutputPortIndex)o;
+    /**
+     * Compare combinations of port indexes by order of full enumeration, where the first operand index changes fastest.
+     *
+     * @param indexes1 first combination of indexes
+     * @param indexes2 second combination of indexes
+     * @return negative if first combination comes earlier in full enumeration, positive if later, 0 if equal
+     */
+    private static int compareEnumerationOrder(int[] indexes1, int[] indexes2) {
+        for (int i = indexes1.length - 1; i >= 0; i--)
+            if (indexes1[i] != indexes2[i])
+                return Integer.compare(indexes1[i], indexes2[i]);
+        return 0;
+    }
 
-            return operandIndex == that.operandIndex && from == that.from && to == that.to;
-        }
+    private static class FoundMatch {
+        final MatchIntermediate match;
+        final int[] portIndexes;
 
-        @Override
-        public int hashCode() {
-            int result = operandIndex;
-            result = 31 * result + from;
-            result = 31 * result + to;
-            return result;
+        FoundMatch(MatchIntermediate match, int[] portIndexes) {
+            this.match = match;
+            this.portIndexes = portIndexes;
         }
     }
 
     private class MatchesOutputPort implements OutputPort<MatchIntermediate> {
         private ArrayList<MatchIntermediate> allMatchesFiltered;
-        private long scoreThreshold = conf.patternConfiguration.scoreThreshold;
+        private SortedCombinationsPort sortedCombinationsPort = null;
+        private long scoreThreshold = conf.scoreThreshold;
         private int numberOfPatterns = conf.operandPatterns.length;
         private int filteredMatchesCount = 0;
         private int currentMatchIndex = 0;
@@ -720,6 +834,13 @@ public final class ApproximateSorter {
                 return null;
             }
 
+            MatchIntermediate takenMatch = takeUnfair();
+            if ((takenMatch != null) && (unfairSorterTakenValues == 1) && AdaptivePortLimits.isEnabled())
+                recordBestMatchDepths();
+            return takenMatch;
+        }
+
+        private MatchIntermediate takeUnfair() {
             MatchIntermediate takenMatch;
             switch (unfairSorterStage) {
                 case 1:
@@ -745,15 +866,36 @@ public final class ApproximateSorter {
             }
         }
 
+        /**
+         * Save depths of operand matches of the first returned match for adaptive port limits. Depths are not known
+         * if the match was found by full enumeration with specific output ports.
+         */
+        private void recordBestMatchDepths() {
+            int[] indexes = (unfairSorterStage < 3) ? currentIndexes
+                    : ((sortedCombinationsPort == null) ? null : sortedCombinationsPort.takenMatchPortIndexes);
+            if (indexes != null)
+                for (int i = 0; i < numberOfPatterns; i++)
+                    AdaptivePortLimits.recordDepth(conf.operandPatterns[i], indexes[i]);
+        }
+
         private MatchIntermediate takeSorted() {
             if (!sortingPerformed) {
-                allMatchesFiltered = takeFilteredMatches();
-                filteredMatchesCount = allMatchesFiltered.size();
-                allMatchesFiltered.sort(Comparator.comparingLong(MatchIntermediate::getScore).reversed());
+                if (conf.fairSorting || !conf.specificOutputPorts)
+                    sortedCombinationsPort = new SortedCombinationsPort();
+                else {
+                    allMatchesFiltered = takeFilteredMatches();
+                    filteredMatchesCount = allMatchesFiltered.size();
+                    allMatchesFiltered.sort(Comparator.comparingLong(MatchIntermediate::getScore).reversed());
+                }
                 sortingPerformed = true;
             }
 
-            if (currentMatchIndex >= filteredMatchesCount) {
+            if (sortedCombinationsPort != null) {
+                MatchIntermediate match = sortedCombinationsPort.take();
+                if (match == null)
+                    alwaysReturnNull = true;
+                return match;
+            } else if (currentMatchIndex >= filteredMatchesCount) {
                 alwaysReturnNull = true;
                 return null;
             } else
@@ -953,12 +1095,8 @@ public final class ApproximateSorter {
                             break;
                         }
                     if (!invalidCombination) {
-                        IncompatibleIndexes incompatibleIndexes = findIncompatibleIndexes(currentMatches, indexes);
-                        if (incompatibleIndexes != null) {
-                            // if conf.specificOutputPorts is true, indexes are not fixed; no need to remember them
-                            if (!conf.specificOutputPorts)
-                                allIncompatibleIndexes.add(incompatibleIndexes);
-                        } else {
+                        // if conf.specificOutputPorts is true, indexes are not fixed; no need to remember them
+                        if (checkCompatibility(currentMatches, indexes, !conf.specificOutputPorts)) {
                             MatchIntermediate combinedMatch = combineMatches(currentMatches);
                             if ((combinedMatch != null) && (combinedMatch.getScore() >= scoreThreshold))
                                 return combinedMatch;
@@ -972,7 +1110,7 @@ public final class ApproximateSorter {
         }
 
         private void rememberReturnedCombination(int[] indexes) {
-            unfairReturnedCombinationsHashes.add(Arrays.hashCode(indexes));
+            buffers.addReturnedCombination(indexes);
         }
     }
 }
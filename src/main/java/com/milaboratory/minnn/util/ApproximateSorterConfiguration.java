@@ -42,6 +42,7 @@ public final class ApproximateSorterConfiguration {
     private final int from;
     private final int to;
     final PatternConfiguration patternConfiguration;
+    final long scoreThreshold;
     final boolean multipleReads;
     final boolean separateTargets;
     final boolean combineScoresBySum;
@@ -70,11 +71,37 @@ public final class ApproximateSorterConfiguration {
             MultiNSequenceWithQuality target, PatternConfiguration patternConfiguration, boolean separateTargets,
             boolean combineScoresBySum, boolean fairSorting, MatchValidationType matchValidationType,
             int unfairSorterLimit, Pattern... operandPatterns) {
+        this(target, patternConfiguration, patternConfiguration.scoreThreshold, separateTargets, combineScoresBySum,
+                fairSorting, matchValidationType, unfairSorterLimit, operandPatterns);
+    }
+
+    /**
+     * Configuration for MultipleReadsOperator patterns with lower bound for combined match score.
+     *
+     * @param target                target nucleotide sequence (or multiple sequences)
+     * @param patternConfiguration  pattern configuration that provides information about scoring
+     *                              and pattern overlap limits
+     * @param minScore              combinations with score below this value will not be returned; if it is below
+     *                              score threshold from pattern configuration, score threshold is used
+     * @param separateTargets       true only for MultiPattern when each operand pattern gets its own
+     *                              part of multi-target
+     * @param combineScoresBySum    true if combined score must be equal to sum of match scores;
+     *                              false if combined score must be the highest of match scores
+     * @param fairSorting           true if we need slow but fair sorting
+     * @param matchValidationType   type of validation used to determine that current matches combination is invalid
+     * @param unfairSorterLimit     maximum number of output values for this port for unfair sorter
+     * @param operandPatterns       operand patterns
+     */
+    public ApproximateSorterConfiguration(
+            MultiNSequenceWithQuality target, PatternConfiguration patternConfiguration, long minScore,
+            boolean separateTargets, boolean combineScoresBySum, boolean fairSorting,
+            MatchValidationType matchValidationType, int unfairSorterLimit, Pattern... operandPatterns) {
         this.operandPatterns = operandPatterns;
         this.target = target;
         this.from = -1;
         this.to = -1;
         this.patternConfiguration = patternConfiguration;
+        this.scoreThreshold = Math.max(patternConfiguration.scoreThreshold, minScore);
         this.multipleReads = true;
         this.separateTargets = separateTargets;
         this.combineScoresBySum = combineScoresBySum;
@@ -121,11 +148,37 @@ public final class ApproximateSorterConfiguration {
             MultiNSequenceWithQuality target, int from, int to, PatternConfiguration patternConfiguration,
             boolean combineScoresBySum, boolean fairSorting, MatchValidationType matchValidationType,
             int unfairSorterLimit, SinglePattern... operandPatterns) {
+        this(target, from, to, patternConfiguration, patternConfiguration.scoreThreshold, combineScoresBySum,
+                fairSorting, matchValidationType, unfairSorterLimit, operandPatterns);
+    }
+
+    /**
+     * Configuration for SinglePattern patterns with lower bound for combined match score.
+     *
+     * @param target                target nucleotide sequence (or multiple sequences)
+     * @param from                  left border in target for range where to search matches, inclusive
+     * @param to                    right border in target for range where to search matches, exclusive
+     * @param patternConfiguration  pattern configuration that provides information about scoring
+     *                              and pattern overlap limits
+     * @param minScore              combinations with score below this value will not be returned; if it is below
+     *                              score threshold from pattern configuration, score threshold is used
+     * @param combineScoresBySum    true if combined score must be equal to sum of match scores;
+     *                              false if combined score must be the highest of match scores
+     * @param fairSorting           true if we need slow but fair sorting
+     * @param matchValidationType   type of validation used to determine that current matches combination is invalid
+     * @param unfairSorterLimit     maximum number of output values for this port for unfair sorter
+     * @param operandPatterns       operand patterns
+     */
+    public ApproximateSorterConfiguration(
+            MultiNSequenceWithQuality target, int from, int to, PatternConfiguration patternConfiguration,
+            long minScore, boolean combineScoresBySum, boolean fairSorting, MatchValidationType matchValidationType,
+            int unfairSorterLimit, SinglePattern... operandPatterns) {
         this.operandPatterns = operandPatterns;
         this.target = target;
         this.from = from;
         this.to = to;
         this.patternConfiguration = patternConfiguration;
+        this.scoreThreshold = Math.max(patternConfiguration.scoreThreshold, minScore);
         this.multipleReads = false;
         this.separateTargets = false;
         this.combineScoresBySum = combineScoresBySum;
@@ -135,29 +188,10 @@ public final class ApproximateSorterConfiguration {
         this.specificOutputPorts = !fairSorting
                 && ((matchValidationType == ORDER) || (matchValidationType == FOLLOWING));
         if (this.specificOutputPorts) {
-            ArrayList<Integer> operandOrderList = new ArrayList<>();
-            int numberOfOperands = operandPatterns.length;
-            Long[] patternComplexities = Arrays.stream(operandPatterns).map(Pattern::estimateComplexity)
-                    .toArray(Long[]::new);
-            long minComplexity = Long.MAX_VALUE;
-            int firstPatternIndex = 0;
-            for (int i = 0; i < numberOfOperands; i++)
-                if (minComplexity > patternComplexities[i]) {
-                    minComplexity = patternComplexities[i];
-                    firstPatternIndex = i;
-                }
-            operandOrderList.add(firstPatternIndex);
-            while (operandOrderList.size() < numberOfOperands) {
-                int leftIndex = Collections.min(operandOrderList) - 1;
-                int rightIndex = Collections.max(operandOrderList) + 1;
-                long leftComplexity = leftIndex < 0 ? Long.MAX_VALUE
-                        : patternComplexities[leftIndex];
-                long rightComplexity = rightIndex >= numberOfOperands ? Long.MAX_VALUE
-                        : patternComplexities[rightIndex];
-                operandOrderList.add(leftComplexity > rightComplexity ? rightIndex : leftIndex);
-            }
-            this.operandOrder = operandOrderList.stream().mapToInt(Integer::intValue).toArray();
-            this.borderPatternsLength = calculateBorderPatternsLength();
+            SpecificPortsPlan specificPortsPlan = BatchMatchingScope.specificPortsPlan(operandPatterns,
+                    patternConfiguration.maxOverlap);
+            this.operandOrder = specificPortsPlan.operandOrder;
+            this.borderPatternsLength = specificPortsPlan.borderPatternsLength;
         } else {
             this.operandOrder = null;
             this.borderPatternsLength = null;
@@ -211,22 +245,60 @@ public final class ApproximateSorterConfiguration {
             throw new IllegalStateException("Trying to get \"operandOrder\" when specificOutputPorts is false!");
     }
 
-    private BorderPatternsLength calculateBorderPatternsLength() {
-        int minLengthOnLeftFromFirst = 0;
-        int minLengthOnRightFromFirst = 0;
-        int firstOperandIndex = operandOrder()[0];
-        for (int i = 1; i < operandPatterns.length; i++) {
-            int currentOperandIndex = operandOrder[i];
-            boolean currentOperandOnLeftFromFirst = currentOperandIndex < firstOperandIndex;
-            int minLengthIncrement = (patternConfiguration.maxOverlap == -1) ? 1
-                    : Math.max(1, ((SinglePattern)(operandPatterns[currentOperandIndex])).estimateMinLength()
-                    - patternConfiguration.maxOverlap);
-            if (currentOperandOnLeftFromFirst)
-                minLengthOnLeftFromFirst += minLengthIncrement;
-            else
-                minLengthOnRightFromFirst += minLengthIncrement;
+    /**
+     * Order of operands and minimal lengths of patterns on the left and on the right from the first operand for
+     * sorter with specific output ports. These values depend only on operand patterns and max overlap, so they can be
+     * reused by sorters created for different targets.
+     */
+    static final class SpecificPortsPlan {
+        final int[] operandOrder;
+        final int maxOverlap;
+        final BorderPatternsLength borderPatternsLength;
+
+        SpecificPortsPlan(Pattern[] operandPatterns, int maxOverlap) {
+            ArrayList<Integer> operandOrderList = new ArrayList<>();
+            int numberOfOperands = operandPatterns.length;
+            Long[] patternComplexities = Arrays.stream(operandPatterns).map(Pattern::estimateComplexity)
+                    .toArray(Long[]::new);
+            long minComplexity = Long.MAX_VALUE;
+            int firstPatternIndex = 0;
+            for (int i = 0; i < numberOfOperands; i++)
+                if (minComplexity > patternComplexities[i]) {
+                    minComplexity = patternComplexities[i];
+                    firstPatternIndex = i;
+                }
+            operandOrderList.add(firstPatternIndex);
+            while (operandOrderList.size() < numberOfOperands) {
+                int leftIndex = Collections.min(operandOrderList) - 1;
+                int rightIndex = Collections.max(operandOrderList) + 1;
+                long leftComplexity = leftIndex < 0 ? Long.MAX_VALUE
+                        : patternComplexities[leftIndex];
+                long rightComplexity = rightIndex >= numberOfOperands ? Long.MAX_VALUE
+                        : patternComplexities[rightIndex];
+                operandOrderList.add(leftComplexity > rightComplexity ? rightIndex : leftIndex);
+            }
+            this.operandOrder = operandOrderList.stream().mapToInt(Integer::intValue).toArray();
+            this.maxOverlap = maxOverlap;
+            this.borderPatternsLength = calculateBorderPatternsLength(operandPatterns);
+        }
+
+        private BorderPatternsLength calculateBorderPatternsLength(Pattern[] operandPatterns) {
+            int minLengthOnLeftFromFirst = 0;
+            int minLengthOnRightFromFirst = 0;
+            int firstOperandIndex = operandOrder[0];
+            for (int i = 1; i < operandPatterns.length; i++) {
+                int currentOperandIndex = operandOrder[i];
+                boolean currentOperandOnLeftFromFirst = currentOperandIndex < firstOperandIndex;
+                int minLengthIncrement = (maxOverlap == -1) ? 1
+                        : Math.max(1, ((SinglePattern)(operandPatterns[currentOperandIndex])).estimateMinLength()
+                        - maxOverlap);
+                if (currentOperandOnLeftFromFirst)
+                    minLengthOnLeftFromFirst += minLengthIncrement;
+                else
+                    minLengthOnRightFromFirst += minLengthIncrement;
+            }
+            return new BorderPatternsLength(minLengthOnLeftFromFirst, minLengthOnRightFromFirst);
         }
-        return new BorderPatternsLength(minLengthOnLeftFromFirst, minLengthOnRightFromFirst);
     }
 
     private static class BorderPatternsLength {
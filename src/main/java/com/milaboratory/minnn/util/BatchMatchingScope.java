@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.util;
+
+import com.milaboratory.minnn.pattern.Pattern;
+import com.milaboratory.minnn.util.ApproximateSorterConfiguration.SpecificPortsPlan;
+
+import java.util.IdentityHashMap;
+
+import static com.milaboratory.minnn.pattern.PatternUtils.operandsEvaluationOrder;
+
+/**
+ * Per-thread scope of batch matching, see Pattern.matchBatch(). Sorters calculate some data only from their operand
+ * patterns: order of operands for specific output ports, minimal lengths of patterns on the borders, and evaluation
+ * order of operands for sorted combinations. While the scope is open, these data are calculated once for each array
+ * of operand patterns and reused by sorters created for all targets of the batch; without open scope, each sorter
+ * calculates them again. Operand patterns arrays are compared by identity, and all data are cleared when the scope
+ * is closed, so arrays that patterns create for a single target don't stay in memory.
+ */
+public final class BatchMatchingScope {
+    private static final ThreadLocal<BatchMatchingScope> threadScope = ThreadLocal.withInitial(
+            BatchMatchingScope::new);
+
+    private final IdentityHashMap<Pattern[], SpecificPortsPlan> specificPortsPlans = new IdentityHashMap<>();
+    private final IdentityHashMap<Pattern[], int[]> evaluationOrders = new IdentityHashMap<>();
+    private int openedScopes = 0;
+
+    private BatchMatchingScope() {}
+
+    /**
+     * Open batch matching scope for current thread. Scopes can be nested; data are cleared when the outermost scope
+     * is closed.
+     */
+    public static void open() {
+        threadScope.get().openedScopes++;
+    }
+
+    public static void close() {
+        BatchMatchingScope scope = threadScope.get();
+        if (scope.openedScopes == 0)
+            throw new IllegalStateException("Batch matching scope is not opened!");
+        if (--scope.openedScopes == 0) {
+            scope.specificPortsPlans.clear();
+            scope.evaluationOrders.clear();
+        }
+    }
+
+    static SpecificPortsPlan specificPortsPlan(Pattern[] operandPatterns, int maxOverlap) {
+        BatchMatchingScope scope = threadScope.get();
+        if (scope.openedScopes == 0)
+            return new SpecificPortsPlan(operandPatterns, maxOverlap);
+        SpecificPortsPlan plan = scope.specificPortsPlans.get(operandPatterns);
+        if ((plan == null) || (plan.maxOverlap != maxOverlap)) {
+            plan = new SpecificPortsPlan(operandPatterns, maxOverlap);
+            scope.specificPortsPlans.put(operandPatterns, plan);
+        }
+        return plan;
+    }
+
+    static int[] evaluationOrder(Pattern[] operandPatterns) {
+        BatchMatchingScope scope = threadScope.get();
+        if (scope.openedScopes == 0)
+            return operandsEvaluationOrder(operandPatterns);
+        return scope.evaluationOrders.computeIfAbsent(operandPatterns, patterns -> operandsEvaluationOrder(patterns));
+    }
+}
@@ -32,7 +32,7 @@ import com.milaboratory.core.sequence.NucleotideSequence;
 
 import java.util.*;
 
-import static com.milaboratory.core.sequence.NucleotideSequence.ALPHABET;
+import static com.milaboratory.minnn.util.SequenceKernels.*;
 
 public final class CommonUtils {
     private CommonUtils() {}
@@ -84,15 +84,14 @@ public final class CommonUtils {
     public static boolean equalByWildcards(NucleotideSequence seq1, NucleotideSequence seq2) {
         if (seq1.size() != seq2.size())
             return false;
-        for (int i = 0; i < seq1.size(); i++)
-            if (!ALPHABET.codeToWildcard(seq1.codeAt(i)).intersectsWith(ALPHABET.codeToWildcard(seq2.codeAt(i))))
-                return false;
-        return true;
+        return allIntersect(packBasicMasks(seq1), packBasicMasks(seq2), seq1.size());
     }
 
     // storage for sequences that are different by wildcards
     public static class UniqueSequencesSet implements Set<NucleotideSequence> {
         private Set<NucleotideSequence> sequences = new HashSet<>();
+        // packed basic masks of sequences, for comparison by wildcards without packing the sequences every time
+        private final Map<NucleotideSequence, long[]> basicMasks = new HashMap<>();
 
         @Override
         public int size() {
@@ -113,9 +112,15 @@ public final class CommonUtils {
             NucleotideSequence newSeq = (NucleotideSequence)o;
             if (sequences.contains(newSeq))
                 return true;
+            long[] newSeqMasks = null;
             for (NucleotideSequence sequence : sequences)
-                if (equalByWildcards(sequence, newSeq))
-                    return true;
+                if (sequence.size() == newSeq.size()) {
+                    if (newSeqMasks == null)
+                        newSeqMasks = packBasicMasks(newSeq);
+                    if (allIntersect(basicMasks.computeIfAbsent(sequence, SequenceKernels::packBasicMasks),
+                            newSeqMasks, newSeq.size()))
+                        return true;
+                }
             return false;
         }
 
@@ -149,6 +154,7 @@ public final class CommonUtils {
 
         @Override
         public boolean remove(Object o) {
+            basicMasks.remove(o);
             return sequences.remove(o);
         }
 
@@ -170,6 +176,7 @@ public final class CommonUtils {
 
         @Override
         public boolean removeAll(Collection<?> collection) {
+            basicMasks.clear();
             return sequences.removeAll(collection);
         }
 
@@ -197,12 +204,14 @@ public final class CommonUtils {
             }
             result = !sequences.equals(newSet);
             sequences = newSet;
+            basicMasks.clear();
             return result;
         }
 
         @Override
         public void clear() {
             sequences.clear();
+            basicMasks.clear();
         }
 
         @Override
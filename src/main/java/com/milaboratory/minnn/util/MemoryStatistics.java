@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.util;
+
+import java.lang.management.*;
+
+/**
+ * Helpers to measure garbage collection and memory allocation; used in reports to show the memory pressure
+ * caused by processing.
+ */
+public final class MemoryStatistics {
+    private MemoryStatistics() {}
+
+    private static final com.sun.management.ThreadMXBean threadMXBean = initThreadMXBean();
+
+    private static com.sun.management.ThreadMXBean initThreadMXBean() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean)threadMXBean;
+            if (sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled())
+                return sunThreadMXBean;
+        }
+        return null;
+    }
+
+    /**
+     * Get total number of garbage collections since JVM start, for all collectors.
+     *
+     * @return number of garbage collections
+     */
+    public static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gcBean.getCollectionCount());
+        return count;
+    }
+
+    /**
+     * Get total time spent in garbage collections since JVM start, for all collectors.
+     *
+     * @return garbage collection time in milliseconds
+     */
+    public static long getGcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(0, gcBean.getCollectionTime());
+        return time;
+    }
+
+    /**
+     * Get number of bytes allocated by the current thread since its start.
+     *
+     * @return allocated bytes, or -1 if the JVM doesn't support per-thread allocation measurement
+     */
+    public static long getCurrentThreadAllocatedBytes() {
+        return (threadMXBean == null) ? -1 : threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.util;
+
+import com.milaboratory.minnn.pattern.MatchIntermediate;
+import com.milaboratory.minnn.pattern.Pattern;
+
+import java.util.*;
+
+import static com.milaboratory.minnn.util.UnfairSorterConfiguration.operandMatchesMemoMaxSize;
+
+/**
+ * Per-thread memo of materialized operand matches of ApproximateSorter. The same pattern object can be matched
+ * with the same target and range by many sorters, for example when the same subpattern is shared by branches of
+ * OrPattern; in this case the operand matches are taken from the memo instead of matching the pattern again.
+ * Memo is enabled for the current thread by ApproximateSorter.recycleThreadBuffers() call, and cleared by
+ * the next call of this method; without this call nothing is memoized.
+ */
+final class OperandMatchesMemo {
+    private static final ThreadLocal<OperandMatchesMemo> threadMemo = ThreadLocal.withInitial(OperandMatchesMemo::new);
+
+    private final HashMap<Key, ArrayList<MatchIntermediate>> matches = new HashMap<>();
+    private boolean enabled = false;
+
+    private OperandMatchesMemo() {}
+
+    static OperandMatchesMemo get() {
+        return threadMemo.get();
+    }
+
+    /**
+     * Clear the memo of the current thread and enable memoization for it. Must be called only when matches from
+     * the memo will not be used anymore.
+     */
+    static void reset() {
+        OperandMatchesMemo memo = threadMemo.get();
+        if (!memo.matches.isEmpty())
+            memo.matches.clear();
+        memo.enabled = true;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get memoized operand matches.
+     *
+     * @param pattern       operand pattern
+     * @param target        target object (single sequence or multiple sequences) passed to match() of the pattern
+     * @param from          left border of the range where the pattern is matched, or -1 for multiple reads
+     * @param to            right border of the range where the pattern is matched, or -1 for multiple reads
+     * @param fairSorting   true if fair sorting is used
+     * @param minScore      minimal score passed to getMatches() of the pattern
+     * @return              list of matches in the order of the pattern output port, or null if not memoized
+     */
+    ArrayList<MatchIntermediate> get(Pattern pattern, Object target, int from, int to, boolean fairSorting,
+                                     long minScore) {
+        return matches.get(new Key(pattern, target, from, to, fairSorting, minScore));
+    }
+
+    void put(Pattern pattern, Object target, int from, int to, boolean fairSorting, long minScore,
+             ArrayList<MatchIntermediate> operandMatches) {
+        if (matches.size() < operandMatchesMemoMaxSize)
+            matches.put(new Key(pattern, target, from, to, fairSorting, minScore), operandMatches);
+    }
+
+    /**
+     * Patterns and targets are compared by identity: patterns are immutable, and targets are kept in the memo
+     * only until the next reset.
+     */
+    private static final class Key {
+        private final Pattern pattern;
+        private final Object target;
+        private final int from;
+        private final int to;
+        private final boolean fairSorting;
+        private final long minScore;
+
+        Key(Pattern pattern, Object target, int from, int to, boolean fairSorting, long minScore) {
+            this.pattern = pattern;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+            this.fairSorting = fairSorting;
+            this.minScore = minScore;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key that = (Key)other;
+            return (pattern == that.pattern) && (target == that.target) && (from == that.from) && (to == that.to)
+                    && (fairSorting == that.fairSorting) && (minScore == that.minScore);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(pattern);
+            result = 31 * result + System.identityHashCode(target);
+            result = 31 * result + from;
+            result = 31 * result + to;
+            result = 31 * result + (fairSorting ? 1 : 0);
+            result = 31 * result + Long.hashCode(minScore);
+            return result;
+        }
+    }
+}
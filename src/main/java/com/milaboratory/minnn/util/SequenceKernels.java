@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.util;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+
+import static com.milaboratory.core.sequence.NucleotideSequence.ALPHABET;
+
+/**
+ * Word-parallel kernels for comparison of nucleotide sequences. Sequences are packed into long[] arrays with 4 bits
+ * per letter, 16 letters per word: either letter codes (for exact comparison) or basic letter masks of wildcards
+ * (for comparison by wildcards). Then 16 positions are compared with a few bitwise operations on a word instead of
+ * codeAt() and codeToWildcard() calls for each letter. Packed arrays can be reused for many comparisons, for example
+ * for comparisons of a kmer with all windows of a sequence.
+ */
+public final class SequenceKernels {
+    private SequenceKernels() {}
+
+    private static final int LETTERS_PER_WORD = 16;
+    // lowest bit of each 4-bit letter
+    private static final long LOW_BITS = 0x1111111111111111L;
+    private static final byte[] basicMasks = new byte[ALPHABET.size()];
+    static {
+        for (byte code = 0; code < basicMasks.length; code++)
+            basicMasks[code] = (byte)ALPHABET.codeToWildcard(code).getBasicMask();
+    }
+
+    /**
+     * Pack letter codes of the sequence, 16 letters per word.
+     *
+     * @param seq   nucleotide sequence
+     * @return      packed codes
+     */
+    public static long[] packCodes(NucleotideSequence seq) {
+        int size = seq.size();
+        long[] packed = new long[(size + LETTERS_PER_WORD - 1) / LETTERS_PER_WORD];
+        for (int i = 0; i < size; i++)
+            packed[i / LETTERS_PER_WORD] |= (long)seq.codeAt(i) << ((i % LETTERS_PER_WORD) * 4);
+        return packed;
+    }
+
+    /**
+     * Pack basic letter masks of wildcards of the sequence, 16 letters per word: bits of basic letters that match
+     * the wildcard are set.
+     *
+     * @param seq   nucleotide sequence
+     * @return      packed basic masks
+     */
+    public static long[] packBasicMasks(NucleotideSequence seq) {
+        int size = seq.size();
+        long[] packed = new long[(size + LETTERS_PER_WORD - 1) / LETTERS_PER_WORD];
+        for (int i = 0; i < size; i++)
+            packed[i / LETTERS_PER_WORD] |= (long)basicMasks[seq.codeAt(i)] << ((i % LETTERS_PER_WORD) * 4);
+        return packed;
+    }
+
+    /**
+     * Count positions where packed codes are different: packed1 is compared from the specified letter position,
+     * and packed2 is compared from the start.
+     *
+     * @param packed1   packed codes of the first sequence
+     * @param offset1   position of the first compared letter in the first sequence
+     * @param packed2   packed codes of the second sequence
+     * @param length    number of compared letters; both sequences must contain them
+     * @return          number of different letters
+     */
+    public static int countDifferences(long[] packed1, int offset1, long[] packed2, int length) {
+        int differences = 0;
+        for (int word = 0; word * LETTERS_PER_WORD < length; word++) {
+            long x = (getWord(packed1, offset1 + word * LETTERS_PER_WORD) ^ packed2[word])
+                    & lettersMask(length - word * LETTERS_PER_WORD);
+            differences += Long.bitCount((x | (x >>> 1) | (x >>> 2) | (x >>> 3)) & LOW_BITS);
+        }
+        return differences;
+    }
+
+    /**
+     * Check that wildcards of 2 sequences with the same length intersect in all positions.
+     *
+     * @param masks1    packed basic masks of the first sequence
+     * @param masks2    packed basic masks of the second sequence
+     * @param length    length of both sequences
+     * @return          true if wildcards intersect in all positions
+     */
+    public static boolean allIntersect(long[] masks1, long[] masks2, int length) {
+        for (int word = 0; word * LETTERS_PER_WORD < length; word++) {
+            long lettersLowBits = lettersMask(length - word * LETTERS_PER_WORD) & LOW_BITS;
+            long x = masks1[word] & masks2[word];
+            if (((x | (x >>> 1) | (x >>> 2) | (x >>> 3)) & lettersLowBits) != lettersLowBits)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get 16 packed letters starting from the specified letter position.
+     */
+    private static long getWord(long[] packed, int position) {
+        int wordIndex = position / LETTERS_PER_WORD;
+        int shift = (position % LETTERS_PER_WORD) * 4;
+        if (shift == 0)
+            return packed[wordIndex];
+        long word = packed[wordIndex] >>> shift;
+        if (wordIndex + 1 < packed.length)
+            word |= packed[wordIndex + 1] << (64 - shift);
+        return word;
+    }
+
+    /**
+     * Mask of 4-bit letters in the word if the specified number of letters remains; all bits are set if 16 or more
+     * letters remain.
+     */
+    private static long lettersMask(int remainingLetters) {
+        return (remainingLetters >= LETTERS_PER_WORD) ? -1L : (1L << (remainingLetters * 4)) - 1;
+    }
+}
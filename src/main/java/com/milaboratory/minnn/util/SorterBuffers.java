@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.util;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.*;
+
+import static com.milaboratory.minnn.util.UnfairSorterConfiguration.sorterBuffersPoolSize;
+
+/**
+ * Bookkeeping structures of ApproximateSorter: cached operand output ports, indexes of incompatible matches,
+ * combinations returned by unfair sorter and queue of index combinations for sorted enumeration. Keys are packed
+ * into long values, so lookups don't allocate key objects; only combinations with too big indexes are stored as
+ * arrays. Buffers are taken from per-thread pool and reused by sorters created after recycleThreadBuffers() call,
+ * so matching of the next read doesn't allocate them again.
+ */
+final class SorterBuffers {
+    private static final ThreadLocal<Pool> threadPool = ThreadLocal.withInitial(Pool::new);
+
+    private int numberOfOperands = 0;
+    // for each operand: cached output ports, key is packed "from" and "to" coordinates
+    private TLongObjectHashMap<SpecificOutputPort>[] outputPorts = newOutputPortsArray(0);
+    /* for each pair of operands (port1 < port2, array index is port1 * numberOfOperands + port2): packed indexes
+     * of matches that have incompatible ranges; null if nothing is added for this pair of operands */
+    private TLongHashSet[] incompatibleIndexes = new TLongHashSet[0];
+    private boolean incompatibleIndexesFound = false;
+    /* index combinations that were already returned by unfair sorter: packed into long values if indexes fit,
+     * see packCombination(), otherwise stored as arrays */
+    private final TLongHashSet returnedCombinations = new TLongHashSet();
+    private final HashSet<CombinationKey> returnedLargeCombinations = new HashSet<>();
+
+    /* Combinations queue: binary heap of slot numbers ordered by score bound. Indexes of combination in slot
+     * are stored in slotIndexes array from slot * numberOfOperands to (slot + 1) * numberOfOperands. */
+    private int[] heap = new int[16];
+    private int heapSize = 0;
+    private long[] slotBounds = new long[16];
+    private int[] slotLastIncremented = new int[16];
+    private int[] slotIndexes = new int[16];
+    private int[] freeSlots = new int[16];
+    private int freeSlotsCount = 0;
+    private int allocatedSlots = 0;
+
+    private SorterBuffers() {}
+
+    /**
+     * Get buffers for new sorter. Buffers come from the pool of current thread if it has free buffers.
+     *
+     * @param numberOfOperands  number of operand patterns of the sorter
+     * @return                  empty buffers
+     */
+    static SorterBuffers acquire(int numberOfOperands) {
+        return threadPool.get().acquire(numberOfOperands);
+    }
+
+    /**
+     * Mark all buffers of current thread as free. Must be called only when sorters that were created by current thread
+     * before this call will not be used anymore.
+     */
+    static void recycleThreadBuffers() {
+        threadPool.get().recycle();
+    }
+
+    private void init(int numberOfOperands) {
+        if (outputPorts.length < numberOfOperands)
+            outputPorts = Arrays.copyOf(outputPorts, numberOfOperands);
+        if (incompatibleIndexes.length < numberOfOperands * numberOfOperands)
+            incompatibleIndexes = Arrays.copyOf(incompatibleIndexes, numberOfOperands * numberOfOperands);
+        this.numberOfOperands = numberOfOperands;
+    }
+
+    /**
+     * Clear all structures; this is called when buffers are returned to the pool, so the pool doesn't keep
+     * references to output ports and their targets until the buffers are acquired again.
+     */
+    private void clear() {
+        for (TLongObjectHashMap<SpecificOutputPort> ports : outputPorts)
+            if ((ports != null) && !ports.isEmpty())
+                ports.clear();
+        if (incompatibleIndexesFound)
+            for (TLongHashSet indexes : incompatibleIndexes)
+                if ((indexes != null) && !indexes.isEmpty())
+                    indexes.clear();
+        incompatibleIndexesFound = false;
+        if (!returnedCombinations.isEmpty())
+            returnedCombinations.clear();
+        if (!returnedLargeCombinations.isEmpty())
+            returnedLargeCombinations.clear();
+        clearCombinations();
+    }
+
+    SpecificOutputPort getOutputPort(int operandIndex, int from, int to) {
+        TLongObjectHashMap<SpecificOutputPort> ports = outputPorts[operandIndex];
+        return (ports == null) ? null : ports.get(packPair(from, to));
+    }
+
+    void putOutputPort(int operandIndex, int from, int to, SpecificOutputPort port) {
+        if (outputPorts[operandIndex] == null)
+            outputPorts[operandIndex] = new TLongObjectHashMap<>();
+        outputPorts[operandIndex].put(packPair(from, to), port);
+    }
+
+    /**
+     * Remember that matches with index1 in port1 and index2 in port2 have incompatible ranges.
+     */
+    void addIncompatibleIndexes(int port1, int index1, int port2, int index2) {
+        int pairIndex = port1 * numberOfOperands + port2;
+        if (incompatibleIndexes[pairIndex] == null)
+            incompatibleIndexes[pairIndex] = new TLongHashSet();
+        incompatibleIndexes[pairIndex].add(packPair(index1, index2));
+        incompatibleIndexesFound = true;
+    }
+
+    /**
+     * Check if combination of indexes contains any pair of indexes that was added as incompatible.
+     *
+     * @param indexes indexes of matches
+     * @return true if there are no incompatible indexes found; false if they are found
+     */
+    boolean areCompatible(int[] indexes) {
+        if (incompatibleIndexesFound)
+            for (int port1 = 0; port1 < numberOfOperands - 1; port1++)
+                for (int port2 = port1 + 1; port2 < numberOfOperands; port2++) {
+                    TLongHashSet currentIndexes = incompatibleIndexes[port1 * numberOfOperands + port2];
+                    if ((currentIndexes != null) && currentIndexes.contains(packPair(indexes[port1], indexes[port2])))
+                        return false;
+                }
+        return true;
+    }
+
+    void addReturnedCombination(int[] indexes) {
+        long packedIndexes = packCombination(indexes);
+        if (packedIndexes == -1)
+            returnedLargeCombinations.add(new CombinationKey(indexes.clone()));
+        else
+            returnedCombinations.add(packedIndexes);
+    }
+
+    boolean isReturnedCombination(int[] indexes) {
+        long packedIndexes = packCombination(indexes);
+        if (packedIndexes == -1)
+            return !returnedLargeCombinations.isEmpty()
+                    && returnedLargeCombinations.contains(new CombinationKey(indexes));
+        else
+            return !returnedCombinations.isEmpty() && returnedCombinations.contains(packedIndexes);
+    }
+
+    /**
+     * Create combination of zero indexes; it must be added to the queue with pushCombination().
+     *
+     * @return slot of new combination
+     */
+    int newCombination() {
+        int slot = allocateSlot();
+        Arrays.fill(slotIndexes, slot * numberOfOperands, (slot + 1) * numberOfOperands, 0);
+        return slot;
+    }
+
+    /**
+     * Create combination that differs from parent combination by incremented index of one operand; it must be added
+     * to the queue with pushCombination().
+     *
+     * @param parentSlot        slot of parent combination
+     * @param operandIndex      index of operand to increment
+     * @return                  slot of new combination
+     */
+    int newChildCombination(int parentSlot, int operandIndex) {
+        int slot = allocateSlot();
+        System.arraycopy(slotIndexes, parentSlot * numberOfOperands, slotIndexes, slot * numberOfOperands,
+                numberOfOperands);
+        slotIndexes[slot * numberOfOperands + operandIndex]++;
+        return slot;
+    }
+
+    int combinationIndex(int slot, int operandIndex) {
+        return slotIndexes[slot * numberOfOperands + operandIndex];
+    }
+
+    int combinationLastIncremented(int slot) {
+        return slotLastIncremented[slot];
+    }
+
+    long combinationBound(int slot) {
+        return slotBounds[slot];
+    }
+
+    void pushCombination(int slot, int lastIncrementedOperand, long scoreBound) {
+        slotLastIncremented[slot] = lastIncrementedOperand;
+        slotBounds[slot] = scoreBound;
+        if (heapSize == heap.length)
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        int position = heapSize++;
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (slotBounds[heap[parent]] >= scoreBound)
+                break;
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = slot;
+    }
+
+    /**
+     * Get slot of the combination with the best score bound without removing it from the queue.
+     *
+     * @return slot number, or -1 if the queue is empty
+     */
+    int peekCombination() {
+        return (heapSize == 0) ? -1 : heap[0];
+    }
+
+    /**
+     * Remove the combination with the best score bound from the queue. Its slot stays valid until freeCombination()
+     * call.
+     *
+     * @return slot number
+     */
+    int pollCombination() {
+        int result = heap[0];
+        int last = heap[--heapSize];
+        long lastBound = slotBounds[last];
+        int position = 0;
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= heapSize)
+                break;
+            if ((child + 1 < heapSize) && (slotBounds[heap[child + 1]] > slotBounds[heap[child]]))
+                child++;
+            if (lastBound >= slotBounds[heap[child]])
+                break;
+            heap[position] = heap[child];
+            position = child;
+        }
+        if (heapSize > 0)
+            heap[position] = last;
+        return result;
+    }
+
+    void freeCombination(int slot) {
+        if (freeSlotsCount == freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotsCount * 2);
+        freeSlots[freeSlotsCount++] = slot;
+    }
+
+    void clearCombinations() {
+        heapSize = 0;
+        freeSlotsCount = 0;
+        allocatedSlots = 0;
+    }
+
+    private int allocateSlot() {
+        if (freeSlotsCount > 0)
+            return freeSlots[--freeSlotsCount];
+        int slot = allocatedSlots++;
+        if (slot == slotBounds.length) {
+            slotBounds = Arrays.copyOf(slotBounds, slot * 2);
+            slotLastIncremented = Arrays.copyOf(slotLastIncremented, slot * 2);
+        }
+        if ((slot + 1) * numberOfOperands > slotIndexes.length)
+            slotIndexes = Arrays.copyOf(slotIndexes, Math.max(slotIndexes.length * 2,
+                    (slot + 1) * numberOfOperands));
+        return slot;
+    }
+
+    private static long packPair(int first, int second) {
+        return ((long)first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Pack combination of indexes into long value: each index takes 64 / indexes.length bits. Packing is exact, so
+     * different combinations never have the same packed value.
+     *
+     * @param indexes   indexes of matches, they are not negative
+     * @return          packed indexes, or -1 if some index doesn't fit into its bits
+     */
+    private static long packCombination(int[] indexes) {
+        int bitsPerIndex = 64 / indexes.length;
+        long packedIndexes = 0;
+        for (int index : indexes) {
+            if ((bitsPerIndex < 32) && ((index >>> bitsPerIndex) != 0))
+                return -1;
+            packedIndexes = (bitsPerIndex == 64) ? index : (packedIndexes << bitsPerIndex) | index;
+        }
+        return packedIndexes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TLongObjectHashMap<SpecificOutputPort>[] newOutputPortsArray(int size) {
+        return new TLongObjectHashMap[size];
+    }
+
+    private static final class Pool {
+        private final ArrayList<SorterBuffers> buffers = new ArrayList<>();
+        private int usedBuffers = 0;
+
+        SorterBuffers acquire(int numberOfOperands) {
+            SorterBuffers result;
+            if (usedBuffers < buffers.size())
+                result = buffers.get(usedBuffers++);
+            else {
+                result = new SorterBuffers();
+                // if the pool is full, new buffers are not pooled and will be collected with their sorter
+                if (buffers.size() < sorterBuffersPoolSize) {
+                    buffers.add(result);
+                    usedBuffers++;
+                }
+            }
+            result.init(numberOfOperands);
+            return result;
+        }
+
+        void recycle() {
+            for (int i = 0; i < usedBuffers; i++)
+                buffers.get(i).clear();
+            usedBuffers = 0;
+        }
+    }
+
+    private static final class CombinationKey {
+        private final int[] indexes;
+
+        CombinationKey(int[] indexes) {
+            this.indexes = indexes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof CombinationKey) && Arrays.equals(indexes, ((CombinationKey)o).indexes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(indexes);
+        }
+    }
+}
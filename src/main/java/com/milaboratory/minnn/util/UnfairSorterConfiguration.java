@@ -70,6 +70,10 @@ public final class UnfairSorterConfiguration {
     public static final String nLetters = "Nn";
     public static final int specificPortLimit = 3;
     public static final int approximateSorterStage1Depth = 3;
+    public static final int sorterBuffersPoolSize = 1000;
+    public static final int operandMatchesMemoMaxSize = 10000;
+    public static final int adaptivePortLimitsWindow = 1000;
+    public static final int adaptivePortLimitsMaxFactor = 4;
     public static final long fixedSequenceMaxComplexity = 50;
     public static final long notFixedSequenceMinComplexity = 30;
     public static final long singleNucleotideComplexity = 300;
@@ -28,12 +28,20 @@
  */
 package com.milaboratory.minnn.cli;
 
+import com.milaboratory.minnn.io.MifReader;
+import com.milaboratory.minnn.io.ShardedMifWriter;
+import com.milaboratory.minnn.outputconverter.ParsedRead;
+import com.milaboratory.minnn.util.AdaptivePortLimits;
 import org.junit.*;
 
-import java.io.File;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
 
 import static com.milaboratory.minnn.cli.CommandLineTestUtils.*;
 import static com.milaboratory.minnn.cli.TestResources.*;
+import static com.milaboratory.minnn.util.AdaptivePortLimits.LEARNED_PORT_LIMITS_JSON_KEY;
 import static com.milaboratory.minnn.util.CommonTestUtils.*;
 import static com.milaboratory.minnn.util.SystemUtils.*;
 import static com.milaboratory.minnn.cli.Main.main;
@@ -225,6 +233,82 @@ public class ExtractActionTest {
             assertTrue(new File(fileName).delete());
     }
 
+    @Test
+    public void batchedInputTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String outputSingleThread = TEMP_DIR + "outputBIT1.mif";
+        String outputMultipleThreads = TEMP_DIR + "outputBIT2.mif";
+        String outputLimited = TEMP_DIR + "outputBIT3.mif";
+        String outputLimitedFull = TEMP_DIR + "outputBIT4.mif";
+        String argsQuery = " --pattern \"TTC + N{1:10} & TTC || AAC \\ *\" --score-threshold 0";
+        exec("extract -f --input-format MIF --input " + inputFile + " --output " + outputSingleThread
+                + " --threads 1" + argsQuery);
+        exec("extract -f --input-format MIF --input " + inputFile + " --output " + outputMultipleThreads
+                + " --threads 8" + argsQuery);
+        assertMifEqualsAsFastq(outputSingleThread, outputMultipleThreads, true);
+        exec("extract -f --input-format MIF --input " + inputFile + " --output " + outputLimited
+                + " --threads 3 -n 300" + argsQuery);
+        exec("extract -f --input-format MIF --input " + inputFile + " --output " + outputLimitedFull
+                + " --threads 1 -n 300" + argsQuery);
+        assertMifEqualsAsFastq(outputLimited, outputLimitedFull, true);
+        for (String fileName : new String[] { inputFile, outputSingleThread, outputMultipleThreads, outputLimited,
+                outputLimitedFull })
+            assertTrue(new File(fileName).delete());
+    }
+
+    @Test
+    public void parallelDecompressionTest() throws Exception {
+        String inputR1 = TEST_RESOURCES_PATH + "sample_r1.fastq";
+        String inputR2 = TEST_RESOURCES_PATH + "sample_r2.fastq";
+        String bgzfR1 = TEMP_DIR + "sample_r1_bgzf.fastq.gz";
+        String bgzfR2 = TEMP_DIR + "sample_r2_bgzf.fastq.gz";
+        String outputPlain = TEMP_DIR + "outputPDT1.mif";
+        String outputGzip = TEMP_DIR + "outputPDT2.mif";
+        String outputBgzf = TEMP_DIR + "outputPDT3.mif";
+        writeBgzf(inputR1, bgzfR1, 100);
+        writeBgzf(inputR2, bgzfR2, 100);
+        String argsQuery = " --pattern \"<GA(UMI:AG)CA \\ AA\" --score-threshold 0";
+        exec("extract -f --input " + inputR1 + " " + inputR2 + " --output " + outputPlain + argsQuery);
+        exec("extract -f --input " + inputR1 + ".gz " + inputR2 + ".gz --output " + outputGzip
+                + " --decompression-threads 2" + argsQuery);
+        exec("extract -f --input " + bgzfR1 + " " + bgzfR2 + " --output " + outputBgzf
+                + " --decompression-threads 3" + argsQuery);
+        assertMifEqualsAsFastq(outputPlain, outputGzip, true);
+        assertMifEqualsAsFastq(outputPlain, outputBgzf, true);
+        for (String fileName : new String[] { bgzfR1, bgzfR2, outputPlain, outputGzip, outputBgzf })
+            assertTrue(new File(fileName).delete());
+    }
+
+    private static void writeBgzf(String inputFile, String outputFile, int blockSize) throws IOException {
+        byte[] data = Files.readAllBytes(Paths.get(inputFile));
+        try (OutputStream outputStream = new FileOutputStream(outputFile)) {
+            for (int from = 0; from < data.length; from += blockSize)
+                writeBgzfBlock(outputStream, data, from, Math.min(blockSize, data.length - from));
+            writeBgzfBlock(outputStream, data, 0, 0);
+        }
+    }
+
+    private static void writeBgzfBlock(OutputStream outputStream, byte[] data, int from, int length)
+            throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, from, length);
+        deflater.finish();
+        byte[] compressed = new byte[length + 1024];
+        int compressedLength = 0;
+        while (!deflater.finished())
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data, from, length);
+        int blockSizeMinusOne = 18 + compressedLength + 8 - 1;
+        outputStream.write(new byte[] { 31, (byte)139, 8, 4, 0, 0, 0, 0, 0, (byte)255, 6, 0, 'B', 'C', 2, 0,
+                (byte)blockSizeMinusOne, (byte)(blockSizeMinusOne >> 8) });
+        outputStream.write(compressed, 0, compressedLength);
+        for (long value : new long[] { crc.getValue(), length })
+            for (int i = 0; i < 4; i++)
+                outputStream.write((int)(value >> (8 * i)));
+    }
+
     @Test
     public void groupsOverrideTest() throws Exception {
         String r1 = EXAMPLES_PATH + "positional/polyfid10_R1.fastq.gz";
@@ -245,4 +329,93 @@ public class ExtractActionTest {
         for (String fileName : new String[] { extractedFile, sortedFile1, correctedFile, sortedFile2, consensusFile })
             assertTrue(new File(fileName).delete());
     }
+
+    @Test
+    public void shardedOutputTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String outputSingle = TEMP_DIR + "outputSOT.mif";
+        String outputSharded = TEMP_DIR + "outputSOTSharded.mif";
+        int numberOfShards = 3;
+        String argsQuery = " --pattern \"^(UMI:N{4})N{10} \\ *\"";
+        exec("extract -f --input-format MIF --input " + inputFile + " --output " + outputSingle + argsQuery);
+        exec("extract -f --input-format MIF --input " + inputFile + " --output " + outputSharded + argsQuery
+                + " --output-shards " + numberOfShards + " --shard-by UMI");
+        long singleOutputReads = 0;
+        long singleOriginalNumberOfReads;
+        try (MifReader reader = new MifReader(outputSingle)) {
+            assertEquals(-1, reader.getShardIndex());
+            while (reader.take() != null)
+                singleOutputReads++;
+            reader.close();
+            singleOriginalNumberOfReads = reader.getOriginalNumberOfReads();
+        }
+        long shardedOutputReads = 0;
+        HashMap<String, Integer> umiShards = new HashMap<>();
+        for (int i = 0; i < numberOfShards; i++) {
+            String shardFileName = ShardedMifWriter.getShardFileName(outputSharded, i);
+            try (MifReader reader = new MifReader(shardFileName)) {
+                assertEquals(i, reader.getShardIndex());
+                assertEquals(numberOfShards, reader.getNumberOfShards());
+                assertEquals(Collections.singletonList("UMI"), reader.getShardGroups());
+                ParsedRead parsedRead;
+                while ((parsedRead = reader.take()) != null) {
+                    String umi = parsedRead.getGroupValue("UMI").getSequence().toString();
+                    Integer previousShardIndex = umiShards.putIfAbsent(umi, i);
+                    if (previousShardIndex != null)
+                        assertEquals(i, (int)previousShardIndex);
+                    assertEquals(i, ShardedMifWriter.getShardIndex(parsedRead, reader.getShardGroups(),
+                            numberOfShards));
+                    shardedOutputReads++;
+                }
+                reader.close();
+                assertEquals(singleOriginalNumberOfReads, reader.getOriginalNumberOfReads());
+            }
+            assertTrue(new File(shardFileName).delete());
+        }
+        assertEquals(singleOutputReads, shardedOutputReads);
+        for (String fileName : new String[] { inputFile, outputSingle })
+            assertTrue(new File(fileName).delete());
+    }
+
+    @Test
+    public void fusedSortTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String extracted = TEMP_DIR + "outputFST.mif";
+        String sorted = TEMP_DIR + "outputFSTSorted.mif";
+        String fused = TEMP_DIR + "outputFSTFused.mif";
+        String corrected = TEMP_DIR + "outputFSTCorrected.mif";
+        String notMatched = TEMP_DIR + "outputFSTNotMatched.mif";
+        String argsQuery = " --pattern \"^(UMI:N{4})N{10} \\ *\"";
+        exec("extract -f --input-format MIF --input " + inputFile + " --output " + extracted + argsQuery);
+        exec("sort -f --chunk-size 100 --groups UMI --input " + extracted + " --output " + sorted);
+        exec("extract -f --input-format MIF --input " + inputFile + " --output " + fused + argsQuery
+                + " --sort-groups UMI --sort-chunk-size 100 --not-matched-output " + notMatched);
+        assertMifEqualsAsFastq(sorted, fused, true);
+        try (MifReader reader = new MifReader(fused)) {
+            assertEquals(Collections.singletonList("UMI"), reader.getSortedGroups());
+        }
+        // not matched reads are not sorted
+        try (MifReader reader = new MifReader(notMatched)) {
+            assertEquals(0, reader.getSortedGroups().size());
+        }
+        exec("correct -f --groups UMI --input " + fused + " --output " + corrected);
+        for (String fileName : new String[] { inputFile, extracted, sorted, fused, corrected, notMatched })
+            assertTrue(new File(fileName).delete());
+    }
+
+    @Test
+    public void adaptivePortLimitsDisabledAfterExtractTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String outputFile = TEMP_DIR + "outputAPL.mif";
+        String jsonReport = TEMP_DIR + "outputAPL.json";
+        String argsIO = "extract -f --input-format MIF --input " + inputFile + " --output " + outputFile
+                + " --json-report " + jsonReport + " --pattern \"(G1:tnncn)(G2:ncnc) & (G3:ntn)(G4:nnnn) \\ *\"";
+        exec(argsIO + " --adaptive-port-limits");
+        assertFalse(AdaptivePortLimits.isEnabled());
+        assertTrue(new String(Files.readAllBytes(Paths.get(jsonReport))).contains(LEARNED_PORT_LIMITS_JSON_KEY));
+        exec(argsIO);
+        assertFalse(new String(Files.readAllBytes(Paths.get(jsonReport))).contains(LEARNED_PORT_LIMITS_JSON_KEY));
+        for (String fileName : new String[] { inputFile, outputFile, jsonReport })
+            assertTrue(new File(fileName).delete());
+    }
 }
@@ -42,4 +42,12 @@ public class ReportActionTest {
         String test2 = "\"(SB1:NNN)atta \\ (SB2:NNN)gaca\" --target \"CCTCCCCACCA ATTAGACA\" --score-threshold 0";
         assertOutputContains(false, "not found", () -> callableExec(commonArgs + test2));
     }
+
+    @Test
+    public void explainTest() throws Exception {
+        String args = "report --pattern \"ATTA GACA\" --target \"CCTCCCCACCAATTAGACA\" --bitap-max-errors 0 --explain";
+        assertOutputContains(false, "Optimized plan", () -> callableExec(args));
+        assertOutputContains(false, "SequencePattern", () -> callableExec(args));
+        assertOutputContains(false, "ATTAGACA", () -> callableExec(args));
+    }
 }
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.minnn.outputconverter.MatchedGroup;
+import com.milaboratory.minnn.outputconverter.ParsedRead;
+import com.milaboratory.minnn.outputconverter.SerializedRecord;
+import com.milaboratory.minnn.pattern.GroupEdge;
+import com.milaboratory.primitivio.PrimitivO;
+import org.junit.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static com.milaboratory.minnn.cli.CommandLineTestUtils.*;
+import static com.milaboratory.minnn.cli.Magic.*;
+import static com.milaboratory.minnn.cli.TestResources.*;
+import static com.milaboratory.minnn.io.MifInfoExtractor.mifInfoExtractor;
+import static com.milaboratory.minnn.util.CommonTestUtils.*;
+import static com.milaboratory.minnn.util.SystemUtils.*;
+import static org.junit.Assert.*;
+
+public class MifReaderWriterTest {
+    @BeforeClass
+    public static void init() {
+        exitOnError = false;
+        File outputFilesDirectory = new File(TEMP_DIR);
+        if (!outputFilesDirectory.exists())
+            throw exitWithError("Directory for temporary output files " + TEMP_DIR + " does not exist!");
+    }
+
+    @Test
+    public void compressedBlocksTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String outputFile = TEMP_DIR + "compressedBlocks.mif";
+        long originalNumberOfReads;
+        try (MifReader reader = new MifReader(inputFile);
+             MifWriter writer = new MifWriter(outputFile, reader.getHeader(), true, true)) {
+            assertEquals(MAGIC_VERSION, reader.getMifFormatVersion());
+            ParsedRead parsedRead;
+            while ((parsedRead = reader.take()) != null)
+                writer.write(parsedRead);
+            reader.close();
+            originalNumberOfReads = reader.getOriginalNumberOfReads();
+            writer.setOriginalNumberOfReads(originalNumberOfReads);
+        }
+        assertEquals(MAGIC_VERSION, mifInfoExtractor.getFormatVersion(outputFile));
+        assertTrue(new File(outputFile).length() < new File(inputFile).length());
+        for (int decodingThreads : new int[] { 1, 2, 4 }) {
+            try (MifReader reader = new MifReader(outputFile)) {
+                reader.setDecodingThreads(decodingThreads);
+                while (reader.take() != null);
+                reader.close();
+                assertEquals(originalNumberOfReads, reader.getOriginalNumberOfReads());
+            }
+        }
+        assertMifEqualsAsFastq(inputFile, outputFile, true);
+        for (String fileName : new String[] { inputFile, outputFile })
+            assertTrue(new File(fileName).delete());
+    }
+
+    @Test
+    public void readGroupsTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String rowsFile = TEMP_DIR + "readGroupsRows.mif";
+        String columnsFile = TEMP_DIR + "readGroupsColumns.mif";
+        List<ParsedRead> parsedReads = new ArrayList<>();
+        try (MifReader reader = new MifReader(inputFile);
+             MifWriter rowsWriter = new MifWriter(rowsFile, reader.getHeader(), false, false);
+             MifWriter columnsWriter = new MifWriter(columnsFile, reader.getHeader(), false, true)) {
+            ParsedRead parsedRead;
+            while ((parsedRead = reader.take()) != null) {
+                parsedReads.add(parsedRead);
+                rowsWriter.write(parsedRead);
+                columnsWriter.write(parsedRead);
+            }
+        }
+        assertTrue(new File(columnsFile).length() > new File(rowsFile).length());
+        for (Set<String> groupNames : Arrays.asList(new HashSet<>(Arrays.asList("G1", "G3")),
+                new HashSet<>(Arrays.asList("G4", "G2", "R1")), Collections.singleton("G2")))
+            for (String fileName : new String[] { inputFile, rowsFile, columnsFile })
+                try (MifReader reader = new MifReader(fileName)) {
+                    reader.setDecodingThreads(rg.nextInt(4) + 1);
+                    int readIndex = 0;
+                    ProjectedRead projectedRead;
+                    OutputPortCloseable<ProjectedRead> projectedReads = reader.readGroups(groupNames);
+                    while ((projectedRead = projectedReads.take()) != null) {
+                        ParsedRead parsedRead = parsedReads.get(readIndex++);
+                        for (String groupName : groupNames)
+                            assertEquals(parsedRead.getGroupValue(groupName), projectedRead.getGroupValue(groupName));
+                    }
+                    assertEquals(parsedReads.size(), readIndex);
+                }
+        for (String fileName : new String[] { inputFile, rowsFile, columnsFile })
+            assertTrue(new File(fileName).delete());
+    }
+
+    @Test
+    public void readIdIndexTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String indexedFile = TEMP_DIR + "readIdIndex.mif";
+        String indexFile = indexedFile + ".ridx";
+        for (boolean compressBlocks : new boolean[] { false, true }) {
+            List<ParsedRead> parsedReads = new ArrayList<>();
+            try (MifReader reader = new MifReader(inputFile);
+                 MifWriter writer = new MifWriter(indexedFile, reader.getHeader(), compressBlocks, true)) {
+                writer.enableReadIdIndex();
+                ParsedRead parsedRead;
+                while ((parsedRead = reader.take()) != null)
+                    parsedReads.add(parsedRead);
+                // reads are written not in the order of read ids, like in sorted files
+                Collections.shuffle(parsedReads, rg);
+                for (ParsedRead currentRead : parsedReads)
+                    writer.write(currentRead);
+            }
+            assertTrue(new File(indexFile).exists());
+            assertFalse(new File(indexedFile + ".ridx.unsorted").exists());
+            List<ParsedRead> shuffledReads = new ArrayList<>(parsedReads);
+            Collections.shuffle(shuffledReads, rg);
+            try (MifReader reader = new MifReader(indexedFile)) {
+                assertTrue(reader.hasReadIdIndex());
+                for (ParsedRead parsedRead : shuffledReads)
+                    assertReadsEqual(parsedRead, reader.readAt(parsedRead.getOriginalRead().getId()));
+                assertNull(reader.readAt(-1));
+                assertNull(reader.readAt(Long.MAX_VALUE));
+                for (int i = 0; i < 10; i++) {
+                    int readIndex = rg.nextInt(parsedReads.size());
+                    assertTrue(reader.seek(parsedReads.get(readIndex).getOriginalRead().getId()));
+                    for (int j = readIndex; j < Math.min(parsedReads.size(), readIndex + 2000); j++)
+                        assertReadsEqual(parsedReads.get(j), reader.take());
+                }
+            }
+        }
+        // index file is removed when the file is overwritten without index
+        try (MifReader reader = new MifReader(inputFile);
+             MifWriter writer = new MifWriter(indexedFile, reader.getHeader())) {
+            writer.write(reader.take());
+        }
+        assertFalse(new File(indexFile).exists());
+        try (MifReader reader = new MifReader(indexedFile)) {
+            assertFalse(reader.hasReadIdIndex());
+        }
+        for (String fileName : new String[] { inputFile, indexedFile })
+            assertTrue(new File(fileName).delete());
+    }
+
+    @Test
+    public void memoryMappedReadingTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        List<ParsedRead> parsedReads = new ArrayList<>();
+        try (MifReader reader = new MifReader(new FileInputStream(inputFile))) {
+            assertFalse(reader.isMemoryMapped());
+            ParsedRead parsedRead;
+            while ((parsedRead = reader.take()) != null)
+                parsedReads.add(parsedRead);
+        }
+        try (MifReader reader = new MifReader(inputFile)) {
+            assertTrue(reader.isMemoryMapped());
+            assertEquals(parsedReads.size(), reader.getEstimatedNumberOfReads());
+            for (ParsedRead parsedRead : parsedReads)
+                assertReadsEqual(parsedRead, reader.take());
+            assertNull(reader.take());
+        }
+        assertTrue(new File(inputFile).delete());
+    }
+
+    @Test
+    public void lazyDecodingTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String columnsFile = TEMP_DIR + "lazyDecodingColumns.mif";
+        String copiedFile = TEMP_DIR + "lazyDecodingCopied.mif";
+        for (boolean compressBlocks : new boolean[] { false, true }) {
+            List<ParsedRead> parsedReads = new ArrayList<>();
+            try (MifReader reader = new MifReader(inputFile);
+                 MifWriter writer = new MifWriter(columnsFile, reader.getHeader(), compressBlocks, true)) {
+                ParsedRead parsedRead;
+                while ((parsedRead = reader.take()) != null) {
+                    parsedReads.add(parsedRead);
+                    writer.write(parsedRead);
+                }
+            }
+            try (MifReader reader = new MifReader(columnsFile);
+                 MifWriter writer = new MifWriter(copiedFile, reader.getHeader(), compressBlocks, true)) {
+                reader.setLazyDecoding(true);
+                reader.setDecodingThreads(rg.nextInt(4) + 1);
+                for (ParsedRead parsedRead : parsedReads) {
+                    ParsedRead lazyRead = reader.take();
+                    assertNotNull(lazyRead.getSerializedRecord());
+                    assertEquals(parsedRead.getOriginalRead().getId(), lazyRead.getOriginalReadId());
+                    for (String groupName : new String[] { "G1", "G2", "G3", "G4" })
+                        assertEquals(parsedRead.getGroupValue(groupName), lazyRead.getGroupValue(groupName));
+                    writer.write(lazyRead);
+                    if (rg.nextBoolean())
+                        assertReadsEqual(parsedRead, lazyRead);
+                }
+                assertNull(reader.take());
+            }
+            // serialized records are copied without changes
+            try (MifReader reader = new MifReader(copiedFile)) {
+                for (ParsedRead parsedRead : parsedReads) {
+                    ParsedRead copiedRead = reader.take();
+                    assertNull(copiedRead.getSerializedRecord());
+                    assertReadsEqual(parsedRead, copiedRead);
+                }
+                assertNull(reader.take());
+            }
+        }
+        // lazy decoding is not available for rows layout
+        try (MifReader reader = new MifReader(inputFile);
+             MifWriter writer = new MifWriter(columnsFile, reader.getHeader(), false, false)) {
+            writer.write(reader.take());
+        }
+        try (MifReader reader = new MifReader(columnsFile)) {
+            reader.setLazyDecoding(true);
+            assertNull(reader.take().getSerializedRecord());
+        }
+        for (String fileName : new String[] { inputFile, columnsFile, copiedFile })
+            assertTrue(new File(fileName).delete());
+    }
+
+    private static void assertReadsEqual(ParsedRead expected, ParsedRead actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getOriginalRead().getId(), actual.getOriginalRead().getId());
+        assertEquals(expected.getOriginalRead().numberOfReads(), actual.getOriginalRead().numberOfReads());
+        for (int i = 0; i < expected.getOriginalRead().numberOfReads(); i++)
+            assertEquals(expected.getOriginalRead().getRead(i).getData(),
+                    actual.getOriginalRead().getRead(i).getData());
+        assertEquals(expected.getBestMatchScore(), actual.getBestMatchScore());
+        for (MatchedGroup group : expected.getGroups())
+            assertEquals(group.getValue(), actual.getGroupValue(group.getGroupName()));
+    }
+
+    @Test
+    public void streamFormatTest() throws Exception {
+        testStreamFormat(13);
+    }
+
+    @Test
+    public void streamFormatV012Test() throws Exception {
+        testStreamFormat(12);
+    }
+
+    private static void testStreamFormat(int formatVersion) throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String outputFile = TEMP_DIR + "streamFormat" + formatVersion + ".mif";
+        long originalNumberOfReads;
+        try (MifReader reader = new MifReader(inputFile);
+             PrimitivO output = new PrimitivO(new BufferedOutputStream(new FileOutputStream(outputFile)))) {
+            writeStreamFormatHeader(output, reader.getHeader(), formatVersion);
+            ParsedRead parsedRead;
+            while ((parsedRead = reader.take()) != null)
+                output.writeObject(parsedRead);
+            reader.close();
+            originalNumberOfReads = reader.getOriginalNumberOfReads();
+            output.writeObject(null);
+            output.writeLong(originalNumberOfReads);
+            output.write(getEndMagicBytes());
+        }
+        assertEquals(formatVersion, mifInfoExtractor.getFormatVersion(outputFile));
+        try (MifReader reader = new MifReader(outputFile)) {
+            assertEquals(formatVersion, reader.getMifFormatVersion());
+            assertEquals(0, reader.getShardGroups().size());
+            assertEquals(-1, reader.getShardIndex());
+            assertEquals(1, reader.getNumberOfShards());
+            while (reader.take() != null);
+            reader.close();
+            assertEquals(originalNumberOfReads, reader.getOriginalNumberOfReads());
+        }
+        assertMifEqualsAsFastq(inputFile, outputFile, true);
+        for (String fileName : new String[] { inputFile, outputFile })
+            assertTrue(new File(fileName).delete());
+    }
+
+    @Test
+    public void readIdIndexSerializationErrorTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String outputFile = TEMP_DIR + "readIdIndexSerializationError.mif";
+        try (MifReader reader = new MifReader(inputFile)) {
+            MifWriter writer = new MifWriter(outputFile, reader.getHeader(), false, true);
+            writer.enableReadIdIndex();
+            writer.write(reader.take());
+            writer.write(ParsedRead.lazy(new FailingRecord()));
+            assertCloseFails(writer);
+            assertFalse(new File(outputFile + ".ridx").exists());
+            assertFalse(new File(outputFile + ".ridx.unsorted").exists());
+        }
+        for (String fileName : new String[] { inputFile, outputFile })
+            assertTrue(new File(fileName).delete());
+    }
+
+    private static void assertCloseFails(MifWriter writer) {
+        try {
+            writer.close();
+            fail("Serialization error is not thrown from close()");
+        } catch (RuntimeException e) {
+            assertEquals(FailingRecord.ERROR_MESSAGE, e.getCause().getMessage());
+        }
+    }
+
+    private static class FailingRecord implements SerializedRecord {
+        static final String ERROR_MESSAGE = "Test serialization error";
+
+        @Override
+        public ParsedRead decode() {
+            throw new IllegalStateException(ERROR_MESSAGE);
+        }
+
+        @Override
+        public long getReadId() {
+            throw new IllegalStateException(ERROR_MESSAGE);
+        }
+
+        @Override
+        public NSequenceWithQuality getGroupValue(String groupName) {
+            throw new IllegalStateException(ERROR_MESSAGE);
+        }
+
+        @Override
+        public List<GroupEdge> getGroupEdges() {
+            throw new IllegalStateException(ERROR_MESSAGE);
+        }
+
+        @Override
+        public void writeTo(PrimitivO output) {
+            throw new IllegalStateException(ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Header of MIF format version 12 or 13, where reads are written as one continuous stream.
+     * Version 12 header doesn't contain shard information.
+     */
+    private static void writeStreamFormatHeader(PrimitivO output, MifHeader mifHeader, int formatVersion) {
+        output.write((BEGIN_MAGIC_MIF + ".V" + String.format("%03d", formatVersion))
+                .getBytes(StandardCharsets.US_ASCII));
+        output.writeUTF("MiNNN test");
+        output.writeObject(mifHeader.getPipelineConfiguration());
+        output.writeInt(mifHeader.getNumberOfTargets());
+        for (List<String> groups : Arrays.asList(mifHeader.getCorrectedGroups(), mifHeader.getSortedGroups())) {
+            output.writeInt(groups.size());
+            for (String group : groups)
+                output.writeObject(group);
+        }
+        output.writeInt(mifHeader.getGroupEdges().size());
+        for (GroupEdge groupEdge : mifHeader.getGroupEdges()) {
+            output.writeObject(groupEdge);
+            output.putKnownObject(groupEdge);
+        }
+        if (formatVersion >= SHARDS_MAGIC_VERSION) {
+            output.writeInt(mifHeader.getShardGroups().size());
+            for (String shardGroup : mifHeader.getShardGroups())
+                output.writeObject(shardGroup);
+            output.writeInt(mifHeader.getShardIndex());
+            output.writeInt(mifHeader.getNumberOfShards());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import com.milaboratory.minnn.outputconverter.ParsedRead;
+import org.junit.*;
+
+import java.io.*;
+
+import static com.milaboratory.minnn.cli.CommandLineTestUtils.*;
+import static com.milaboratory.minnn.cli.TestResources.*;
+import static com.milaboratory.minnn.util.CommonTestUtils.*;
+import static com.milaboratory.minnn.util.SystemUtils.*;
+import static org.junit.Assert.*;
+
+public class MifWriterTest {
+    @BeforeClass
+    public static void init() {
+        exitOnError = false;
+        File outputFilesDirectory = new File(TEMP_DIR);
+        if (!outputFilesDirectory.exists())
+            throw exitWithError("Directory for temporary output files " + TEMP_DIR + " does not exist!");
+    }
+
+    @Test
+    public void serializationErrorTest() throws Exception {
+        String inputFile = getExampleMif("twosided");
+        String outputFile = TEMP_DIR + "serializationError.mif";
+        FailingOutputStream outputStream = new FailingOutputStream(outputFile);
+        try (MifReader reader = new MifReader(inputFile)) {
+            // writer for output stream serializes reads on a separate thread
+            MifWriter writer = new MifWriter(outputStream, reader.getHeader());
+            outputStream.failNextWrite = true;
+            for (int i = 0; i < 10; i++) {
+                ParsedRead parsedRead = reader.take();
+                assertNotNull(parsedRead);
+                writer.write(parsedRead);
+            }
+            try {
+                writer.close();
+                fail("Serialization error is not thrown from close()");
+            } catch (RuntimeException e) {
+                assertEquals(FailingOutputStream.ERROR_MESSAGE, getRootCause(e).getMessage());
+            }
+            assertTrue(outputStream.closed);
+            writer.close();
+        }
+        for (String fileName : new String[] { inputFile, outputFile })
+            assertTrue(new File(fileName).delete());
+    }
+
+    private static Throwable getRootCause(Throwable throwable) {
+        while (throwable.getCause() != null)
+            throwable = throwable.getCause();
+        return throwable;
+    }
+
+    /**
+     * File output stream that fails once on request, and remembers that it was closed.
+     */
+    private static class FailingOutputStream extends FileOutputStream {
+        static final String ERROR_MESSAGE = "Test serialization error";
+        volatile boolean failNextWrite = false;
+        volatile boolean closed = false;
+
+        FailingOutputStream(String fileName) throws IOException {
+            super(fileName);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkFailure();
+            super.write(b);
+        }
+
+        @Override
+        public void write(byte[] b) throws IOException {
+            checkFailure();
+            super.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkFailure();
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+
+        private void checkFailure() throws IOException {
+            if (failNextWrite) {
+                failNextWrite = false;
+                throw new IOException(ERROR_MESSAGE);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.io;
+
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.minnn.outputconverter.ParsedRead;
+import com.milaboratory.minnn.pattern.*;
+import org.junit.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ShardedMifWriterTest {
+    @Before
+    public void setUp() {
+        ParsedRead.clearStaticCache();
+    }
+
+    @Test
+    public void unmatchedOptionalGroupTest() {
+        List<String> shardGroups = Arrays.asList("SB", "UMI");
+        int numberOfShards = 7;
+        String[] sampleBarcodes = { "AAAA", "CCGT", "TTGA" };
+        for (String sampleBarcode : sampleBarcodes) {
+            int shardIndex = -1;
+            for (String readSequence : new String[] { "ACGTACGTAC", "TTTTGGGGCCA", "GATTACAGATTACA" }) {
+                ParsedRead parsedRead = createParsedRead(readSequence, sampleBarcode, false);
+                assertNull(parsedRead.getGroupValue("UMI"));
+                int currentShardIndex = ShardedMifWriter.getShardIndex(parsedRead, shardGroups, numberOfShards);
+                assertTrue((currentShardIndex >= 0) && (currentShardIndex < numberOfShards));
+                // reads with the same sample barcode and without UMI are in the same shard
+                if (shardIndex != -1)
+                    assertEquals(shardIndex, currentShardIndex);
+                shardIndex = currentShardIndex;
+            }
+            ParsedRead readWithUmi = createParsedRead("ACGTACGTAC", sampleBarcode, true);
+            assertNotNull(readWithUmi.getGroupValue("UMI"));
+            int shardIndexWithUmi = ShardedMifWriter.getShardIndex(readWithUmi, shardGroups, numberOfShards);
+            assertTrue((shardIndexWithUmi >= 0) && (shardIndexWithUmi < numberOfShards));
+        }
+    }
+
+    private static ParsedRead createParsedRead(String readSequence, String sampleBarcode, boolean matchUmi) {
+        NSequenceWithQuality target = new NSequenceWithQuality(sampleBarcode + readSequence);
+        ArrayList<MatchedGroupEdge> matchedGroupEdges = new ArrayList<>();
+        matchedGroupEdges.add(new MatchedGroupEdge(target, (byte)1, new GroupEdge("R1", true), 0));
+        matchedGroupEdges.add(new MatchedGroupEdge(target, (byte)1, new GroupEdge("R1", false), target.size()));
+        matchedGroupEdges.add(new MatchedGroupEdge(target, (byte)1, new GroupEdge("SB", true), 0));
+        matchedGroupEdges.add(new MatchedGroupEdge(target, (byte)1, new GroupEdge("SB", false),
+                sampleBarcode.length()));
+        if (matchUmi) {
+            matchedGroupEdges.add(new MatchedGroupEdge(target, (byte)1, new GroupEdge("UMI", true),
+                    sampleBarcode.length()));
+            matchedGroupEdges.add(new MatchedGroupEdge(target, (byte)1, new GroupEdge("UMI", false),
+                    sampleBarcode.length() + 4));
+        }
+        return new ParsedRead(new SingleReadImpl(0, target, ""), false, -1,
+                new Match(1, 0, matchedGroupEdges), 0);
+    }
+}
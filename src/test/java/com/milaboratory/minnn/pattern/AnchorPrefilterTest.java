@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.pattern;
+
+import com.milaboratory.core.sequence.*;
+import com.milaboratory.test.TestUtil;
+import org.junit.*;
+
+import static com.milaboratory.minnn.util.CommonTestUtils.*;
+import static org.junit.Assert.*;
+
+public class AnchorPrefilterTest {
+    @Test
+    public void simpleTest() throws Exception {
+        PatternConfiguration patternConfiguration = getTestPatternConfiguration(1);
+        FuzzyMatchPattern pattern1 = new FuzzyMatchPattern(patternConfiguration,
+                new NucleotideSequenceCaseSensitive("ATTAGACA"));
+        FuzzyMatchPattern pattern2 = new FuzzyMatchPattern(patternConfiguration,
+                new NucleotideSequenceCaseSensitive("GGCCTT"));
+        AnchorPrefilter andPrefilter = AnchorPrefilter.compile(new AndPattern(patternConfiguration,
+                pattern1, pattern2));
+        AnchorPrefilter orPrefilter = AnchorPrefilter.compile(new OrPattern(patternConfiguration,
+                pattern1, pattern2));
+        assertNotNull(andPrefilter);
+        assertNotNull(orPrefilter);
+        assertTrue(andPrefilter.mayMatch(new NSequenceWithQuality("CCATTAGACACCGGCCTTCC")));
+        assertTrue(andPrefilter.mayMatch(new NSequenceWithQuality("CCATTGACACCGGCATTCC")));
+        assertFalse(andPrefilter.mayMatch(new NSequenceWithQuality("CCATTAGACAAAAAAAAAAA")));
+        assertTrue(orPrefilter.mayMatch(new NSequenceWithQuality("CCATTAGACACCCCCCCCCC")));
+        assertFalse(orPrefilter.mayMatch(new NSequenceWithQuality("CCCCCCCCCCCCCCCCCCCC")));
+        assertNull(AnchorPrefilter.compile(new OrPattern(patternConfiguration, pattern1,
+                new RepeatNPattern(patternConfiguration, 1, 10))));
+        assertNull(AnchorPrefilter.compile(new NotOperator(patternConfiguration,
+                createMultiPattern(patternConfiguration, pattern1))));
+    }
+
+    @Test
+    public void randomSinglePatternTest() throws Exception {
+        for (int i = 0; i < 3000; i++) {
+            SinglePattern pattern = rg.nextBoolean() ? getRandomRawSinglePattern() : getRandomSingleReadPattern();
+            AnchorPrefilter prefilter = AnchorPrefilter.compile(pattern);
+            if (prefilter == null)
+                continue;
+            NSequenceWithQuality target = new NSequenceWithQuality(TestUtil.randomSequence(
+                    NucleotideSequence.ALPHABET, 1, 100).toString());
+            if (!prefilter.mayMatch(target)) {
+                assertNull(pattern.match(target).getBestMatch(false));
+                assertNull(pattern.match(target).getBestMatch(true));
+            }
+        }
+    }
+
+    @Test
+    public void randomMultiPatternTest() throws Exception {
+        for (int i = 0; i < 3000; i++) {
+            int numPatterns = rg.nextInt(5) + 1;
+            MultipleReadsOperator pattern = getRandomMultiReadPattern(numPatterns);
+            if (rg.nextBoolean())
+                pattern = getRandomMultiReadPattern(pattern, getRandomMultiReadPattern(numPatterns));
+            AnchorPrefilter prefilter = AnchorPrefilter.compile(pattern);
+            if (prefilter == null)
+                continue;
+            NSequenceWithQuality[] sequences = new NSequenceWithQuality[numPatterns];
+            for (int j = 0; j < numPatterns; j++)
+                sequences[j] = new NSequenceWithQuality(TestUtil.randomSequence(NucleotideSequence.ALPHABET,
+                        1, 100).toString());
+            MultiNSequenceWithQualityImpl target = new MultiNSequenceWithQualityImpl(sequences);
+            if (!prefilter.mayMatch(target)) {
+                assertNull(pattern.match(target).getBestMatch(false));
+                assertNull(pattern.match(target).getBestMatch(true));
+            }
+        }
+    }
+}
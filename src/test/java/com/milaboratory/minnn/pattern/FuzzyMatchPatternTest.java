@@ -187,6 +187,35 @@ public class FuzzyMatchPatternTest {
         }
     }
 
+    @Test
+    public void longMotifTest() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            int motifLength = rg.nextInt(100) + 64;
+            NucleotideSequence motif = TestUtil.randomSequence(NucleotideSequence.ALPHABET, motifLength,
+                    motifLength, true);
+            NucleotideSequence leftPart = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 30, 30, true);
+            NucleotideSequence rightPart = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 30, 30, true);
+            // substitutions are made far from motif borders to get unambiguous range of the best match
+            char[] mutatedMotif = motif.toString().toCharArray();
+            for (int position : new int[] {10 + rg.nextInt(motifLength / 2 - 10),
+                    motifLength / 2 + rg.nextInt(motifLength / 2 - 10)})
+                mutatedMotif[position] = (mutatedMotif[position] == 'A') ? 'C' : 'A';
+            NSequenceWithQuality target = new NSequenceWithQuality(leftPart + new String(mutatedMotif)
+                    + rightPart);
+            FuzzyMatchPattern pattern = new FuzzyMatchPattern(getTestPatternConfiguration(2),
+                    fromNucleotideSequence(motif, false));
+            for (boolean fairSorting : new boolean[] {true, false}) {
+                Match bestMatch = pattern.match(target).getBestMatch(fairSorting);
+                assertNotNull(bestMatch);
+                assertEquals(new Range(30, 30 + motifLength), bestMatch.getRange());
+                assertEquals(-18, bestMatch.getScore());
+            }
+            assertFalse(new FuzzyMatchPattern(getTestPatternConfiguration(2),
+                    fromNucleotideSequence(motif, false)).match(new NSequenceWithQuality(leftPart.toString()
+                    + rightPart)).isFound());
+        }
+    }
+
     @Test
     public void multipleMatchesTest() throws Exception {
         FuzzyMatchPattern pattern = new FuzzyMatchPattern(getTestPatternConfiguration(),
@@ -565,4 +594,34 @@ public class FuzzyMatchPatternTest {
         assertEquals(-1, bestMatch.getScore());
         assertEquals(new NSequenceWithQuality("ACTGA"), bestMatch.getValue());
     }
+
+    @Test
+    public void minScoreTest() throws Exception {
+        for (int i = 0; i < 5000; i++) {
+            int numErrors = rg.nextInt(4);
+            NucleotideSequenceCaseSensitive motif = TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET,
+                    1, 50);
+            NSequenceWithQuality target = new NSequenceWithQuality(TestUtil.randomSequence(
+                    NucleotideSequence.ALPHABET, 0, 30).toString() + makeRandomErrors(motif, numErrors).toString()
+                    .toUpperCase() + TestUtil.randomSequence(NucleotideSequence.ALPHABET, 0, 30).toString());
+            FuzzyMatchPattern pattern = new FuzzyMatchPattern(getTestPatternConfiguration(rg.nextInt(4)), motif);
+            long minScore = -rg.nextInt(30);
+            ArrayList<MatchIntermediate> expectedMatches = new ArrayList<>();
+            for (MatchIntermediate match : CUtils.it(pattern.match(target).getMatches(true))) {
+                assertTrue(match.getScore() <= pattern.estimateMaxScore());
+                if (match.getScore() >= minScore)
+                    expectedMatches.add(match);
+            }
+            OutputPort<MatchIntermediate> port = pattern.match(target).getMatches(true, minScore);
+            for (MatchIntermediate expectedMatch : expectedMatches) {
+                MatchIntermediate match = port.take();
+                assertNotNull(match);
+                assertEquals(expectedMatch.getRange(), match.getRange());
+                assertEquals(expectedMatch.getScore(), match.getScore());
+            }
+            MatchIntermediate extraMatch;
+            while ((extraMatch = port.take()) != null)
+                assertTrue(extraMatch.getScore() < minScore);
+        }
+    }
 }
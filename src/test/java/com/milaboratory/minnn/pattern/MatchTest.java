@@ -119,4 +119,35 @@ public class MatchTest {
             return null;
         });
     }
+
+    @Test
+    public void compactGroupEdgesTest() throws Exception {
+        NSequenceWithQuality seq0 = new NSequenceWithQuality("AATTAAGGCAAA");
+        NSequenceWithQuality seq1 = new NSequenceWithQuality("ATTAGACA");
+        MatchedRange[] testMatchedRanges = new MatchedRange[] {
+                new MatchedRange(seq0, (byte)1, 0, new Range(0, 9)),
+                new MatchedRange(seq1, (byte)2, 1, new Range(0, 8))
+        };
+        GroupEdge[] groupEdges = new GroupEdge[] { new GroupEdge("0", true), new GroupEdge("0", false),
+                new GroupEdge("1", true), new GroupEdge("1", false) };
+        MatchIntermediate testMatch = new MatchIntermediate(2, -5, -1, -1, groupEdges,
+                new int[] { 1, 4, 2, 6 }, new byte[] { 1, 1, 2, 2 }, new int[] { 0, 0, 1, 1 }, testMatchedRanges);
+
+        assertEquals(4, testMatch.getGroupEdgesCount());
+        assertEquals(6, testMatch.getGroupEdgePosition(3));
+        assertEquals(1, testMatch.getGroupEdgePatternIndex(2));
+        assertEquals(4, testMatch.getMatchedGroupEdges().size());
+        assertSame(seq0, testMatch.getMatchedGroupEdge("0", true).getTarget());
+        assertSame(seq1, testMatch.getMatchedGroupEdge("1", true).getTarget());
+        assertNull(testMatch.getMatchedGroupEdge("1", false).getTarget());
+        assertEquals(2, testMatch.getMatchedGroupEdge("1", false).getTargetId());
+        assertEquals(1, testMatch.getMatchedGroupEdge("1", false).getPatternIndex());
+        assertEquals(2, testMatch.getMatchedGroupEdgesByPattern(1).size());
+        assertEquals("TAGA", testMatch.getGroupValue("1").getSequence().toString());
+
+        MatchIntermediate listMatch = new MatchIntermediate(2, -5, -1, -1, testMatch.getMatchedGroupEdges(),
+                testMatchedRanges);
+        assertEquals(1, listMatch.getGroupEdgePatternIndex(3));
+        assertEquals(2, listMatch.getGroupEdgeTargetId(2));
+    }
 }
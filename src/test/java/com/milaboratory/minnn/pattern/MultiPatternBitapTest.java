@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.pattern;
+
+import com.milaboratory.core.sequence.*;
+import com.milaboratory.test.TestUtil;
+import org.junit.*;
+
+import java.util.*;
+
+import static com.milaboratory.minnn.util.CommonTestUtils.*;
+import static org.junit.Assert.*;
+
+public class MultiPatternBitapTest {
+    @Test
+    public void simpleTest() throws Exception {
+        List<NucleotideSequence> motifs = Arrays.asList(new NucleotideSequence("ATTAGACA"),
+                new NucleotideSequence("GGCCTTAA"), new NucleotideSequence("TTTTTTTT"),
+                new NucleotideSequence(repeatString("ACGT", 15)));
+        MultiPatternBitap bitap = new MultiPatternBitap(motifs);
+        assertEquals(4, bitap.getNumberOfMotifs());
+        NucleotideSequence target = new NucleotideSequence("CCCCATTAGACACCCCGGCCATAACCCC");
+        BitSet expected = new BitSet();
+        expected.set(0);
+        assertEquals(expected, bitap.findMotifs(0, target, 0, target.size()));
+        BitSet found = bitap.findMotifs(1, target, 0, target.size());
+        assertTrue(found.get(0));
+        assertTrue(found.get(1));
+        assertFalse(found.get(2));
+        assertFalse(found.get(3));
+        assertTrue(bitap.findMotifs(0, target, 0, 11).isEmpty());
+        assertTrue(bitap.findMotifs(0, target, 5, target.size()).isEmpty());
+    }
+
+    @Test
+    public void randomTest() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            int numberOfMotifs = rg.nextInt(100) + 1;
+            List<NucleotideSequence> motifs = new ArrayList<>();
+            for (int j = 0; j < numberOfMotifs; j++)
+                motifs.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1,
+                        rg.nextBoolean() ? 12 : 64, true));
+            NucleotideSequence motif = motifs.get(rg.nextInt(numberOfMotifs));
+            NucleotideSequence target = rg.nextBoolean()
+                    ? TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1, 150, true)
+                    : makeRandomErrors(TestUtil.randomSequence(NucleotideSequence.ALPHABET, 0, 50, true)
+                    .concatenate(motif).concatenate(TestUtil.randomSequence(NucleotideSequence.ALPHABET,
+                            0, 50, true)), rg.nextInt(4));
+            int maxErrors = rg.nextInt(4);
+            int from = rg.nextInt(target.size());
+            int to = from + rg.nextInt(target.size() - from + 1);
+            BitSet found = new MultiPatternBitap(motifs).findMotifs(maxErrors, target, from, to);
+            for (int j = 0; j < numberOfMotifs; j++)
+                assertEquals(calculateMinEditDistance(motifs.get(j), target, from, to) <= maxErrors,
+                        found.get(j));
+        }
+    }
+
+    /**
+     * Calculate minimal edit distance between the whole motif and substrings of target that end in the range,
+     * with simple dynamic programming.
+     */
+    private static int calculateMinEditDistance(NucleotideSequence motif, NucleotideSequence target, int from,
+                                                int to) {
+        int result = Integer.MAX_VALUE;
+        int[] previousColumn = new int[motif.size() + 1];
+        for (int i = 0; i <= motif.size(); i++)
+            previousColumn[i] = i;
+        for (int j = from; j < to; j++) {
+            int[] currentColumn = new int[motif.size() + 1];
+            for (int i = 1; i <= motif.size(); i++)
+                currentColumn[i] = Math.min(Math.min(currentColumn[i - 1], previousColumn[i]) + 1,
+                        previousColumn[i - 1] + ((motif.codeAt(i - 1) == target.codeAt(j)) ? 0 : 1));
+            result = Math.min(result, currentColumn[motif.size()]);
+            previousColumn = currentColumn;
+        }
+        return result;
+    }
+}
@@ -210,6 +210,33 @@ public class MultiPatternTest {
         }
     }
 
+    @Test
+    public void minScoreRandomTest() throws Exception {
+        for (int i = 0; i < 3000; i++) {
+            int numPatterns = rg.nextInt(3) + 1;
+            MultipleReadsOperator pattern = getRandomMultiReadPattern(numPatterns);
+            if (rg.nextBoolean())
+                pattern = getRandomMultiReadPattern(pattern, getRandomMultiReadPattern(numPatterns));
+            NSequenceWithQuality[] sequences = new NSequenceWithQuality[numPatterns];
+            for (int j = 0; j < numPatterns; j++)
+                sequences[j] = new NSequenceWithQuality(TestUtil.randomSequence(NucleotideSequence.ALPHABET,
+                        1, 60).toString());
+            MultiNSequenceWithQuality target = new MultiNSequenceWithQualityImpl(sequences);
+            long minScore = -rg.nextInt(60);
+            for (boolean fairSorting : new boolean[] { true, false }) {
+                MatchIntermediate bestMatch = pattern.match(target).getBestMatch(fairSorting);
+                MatchIntermediate boundedBestMatch = pattern.match(target).getBestMatch(fairSorting, minScore);
+                if ((bestMatch == null) || (bestMatch.getScore() < minScore))
+                    assertNull(boundedBestMatch);
+                else {
+                    assertNotNull(boundedBestMatch);
+                    assertEquals(bestMatch.getScore(), boundedBestMatch.getScore());
+                    assertEquals(bestMatch.getNumberOfTargets(), boundedBestMatch.getNumberOfTargets());
+                }
+            }
+        }
+    }
+
     @Test
     public void wrongOperandTest() throws Exception {
         exception.expect(IllegalArgumentException.class);
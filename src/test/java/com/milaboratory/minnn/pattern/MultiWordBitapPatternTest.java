@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.pattern;
+
+import com.milaboratory.core.motif.BitapMatcher;
+import com.milaboratory.core.sequence.*;
+import com.milaboratory.test.TestUtil;
+import org.junit.*;
+
+import static com.milaboratory.minnn.util.CommonTestUtils.*;
+import static org.junit.Assert.*;
+
+public class MultiWordBitapPatternTest {
+    @Test
+    public void simpleTest() throws Exception {
+        NucleotideSequence motif = new NucleotideSequence(repeatString("ATTAGACA", 10));
+        MultiWordBitapPattern pattern = new MultiWordBitapPattern(motif);
+        NucleotideSequence target = new NucleotideSequence("GGGG" + motif + "CCCC");
+        BitapMatcher matcher = pattern.substitutionAndIndelMatcherLast(0, target, 0, target.size());
+        assertEquals(83, matcher.findNext());
+        assertEquals(0, matcher.getNumberOfErrors());
+        assertEquals(-1, matcher.findNext());
+        NucleotideSequence mutatedTarget = new NucleotideSequence("GGGG" + motif.toString().substring(0, 40)
+                + "T" + motif.toString().substring(41) + "CCCC");
+        assertEquals(-1, pattern.substitutionAndIndelMatcherLast(0, mutatedTarget, 0, mutatedTarget.size())
+                .findNext());
+        matcher = pattern.substitutionAndIndelMatcherLast(1, mutatedTarget, 0, mutatedTarget.size());
+        int position;
+        boolean found = false;
+        while ((position = matcher.findNext()) != -1)
+            if (position == 83) {
+                assertEquals(1, matcher.getNumberOfErrors());
+                found = true;
+            }
+        assertTrue(found);
+        assertEquals(-1, pattern.substitutionAndIndelMatcherLast(0, target, 0, 83).findNext());
+        assertEquals(-1, pattern.substitutionAndIndelMatcherLast(0, target, 5, target.size()).findNext());
+    }
+
+    @Test
+    public void randomTest() throws Exception {
+        for (int i = 0; i < 2000; i++) {
+            NucleotideSequence motif = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1, 200, true);
+            NucleotideSequence target = rg.nextBoolean()
+                    ? TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1, 300, true)
+                    : makeRandomErrors(TestUtil.randomSequence(NucleotideSequence.ALPHABET, 0, 50, true)
+                        .concatenate(motif).concatenate(TestUtil.randomSequence(NucleotideSequence.ALPHABET,
+                        0, 50, true)), rg.nextInt(5));
+            int maxErrors = rg.nextInt(10);
+            int from = rg.nextInt(target.size());
+            int to = from + rg.nextInt(target.size() - from + 1);
+            int[] expectedErrors = calculateEditDistances(motif, target, from, to);
+            BitapMatcher matcher = new MultiWordBitapPattern(motif).substitutionAndIndelMatcherLast(maxErrors,
+                    target, from, to);
+            for (int position = from; position < to; position++)
+                if (expectedErrors[position - from] <= maxErrors) {
+                    assertEquals(position, matcher.findNext());
+                    assertEquals(expectedErrors[position - from], matcher.getNumberOfErrors());
+                }
+            assertEquals(-1, matcher.findNext());
+        }
+    }
+
+    /**
+     * Calculate edit distance between the whole motif and the best substring of target that ends at each position,
+     * with simple dynamic programming.
+     */
+    private static int[] calculateEditDistances(NucleotideSequence motif, NucleotideSequence target, int from,
+                                                int to) {
+        int[] result = new int[to - from];
+        int[] previousColumn = new int[motif.size() + 1];
+        for (int i = 0; i <= motif.size(); i++)
+            previousColumn[i] = i;
+        for (int j = from; j < to; j++) {
+            int[] currentColumn = new int[motif.size() + 1];
+            for (int i = 1; i <= motif.size(); i++)
+                currentColumn[i] = Math.min(Math.min(currentColumn[i - 1], previousColumn[i]) + 1,
+                        previousColumn[i - 1] + ((motif.codeAt(i - 1) == target.codeAt(j)) ? 0 : 1));
+            result[j - from] = currentColumn[motif.size()];
+            previousColumn = currentColumn;
+        }
+        return result;
+    }
+}
@@ -179,6 +179,43 @@ public class OrPatternTest {
         assertEquals(0, countMatches(match2, true));
     }
 
+    @Test
+    public void manyLiteralsTest() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            int numberOfOperands = rg.nextInt(384) + 2;
+            NucleotideSequenceCaseSensitive[] motifs = new NucleotideSequenceCaseSensitive[numberOfOperands];
+            FuzzyMatchPattern[] operands = new FuzzyMatchPattern[numberOfOperands];
+            for (int j = 0; j < numberOfOperands; j++) {
+                motifs[j] = TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET, 6, 12);
+                operands[j] = new FuzzyMatchPattern(getTestPatternConfiguration(), motifs[j]);
+            }
+            OrPattern orPattern = new OrPattern(getTestPatternConfiguration(), operands);
+            NucleotideSequenceCaseSensitive targetSeq = rg.nextBoolean()
+                    ? TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET, 1, 100)
+                    : makeRandomErrors(SequencesUtils.concatenate(
+                            TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET, 0, 40),
+                            motifs[rg.nextInt(numberOfOperands)],
+                            TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET, 0, 40)),
+                    rg.nextInt(3));
+            NSequenceWithQuality target = new NSequenceWithQuality(targetSeq.toString());
+            MatchIntermediate expectedBestMatch = null;
+            for (FuzzyMatchPattern operand : operands) {
+                MatchIntermediate currentMatch = operand.match(target).getBestMatch(true);
+                if ((currentMatch != null) && ((expectedBestMatch == null)
+                        || (currentMatch.getScore() > expectedBestMatch.getScore())))
+                    expectedBestMatch = currentMatch;
+            }
+            MatchIntermediate bestMatch = orPattern.match(target).getBestMatch(true);
+            if (expectedBestMatch == null)
+                assertNull(bestMatch);
+            else {
+                assertNotNull(bestMatch);
+                assertEquals(expectedBestMatch.getScore(), bestMatch.getScore());
+            }
+            assertEquals(expectedBestMatch != null, orPattern.match(target).isFound());
+        }
+    }
+
     @Test
     public void groupsTest() throws Exception {
         ArrayList<GroupEdgePosition> groupEdgePositions = new ArrayList<GroupEdgePosition>() {{
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.pattern;
+
+import com.milaboratory.core.sequence.*;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.minnn.util.ApproximateSorter;
+import org.junit.*;
+
+import static com.milaboratory.core.sequence.NucleotideSequenceCaseSensitive.fromNucleotideSequence;
+import static com.milaboratory.minnn.util.CommonTestUtils.*;
+import static org.junit.Assert.*;
+
+public class PatternPlannerTest {
+    @Test
+    public void mergeLiteralsRandomTest() throws Exception {
+        PatternConfiguration conf = getTestPatternConfiguration();
+        for (int i = 0; i < 1000; i++) {
+            NucleotideSequenceCaseSensitive motif1 = fromNucleotideSequence(TestUtil.randomSequence(
+                    NucleotideSequence.ALPHABET, 1, 10), true);
+            NucleotideSequenceCaseSensitive motif2 = fromNucleotideSequence(TestUtil.randomSequence(
+                    NucleotideSequence.ALPHABET, 1, 10), true);
+            NucleotideSequence target = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1, 50);
+            if (rg.nextBoolean())
+                target = target.concatenate(motif1.toNucleotideSequence()).concatenate(motif2.toNucleotideSequence())
+                        .concatenate(TestUtil.randomSequence(NucleotideSequence.ALPHABET, 0, 20));
+            SequencePattern sequencePattern = new SequencePattern(conf, new FuzzyMatchPattern(conf, motif1),
+                    new FuzzyMatchPattern(conf, motif2));
+            Pattern optimizedPattern = PatternPlanner.optimize(sequencePattern);
+            assertTrue(optimizedPattern instanceof FuzzyMatchPattern);
+            assertSameBestMatch(sequencePattern, optimizedPattern, new NSequenceWithQuality(target.toString()));
+        }
+    }
+
+    @Test
+    public void flattenOrRandomTest() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            PatternConfiguration conf = getTestPatternConfiguration(rg.nextInt(3));
+            FuzzyMatchPattern[] fuzzyPatterns = new FuzzyMatchPattern[4];
+            for (int j = 0; j < fuzzyPatterns.length; j++)
+                fuzzyPatterns[j] = new FuzzyMatchPattern(conf, fromNucleotideSequence(TestUtil.randomSequence(
+                        NucleotideSequence.ALPHABET, 1, 8), rg.nextBoolean()));
+            OrPattern orPattern = new OrPattern(conf, fuzzyPatterns[0],
+                    new OrPattern(conf, fuzzyPatterns[1], fuzzyPatterns[2]), fuzzyPatterns[3]);
+            Pattern optimizedPattern = PatternPlanner.optimize(orPattern);
+            assertTrue(optimizedPattern instanceof OrPattern);
+            assertEquals(4, ((OrPattern)optimizedPattern).operandPatterns.length);
+            NSequenceWithQuality target = new NSequenceWithQuality(TestUtil.randomSequence(
+                    NucleotideSequence.ALPHABET, 1, 60).toString());
+            assertSameBestMatch(orPattern, optimizedPattern, target);
+        }
+    }
+
+    @Test
+    public void sharedSubpatternsRandomTest() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            PatternConfiguration conf = getTestPatternConfiguration(rg.nextInt(3));
+            String[] motifs = new String[3];
+            for (int j = 0; j < motifs.length; j++)
+                motifs[j] = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1, 8).toString().toLowerCase();
+            OrPattern orPattern = new OrPattern(conf,
+                    new SequencePattern(conf, new FuzzyMatchPattern(conf, new NucleotideSequenceCaseSensitive(
+                            motifs[0])), new FuzzyMatchPattern(conf, new NucleotideSequenceCaseSensitive(motifs[1]))),
+                    new SequencePattern(conf, new FuzzyMatchPattern(conf, new NucleotideSequenceCaseSensitive(
+                            motifs[0])), new FuzzyMatchPattern(conf, new NucleotideSequenceCaseSensitive(motifs[2]))));
+            OrPattern optimizedPattern = (OrPattern)PatternPlanner.optimize(orPattern);
+            assertSame(((SequencePattern)optimizedPattern.operandPatterns[0]).operandPatterns[0],
+                    ((SequencePattern)optimizedPattern.operandPatterns[1]).operandPatterns[0]);
+            NSequenceWithQuality target = new NSequenceWithQuality(TestUtil.randomSequence(
+                    NucleotideSequence.ALPHABET, 1, 60).toString());
+            // enable memoization of operand matches for the shared subpattern
+            ApproximateSorter.recycleThreadBuffers();
+            assertSameBestMatch(orPattern, optimizedPattern, target);
+        }
+    }
+
+    @Test
+    public void unchangedPatternTest() throws Exception {
+        PatternConfiguration conf = getTestPatternConfiguration(1);
+        SequencePattern sequencePattern = new SequencePattern(conf,
+                new FuzzyMatchPattern(conf, new NucleotideSequenceCaseSensitive("ATTA")),
+                new FuzzyMatchPattern(conf, new NucleotideSequenceCaseSensitive("GACA")));
+        assertSame(sequencePattern, PatternPlanner.optimize(sequencePattern));
+    }
+
+    @Test
+    public void explainTest() throws Exception {
+        PatternConfiguration conf = getTestPatternConfiguration();
+        AndPattern andPattern = new AndPattern(conf,
+                new FuzzyMatchPattern(conf, new NucleotideSequenceCaseSensitive("attagaca")),
+                new FuzzyMatchPattern(conf, new NucleotideSequenceCaseSensitive("tg")));
+        String plan = PatternPlanner.explain(andPattern);
+        assertTrue(plan.startsWith("AndPattern"));
+        assertTrue(plan.contains("operands order: [1, 0]"));
+        assertTrue(plan.contains("\n  FuzzyMatchPattern"));
+    }
+
+    private static void assertSameBestMatch(SinglePattern pattern1, Pattern pattern2, NSequenceWithQuality target) {
+        MatchIntermediate match1 = pattern1.match(target).getBestMatch(true);
+        MatchIntermediate match2 = ((SinglePattern)pattern2).match(target).getBestMatch(true);
+        if (match1 == null)
+            assertNull(match2);
+        else {
+            assertNotNull(match2);
+            assertEquals(match1.getScore(), match2.getScore());
+            assertEquals(match1.getValue().getSequence(), match2.getValue().getSequence());
+        }
+    }
+}
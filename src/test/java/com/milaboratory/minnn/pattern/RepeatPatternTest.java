@@ -36,10 +36,12 @@ import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.core.sequence.NucleotideSequenceCaseSensitive;
 import com.milaboratory.core.sequence.SequencesUtils;
+import com.milaboratory.core.sequence.Wildcard;
 import com.milaboratory.test.TestUtil;
 import org.junit.*;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static com.milaboratory.minnn.util.CommonTestUtils.*;
 import static org.junit.Assert.*;
@@ -320,4 +322,114 @@ public class RepeatPatternTest {
             assertNull(pattern3.match(target3_1, 4, 9).getBestMatch(fairSorting));
         }
     }
+
+    @Test
+    public void targetMismatchesTest() throws Exception {
+        List<Wildcard> patternWildcards = NucleotideSequenceCaseSensitive.ALPHABET.getAllWildcards();
+        List<Wildcard> targetWildcards = NucleotideSequence.ALPHABET.getAllWildcards();
+        for (int i = 0; i < 10000; i++) {
+            Wildcard patternWildcard = patternWildcards.get(rg.nextInt(patternWildcards.size()));
+            int targetLength = rg.nextInt(30) + 1;
+            StringBuilder target = new StringBuilder();
+            for (int j = 0; j < targetLength; j++)
+                switch (rg.nextInt(4)) {
+                    case 0:
+                        target.append('N');
+                        break;
+                    case 1:
+                        target.append(Character.toUpperCase(patternWildcard.getSymbol()));
+                        break;
+                    default:
+                        target.append(targetWildcards.get(rg.nextInt(targetWildcards.size())).getSymbol());
+                }
+            int from;
+            int to;
+            switch (rg.nextInt(4)) {
+                case 0:
+                    from = 0;
+                    to = targetLength;
+                    break;
+                case 1:
+                    from = 0;
+                    to = 1;
+                    break;
+                case 2:
+                    from = targetLength - 1;
+                    to = targetLength;
+                    break;
+                default:
+                    from = rg.nextInt(targetLength);
+                    to = from + 1 + rg.nextInt(targetLength - from);
+            }
+            String matchingLetters = patternWildcards.stream().filter(patternWildcard::intersectsWith)
+                    .map(wildcard -> String.valueOf(wildcard.getSymbol())).collect(Collectors.joining());
+            RepeatPattern.TargetMismatches targetMismatches = new RepeatPattern.TargetMismatches(
+                    new NucleotideSequence(target.toString()), from, to,
+                    new NucleotideSequenceCaseSensitive(String.valueOf(patternWildcard.getSymbol())));
+            for (int position = 0; position < to - from; position++)
+                for (int numberOfErrors = 0; numberOfErrors <= 5; numberOfErrors++)
+                    assertEquals(target + " " + from + " " + to + " " + patternWildcard.getSymbol(),
+                            sectionsLongestValidSection(target.substring(from, to), matchingLetters, position,
+                                    numberOfErrors),
+                            targetMismatches.longestValidSection(position, numberOfErrors));
+        }
+    }
+
+    /**
+     * Longest valid section, calculated by sections of only matching or only non-matching letters; this is
+     * the algorithm that was used in RepeatPattern before TargetMismatches.
+     */
+    private static int sectionsLongestValidSection(String targetSubstring, String matchingLetters, int position,
+                                                   int numberOfErrors) {
+        List<Integer> sections = new ArrayList<>();
+        boolean firstMatching = matchingLetters.contains(targetSubstring.substring(0, 1));
+        boolean currentSectionMatching = firstMatching;
+        int currentSectionLength = 1;
+        for (int i = 1; i < targetSubstring.length(); i++) {
+            boolean currentLetterMatching = matchingLetters.contains(targetSubstring.substring(i, i + 1));
+            if (currentLetterMatching != currentSectionMatching) {
+                sections.add(currentSectionLength);
+                currentSectionLength = 1;
+                currentSectionMatching = currentLetterMatching;
+            } else
+                currentSectionLength++;
+        }
+        sections.add(currentSectionLength);
+
+        boolean currentSectionIsMatching = firstMatching;
+        int currentLength = 0;
+        int currentPosition = 0;
+        int currentErrors = 0;
+        for (int i = 0; i < sections.size(); i++, currentSectionIsMatching = !currentSectionIsMatching) {
+            int currentSectionValue = sections.get(i);
+            if (currentPosition + currentSectionValue < position) {
+                currentPosition += currentSectionValue;
+                continue;
+            } else if (currentPosition <= position) {
+                if (currentSectionIsMatching) {
+                    currentLength = currentPosition + currentSectionValue - position;
+                } else if (currentPosition + currentSectionValue - position <= numberOfErrors) {
+                    currentErrors = currentPosition + currentSectionValue - position;
+                    currentLength = currentErrors;
+                } else {
+                    currentLength = numberOfErrors;
+                    currentErrors = numberOfErrors;
+                    break;
+                }
+            } else {
+                if (currentSectionIsMatching) {
+                    currentLength += currentSectionValue;
+                } else if (currentErrors + currentSectionValue <= numberOfErrors) {
+                    currentErrors += currentSectionValue;
+                    currentLength += currentSectionValue;
+                } else {
+                    currentLength += numberOfErrors - currentErrors;
+                    currentErrors = numberOfErrors;
+                    break;
+                }
+            }
+            currentPosition += currentSectionValue;
+        }
+        return currentLength + (numberOfErrors - currentErrors);
+    }
 }
@@ -231,4 +231,43 @@ public class SequencePatternTest {
         assertEquals(5, match.getMatchedGroupEdge("D", true).getPosition());
         assertEquals(8, match.getMatchedGroupEdge("D", false).getPosition());
     }
+
+    @Test
+    public void matchBatchRandomTest() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            PatternConfiguration patternConfiguration = getRandomPatternConfiguration();
+            SequencePattern sequencePattern = new SequencePattern(patternConfiguration,
+                    getRandomBasicPattern(patternConfiguration), getRandomBasicPattern(patternConfiguration),
+                    getRandomBasicPattern(patternConfiguration));
+            boolean fairSorting = rg.nextBoolean();
+            NSequenceWithQuality[] targets = new NSequenceWithQuality[rg.nextInt(20) + 1];
+            long[] minScores = new long[targets.length];
+            for (int j = 0; j < targets.length; j++) {
+                if (rg.nextInt(5) > 0)
+                    targets[j] = randomSeqWithQuality(rg.nextInt(60) + 1, rg.nextBoolean());
+                minScores[j] = rg.nextBoolean() ? Long.MIN_VALUE : -rg.nextInt(30);
+            }
+            MatchIntermediate[] bestMatches = sequencePattern.matchBatch(targets, fairSorting);
+            MatchIntermediate[] bestMatchesWithMinScores = sequencePattern.matchBatch(targets, fairSorting,
+                    minScores);
+            for (int j = 0; j < targets.length; j++) {
+                MatchIntermediate expectedMatch = (targets[j] == null) ? null
+                        : sequencePattern.match(targets[j]).getBestMatch(fairSorting);
+                MatchIntermediate expectedMatchWithMinScore = (targets[j] == null) ? null
+                        : sequencePattern.match(targets[j]).getBestMatch(fairSorting, minScores[j]);
+                assertMatchesEqual(expectedMatch, bestMatches[j]);
+                assertMatchesEqual(expectedMatchWithMinScore, bestMatchesWithMinScores[j]);
+            }
+        }
+    }
+
+    private static void assertMatchesEqual(MatchIntermediate expected, MatchIntermediate actual) {
+        if (expected == null)
+            assertNull(actual);
+        else {
+            assertNotNull(actual);
+            assertEquals(expected.getScore(), actual.getScore());
+            assertEquals(expected.getRange(), actual.getRange());
+        }
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.milaboratory.core.sequence.*;
+import com.milaboratory.minnn.pattern.*;
+import org.junit.*;
+
+import java.io.File;
+import java.util.*;
+
+import static com.milaboratory.minnn.util.AdaptivePortLimits.*;
+import static com.milaboratory.minnn.util.CommonTestUtils.*;
+import static com.milaboratory.minnn.util.UnfairSorterConfiguration.*;
+import static org.junit.Assert.*;
+
+public class AdaptivePortLimitsTest {
+    @After
+    public void tearDown() {
+        disable();
+    }
+
+    @Test
+    public void disabledTest() throws Exception {
+        FuzzyMatchPattern pattern = new FuzzyMatchPattern(getTestPatternConfiguration(),
+                new NucleotideSequenceCaseSensitive("attagaca"));
+        for (int i = 0; i < adaptivePortLimitsWindow * 2; i++)
+            recordDepth(pattern, 0);
+        assertEquals(100, portLimit(pattern, 100));
+        assertEquals(0, learnedLimits().size());
+    }
+
+    @Test
+    public void shrinkAndGrowTest() throws Exception {
+        enable(new HashMap<>());
+        FuzzyMatchPattern pattern = new FuzzyMatchPattern(getTestPatternConfiguration(),
+                new NucleotideSequenceCaseSensitive("attagaca"));
+        assertEquals(100, portLimit(pattern, 100));
+        for (int i = 0; i < adaptivePortLimitsWindow - 1; i++)
+            recordDepth(pattern, 0);
+        assertEquals(100, portLimit(pattern, 100));
+        recordDepth(pattern, 0);
+        assertEquals(50, portLimit(pattern, 100));
+        for (int i = 0; i < adaptivePortLimitsWindow * 10; i++)
+            recordDepth(pattern, 0);
+        assertEquals(approximateSorterStage1Depth + 1, portLimit(pattern, 100));
+        for (int i = 0; i < adaptivePortLimitsWindow * 10; i++)
+            recordDepth(pattern, portLimit(pattern, 100) - 1);
+        assertEquals(100 * adaptivePortLimitsMaxFactor, portLimit(pattern, 100));
+
+        AnyPattern anyPattern = new AnyPattern(getTestPatternConfiguration(), new ArrayList<>());
+        assertEquals(1, portLimit(anyPattern, 1));
+        for (int i = 0; i < adaptivePortLimitsWindow * 2; i++)
+            recordDepth(anyPattern, 0);
+        assertEquals(1, portLimit(anyPattern, 1));
+    }
+
+    @Test
+    public void pinnedLimitsTest() throws Exception {
+        FuzzyMatchPattern pattern1 = new FuzzyMatchPattern(getTestPatternConfiguration(),
+                new NucleotideSequenceCaseSensitive("attagaca"));
+        FuzzyMatchPattern pattern2 = new FuzzyMatchPattern(getTestPatternConfiguration(),
+                new NucleotideSequenceCaseSensitive("gt"));
+        enable(Collections.singletonMap(pattern1.toString(), 7));
+        assertEquals(7, portLimit(pattern1, 100));
+        assertEquals(100, portLimit(pattern2, 100));
+        for (int i = 0; i < adaptivePortLimitsWindow; i++) {
+            recordDepth(pattern1, 0);
+            recordDepth(pattern2, 1);
+        }
+        assertEquals(7, portLimit(pattern1, 100));
+        assertEquals(50, portLimit(pattern2, 100));
+
+        LinkedHashMap<String, Object> reportData = new LinkedHashMap<>();
+        reportData.put(LEARNED_PORT_LIMITS_JSON_KEY, learnedLimits());
+        File reportFile = new File(TEMP_DIR + "adaptive_port_limits_report.json");
+        new ObjectMapper().writeValue(reportFile, reportData);
+        Map<String, Integer> pinnedLimits = readPinnedLimits(reportFile.getPath());
+        assertTrue(reportFile.delete());
+        assertEquals(2, pinnedLimits.size());
+        assertEquals(7, (int)pinnedLimits.get(pattern1.toString()));
+        assertEquals(50, (int)pinnedLimits.get(pattern2.toString()));
+        for (LinkedHashMap<String, Object> entry : learnedLimits()) {
+            assertEquals(100, entry.get("defaultPortLimit"));
+            assertEquals((long)adaptivePortLimitsWindow, entry.get("samples"));
+            assertEquals(entry.get("pattern").equals(pattern1.toString()), entry.get("pinned"));
+        }
+    }
+
+    @Test
+    public void matchingTest() throws Exception {
+        enable(new HashMap<>());
+        FuzzyMatchPattern pattern1 = new FuzzyMatchPattern(getTestPatternConfiguration(),
+                new NucleotideSequenceCaseSensitive("attagaca"));
+        FuzzyMatchPattern pattern2 = new FuzzyMatchPattern(getTestPatternConfiguration(),
+                new NucleotideSequenceCaseSensitive("gt"));
+        SequencePattern sequencePattern = new SequencePattern(getTestPatternConfiguration(), pattern1, pattern2);
+        NSequenceWithQuality target = new NSequenceWithQuality("ACTGCGATAAATTAGACAGTACG");
+        for (int i = 0; i < adaptivePortLimitsWindow; i++) {
+            ApproximateSorter.recycleThreadBuffers();
+            MatchIntermediate match = sequencePattern.match(target).getBestMatch(false);
+            assertNotNull(match);
+            assertEquals("ATTAGACAGT", match.getValue().getSequence().toString());
+        }
+        List<LinkedHashMap<String, Object>> learnedLimits = learnedLimits();
+        assertEquals(3, learnedLimits.size());
+        for (LinkedHashMap<String, Object> entry : learnedLimits)
+            if (!entry.get("pattern").equals(sequencePattern.toString())) {
+                assertEquals((long)adaptivePortLimitsWindow, entry.get("samples"));
+                assertTrue((int)entry.get("portLimit") < (int)entry.get("defaultPortLimit"));
+            }
+    }
+}
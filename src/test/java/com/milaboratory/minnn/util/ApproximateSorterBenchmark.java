@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.util;
+
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.minnn.parser.*;
+import com.milaboratory.minnn.pattern.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.milaboratory.minnn.util.CommonTestUtils.*;
+
+/**
+ * Allocation per matched read in ApproximateSorter. Run main() and compare "gc.alloc.rate.norm" values
+ * (bytes per read) for recycleBuffers=true (buffers are reused as in ReadProcessor) and recycleBuffers=false
+ * (each sorter allocates its own bookkeeping structures).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApproximateSorterBenchmark {
+    private static final int NUMBER_OF_READS = 1000;
+    private static final int READ_LENGTH = 150;
+
+    @Param({"ATTAGACA + GACATTT & (UMI:N{8}) + TTTTTT", "[ATTAGACA || GGGTC] + (R1:N{5:20}) + CCTTGA"})
+    public String query;
+    @Param({"true", "false"})
+    public boolean fairSorting;
+    @Param({"true", "false"})
+    public boolean recycleBuffers;
+
+    private Pattern pattern;
+    private NSequenceWithQuality[] reads;
+    private int currentRead = 0;
+
+    @Setup
+    public void setup() throws ParserException {
+        Parser parser = new Parser(new ParserConfiguration(getTestScoring(), -100, -1, 2, -1, 0));
+        pattern = parser.parseQuery(query);
+        Random random = new Random(0);
+        String[] motifs = {"ATTAGACA", "GACATTT", "TTTTTT", "GGGTC", "CCTTGA"};
+        reads = new NSequenceWithQuality[NUMBER_OF_READS];
+        for (int i = 0; i < NUMBER_OF_READS; i++) {
+            StringBuilder read = new StringBuilder();
+            while (read.length() < READ_LENGTH)
+                if (random.nextInt(4) == 0)
+                    read.append(motifs[random.nextInt(motifs.length)]);
+                else
+                    read.append("ACGT".charAt(random.nextInt(4)));
+            reads[i] = new NSequenceWithQuality(read.substring(0, READ_LENGTH));
+        }
+    }
+
+    @Benchmark
+    public MatchIntermediate matchRead() {
+        if (recycleBuffers)
+            ApproximateSorter.recycleThreadBuffers();
+        NSequenceWithQuality read = reads[currentRead];
+        currentRead = (currentRead + 1) % NUMBER_OF_READS;
+        return pattern.match(read).getBestMatch(fairSorting);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ApproximateSorterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -28,6 +28,7 @@
  */
 package com.milaboratory.minnn.util;
 
+import cc.redberry.pipe.OutputPort;
 import com.milaboratory.core.alignment.PatternAndTargetAlignmentScoring;
 import com.milaboratory.core.sequence.*;
 import com.milaboratory.minnn.pattern.*;
@@ -452,6 +453,192 @@ public class ApproximateSorterTest {
             }
     }
 
+    @Test
+    public void fairSortingOrderTest() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            PatternConfiguration patternConfiguration = getTestPatternConfiguration(-rg.nextInt(100), 1, 0, -1);
+            FuzzyMatchPattern[] patterns = new FuzzyMatchPattern[rg.nextInt(3) + 2];
+            for (int j = 0; j < patterns.length; j++)
+                patterns[j] = new FuzzyMatchPattern(patternConfiguration,
+                        TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET, 3, 6));
+            NSequenceWithQuality target = new NSequenceWithQuality(TestUtil.randomSequence(
+                    NucleotideSequenceCaseSensitive.ALPHABET, 10, 80).toString());
+            MatchValidationType matchValidationType = new MatchValidationType[] { INTERSECTION, ORDER, FOLLOWING,
+                    FIRST }[rg.nextInt(4)];
+            ApproximateSorterConfiguration conf = new ApproximateSorterConfiguration(target, 0, target.size(),
+                    patternConfiguration, matchValidationType != FIRST, true, matchValidationType, 0, patterns);
+            OutputPort<MatchIntermediate> port = new ApproximateSorter(conf).getOutputPort();
+            long previousScore = Long.MAX_VALUE;
+            MatchIntermediate match;
+            while ((match = port.take()) != null) {
+                assertTrue(match.getScore() <= previousScore);
+                assertTrue(match.getScore() >= patternConfiguration.scoreThreshold);
+                previousScore = match.getScore();
+            }
+            if (matchValidationType == FIRST) {
+                // best combination for FIRST is the best match of any operand
+                MatchIntermediate bestMatch = new ApproximateSorter(conf).getOutputPort().take();
+                long bestOperandScore = Arrays.stream(patterns).map(p -> p.match(target).getBestMatch(true))
+                        .filter(Objects::nonNull).mapToLong(MatchIntermediate::getScore)
+                        .filter(score -> score >= patternConfiguration.scoreThreshold).max().orElse(Long.MIN_VALUE);
+                assertEquals(bestOperandScore, (bestMatch == null) ? Long.MIN_VALUE : bestMatch.getScore());
+            }
+        }
+    }
+
+    @Test
+    public void scoreBoundsTest() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            PatternConfiguration patternConfiguration = getTestPatternConfiguration(rg.nextInt(3));
+            SinglePattern[] patterns = new SinglePattern[rg.nextInt(3) + 2];
+            for (int j = 0; j < patterns.length; j++)
+                patterns[j] = rg.nextInt(4) == 0 ? new RepeatPattern(patternConfiguration,
+                        TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET, 1, 1),
+                        rg.nextInt(3) + 1, rg.nextInt(3) + 4)
+                        : new FuzzyMatchPattern(patternConfiguration,
+                        TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET, 3, 8));
+            NSequenceWithQuality target = new NSequenceWithQuality(TestUtil.randomSequence(
+                    NucleotideSequenceCaseSensitive.ALPHABET, 10, 80).toString());
+            MatchValidationType matchValidationType = new MatchValidationType[] { INTERSECTION, ORDER, FOLLOWING }
+                    [rg.nextInt(3)];
+            long minScore = -rg.nextInt(60);
+            ApproximateSorterConfiguration unboundedConf = new ApproximateSorterConfiguration(target,
+                    0, target.size(), patternConfiguration, true, true, matchValidationType, 0, patterns);
+            ApproximateSorterConfiguration boundedConf = new ApproximateSorterConfiguration(target,
+                    0, target.size(), patternConfiguration, minScore, true, true, matchValidationType, 0, patterns);
+            OutputPort<MatchIntermediate> unboundedPort = new ApproximateSorter(unboundedConf).getOutputPort();
+            OutputPort<MatchIntermediate> boundedPort = new ApproximateSorter(boundedConf).getOutputPort();
+            MatchIntermediate expectedMatch;
+            while (((expectedMatch = unboundedPort.take()) != null) && (expectedMatch.getScore() >= minScore)) {
+                assertTrue(expectedMatch.getScore() <= Arrays.stream(patterns)
+                        .mapToLong(Pattern::estimateMaxScore).sum());
+                MatchIntermediate match = boundedPort.take();
+                assertNotNull(match);
+                assertEquals(expectedMatch.getRange(), match.getRange());
+                assertEquals(expectedMatch.getScore(), match.getScore());
+            }
+            assertNull(boundedPort.take());
+        }
+    }
+
+    @Test
+    public void recycledBuffersTest() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            PatternConfiguration patternConfiguration = getTestPatternConfiguration(rg.nextInt(3));
+            SinglePattern[] patterns = new SinglePattern[rg.nextInt(3) + 2];
+            for (int j = 0; j < patterns.length; j++)
+                patterns[j] = new FuzzyMatchPattern(patternConfiguration,
+                        TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET, 2, 6));
+            NSequenceWithQuality target = new NSequenceWithQuality(TestUtil.randomSequence(
+                    NucleotideSequenceCaseSensitive.ALPHABET, 10, 80).toString());
+            MatchValidationType matchValidationType = new MatchValidationType[] { INTERSECTION, ORDER, FOLLOWING }
+                    [rg.nextInt(3)];
+            boolean fairSorting = rg.nextBoolean();
+            ApproximateSorterConfiguration conf = new ApproximateSorterConfiguration(target, 0, target.size(),
+                    patternConfiguration, true, fairSorting, matchValidationType,
+                    fairSorting ? 0 : rg.nextInt(30) + 1, patterns);
+            List<MatchIntermediate> expectedMatches = streamPort(new ApproximateSorter(conf).getOutputPort())
+                    .collect(Collectors.toList());
+            for (int j = 0; j < 3; j++) {
+                ApproximateSorter.recycleThreadBuffers();
+                List<MatchIntermediate> matches = streamPort(new ApproximateSorter(conf).getOutputPort())
+                        .collect(Collectors.toList());
+                assertEquals(expectedMatches.size(), matches.size());
+                for (int k = 0; k < matches.size(); k++) {
+                    assertEquals(expectedMatches.get(k).getRange(), matches.get(k).getRange());
+                    assertEquals(expectedMatches.get(k).getScore(), matches.get(k).getScore());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void returnedCombinationsTest() throws Exception {
+        SorterBuffers.recycleThreadBuffers();
+        SorterBuffers buffers = SorterBuffers.acquire(3);
+        // with 3 operands, indexes are packed in 21 bits; bigger indexes must not be mixed with other operands
+        int[][] combinations = { { 0, 0, 0 }, { 1, 0, 0 }, { 0, 1 << 21, 0 }, { 0, 0, 1 << 21 }, { 2, 0, 0 },
+                { 0, 1 << 22, 0 }, { 1 << 21, 0, 0 }, { 0, 0, (1 << 21) - 1 }, { 0, 1, Integer.MAX_VALUE } };
+        for (int i = 0; i < combinations.length; i++) {
+            for (int j = 0; j < combinations.length; j++)
+                assertEquals(j < i, buffers.isReturnedCombination(combinations[j]));
+            buffers.addReturnedCombination(combinations[i]);
+        }
+        for (int[] combination : combinations)
+            assertTrue(buffers.isReturnedCombination(combination.clone()));
+        SorterBuffers.recycleThreadBuffers();
+        for (int[] combination : combinations)
+            assertFalse(buffers.isReturnedCombination(combination));
+    }
+
+    @Test
+    public void operandMatchesMemoTest() throws Exception {
+        int numberOfReads = 300;
+        List<Pattern> patterns = new ArrayList<>();
+        List<NSequenceWithQuality> targets = new ArrayList<>();
+        boolean[] fairSorting = new boolean[numberOfReads];
+        for (int i = 0; i < numberOfReads; i++) {
+            PatternConfiguration patternConfiguration = getTestPatternConfiguration(rg.nextInt(3));
+            // the same subpattern object is matched with the same target in both branches of OrPattern
+            FuzzyMatchPattern sharedPattern = new FuzzyMatchPattern(patternConfiguration,
+                    TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET, 3, 6));
+            SinglePattern[] branches = new SinglePattern[2];
+            for (int j = 0; j < branches.length; j++)
+                branches[j] = new PlusPattern(patternConfiguration, sharedPattern,
+                        new FuzzyMatchPattern(patternConfiguration,
+                                TestUtil.randomSequence(NucleotideSequenceCaseSensitive.ALPHABET, 2, 5)));
+            patterns.add(new OrPattern(patternConfiguration, branches));
+            targets.add(new NSequenceWithQuality(TestUtil.randomSequence(
+                    NucleotideSequenceCaseSensitive.ALPHABET, 10, 60).toString()));
+            fairSorting[i] = rg.nextBoolean();
+        }
+        // memo is not enabled in the thread where ApproximateSorter.recycleThreadBuffers() was never called
+        List<List<MatchIntermediate>> expectedMatches = new ArrayList<>();
+        boolean[] memoEnabledInThread = { true };
+        Thread notMemoizedThread = new Thread(() -> {
+            memoEnabledInThread[0] = OperandMatchesMemo.get().isEnabled();
+            for (int i = 0; i < numberOfReads; i++)
+                expectedMatches.add(streamPort(patterns.get(i).match(targets.get(i)).getMatches(fairSorting[i]))
+                        .collect(Collectors.toList()));
+        });
+        notMemoizedThread.start();
+        notMemoizedThread.join();
+        assertFalse(memoEnabledInThread[0]);
+        assertEquals(numberOfReads, expectedMatches.size());
+        for (int i = 0; i < numberOfReads; i++) {
+            ApproximateSorter.recycleThreadBuffers();
+            assertTrue(OperandMatchesMemo.get().isEnabled());
+            List<MatchIntermediate> matches = streamPort(patterns.get(i).match(targets.get(i))
+                    .getMatches(fairSorting[i])).collect(Collectors.toList());
+            assertEquals(expectedMatches.get(i).size(), matches.size());
+            for (int j = 0; j < matches.size(); j++) {
+                assertEquals(expectedMatches.get(i).get(j).getRange(), matches.get(j).getRange());
+                assertEquals(expectedMatches.get(i).get(j).getScore(), matches.get(j).getScore());
+            }
+        }
+
+        Pattern pattern = new FuzzyMatchPattern(getTestPatternConfiguration(),
+                new NucleotideSequenceCaseSensitive("attagaca"));
+        String targetString = "ATTAGACAGGTCATTAGACA";
+        NSequenceWithQuality target = new NSequenceWithQuality(targetString);
+        ArrayList<MatchIntermediate> operandMatches = streamPort(pattern.match(target).getMatches(true))
+                .collect(Collectors.toCollection(ArrayList::new));
+        ApproximateSorter.recycleThreadBuffers();
+        OperandMatchesMemo memo = OperandMatchesMemo.get();
+        assertNull(memo.get(pattern, target, 0, 20, true, -10));
+        memo.put(pattern, target, 0, 20, true, -10, operandMatches);
+        assertSame(operandMatches, memo.get(pattern, target, 0, 20, true, -10));
+        assertNull(memo.get(pattern, target, 1, 20, true, -10));
+        assertNull(memo.get(pattern, target, 0, 19, true, -10));
+        assertNull(memo.get(pattern, target, 0, 20, true, -9));
+        assertNull(memo.get(pattern, target, 0, 20, false, -10));
+        assertNull(memo.get(pattern, new NSequenceWithQuality(targetString), 0, 20, true, -10));
+        // memo is cleared before matching the next read
+        ApproximateSorter.recycleThreadBuffers();
+        assertNull(memo.get(pattern, target, 0, 20, true, -10));
+        assertSame(memo, OperandMatchesMemo.get());
+    }
+
     private boolean matchFound(ApproximateSorterConfiguration conf) {
         return new ApproximateSorter(conf).getOutputPort().take() != null;
     }
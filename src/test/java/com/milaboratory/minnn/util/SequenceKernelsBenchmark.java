@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.util;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.milaboratory.core.sequence.NucleotideSequence.ALPHABET;
+import static com.milaboratory.minnn.util.SequenceKernels.*;
+
+/**
+ * Comparison of scalar letter-by-letter loops and word-parallel SequenceKernels: search of the best kmer position
+ * in the read, as in ConsensusAlgorithmSingleCell, and comparison of sequences by wildcards, as in
+ * CommonUtils.equalByWildcards().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SequenceKernelsBenchmark {
+    @Param({"15", "40"})
+    public int kmerLength;
+    @Param({"150"})
+    public int readLength;
+
+    private NucleotideSequence read;
+    private NucleotideSequence kmer;
+    private NucleotideSequence similarRead;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        StringBuilder readString = new StringBuilder();
+        for (int i = 0; i < readLength; i++)
+            readString.append("ACGT".charAt(random.nextInt(4)));
+        read = new NucleotideSequence(readString.toString());
+        kmer = read.getRange(readLength / 2, readLength / 2 + kmerLength);
+        readString.setCharAt(readLength - 1, 'N');
+        similarRead = new NucleotideSequence(readString.toString());
+    }
+
+    @Benchmark
+    public int locateKmerScalar() {
+        int bestNumErrors = Integer.MAX_VALUE;
+        for (int kmerStart = 0; kmerStart <= readLength - kmerLength; kmerStart++) {
+            int currentNumErrors = 0;
+            for (int i = 0; i < kmerLength; i++)
+                if (read.codeAt(kmerStart + i) != kmer.codeAt(i))
+                    currentNumErrors++;
+            bestNumErrors = Math.min(bestNumErrors, currentNumErrors);
+        }
+        return bestNumErrors;
+    }
+
+    @Benchmark
+    public int locateKmerPacked() {
+        long[] packedRead = packCodes(read);
+        long[] packedKmer = packCodes(kmer);
+        int bestNumErrors = Integer.MAX_VALUE;
+        for (int kmerStart = 0; kmerStart <= readLength - kmerLength; kmerStart++)
+            bestNumErrors = Math.min(bestNumErrors, countDifferences(packedRead, kmerStart, packedKmer, kmerLength));
+        return bestNumErrors;
+    }
+
+    @Benchmark
+    public boolean equalByWildcardsScalar() {
+        for (int i = 0; i < readLength; i++)
+            if (!ALPHABET.codeToWildcard(read.codeAt(i)).intersectsWith(ALPHABET.codeToWildcard(
+                    similarRead.codeAt(i))))
+                return false;
+        return true;
+    }
+
+    @Benchmark
+    public boolean equalByWildcardsPacked() {
+        return CommonUtils.equalByWildcards(read, similarRead);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(SequenceKernelsBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
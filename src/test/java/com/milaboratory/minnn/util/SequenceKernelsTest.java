@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2016-2020, MiLaboratory LLC
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact MiLaboratory LLC, which owns exclusive
+ * rights for distribution of this program for commercial purposes, using the
+ * following email address: licensing@milaboratory.com.
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.minnn.util;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.junit.*;
+
+import static com.milaboratory.core.sequence.NucleotideSequence.ALPHABET;
+import static com.milaboratory.minnn.util.CommonTestUtils.*;
+import static com.milaboratory.minnn.util.SequenceKernels.*;
+import static org.junit.Assert.*;
+
+public class SequenceKernelsTest {
+    private static final String LETTERS = "ACGTNRYSWKMBDHV";
+
+    @Test
+    public void countDifferencesRandomTest() throws Exception {
+        for (int i = 0; i < 10000; i++) {
+            NucleotideSequence seq = randomSequenceWithWildcards(rg.nextInt(100) + 1);
+            int length = rg.nextInt(seq.size()) + 1;
+            int offset = rg.nextInt(seq.size() - length + 1);
+            NucleotideSequence kmer = rg.nextBoolean() ? randomSequenceWithWildcards(length)
+                    : seq.getRange(offset, offset + length);
+            int expectedDifferences = 0;
+            for (int j = 0; j < length; j++)
+                if (seq.codeAt(offset + j) != kmer.codeAt(j))
+                    expectedDifferences++;
+            assertEquals(expectedDifferences, countDifferences(packCodes(seq), offset, packCodes(kmer), length));
+        }
+    }
+
+    @Test
+    public void allIntersectRandomTest() throws Exception {
+        for (int i = 0; i < 10000; i++) {
+            NucleotideSequence seq1 = randomSequenceWithWildcards(rg.nextInt(100) + 1);
+            NucleotideSequence seq2 = rg.nextBoolean() ? randomSequenceWithWildcards(seq1.size())
+                    : makeRandomSubstitutions(seq1, rg.nextInt(3));
+            boolean expected = true;
+            for (int j = 0; j < seq1.size(); j++)
+                if (!ALPHABET.codeToWildcard(seq1.codeAt(j)).intersectsWith(ALPHABET.codeToWildcard(seq2.codeAt(j))))
+                    expected = false;
+            assertEquals(expected, allIntersect(packBasicMasks(seq1), packBasicMasks(seq2), seq1.size()));
+            assertEquals(expected, CommonUtils.equalByWildcards(seq1, seq2));
+        }
+    }
+
+    private static NucleotideSequence randomSequenceWithWildcards(int length) {
+        StringBuilder seq = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            seq.append(rg.nextInt(4) == 0 ? LETTERS.charAt(rg.nextInt(LETTERS.length()))
+                    : LETTERS.charAt(rg.nextInt(4)));
+        return new NucleotideSequence(seq.toString());
+    }
+}